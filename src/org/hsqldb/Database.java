@@ -147,6 +147,7 @@ public class Database {
     //
     public CheckpointRunner checkpointRunner;
     public TimeoutRunner    timeoutRunner;
+    DefragRunner            defragRunner;
 
     //
     Result updateZeroResult = Result.updateZeroResult;
@@ -256,6 +257,12 @@ public class Database {
 
             checkpointRunner = new CheckpointRunner();
             timeoutRunner    = new TimeoutRunner();
+
+            if (logger.isDefragOnline()) {
+                defragRunner = new DefragRunner();
+
+                defragRunner.start();
+            }
         } catch (Throwable e) {
             logger.close(Database.CLOSEMODE_IMMEDIATELY);
             logger.releaseLock();
@@ -292,6 +299,10 @@ public class Database {
             timeoutRunner.stop();
         }
 
+        if (defragRunner != null) {
+            defragRunner.stop();
+        }
+
         lobManager       = null;
         granteeManager   = null;
         userManager      = null;
@@ -301,6 +312,7 @@ public class Database {
         dbInfo           = null;
         checkpointRunner = null;
         timeoutRunner    = null;
+        defragRunner     = null;
     }
 
     /**
@@ -608,6 +620,10 @@ public class Database {
             setState(DATABASE_CLOSING);
         }
 
+        if (defragRunner != null) {
+            defragRunner.stop();
+        }
+
         sessionManager.closeAllSessions();
 
         if (filesReadOnly) {
@@ -834,6 +850,8 @@ public class Database {
         public void run() {
 
             try {
+                logger.prepareCheckpoint();
+
                 Session sysSession = sessionManager.newSysSession();
                 Statement checkpoint =
                     ParserCommand.getAutoCheckpointStatement(Database.this);
@@ -878,6 +896,48 @@ public class Database {
         }
     }
 
+    /**
+     * Executes a step of the online defrag of the .data file periodically.
+     */
+    class DefragRunner implements Runnable {
+
+        private Object timerTask;
+
+        public void run() {
+
+            try {
+                Session sysSession = sessionManager.newSysSession();
+                Statement defrag =
+                    ParserCommand.getOnlineDefragStatement(Database.this);
+
+                sysSession.executeCompiledStatement(defrag,
+                                                    ValuePool.emptyObjectArray,
+                                                    0);
+                sysSession.commit(false);
+                sysSession.close();
+            } catch (Throwable e) {
+
+                // ignore exceptions
+                // may be InterruptedException or IOException
+            }
+        }
+
+        public void start() {
+
+            int interval = logger.getDefragOnlineInterval();
+
+            timerTask = DatabaseManager.getTimer().schedulePeriodicallyAfter(
+                interval, interval, this, true);
+        }
+
+        public void stop() {
+
+            HsqlTimer.cancel(timerTask);
+
+            timerTask = null;
+        }
+    }
+
     static class TimeoutRunner implements Runnable {
 
         private Object timerTask;
@@ -38,6 +38,7 @@ import org.hsqldb.lib.HsqlList;
 import org.hsqldb.map.ValuePool;
 import org.hsqldb.types.ArrayType;
 import org.hsqldb.types.RowType;
+import org.hsqldb.types.Type;
 
 /**
  * Implementation of aggregate operations
@@ -50,6 +51,7 @@ public class ExpressionAggregate extends Expression {
 
     boolean    isDistinctAggregate;
     ArrayType  arrayType;
+    int        primitiveType;
 
     ExpressionAggregate(int type, boolean distinct, Expression e) {
 
@@ -249,6 +251,8 @@ public class ExpressionAggregate extends Expression {
         }
 
         dataType = SetFunction.getType(session, opType, nodes[LEFT].dataType);
+        primitiveType = SetFunctionPrimitive.getPrimitiveType(opType,
+                nodes[LEFT].dataType, isDistinctAggregate);
 
         nodes[RIGHT].resolveTypes(session, null);
     }
@@ -274,21 +278,66 @@ public class ExpressionAggregate extends Expression {
             return currValue;
         }
 
+        return updateAggregatingValue(session, currValue,
+                                      getAggregatingArgument(session));
+    }
+
+    /**
+     * Returns the value added to the aggregate for the current row.
+     */
+    Object getAggregatingArgument(Session session) {
+
+        return nodes[LEFT].opType == OpTypes.ASTERISK ? ValuePool.INTEGER_1
+                                                      : nodes[LEFT].getValue(
+                                                      session);
+    }
+
+    /**
+     * Adds a value returned earlier by getAggregatingArgument(). Used for
+     * rows that are stored before they are aggregated.
+     */
+    Object updateAggregatingValue(Session session, Object currValue,
+                                  Object argument) {
+
         if (currValue == null) {
-            currValue = new SetFunction(session, opType, nodes[LEFT].dataType,
-                                        dataType, isDistinctAggregate,
-                                        arrayType);
+            if (primitiveType == SetFunctionPrimitive.NONE) {
+                currValue = new SetFunction(session, opType,
+                                            nodes[LEFT].dataType, dataType,
+                                            isDistinctAggregate, arrayType);
+            } else {
+                currValue = SetFunctionPrimitive.newSetFunction(primitiveType,
+                        opType, nodes[LEFT].dataType, dataType);
+            }
         }
 
-        Object newValue = nodes[LEFT].opType == OpTypes.ASTERISK
-                          ? ValuePool.INTEGER_1
-                          : nodes[LEFT].getValue(session);
-
-        ((SetFunction) currValue).add(session, newValue);
+        ((SetFunction) currValue).add(session, argument);
 
         return currValue;
     }
 
+    /**
+     * Returns the type of the values returned by getAggregatingArgument(),
+     * or null if the values cannot be stored. Aggregates with a FILTER
+     * clause or with a row or LOB argument are not stored.
+     */
+    Type getAggregatingArgumentType() {
+
+        if (hasCondition()) {
+            return null;
+        }
+
+        if (nodes[LEFT].opType == OpTypes.ASTERISK) {
+            return Type.SQL_INTEGER;
+        }
+
+        if (nodes[LEFT].getDegree() > 1 || nodes[LEFT].dataType == null
+                || nodes[LEFT].dataType.isLobType()) {
+            return null;
+        }
+
+        return nodes[LEFT].dataType;
+    }
+
     /**
      * Get the result of a SetFunction or an ordinary value
      *
@@ -36,6 +36,7 @@ import org.hsqldb.error.ErrorCode;
 import org.hsqldb.lib.HsqlList;
 import org.hsqldb.types.CharacterType;
 import org.hsqldb.types.NumberType;
+import org.hsqldb.types.TimestampData;
 import org.hsqldb.types.Type;
 import org.hsqldb.types.Types;
 
@@ -44,11 +45,17 @@ import org.hsqldb.types.Types;
  *
  * @author Campbell Boucher-Burnet (boucherb@users dot sourceforge.net)
  * @author Fred Toussi (fredt@users dot sourceforge.net)
- * @version 2.0.1
+ * @version 2.3.0
  * @since 1.9.0
  */
 public class ExpressionArithmetic extends Expression {
 
+    // value types of operands evaluated for a batch of rows
+    static final int BATCH_NONE     = 0;
+    static final int BATCH_LONG     = 1;
+    static final int BATCH_DOUBLE   = 2;
+    static final int BATCH_DATETIME = 3;
+
     ExpressionArithmetic(int type, Expression left, Expression right) {
 
         super(type);
@@ -658,4 +665,310 @@ public class ExpressionArithmetic extends Expression {
                 throw Error.runtimeError(ErrorCode.U_S0500, "Expression");
         }
     }
+
+    /**
+     * Returns the batch value type for the values of an SQL type, or
+     * BATCH_NONE if values of the type are not evaluated in batches.
+     */
+    static int getBatchType(Type type) {
+
+        switch (type.typeCode) {
+
+            case Types.TINYINT :
+            case Types.SQL_SMALLINT :
+            case Types.SQL_INTEGER :
+            case Types.SQL_BIGINT :
+                return BATCH_LONG;
+
+            case Types.SQL_REAL :
+            case Types.SQL_FLOAT :
+            case Types.SQL_DOUBLE :
+                return BATCH_DOUBLE;
+
+            case Types.SQL_DATE :
+            case Types.SQL_TIMESTAMP :
+                return BATCH_DATETIME;
+
+            default :
+                return BATCH_NONE;
+        }
+    }
+
+    /**
+     * Returns true if the operand can be evaluated for a batch of rows as
+     * values of the batch type. An operand is a column, a constant, a
+     * dynamic parameter, or an addition, subtraction or multiplication of
+     * such operands. Integral operands are allowed for double values.
+     */
+    static boolean isBatchOperand(Expression e, int batchType) {
+
+        if (e.dataType == null) {
+            return false;
+        }
+
+        int type = getBatchType(e.dataType);
+
+        if (type == BATCH_NONE) {
+            return false;
+        }
+
+        if (type != batchType
+                && !(batchType == BATCH_DOUBLE && type == BATCH_LONG)) {
+            return false;
+        }
+
+        switch (e.opType) {
+
+            case OpTypes.VALUE :
+            case OpTypes.DYNAMIC_PARAM :
+                return true;
+
+            case OpTypes.COLUMN : {
+                if (!(e instanceof ExpressionColumn)) {
+                    return false;
+                }
+
+                ExpressionColumn column = (ExpressionColumn) e;
+
+                return column.column != null
+                       && column.dataType == column.column.dataType;
+            }
+            case OpTypes.ADD :
+            case OpTypes.SUBTRACT :
+            case OpTypes.MULTIPLY :
+                if (type == BATCH_DATETIME
+                        || !(e instanceof ExpressionArithmetic)) {
+                    return false;
+                }
+
+                return isBatchOperand(e.nodes[LEFT], type)
+                       && isBatchOperand(e.nodes[RIGHT], type);
+
+            default :
+                return false;
+        }
+    }
+
+    /**
+     * Puts the values of a batch operand for the selected rows of a batch
+     * into the values object. Columns of the range are read from the rows.
+     * Other operands are evaluated once for the batch.
+     */
+    static void getBatchValues(Session session, Expression e,
+                               RangeVariable range, int batchType,
+                               Row[] rows, int[] selection, int count,
+                               BatchValues values) {
+
+        int type = getBatchType(e.dataType);
+
+        if (type != batchType) {
+            BatchValues longValues = new BatchValues(count);
+
+            getBatchValues(session, e, range, type, rows, selection, count,
+                           longValues);
+
+            for (int i = 0; i < count; i++) {
+                values.nulls[i]   = longValues.nulls[i];
+                values.doubles[i] = longValues.longs[i];
+            }
+
+            return;
+        }
+
+        switch (e.opType) {
+
+            case OpTypes.COLUMN :
+                if (((ExpressionColumn) e).rangeVariable == range) {
+                    values.setColumnValues(rows, selection, count,
+                                           e.columnIndex, batchType);
+                } else {
+                    values.setConstantValue(e.getValue(session), count,
+                                            batchType);
+                }
+
+                return;
+
+            case OpTypes.VALUE :
+            case OpTypes.DYNAMIC_PARAM :
+                values.setConstantValue(e.getValue(session), count,
+                                        batchType);
+
+                return;
+
+            default :
+                ((ExpressionArithmetic) e).getBatchValues(session, range,
+                        rows, selection, count, values);
+        }
+    }
+
+    /**
+     * Evaluates the operation for the selected rows of a batch. Integral
+     * results wrap around as in getValue().
+     */
+    void getBatchValues(Session session, RangeVariable range, Row[] rows,
+                        int[] selection, int count, BatchValues values) {
+
+        int         batchType = getBatchType(dataType);
+        BatchValues right     = new BatchValues(count);
+
+        getBatchValues(session, nodes[LEFT], range, batchType, rows,
+                       selection, count, values);
+        getBatchValues(session, nodes[RIGHT], range, batchType, rows,
+                       selection, count, right);
+
+        for (int i = 0; i < count; i++) {
+            values.nulls[i] |= right.nulls[i];
+        }
+
+        if (batchType == BATCH_DOUBLE) {
+            double[] a = values.doubles;
+            double[] b = right.doubles;
+
+            switch (opType) {
+
+                case OpTypes.ADD :
+                    for (int i = 0; i < count; i++) {
+                        a[i] += b[i];
+                    }
+                    break;
+
+                case OpTypes.SUBTRACT :
+                    for (int i = 0; i < count; i++) {
+                        a[i] -= b[i];
+                    }
+                    break;
+
+                case OpTypes.MULTIPLY :
+                    for (int i = 0; i < count; i++) {
+                        a[i] *= b[i];
+                    }
+                    break;
+
+                default :
+                    throw Error.runtimeError(ErrorCode.U_S0500,
+                                             "ExpressionArithmetic");
+            }
+
+            return;
+        }
+
+        long[] a = values.longs;
+        long[] b = right.longs;
+
+        switch (opType) {
+
+            case OpTypes.ADD :
+                for (int i = 0; i < count; i++) {
+                    a[i] += b[i];
+                }
+                break;
+
+            case OpTypes.SUBTRACT :
+                for (int i = 0; i < count; i++) {
+                    a[i] -= b[i];
+                }
+                break;
+
+            case OpTypes.MULTIPLY :
+                for (int i = 0; i < count; i++) {
+                    a[i] *= b[i];
+                }
+                break;
+
+            default :
+                throw Error.runtimeError(ErrorCode.U_S0500,
+                                         "ExpressionArithmetic");
+        }
+
+        if (dataType.typeCode != Types.SQL_BIGINT) {
+            for (int i = 0; i < count; i++) {
+                a[i] = (int) a[i];
+            }
+        }
+    }
+
+    /**
+     * Values of an operand for the selected rows of a batch, at the same
+     * index as the row in the selection. DATE and TIMESTAMP values are held
+     * as seconds in longs and nanoseconds in nanos.
+     */
+    static class BatchValues {
+
+        final long[]    longs;
+        final double[]  doubles;
+        final int[]     nanos;
+        final boolean[] nulls;
+
+        BatchValues(int size) {
+
+            longs   = new long[size];
+            doubles = new double[size];
+            nanos   = new int[size];
+            nulls   = new boolean[size];
+        }
+
+        void setColumnValues(Row[] rows, int[] selection, int count,
+                             int column, int batchType) {
+
+            for (int i = 0; i < count; i++) {
+                Object value = rows[selection[i]].getData()[column];
+
+                if (value == null) {
+                    nulls[i] = true;
+
+                    continue;
+                }
+
+                nulls[i] = false;
+
+                switch (batchType) {
+
+                    case BATCH_LONG :
+                        longs[i] = ((Number) value).longValue();
+                        break;
+
+                    case BATCH_DOUBLE :
+                        doubles[i] = ((Number) value).doubleValue();
+                        break;
+
+                    case BATCH_DATETIME :
+                        longs[i] = ((TimestampData) value).getSeconds();
+                        nanos[i] = ((TimestampData) value).getNanos();
+                        break;
+                }
+            }
+        }
+
+        void setConstantValue(Object value, int count, int batchType) {
+
+            long   longValue   = 0;
+            double doubleValue = 0;
+            int    nanosValue  = 0;
+
+            if (value != null) {
+                switch (batchType) {
+
+                    case BATCH_LONG :
+                        longValue = ((Number) value).longValue();
+                        break;
+
+                    case BATCH_DOUBLE :
+                        doubleValue = ((Number) value).doubleValue();
+                        break;
+
+                    case BATCH_DATETIME :
+                        longValue  = ((TimestampData) value).getSeconds();
+                        nanosValue = ((TimestampData) value).getNanos();
+                        break;
+                }
+            }
+
+            for (int i = 0; i < count; i++) {
+                nulls[i]   = value == null;
+                longs[i]   = longValue;
+                doubles[i] = doubleValue;
+                nanos[i]   = nanosValue;
+            }
+        }
+    }
 }
@@ -47,7 +47,7 @@ import org.hsqldb.types.Type;
 /**
  * @author Campbell Boucher-Burnet (boucherb@users dot sourceforge.net)
  * @author Fred Toussi (fredt@users dot sourceforge.net)
- * @version 2.2.9
+ * @version 2.3.0
  * @since 1.9.0
  */
 public class ExpressionLogical extends Expression {
@@ -1397,6 +1397,162 @@ public class ExpressionLogical extends Expression {
         }
     }
 
+    /**
+     * Returns true if the condition is a comparison of two operands that can
+     * be evaluated for a batch of rows with filterBatch(). An integral left
+     * operand is not compared to a double right operand in batches.
+     */
+    boolean isBatchable() {
+
+        switch (opType) {
+
+            case OpTypes.EQUAL :
+            case OpTypes.NOT_EQUAL :
+            case OpTypes.GREATER :
+            case OpTypes.GREATER_EQUAL :
+            case OpTypes.GREATER_EQUAL_PRE :
+            case OpTypes.SMALLER :
+            case OpTypes.SMALLER_EQUAL :
+                break;
+
+            default :
+                return false;
+        }
+
+        if (exprSubType != 0 || nodes[LEFT].dataType == null
+                || nodes[RIGHT].dataType == null) {
+            return false;
+        }
+
+        int batchType =
+            ExpressionArithmetic.getBatchType(nodes[LEFT].dataType);
+
+        switch (batchType) {
+
+            case ExpressionArithmetic.BATCH_NONE :
+                return false;
+
+            case ExpressionArithmetic.BATCH_DATETIME :
+                if (nodes[LEFT].dataType.typeCode
+                        != nodes[RIGHT].dataType.typeCode) {
+                    return false;
+                }
+                break;
+        }
+
+        return ExpressionArithmetic.isBatchOperand(nodes[LEFT], batchType)
+               && ExpressionArithmetic.isBatchOperand(nodes[RIGHT],
+                   batchType);
+    }
+
+    /**
+     * Evaluates the comparison for the selected rows of a batch of rows of
+     * the range. The rows for which the result is TRUE are kept in the
+     * selection in the same order and their count is returned. The values
+     * objects are used for the operands.
+     */
+    int filterBatch(Session session, RangeVariable range, Row[] rows,
+                    int[] selection, int count,
+                    ExpressionArithmetic.BatchValues left,
+                    ExpressionArithmetic.BatchValues right) {
+
+        int batchType =
+            ExpressionArithmetic.getBatchType(nodes[LEFT].dataType);
+
+        ExpressionArithmetic.getBatchValues(session, nodes[LEFT], range,
+                                            batchType, rows, selection,
+                                            count, left);
+        ExpressionArithmetic.getBatchValues(session, nodes[RIGHT], range,
+                                            batchType, rows, selection,
+                                            count, right);
+
+        int newCount = 0;
+
+        for (int i = 0; i < count; i++) {
+            if (left.nulls[i] || right.nulls[i]) {
+                continue;
+            }
+
+            int result;
+
+            switch (batchType) {
+
+                case ExpressionArithmetic.BATCH_LONG : {
+                    long a = left.longs[i];
+                    long b = right.longs[i];
+
+                    result = a > b ? 1
+                                   : a < b ? -1
+                                           : 0;
+
+                    break;
+                }
+                case ExpressionArithmetic.BATCH_DOUBLE : {
+                    double a = left.doubles[i];
+                    double b = right.doubles[i];
+
+                    // same order as NumberType, with NaN lowest
+                    if (Double.isNaN(a)) {
+                        result = Double.isNaN(b) ? 0
+                                                 : -1;
+                    } else if (Double.isNaN(b)) {
+                        result = 1;
+                    } else {
+                        result = Double.compare(a, b);
+                    }
+
+                    break;
+                }
+                default : {
+                    long diff = left.longs[i] - right.longs[i];
+
+                    if (diff == 0) {
+                        diff = left.nanos[i] - right.nanos[i];
+                    }
+
+                    result = diff > 0 ? 1
+                                      : diff < 0 ? -1
+                                                 : 0;
+                }
+            }
+
+            if (isTrueResult(result)) {
+                selection[newCount++] = selection[i];
+            }
+        }
+
+        return newCount;
+    }
+
+    private boolean isTrueResult(int result) {
+
+        switch (opType) {
+
+            case OpTypes.EQUAL :
+                return result == 0;
+
+            case OpTypes.NOT_EQUAL :
+                return result != 0;
+
+            case OpTypes.GREATER :
+                return result > 0;
+
+            case OpTypes.GREATER_EQUAL :
+            case OpTypes.GREATER_EQUAL_PRE :
+                return result >= 0;
+
+            case OpTypes.SMALLER_EQUAL :
+                return result <= 0;
+
+            case OpTypes.SMALLER :
+                return result < 0;
+
+            default :
+                throw Error.runtimeError(ErrorCode.U_S0500,
+                                         "ExpressionLogical");
+        }
+    }
+
     /**
      * For MATCH SIMPLE and FULL expressions, nulls in left are handled
      * prior to calling this method
@@ -1076,6 +1076,17 @@ public class ParserCommand extends ParserDDL {
                 return new StatementCommand(StatementTypes.SET_DATABASE_GC,
                                             args, null, null);
             }
+            case Tokens.INDEX : {
+                read();
+                readThis(Tokens.FANOUT);
+
+                Integer  value = readIntegerObject();
+                Object[] args  = new Object[]{ value };
+
+                return new StatementCommand(
+                    StatementTypes.SET_DATABASE_INDEX_FANOUT, args, null,
+                    null);
+            }
             case Tokens.PASSWORD : {
                 read();
                 readThis(Tokens.CHECK);
@@ -2194,6 +2205,23 @@ public class ParserCommand extends ParserDDL {
         return cs;
     }
 
+    /**
+     * Returns the statement for a step of the online defrag of the .data
+     * file, executed periodically with hsqldb.defrag_online_rows.
+     */
+    public static Statement getOnlineDefragStatement(Database database) {
+
+        HsqlName[] names =
+            database.schemaManager.getCatalogAndBaseTableNames();
+        Statement cs = new StatementCommand(StatementTypes.DATABASE_DEFRAG,
+                                            null, null, names);
+
+        cs.setCompileTimestamp(database.txManager.getGlobalChangeTimestamp());
+        cs.setSQL(Tokens.T_DEFRAG);
+
+        return cs;
+    }
+
     private Statement compileDisconnect() {
 
         read();
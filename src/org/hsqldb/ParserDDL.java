@@ -3257,11 +3257,26 @@ public class ParserDDL extends ParserRoutine {
 
         indexHsqlName.schema = table.getSchemaName();
 
-        int[]    indexColumns = readColumnList(table, true);
-        String   sql          = getLastPart();
-        Object[] args         = new Object[] {
+        int[] indexColumns = readColumnList(table, true);
+        int   fanout       = database.logger.getIndexFanout();
+
+        if (readIfThis(Tokens.WITH)) {
+            readThis(Tokens.OPENBRACKET);
+            readThis(Tokens.FANOUT);
+
+            fanout = readInteger();
+
+            if (fanout < Index.MIN_FANOUT || fanout > Index.MAX_FANOUT) {
+                throw Error.error(ErrorCode.X_42592);
+            }
+
+            readThis(Tokens.CLOSEBRACKET);
+        }
+
+        String   sql  = getLastPart();
+        Object[] args = new Object[] {
             table, indexColumns, indexHsqlName, Boolean.valueOf(unique),
-            qualifiers
+            qualifiers, ValuePool.getInt(fanout)
         };
 
         return new StatementSchema(sql, StatementTypes.CREATE_INDEX, args,
@@ -45,6 +45,7 @@ import org.hsqldb.lib.HashMappedList;
 import org.hsqldb.lib.HashSet;
 import org.hsqldb.lib.HsqlArrayList;
 import org.hsqldb.lib.HsqlList;
+import org.hsqldb.lib.IntKeyIntValueHashMap;
 import org.hsqldb.lib.IntValueHashMap;
 import org.hsqldb.lib.OrderedHashSet;
 import org.hsqldb.lib.OrderedIntHashSet;
@@ -100,6 +101,10 @@ public class QuerySpecification extends QueryExpression {
     private boolean       isSimpleCount;
     private boolean       isSingleMemoryTable;
 
+    //
+    static final int spillPartitionBits  = 3;
+    static final int spillPartitionCount = 1 << spillPartitionBits;
+
     //
     public boolean isUniqueResultRows;
 
@@ -1458,6 +1463,15 @@ public class QuerySpecification extends QueryExpression {
             return result;
         }
 
+        Type[]                     spillTypes = null;
+        RowSetNavigatorDataTable[] partitions = null;
+        int                        maxGroups  = session.resultMaxMemoryRows;
+
+        if (isAggregated && resultGrouped && maxGroups > 0
+                && !sortAndSlice.isGenerated) {
+            spillTypes = getSpillTypes();
+        }
+
         int fullJoinIndex = 0;
         RangeIterator[] rangeIterators =
             new RangeIterator[rangeVariables.length];
@@ -1549,6 +1563,24 @@ public class QuerySpecification extends QueryExpression {
 
                 if (groupData != null) {
                     data = groupData;
+                } else if (spillTypes != null
+                           && navigator.getSize() >= maxGroups) {
+                    if (partitions == null) {
+                        partitions =
+                            new RowSetNavigatorDataTable[spillPartitionCount];
+                    }
+
+                    int partition = navigator.getGroupHash(data)
+                                    >>> (32 - spillPartitionBits);
+
+                    if (partitions[partition] == null) {
+                        partitions[partition] = newSpillNavigator(session,
+                                spillTypes);
+                    }
+
+                    partitions[partition].add(getSpillRow(session, data));
+
+                    continue;
                 }
             }
 
@@ -1595,6 +1627,15 @@ public class QuerySpecification extends QueryExpression {
             return result;
         }
 
+        if (partitions != null) {
+            navigator = buildSpilledGroups(session, navigator, partitions,
+                                           spillTypes);
+
+            result.setNavigator(navigator);
+
+            return result;
+        }
+
         if (isAggregated) {
             if (!resultGrouped && navigator.getSize() == 0) {
                 Object[] data = new Object[exprColumns.length];
@@ -1608,26 +1649,7 @@ public class QuerySpecification extends QueryExpression {
                 navigator.add(data);
             }
 
-            navigator.reset();
-            session.sessionContext.setRangeIterator(navigator);
-
-            while (navigator.next()) {
-                Object[] data = navigator.getCurrent();
-
-                for (int i = indexStartAggregates; i < indexLimitExpressions;
-                        i++) {
-                    data[i] = exprColumns[i].getAggregatedValue(session,
-                            data[i]);
-                }
-
-                for (int i = 0; i < indexStartAggregates; i++) {
-                    if (aggregateCheck[i]) {
-                        data[i] = exprColumns[i].getValue(session);
-                    }
-                }
-            }
-
-            session.sessionContext.unsetRangeIterator(navigator);
+            setAggregatedValues(session, navigator);
         }
 
         navigator.reset();
@@ -1648,6 +1670,206 @@ public class QuerySpecification extends QueryExpression {
         return result;
     }
 
+    /**
+     * Replaces the aggregates of each group with their values, then
+     * computes the columns that use the aggregates.
+     */
+    private void setAggregatedValues(Session session,
+                                     RowSetNavigatorData navigator) {
+
+        navigator.reset();
+        session.sessionContext.setRangeIterator(navigator);
+
+        while (navigator.next()) {
+            Object[] data = navigator.getCurrent();
+
+            for (int i = indexStartAggregates; i < indexLimitExpressions;
+                    i++) {
+                data[i] = exprColumns[i].getAggregatedValue(session, data[i]);
+            }
+
+            for (int i = 0; i < indexStartAggregates; i++) {
+                if (aggregateCheck[i]) {
+                    data[i] = exprColumns[i].getValue(session);
+                }
+            }
+        }
+
+        session.sessionContext.unsetRangeIterator(navigator);
+    }
+
+    /**
+     * Returns the types of the rows stored when the groups of a GROUP BY
+     * exceed the result memory rows setting, or null if the rows cannot be
+     * stored. The rows have the non-aggregate columns of the result,
+     * followed by the arguments of the aggregates.
+     */
+    private Type[] getSpillTypes() {
+
+        Type[] types = new Type[indexLimitExpressions];
+
+        for (int i = 0; i < indexStartAggregates; i++) {
+            types[i] = resultColumnTypes[i];
+
+            if (types[i] == null || types[i].isLobType()) {
+                return null;
+            }
+        }
+
+        for (int i = indexStartAggregates; i < indexLimitExpressions; i++) {
+            if (!(exprColumns[i] instanceof ExpressionAggregate)) {
+                return null;
+            }
+
+            types[i] = ((ExpressionAggregate) exprColumns[i])
+                .getAggregatingArgumentType();
+
+            if (types[i] == null) {
+                return null;
+            }
+        }
+
+        return types;
+    }
+
+    private Object[] getSpillRow(Session session, Object[] data) {
+
+        Object[] row = new Object[indexLimitExpressions];
+
+        System.arraycopy(data, 0, row, 0, indexStartAggregates);
+
+        for (int i = indexStartAggregates; i < indexLimitExpressions; i++) {
+            row[i] = ((ExpressionAggregate) exprColumns[i])
+                .getAggregatingArgument(session);
+        }
+
+        return row;
+    }
+
+    private RowSetNavigatorDataTable newSpillNavigator(Session session,
+            Type[] types) {
+
+        TableBase table = new TableBase(session, session.database,
+                                        TableBase.SCOPE_STATEMENT,
+                                        TableBase.RESULT_TABLE, types);
+
+        table.store = session.sessionData.getNewResultRowStore(table, true);
+
+        return new RowSetNavigatorDataTable(session, table);
+    }
+
+    /**
+     * Completes a GROUP BY after the rows of new groups were stored in
+     * partitions by the hash of their group columns, once the count of
+     * groups in memory reached the result memory rows setting.<p>
+     *
+     * The groups in memory are complete and are moved to the result, which
+     * is stored on disk when large. Each partition is then aggregated in
+     * memory in the same way. The rows of groups that do not fit are stored
+     * again in new partitions, by the next bits of the hash, which are
+     * aggregated afterwards.
+     */
+    private RowSetNavigatorData buildSpilledGroups(Session session,
+            RowSetNavigatorData navigator,
+            RowSetNavigatorDataTable[] partitions, Type[] spillTypes) {
+
+        RowSetNavigatorDataTable result = new RowSetNavigatorDataTable(session,
+            this, true);
+        HsqlArrayList         list      = new HsqlArrayList();
+        IntKeyIntValueHashMap levels    = new IntKeyIntValueHashMap();
+        int                   maxGroups = session.resultMaxMemoryRows;
+
+        addGroups(session, navigator, result);
+
+        for (int i = 0; i < partitions.length; i++) {
+            if (partitions[i] != null) {
+                list.add(partitions[i]);
+            }
+        }
+
+        for (int i = 0; i < list.size(); i++) {
+            RowSetNavigatorDataTable partition =
+                (RowSetNavigatorDataTable) list.get(i);
+            int level = levels.get(i, 0) + 1;
+            int shift = spillPartitionBits * level;
+
+            navigator = new RowSetNavigatorData(session, this);
+
+            ArrayUtil.fillArray(partitions, null);
+            partition.reset();
+
+            while (partition.hasNext()) {
+                Object[] row  = partition.getNext();
+                Object[] data = navigator.getGroupData(row);
+
+                if (data == null) {
+                    if (navigator.getSize() >= maxGroups) {
+                        int index = 0;
+
+                        if (shift < 32) {
+                            index = (navigator.getGroupHash(row) << shift)
+                                    >>> (32 - spillPartitionBits);
+                        }
+
+                        if (partitions[index] == null) {
+                            partitions[index] = newSpillNavigator(session,
+                                                                  spillTypes);
+
+                            levels.put(list.size(), level);
+                            list.add(partitions[index]);
+                        }
+
+                        partitions[index].add(row);
+
+                        continue;
+                    }
+
+                    data = new Object[indexLimitData];
+
+                    System.arraycopy(row, 0, data, 0, indexStartAggregates);
+                    navigator.add(data);
+                }
+
+                for (int j = indexStartAggregates; j < indexLimitExpressions;
+                        j++) {
+                    data[j] = ((ExpressionAggregate) exprColumns[j])
+                        .updateAggregatingValue(session, data[j], row[j]);
+                }
+            }
+
+            partition.release();
+            list.set(i, null);
+            addGroups(session, navigator, result);
+        }
+
+        result.reset();
+
+        return result;
+    }
+
+    /**
+     * Adds the complete groups that satisfy the HAVING condition to the
+     * result.
+     */
+    private void addGroups(Session session, RowSetNavigatorData navigator,
+                           RowSetNavigatorData result) {
+
+        setAggregatedValues(session, navigator);
+        navigator.reset();
+
+        while (navigator.hasNext()) {
+            Object[] data = navigator.getNext();
+
+            if (havingCondition == null
+                    || Boolean.TRUE.equals(
+                        data[indexLimitVisible + groupByColumnCount])) {
+                result.add(data);
+            }
+        }
+
+        navigator.release();
+    }
+
     void setReferenceableColumns() {
 
         accessibleColumns = new boolean[indexLimitVisible];
@@ -949,6 +949,14 @@ public class RangeVariable implements Cloneable {
                 rangeTable.getRowStore(session))).append("\n");
 
         boolean fullScan = !conditions[0].hasIndexCondition();
+        String  access   = fullScan ? "FULL SCAN"
+                                    : "INDEX PRED";
+
+        if (conditions[0].hasHashCondition()) {
+            access = "HASH JOIN";
+        } else if (conditions[0].isMergeJoin) {
+            access = "MERGE JOIN";
+        }
 
         sb.append(b);
 
@@ -962,8 +970,7 @@ public class RangeVariable implements Cloneable {
             }
         }
 
-        sb.append("access=").append(fullScan ? "FULL SCAN"
-                                             : "INDEX PRED").append("\n");
+        sb.append("access=").append(access).append("\n");
 
         for (int i = 0; i < conditions.length; i++) {
             if (i > 0) {
@@ -1140,6 +1147,9 @@ public class RangeVariable implements Cloneable {
 
     public static class RangeIteratorMain extends RangeIteratorBase {
 
+        static final int minBatchSize = 16;
+        static final int maxBatchSize = 1024;
+
         boolean                   hasLeftOuterRow;
         boolean                   isFullIterator;
         RangeVariableConditions[] conditions;
@@ -1153,6 +1163,22 @@ public class RangeVariable implements Cloneable {
         //
         Object[] currentJoinData = null;
 
+        //
+        HashJoinTable hashTable;
+        RowIterator   mergeIterator;
+
+        //
+        Expression[]                     batchConditions;
+        Expression[]                     batchOtherConditions;
+        Row[]                            batchRows;
+        int[]                            batchSelection;
+        ExpressionArithmetic.BatchValues batchLeftValues;
+        ExpressionArithmetic.BatchValues batchRightValues;
+        int                              batchSize;
+        int                              batchCount;
+        int                              batchIndex;
+        boolean                          batchEnd;
+
         RangeIteratorMain() {
             super();
         }
@@ -1177,6 +1203,73 @@ public class RangeVariable implements Cloneable {
             if (rangeVar.whereConditions[0].hasIndexCondition()) {
                 conditions = rangeVar.whereConditions;
             }
+
+            if (session.database.logger.getBatchFilter()) {
+                initialiseBatchConditions();
+            }
+        }
+
+        /**
+         * Rows of a range that is not an outer join and has one set of
+         * conditions without an end condition are read in batches. The
+         * comparisons of numeric, DATE or TIMESTAMP values in the condition
+         * are evaluated for the whole batch and the remaining rows are
+         * tested one by one with the rest of the condition.
+         */
+        private void initialiseBatchConditions() {
+
+            if (rangeVar.isLeftJoin || rangeVar.isRightJoin
+                    || conditions.length != 1) {
+                return;
+            }
+
+            RangeVariableConditions condition = conditions[0];
+
+            if (condition.isFalse || condition.isMergeJoin
+                    || condition.terminalCondition != null
+                    || condition.indexEndCondition != null
+                    || whereConditions[0].nonIndexCondition != null
+                    || joinConditions[0].nonIndexCondition == null) {
+                return;
+            }
+
+            HsqlArrayList batchList = new HsqlArrayList();
+            HsqlArrayList otherList = new HsqlArrayList();
+
+            addBatchConditions(joinConditions[0].nonIndexCondition,
+                               batchList, otherList);
+
+            if (batchList.isEmpty()) {
+                return;
+            }
+
+            batchConditions = new Expression[batchList.size()];
+
+            batchList.toArray(batchConditions);
+
+            batchOtherConditions = new Expression[otherList.size()];
+
+            otherList.toArray(batchOtherConditions);
+            resetBatch();
+        }
+
+        private static void addBatchConditions(Expression e,
+                                               HsqlArrayList batchList,
+                                               HsqlArrayList otherList) {
+
+            if (e.getType() == OpTypes.AND) {
+                addBatchConditions(e.getLeftNode(), batchList, otherList);
+                addBatchConditions(e.getRightNode(), batchList, otherList);
+
+                return;
+            }
+
+            if (e instanceof ExpressionLogical
+                    && ((ExpressionLogical) e).isBatchable()) {
+                batchList.add(e);
+            } else {
+                otherList.add(e);
+            }
         }
 
         public boolean isBeforeFirst() {
@@ -1220,6 +1313,10 @@ public class RangeVariable implements Cloneable {
             currentData   = rangeVar.emptyData;
             currentRow    = null;
             isBeforeFirst = true;
+
+            if (batchConditions != null) {
+                resetBatch();
+            }
         }
 
         public int getRangePosition() {
@@ -1242,6 +1339,18 @@ public class RangeVariable implements Cloneable {
 
             rangeVar.rangeTable.materialiseCorrelated(session);
 
+            if (conditions[condIndex].hashCond != null) {
+                if (hashTable == null) {
+                    hashTable = new HashJoinTable(conditions[condIndex]);
+
+                    hashTable.build(session, store);
+                }
+
+                it = hashTable.findRows(session, store);
+
+                return;
+            }
+
             if (conditions[condIndex].indexCond == null) {
                 if (conditions[condIndex].reversed) {
                     it = conditions[condIndex].rangeIndex.lastRow(session,
@@ -1342,6 +1451,16 @@ public class RangeVariable implements Cloneable {
                 currentJoinData[i] = value;
             }
 
+            if (conditions[condIndex].isMergeJoin) {
+                it = conditions[condIndex].rangeIndex.findFirstRowFrom(session,
+                        store, mergeIterator, currentJoinData,
+                        conditions[condIndex].indexedColumnCount,
+                        rangeVar.indexDistinctCount);
+                mergeIterator = it;
+
+                return;
+            }
+
             it = conditions[condIndex].rangeIndex.findFirstRow(session, store,
                     currentJoinData, conditions[condIndex].indexedColumnCount,
                     rangeVar.indexDistinctCount, conditions[condIndex].opType,
@@ -1358,7 +1477,11 @@ public class RangeVariable implements Cloneable {
             boolean result = false;
 
             while (true) {
-                currentRow = it.getNextRow();
+                if (batchConditions == null) {
+                    currentRow = it.getNextRow();
+                } else {
+                    currentRow = getNextBatchRow();
+                }
 
                 if (currentRow == null) {
                     break;
@@ -1366,6 +1489,18 @@ public class RangeVariable implements Cloneable {
 
                 currentData = currentRow.getData();
 
+                if (batchConditions != null) {
+                    if (!testBatchOtherConditions()) {
+                        continue;
+                    }
+
+                    addFoundRow();
+
+                    hasLeftOuterRow = false;
+
+                    return true;
+                }
+
                 if (conditions[condIndex].terminalCondition != null
                         && !conditions[condIndex].terminalCondition
                             .testCondition(session)) {
@@ -1433,6 +1568,93 @@ public class RangeVariable implements Cloneable {
                 lookup.add(currentRow.getPos());
             }
         }
+
+        /**
+         * Returns the next row of the current batch that satisfies the batch
+         * conditions, reading new batches as needed. The size of the batches
+         * grows from a small number, so that little is read ahead when only
+         * the first rows are used.
+         */
+        private Row getNextBatchRow() {
+
+            while (batchIndex == batchCount) {
+                if (batchEnd) {
+                    return null;
+                }
+
+                readBatch();
+            }
+
+            return batchRows[batchSelection[batchIndex++]];
+        }
+
+        private void readBatch() {
+
+            if (batchRows == null) {
+                batchRows        = new Row[maxBatchSize];
+                batchSelection   = new int[maxBatchSize];
+                batchLeftValues  =
+                    new ExpressionArithmetic.BatchValues(maxBatchSize);
+                batchRightValues =
+                    new ExpressionArithmetic.BatchValues(maxBatchSize);
+            }
+
+            int size = 0;
+
+            for (; size < batchSize; size++) {
+                Row row = it.getNextRow();
+
+                if (row == null) {
+                    batchEnd = true;
+
+                    break;
+                }
+
+                batchRows[size]      = row;
+                batchSelection[size] = size;
+            }
+
+            int count = size;
+
+            for (int i = 0; i < batchConditions.length && count > 0; i++) {
+                count = ((ExpressionLogical) batchConditions[i]).filterBatch(
+                    session, rangeVar, batchRows, batchSelection, count,
+                    batchLeftValues, batchRightValues);
+            }
+
+            batchIndex = 0;
+            batchCount = count;
+
+            if (batchSize < maxBatchSize) {
+                batchSize *= 2;
+            }
+        }
+
+        private boolean testBatchOtherConditions() {
+
+            for (int i = 0; i < batchOtherConditions.length; i++) {
+                if (!batchOtherConditions[i].testCondition(session)) {
+                    return false;
+                }
+            }
+
+            Expression e = conditions[condIndex].excludeConditions;
+
+            return e == null || !e.testCondition(session);
+        }
+
+        private void resetBatch() {
+
+            if (batchRows != null) {
+                ArrayUtil.clearArray(ArrayUtil.CLASS_CODE_OBJECT, batchRows,
+                                     0, batchRows.length);
+            }
+
+            batchSize  = minBatchSize;
+            batchCount = 0;
+            batchIndex = 0;
+            batchEnd   = false;
+        }
     }
 
     public static class RangeIteratorRight extends RangeIteratorMain {
@@ -1625,11 +1847,13 @@ public class RangeVariable implements Cloneable {
         Expression          excludeConditions;
         Expression          nonIndexCondition;
         Expression          terminalCondition;
+        Expression[]        hashCond;
         int                 opType;
         int                 opTypeEnd;
         boolean             isFalse;
         boolean             reversed;
         boolean             hasIndex;
+        boolean             isMergeJoin;
 
         RangeVariableConditions(RangeVariable rangeVar, boolean isJoin) {
             this.rangeVar = rangeVar;
@@ -1651,6 +1875,19 @@ public class RangeVariable implements Cloneable {
             return hasIndex;
         }
 
+        boolean hasHashCondition() {
+            return hashCond != null;
+        }
+
+        /**
+         * Sets the equality conditions used to find the rows of a hash join
+         * when there is no index for the conditions. The conditions are
+         * also added as non-index conditions.
+         */
+        void setHashCondition(Expression[] exprList) {
+            hashCond = exprList;
+        }
+
         void addCondition(Expression e) {
 
             if (e == null) {
@@ -1913,6 +2150,16 @@ public class RangeVariable implements Cloneable {
 
             sb.append("index=").append(rangeIndex.getName().name).append("\n");
 
+            if (hashCond != null) {
+                sb.append(b).append("hash conditions=[");
+
+                for (int j = 0; j < hashCond.length; j++) {
+                    sb.append(hashCond[j].describe(session, blanks));
+                }
+
+                sb.append("]\n");
+            }
+
             if (hasIndexCondition()) {
                 if (indexedColumnCount > 0) {
                     sb.append(b).append("start conditions=[");
@@ -1971,6 +2218,13 @@ public class RangeVariable implements Cloneable {
                     indexEndCondition.replaceColumnReferences(range, list);
             }
 
+            if (hashCond != null) {
+                for (int i = 0; i < hashCond.length; i++) {
+                    hashCond[i] = hashCond[i].replaceColumnReferences(range,
+                            list);
+                }
+            }
+
             if (excludeConditions != null) {
                 excludeConditions =
                     excludeConditions.replaceColumnReferences(range, list);
@@ -1987,4 +2241,214 @@ public class RangeVariable implements Cloneable {
             }
         }
     }
+
+    /**
+     * Rows of a range variable hashed on the columns of its hash join
+     * conditions. Built once for each execution and probed with the values
+     * of the other side of the conditions for each outer row.<p>
+     *
+     * Only the hash code and the row are kept for each row, or the row
+     * position when the table is not in memory. The rows found for a key
+     * are tested against all the conditions, including the equality
+     * conditions, as the hash codes of different keys may be the same.
+     *
+     * @version 2.3.0
+     * @since 2.3.0
+     */
+    static final class HashJoinTable {
+
+        final RangeVariableConditions conditions;
+        final int[]                   columns;
+        int[]                         buckets;
+        int[]                         links;
+        int[]                         hashes;
+        Row[]                         rows;
+        long[]                        positions;
+        int                           size;
+
+        HashJoinTable(RangeVariableConditions conditions) {
+
+            this.conditions = conditions;
+            columns         = new int[conditions.hashCond.length];
+
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] =
+                    conditions.hashCond[i].getLeftNode().getColumnIndex();
+            }
+        }
+
+        void build(Session session, PersistentStore store) {
+
+            boolean     isMemory = store.isMemory();
+            int         capacity = 64;
+            RowIterator it = conditions.rangeIndex.firstRow(session, store,
+                0);
+
+            hashes = new int[capacity];
+
+            if (isMemory) {
+                rows = new Row[capacity];
+            } else {
+                positions = new long[capacity];
+            }
+
+            while (true) {
+                Row row = it.getNextRow();
+
+                if (row == null) {
+                    break;
+                }
+
+                Object[] data = row.getData();
+                int      hash = 0;
+                int      i    = 0;
+
+                for (; i < columns.length; i++) {
+                    Object value = data[columns[i]];
+
+                    if (value == null) {
+                        break;
+                    }
+
+                    hash = hash * 31 + Type.getHashCode(value);
+                }
+
+                // null never equals a value
+                if (i < columns.length) {
+                    continue;
+                }
+
+                if (size == capacity) {
+                    capacity *= 2;
+                    hashes   = (int[]) ArrayUtil.resizeArray(hashes, capacity);
+
+                    if (isMemory) {
+                        rows = (Row[]) ArrayUtil.resizeArray(rows, capacity);
+                    } else {
+                        positions = (long[]) ArrayUtil.resizeArray(positions,
+                                capacity);
+                    }
+                }
+
+                hashes[size] = hash;
+
+                if (isMemory) {
+                    rows[size] = row;
+                } else {
+                    positions[size] = row.getPos();
+                }
+
+                size++;
+            }
+
+            it.release();
+
+            int bucketCount = 16;
+
+            while (bucketCount < size) {
+                bucketCount *= 2;
+            }
+
+            buckets = new int[bucketCount];
+            links   = new int[size];
+
+            ArrayUtil.fillArray(buckets, -1);
+
+            // the chains keep the order of the rows in the index
+            for (int i = size - 1; i >= 0; i--) {
+                int bucket = hashes[i] & (bucketCount - 1);
+
+                links[i]        = buckets[bucket];
+                buckets[bucket] = i;
+            }
+        }
+
+        RowIterator findRows(Session session, PersistentStore store) {
+
+            int hash = 0;
+
+            for (int i = 0; i < columns.length; i++) {
+                Object value =
+                    conditions.hashCond[i].getRightNode().getValue(session);
+
+                if (value == null) {
+                    return conditions.rangeIndex.emptyIterator();
+                }
+
+                hash = hash * 31 + Type.getHashCode(value);
+            }
+
+            int first = buckets[hash & (buckets.length - 1)];
+
+            if (first == -1) {
+                return conditions.rangeIndex.emptyIterator();
+            }
+
+            return new HashRowIterator(store, first, hash);
+        }
+
+        final class HashRowIterator implements RowIterator {
+
+            final PersistentStore store;
+            final int             hash;
+            int                   next;
+            Row                   currentRow;
+
+            HashRowIterator(PersistentStore store, int first, int hash) {
+                this.store = store;
+                this.next  = first;
+                this.hash  = hash;
+            }
+
+            public Row getNextRow() {
+
+                while (next != -1) {
+                    int i = next;
+
+                    next = links[i];
+
+                    if (hashes[i] == hash) {
+                        if (rows == null) {
+                            currentRow = (Row) store.get(positions[i], false);
+                        } else {
+                            currentRow = rows[i];
+                        }
+
+                        return currentRow;
+                    }
+                }
+
+                currentRow = null;
+
+                return null;
+            }
+
+            public Object[] getNext() {
+
+                Row row = getNextRow();
+
+                return row == null ? null
+                                   : row.getData();
+            }
+
+            public boolean hasNext() {
+                throw Error.runtimeError(ErrorCode.U_S0500, "RangeVariable");
+            }
+
+            public void removeCurrent() {}
+
+            public boolean setRowColumns(boolean[] columns) {
+                return false;
+            }
+
+            public void release() {
+                next = -1;
+            }
+
+            public long getRowId() {
+                return currentRow == null ? 0
+                                          : currentRow.getId();
+            }
+        }
+    }
 }
@@ -47,6 +47,7 @@ import org.hsqldb.lib.MultiValueHashMap;
 import org.hsqldb.lib.OrderedHashSet;
 import org.hsqldb.lib.OrderedIntHashSet;
 import org.hsqldb.persist.PersistentStore;
+import org.hsqldb.types.Type;
 
 /**
  * Determines how JOIN and WHERE expressions are used in query
@@ -1172,6 +1173,10 @@ public class RangeVariableResolver {
             }
         }
 
+        if (!hasIndex && !isOR) {
+            setHashConditions(conditions, exprList, rangeVarIndex);
+        }
+
         for (int i = 0, size = exprList.size(); i < size; i++) {
             Expression e = (Expression) exprList.get(i);
 
@@ -1200,6 +1205,197 @@ public class RangeVariableResolver {
                 conditions.addCondition(e);
             }
         }
+
+        if (hasIndex && !isOR) {
+            setMergeCondition(conditions, rangeVarIndex);
+        }
+    }
+
+    /**
+     * Uses a merge join when the index conditions are equality conditions
+     * with the columns of a preceding range that is read in the order of the
+     * same columns. The index is then searched forward from the position of
+     * the previous search for each row of the preceding range.
+     */
+    private void setMergeCondition(RangeVariableConditions conditions,
+                                   int rangeVarIndex) {
+
+        if (select == null || rangeVarIndex == 0
+                || firstRightJoinIndex != rangeVariables.length) {
+            return;
+        }
+
+        if (!conditions.hasIndexCondition()
+                || conditions.opType != OpTypes.EQUAL) {
+            return;
+        }
+
+        RangeVariable range    = null;
+        int[]         colIndex = null;
+
+        for (int i = 0; i < conditions.indexedColumnCount; i++) {
+            Expression e = conditions.indexCond[i];
+
+            if (e.getType() != OpTypes.EQUAL
+                    || e.getRightNode().getType() != OpTypes.COLUMN) {
+                return;
+            }
+
+            RangeVariable current = e.getRightNode().getRangeVariable();
+
+            if (range == null) {
+                range = current;
+
+                int position = ArrayUtil.find(rangeVariables, range);
+
+                if (position < 0 || position >= rangeVarIndex) {
+                    return;
+                }
+
+                RangeVariableConditions outer = range.joinConditions[0];
+
+                if (range.whereConditions[0].hasIndexCondition()) {
+                    outer = range.whereConditions[0];
+                }
+
+                if (range.joinConditions.length > 1
+                        || range.whereConditions.length > 1
+                        || outer.reversed || outer.hashCond != null
+                        || outer.rangeIndex == null) {
+                    return;
+                }
+
+                colIndex = outer.rangeIndex.getColumns();
+
+                if (colIndex.length < conditions.indexedColumnCount) {
+                    return;
+                }
+            } else if (current != range) {
+                return;
+            }
+
+            if (colIndex[i] != e.getRightNode().getColumnIndex()) {
+                return;
+            }
+        }
+
+        conditions.isMergeJoin = true;
+    }
+
+    /**
+     * Uses the equality join conditions on columns of the range variable for
+     * a hash join when there is no index for the conditions and the
+     * estimated cost of building and probing the hash table is lower than
+     * the cost of a full scan for each row of the preceding ranges.
+     */
+    private void setHashConditions(RangeVariableConditions conditions,
+                                   HsqlList exprList, int rangeVarIndex) {
+
+        if (select == null || rangeVarIndex == 0 || !conditions.isJoin
+                || firstRightJoinIndex != rangeVariables.length) {
+            return;
+        }
+
+        Table table = conditions.rangeVar.rangeTable;
+
+        switch (table.getTableType()) {
+
+            case TableBase.MEMORY_TABLE :
+            case TableBase.CACHED_TABLE :
+            case TableBase.TEXT_TABLE :
+                break;
+
+            default :
+                return;
+        }
+
+        HsqlArrayList list = new HsqlArrayList();
+
+        for (int j = 0, size = exprList.size(); j < size; j++) {
+            Expression e = (Expression) exprList.get(j);
+
+            if (e == null || e.getType() != OpTypes.EQUAL
+                    || e.exprSubType != 0) {
+                continue;
+            }
+
+            if (!e.isIndexable(conditions.rangeVar)
+                    || e.getLeftNode().getRangeVariable()
+                       != conditions.rangeVar) {
+                continue;
+            }
+
+            if (isHashable(e.getLeftNode().getDataType(),
+                           e.getRightNode().getDataType())) {
+                list.add(e);
+            }
+        }
+
+        if (list.isEmpty()) {
+            return;
+        }
+
+        double innerRows = table.getRowStore(session).elementCount();
+        double outerRows = 1;
+
+        for (int i = 0; i < rangeVarIndex; i++) {
+            outerRows *= getRowCountEstimate(rangeVariables[i]);
+        }
+
+        if (innerRows * 2 + outerRows >= innerRows * outerRows) {
+            return;
+        }
+
+        Expression[] hashCond = new Expression[list.size()];
+
+        list.toArray(hashCond);
+        conditions.setHashCondition(hashCond);
+    }
+
+    private static boolean isHashable(Type left, Type right) {
+
+        if (left == null || right == null || !left.isHashable()
+                || !right.isHashable()) {
+            return false;
+        }
+
+        return (left.isNumberType() && right.isNumberType())
+               || (left.isCharacterType() && right.isCharacterType());
+    }
+
+    /**
+     * Returns the estimated count of rows of a range for each row of the
+     * preceding ranges.
+     */
+    private double getRowCountEstimate(RangeVariable range) {
+
+        RangeVariableConditions conditions = range.joinConditions[0];
+
+        if (range.whereConditions[0].hasIndexCondition()) {
+            conditions = range.whereConditions[0];
+        }
+
+        switch (range.rangeTable.getTableType()) {
+
+            case TableBase.MEMORY_TABLE :
+            case TableBase.CACHED_TABLE :
+            case TableBase.TEXT_TABLE :
+                break;
+
+            default :
+                return 1024;
+        }
+
+        PersistentStore store = range.rangeTable.getRowStore(session);
+
+        if (conditions.hasIndexCondition()
+                && conditions.opType == OpTypes.EQUAL) {
+            return store.searchCost(session, conditions.rangeIndex,
+                                    conditions.indexedColumnCount,
+                                    OpTypes.EQUAL);
+        }
+
+        return store.elementCount();
     }
 
     private boolean setOrConditions(RangeVariableConditions conditions,
@@ -42,6 +42,7 @@ import java.util.TimeZone;
 import org.hsqldb.HsqlNameManager.HsqlName;
 import org.hsqldb.error.Error;
 import org.hsqldb.error.ErrorCode;
+import org.hsqldb.index.NodeBPlusPath;
 import org.hsqldb.jdbc.JDBCConnection;
 import org.hsqldb.jdbc.JDBCDriver;
 import org.hsqldb.lib.ArrayUtil;
@@ -65,6 +66,7 @@ import org.hsqldb.result.ResultLob;
 import org.hsqldb.result.ResultProperties;
 import org.hsqldb.rights.Grantee;
 import org.hsqldb.rights.User;
+import org.hsqldb.scriptio.ScriptWriterBase;
 import org.hsqldb.types.BlobDataID;
 import org.hsqldb.types.ClobDataID;
 import org.hsqldb.types.TimeData;
@@ -115,6 +117,10 @@ public class Session implements SessionInterface {
     Statement               lockStatement;
     TimeoutManager          timeoutManager;
 
+    // group commit
+    public ScriptWriterBase logSyncWriter;
+    public long             logSyncCount;
+
     // current settings
     final String       zoneString;
     final int          sessionTimeZoneSeconds;
@@ -568,6 +574,7 @@ public class Session implements SessionInterface {
             throw Error.error(ErrorCode.X_40001);
         }
 
+        database.logger.syncCommit(this);
         endTransaction(true, chain);
 
         if (database != null && !sessionUser.isSystem()
@@ -2100,6 +2107,7 @@ public class Session implements SessionInterface {
     SimpleDateFormat simpleDateFormatGMT;
     Random           randomGenerator = new Random();
     long             seed            = -1;
+    NodeBPlusPath    indexPath;
 
     //
     public TypedComparator getComparator() {
@@ -2135,6 +2143,15 @@ public class Session implements SessionInterface {
         return secondaryScanner;
     }
 
+    public NodeBPlusPath getIndexPath() {
+
+        if (indexPath == null) {
+            indexPath = new NodeBPlusPath();
+        }
+
+        return indexPath;
+    }
+
     // properties
     HsqlProperties clientProperties;
 
@@ -282,6 +282,29 @@ public class SessionData {
         resultMap.clear();
     }
 
+    /**
+     * Returns true if an updatable result is held. The rows of the result
+     * are found again by their positions when they are updated.
+     */
+    public boolean hasUpdatableResult() {
+
+        if (resultMap == null) {
+            return false;
+        }
+
+        Iterator it = resultMap.values().iterator();
+
+        while (it.hasNext()) {
+            Result result = (Result) it.next();
+
+            if (ResultProperties.isUpdatable(result.rsProperties)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     public void closeAllTransactionNavigators() {
 
         if (resultMap == null) {
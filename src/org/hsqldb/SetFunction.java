@@ -86,6 +86,11 @@ public class SetFunction implements Serializable {
     private BigDecimal currentBigDecimal;
     private Object     currentValue;
 
+    /**
+     * Used by SetFunctionPrimitive.
+     */
+    SetFunction() {}
+
     SetFunction(Session session, int setType, Type type, Type returnType,
                 boolean isDistinct, ArrayType arrayType) {
 
@@ -0,0 +1,536 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package org.hsqldb;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import org.hsqldb.error.Error;
+import org.hsqldb.error.ErrorCode;
+import org.hsqldb.map.ValuePool;
+import org.hsqldb.types.Type;
+import org.hsqldb.types.Types;
+
+/**
+ * Implementations of SetFunction for COUNT, and for SUM, AVG, MIN and MAX
+ * of INTEGER, BIGINT, DOUBLE and DECIMAL values, without DISTINCT.<p>
+ *
+ * Each class keeps its state in primitive fields and adds a value without
+ * a switch on the type and without creating objects. The class is chosen
+ * by ExpressionAggregate when the types are resolved. The results are the
+ * same as those of SetFunction.
+ *
+ * @version 2.3.0
+ * @since 2.3.0
+ */
+abstract class SetFunctionPrimitive extends SetFunction {
+
+    static final int NONE          = 0;
+    static final int COUNT         = 1;
+    static final int SUM_INTEGER   = 2;
+    static final int SUM_BIGINT    = 3;
+    static final int SUM_DOUBLE    = 4;
+    static final int SUM_DECIMAL   = 5;
+    static final int MINMAX_BIGINT = 6;
+    static final int MINMAX_DOUBLE = 7;
+    static final int MINMAX_OTHER  = 8;
+
+    //
+    long    count;
+    boolean hasNull;
+
+    /**
+     * Returns the kind of SetFunctionPrimitive for the aggregate, or NONE
+     * if SetFunction is used.
+     */
+    static int getPrimitiveType(int setType, Type type, boolean isDistinct) {
+
+        if (isDistinct) {
+            return NONE;
+        }
+
+        if (setType == OpTypes.COUNT) {
+            return COUNT;
+        }
+
+        if (type == null) {
+            return NONE;
+        }
+
+        switch (setType) {
+
+            case OpTypes.SUM :
+            case OpTypes.AVG :
+                switch (type.typeCode) {
+
+                    case Types.TINYINT :
+                    case Types.SQL_SMALLINT :
+                    case Types.SQL_INTEGER :
+                        return SUM_INTEGER;
+
+                    case Types.SQL_BIGINT :
+                        return SUM_BIGINT;
+
+                    case Types.SQL_REAL :
+                    case Types.SQL_FLOAT :
+                    case Types.SQL_DOUBLE :
+                        return SUM_DOUBLE;
+
+                    case Types.SQL_NUMERIC :
+                    case Types.SQL_DECIMAL :
+                        return SUM_DECIMAL;
+
+                    default :
+                        return NONE;
+                }
+            case OpTypes.MIN :
+            case OpTypes.MAX :
+                switch (type.typeCode) {
+
+                    case Types.TINYINT :
+                    case Types.SQL_SMALLINT :
+                    case Types.SQL_INTEGER :
+                    case Types.SQL_BIGINT :
+                        return MINMAX_BIGINT;
+
+                    case Types.SQL_REAL :
+                    case Types.SQL_FLOAT :
+                    case Types.SQL_DOUBLE :
+                        return MINMAX_DOUBLE;
+
+                    case Types.SQL_NUMERIC :
+                    case Types.SQL_DECIMAL :
+                        return MINMAX_OTHER;
+
+                    default :
+                        return NONE;
+                }
+            default :
+                return NONE;
+        }
+    }
+
+    static SetFunction newSetFunction(int primitiveType, int setType,
+                                      Type type, Type returnType) {
+
+        boolean isAvg = setType == OpTypes.AVG;
+        boolean isMax = setType == OpTypes.MAX;
+
+        switch (primitiveType) {
+
+            case COUNT :
+                return new Count();
+
+            case SUM_INTEGER :
+                return new SumInteger(isAvg, returnType);
+
+            case SUM_BIGINT :
+                return new SumBigint(isAvg);
+
+            case SUM_DOUBLE :
+                return new SumDouble(isAvg);
+
+            case SUM_DECIMAL :
+                return new SumDecimal(isAvg, type, returnType);
+
+            case MINMAX_BIGINT :
+                return new MinMaxBigint(isMax);
+
+            case MINMAX_DOUBLE :
+                return new MinMaxDouble(isMax);
+
+            case MINMAX_OTHER :
+                return new MinMaxOther(isMax, type);
+
+            default :
+                throw Error.runtimeError(ErrorCode.U_S0500,
+                                         "SetFunctionPrimitive");
+        }
+    }
+
+    final void add(Session session, Object item) {
+
+        if (item == null) {
+            hasNull = true;
+
+            return;
+        }
+
+        count++;
+
+        addValue(session, item);
+    }
+
+    final Object getValue(Session session) {
+
+        if (hasNull) {
+            session.addWarning(Error.error(ErrorCode.W_01003));
+        }
+
+        return getResult(session);
+    }
+
+    abstract void addValue(Session session, Object item);
+
+    abstract Object getResult(Session session);
+
+    static final class Count extends SetFunctionPrimitive {
+
+        void addValue(Session session, Object item) {}
+
+        Object getResult(Session session) {
+            return ValuePool.getLong(count);
+        }
+    }
+
+    /**
+     * The sum of TINYINT, SMALLINT and INTEGER values cannot overflow a
+     * long.
+     */
+    static final class SumInteger extends SetFunctionPrimitive {
+
+        final boolean isAvg;
+        final Type    returnType;
+        long          sum;
+
+        SumInteger(boolean isAvg, Type returnType) {
+            this.isAvg      = isAvg;
+            this.returnType = returnType;
+        }
+
+        void addValue(Session session, Object item) {
+            sum += ((Number) item).intValue();
+        }
+
+        Object getResult(Session session) {
+
+            if (count == 0) {
+                return null;
+            }
+
+            if (!isAvg) {
+                return ValuePool.getLong(sum);
+            }
+
+            if (returnType.scale != 0) {
+                return returnType.divide(session, Long.valueOf(sum),
+                                         Long.valueOf(count));
+            }
+
+            return Long.valueOf(sum / count);
+        }
+    }
+
+    /**
+     * BIGINT values are added to a long. When the sum overflows, it is
+     * moved to a BigDecimal.
+     */
+    static final class SumBigint extends SetFunctionPrimitive {
+
+        final boolean isAvg;
+        long          sum;
+        BigDecimal    overflow;
+
+        SumBigint(boolean isAvg) {
+            this.isAvg = isAvg;
+        }
+
+        void addValue(Session session, Object item) {
+
+            long value  = ((Number) item).longValue();
+            long result = sum + value;
+
+            if (((sum ^ result) & (value ^ result)) < 0) {
+                overflow = addOverflow(overflow, BigDecimal.valueOf(sum));
+                result   = value;
+            }
+
+            sum = result;
+        }
+
+        Object getResult(Session session) {
+
+            if (count == 0) {
+                return null;
+            }
+
+            BigDecimal total = addOverflow(overflow, BigDecimal.valueOf(sum));
+
+            if (!isAvg) {
+                return total;
+            }
+
+            BigInteger average =
+                total.toBigInteger().divide(BigInteger.valueOf(count));
+
+            return Long.valueOf(average.longValue());
+        }
+    }
+
+    static final class SumDouble extends SetFunctionPrimitive {
+
+        final boolean isAvg;
+        double        sum;
+
+        SumDouble(boolean isAvg) {
+            this.isAvg = isAvg;
+        }
+
+        void addValue(Session session, Object item) {
+            sum += ((Number) item).doubleValue();
+        }
+
+        Object getResult(Session session) {
+
+            if (count == 0) {
+                return null;
+            }
+
+            return new Double(isAvg ? sum / count
+                                    : sum);
+        }
+    }
+
+    /**
+     * DECIMAL values with the scale of the type are added to a long as
+     * unscaled values. The unscaled value is found without creating an
+     * object, from the double value multiplied by the power of ten of the
+     * scale. Below 2 ** 49 the two roundings of the double are smaller than
+     * 0.5, so the nearest long is exact. Other values, and the sum when it
+     * overflows, are added to a BigDecimal.
+     */
+    static final class SumDecimal extends SetFunctionPrimitive {
+
+        static final double[] powersOfTen = new double[19];
+        static final double   unscaledLimit = (double) (1L << 49);
+
+        static {
+            powersOfTen[0] = 1;
+
+            for (int i = 1; i < powersOfTen.length; i++) {
+                powersOfTen[i] = powersOfTen[i - 1] * 10;
+            }
+        }
+
+        final boolean isAvg;
+        final Type    type;
+        final Type    returnType;
+        final int     scale;
+        final double  multiplier;
+        long          sum;
+        boolean       hasSum;
+        BigDecimal    overflow;
+
+        SumDecimal(boolean isAvg, Type type, Type returnType) {
+
+            this.isAvg      = isAvg;
+            this.type       = type;
+            this.returnType = returnType;
+            this.scale      = type.scale;
+            this.multiplier = scale < powersOfTen.length ? powersOfTen[scale]
+                                                         : 0;
+        }
+
+        void addValue(Session session, Object item) {
+
+            BigDecimal decimal = (BigDecimal) item;
+
+            if (multiplier != 0 && decimal.scale() == scale) {
+                double unscaled = decimal.doubleValue() * multiplier;
+
+                if (Math.abs(unscaled) < unscaledLimit) {
+                    long value  = Math.round(unscaled);
+                    long result = sum + value;
+
+                    if (((sum ^ result) & (value ^ result)) < 0) {
+                        overflow = addOverflow(overflow,
+                                               BigDecimal.valueOf(sum, scale));
+                        result = value;
+                    }
+
+                    sum    = result;
+                    hasSum = true;
+
+                    return;
+                }
+            }
+
+            overflow = addOverflow(overflow, decimal);
+        }
+
+        Object getResult(Session session) {
+
+            if (count == 0) {
+                return null;
+            }
+
+            BigDecimal total = overflow;
+
+            if (hasSum) {
+                total = addOverflow(total, BigDecimal.valueOf(sum, scale));
+            }
+
+            if (!isAvg) {
+                return total;
+            }
+
+            if (returnType.scale == type.scale) {
+                return total.divide(new BigDecimal(count),
+                                    BigDecimal.ROUND_DOWN);
+            } else {
+                return returnType.divide(session, total, Long.valueOf(count));
+            }
+        }
+    }
+
+    /**
+     * MIN and MAX of TINYINT, SMALLINT, INTEGER and BIGINT values are
+     * compared as longs.
+     */
+    static final class MinMaxBigint extends SetFunctionPrimitive {
+
+        final boolean isMax;
+        long          current;
+        Object        currentValue;
+
+        MinMaxBigint(boolean isMax) {
+            this.isMax = isMax;
+        }
+
+        void addValue(Session session, Object item) {
+
+            long value = ((Number) item).longValue();
+
+            if (currentValue == null
+                    || (isMax ? value > current
+                              : value < current)) {
+                current      = value;
+                currentValue = item;
+            }
+        }
+
+        Object getResult(Session session) {
+            return currentValue;
+        }
+    }
+
+    /**
+     * MIN and MAX of REAL, FLOAT and DOUBLE values. NaN is smaller than
+     * other values and -0.0 is smaller than 0.0, as in NumberType.compare().
+     */
+    static final class MinMaxDouble extends SetFunctionPrimitive {
+
+        final boolean isMax;
+        double        current;
+        Object        currentValue;
+
+        MinMaxDouble(boolean isMax) {
+            this.isMax = isMax;
+        }
+
+        void addValue(Session session, Object item) {
+
+            double value = ((Number) item).doubleValue();
+
+            if (currentValue == null) {
+                current      = value;
+                currentValue = item;
+
+                return;
+            }
+
+            boolean replace;
+
+            if (Double.isNaN(current)) {
+                replace = isMax && !Double.isNaN(value);
+            } else if (Double.isNaN(value)) {
+                replace = !isMax;
+            } else {
+                int compare = Double.compare(value, current);
+
+                replace = isMax ? compare > 0
+                                : compare < 0;
+            }
+
+            if (replace) {
+                current      = value;
+                currentValue = item;
+            }
+        }
+
+        Object getResult(Session session) {
+            return currentValue;
+        }
+    }
+
+    /**
+     * MIN and MAX of NUMERIC and DECIMAL values are compared by the type
+     * without the switch of SetFunction.
+     */
+    static final class MinMaxOther extends SetFunctionPrimitive {
+
+        final boolean isMax;
+        final Type    type;
+        Object        currentValue;
+
+        MinMaxOther(boolean isMax, Type type) {
+            this.isMax = isMax;
+            this.type  = type;
+        }
+
+        void addValue(Session session, Object item) {
+
+            if (currentValue == null) {
+                currentValue = item;
+
+                return;
+            }
+
+            int compare = type.compare(session, currentValue, item);
+
+            if (isMax ? compare < 0
+                      : compare > 0) {
+                currentValue = item;
+            }
+        }
+
+        Object getResult(Session session) {
+            return currentValue;
+        }
+    }
+
+    static BigDecimal addOverflow(BigDecimal overflow, BigDecimal value) {
+        return overflow == null ? value
+                                : overflow.add(value);
+    }
+}
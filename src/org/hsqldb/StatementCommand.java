@@ -95,6 +95,7 @@ public class StatementCommand extends Statement {
                 break;
 
             case StatementTypes.DATABASE_CHECKPOINT :
+            case StatementTypes.DATABASE_DEFRAG :
                 group    = StatementTypes.X_HSQLDB_DATABASE_OPERATION;
                 isLogged = false;
                 break;
@@ -148,6 +149,7 @@ public class StatementCommand extends Statement {
             case StatementTypes.SET_DATABASE_DEFAULT_ISOLATION_LEVEL :
             case StatementTypes.SET_DATABASE_TRANSACTION_CONFLICT :
             case StatementTypes.SET_DATABASE_GC :
+            case StatementTypes.SET_DATABASE_INDEX_FANOUT :
 
 //
             case StatementTypes.SET_DATABASE_SQL_COLLATION :
@@ -302,6 +304,27 @@ public class StatementCommand extends Statement {
                     session.database.lobManager.unlock();
                 }
             }
+            case StatementTypes.DATABASE_DEFRAG : {
+
+                // may have waited for a shutdown
+                if (session.database.getState() != Database.DATABASE_ONLINE) {
+                    return Result.updateZeroResult;
+                }
+
+                session.database.lobManager.lock();
+
+                try {
+                    session.checkAdmin();
+                    session.checkDDLWrite();
+                    session.database.logger.defragOnline(session);
+
+                    return Result.updateZeroResult;
+                } catch (HsqlException e) {
+                    return Result.newErrorResult(e, sql);
+                } finally {
+                    session.database.lobManager.unlock();
+                }
+            }
             case StatementTypes.SET_DATABASE_FILES_BACKUP_INCREMENT : {
                 try {
                     boolean mode = ((Boolean) parameters[0]).booleanValue();
@@ -774,6 +797,26 @@ public class StatementCommand extends Statement {
                     return Result.newErrorResult(e, sql);
                 }
             }
+            case StatementTypes.SET_DATABASE_INDEX_FANOUT : {
+                try {
+                    int value = ((Integer) parameters[0]).intValue();
+
+                    session.checkAdmin();
+                    session.checkDDLWrite();
+
+                    if (!session.database.getProperties().validateProperty(
+                            HsqlDatabaseProperties.hsqldb_index_fanout,
+                            value)) {
+                        throw Error.error(ErrorCode.X_42556);
+                    }
+
+                    session.database.logger.setIndexFanout(value);
+
+                    return Result.updateZeroResult;
+                } catch (HsqlException e) {
+                    return Result.newErrorResult(e, sql);
+                }
+            }
             case StatementTypes.SET_DATABASE_PROPERTY : {
                 try {
                     String property = (String) parameters[0];
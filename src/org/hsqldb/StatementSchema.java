@@ -1264,11 +1264,13 @@ public class StatementSchema extends Statement {
                 HsqlName name;
                 int[]    indexColumns;
                 boolean  unique;
+                int      fanout;
 
                 table        = (Table) arguments[0];
                 indexColumns = (int[]) arguments[1];
                 name         = (HsqlName) arguments[2];
                 unique       = ((Boolean) arguments[3]).booleanValue();
+                fanout       = ((Integer) arguments[5]).intValue();
 
                 try {
                     /*
@@ -1286,7 +1288,7 @@ public class StatementSchema extends Statement {
 
                     TableWorks tableWorks = new TableWorks(session, table);
 
-                    tableWorks.addIndex(indexColumns, name, unique);
+                    tableWorks.addIndex(indexColumns, name, unique, fanout);
 
                     break;
                 } catch (HsqlException e) {
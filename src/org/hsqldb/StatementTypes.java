@@ -173,6 +173,7 @@ public interface StatementTypes {
     int DATABASE_SHUTDOWN   = 1003;
     int DATABASE_SCRIPT     = 1004;
     int ALTER_SESSION       = 1005;
+    int DATABASE_DEFRAG     = 1006;
 
     // hsqldb database settings
     int SET_DATABASE_FILES_BACKUP_INCREMENT    = 1011;
@@ -202,6 +203,7 @@ public interface StatementTypes {
     int SET_DATABASE_PASSWORD_CHECK            = 1040;
     int SET_DATABASE_READ_ONLY                 = 1041;
     int SET_DATABASE_READ_ONLY_FILES           = 1042;
+    int SET_DATABASE_INDEX_FANOUT              = 1043;
     int SET_DATABASE_RESULT_MEMORY_ROWS        = 1046;
     int SET_DATABASE_SQL_COLLATION             = 1047;
     int SET_SESSION_SQL_IGNORECASE             = 1048;
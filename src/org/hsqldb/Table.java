@@ -51,6 +51,7 @@ import org.hsqldb.navigator.RowSetNavigatorDataChange;
 import org.hsqldb.persist.CachedObject;
 import org.hsqldb.persist.DataSpaceManager;
 import org.hsqldb.persist.PersistentStore;
+import org.hsqldb.persist.RowStoreBPlus;
 import org.hsqldb.result.Result;
 import org.hsqldb.rights.Grantee;
 import org.hsqldb.types.BinaryData;
@@ -1251,6 +1252,7 @@ public class Table extends TableBase implements SchemaObject {
                                                    idx.isForward());
 
             newIdx.setClustered(idx.isClustered());
+            newIdx.setFanout(idx.getFanout());
             tn.addIndex(session, newIdx);
         }
 
@@ -2764,6 +2766,20 @@ public class Table extends TableBase implements SchemaObject {
         insertData(session, store, data);
     }
 
+    /**
+     * Used for loading the rows of a MEMORY table from the .script with
+     * several threads. The row is added to the primary index only.
+     */
+    public void insertPrimaryFromScript(Session session,
+                                        RowStoreBPlus store, Object[] data) {
+
+        systemUpdateIdentityValue(data);
+
+        Row row = (Row) store.getNewCachedObject(session, data, false);
+
+        store.indexRowPrimary(session, row);
+    }
+
     /**
      * For system operations outside transaction control
      */
@@ -570,21 +570,23 @@ public class TableWorks {
      * @param col int[]
      * @param name HsqlName
      * @param unique boolean
+     * @param fanout int
      * @return new index
      */
-    Index addIndex(int[] col, HsqlName name, boolean unique) {
+    Index addIndex(int[] col, HsqlName name, boolean unique, int fanout) {
 
         Index newindex;
 
         checkModifyTable();
 
+        newindex = table.createIndexStructure(name, col, null, null, unique,
+                                              false, false);
+
+        newindex.setFanout(fanout);
+
         if (table.isEmpty(session) || table.isIndexingMutable()) {
-            newindex = table.createIndex(session, name, col, null, null,
-                                         unique, false, false);
+            table.addIndex(session, newindex);
         } else {
-            newindex = table.createIndexStructure(name, col, null, null,
-                                                  unique, false, false);
-
             Table tn = table.moveDefinition(session, table.tableType, null,
                                             null, newindex, -1, 0, emptySet,
                                             emptySet);
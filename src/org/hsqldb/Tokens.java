@@ -663,6 +663,7 @@ public class Tokens {
     static final String        T_EXPLAIN              = "EXPLAIN";
     public static final String T_EVENT                = "EVENT";
     static final String        T_FILE                 = "FILE";
+    public static final String T_FANOUT               = "FANOUT";
     public static final String T_FILES                = "FILES";
     static final String        T_FOLD                 = "FOLD";
     static final String        T_FORMAT               = "FORMAT";
@@ -1544,6 +1545,7 @@ public class Tokens {
 
     //
     static final int INDEXER = 637;
+    static final int FANOUT  = 638;
 
     //
     static final int        ACOS                       = 640;
@@ -2172,6 +2174,7 @@ public class Tokens {
         commandSet.put(T_EXCLUDING, EXCLUDING);
         commandSet.put(T_EXPLAIN, EXPLAIN);
         commandSet.put(T_FILE, FILE);
+        commandSet.put(T_FANOUT, FANOUT);
         commandSet.put(T_FILES, FILES);
         commandSet.put(T_FINAL, FINAL);
         commandSet.put(T_FIRST, FIRST);
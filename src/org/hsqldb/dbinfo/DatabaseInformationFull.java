@@ -423,6 +423,14 @@ extends org.hsqldb.dbinfo.DatabaseInformationMain {
      * FREE_BYTES          BIGINT   total bytes in available file allocation units
      * FREE_COUNT          BIGINT   total # of allocation units available
      * FREE_POS            BIGINT   largest file position allocated + 1
+     * STALL_COUNT         BIGINT   # of cleanups done before adding a row
+     * STALL_TIME          BIGINT   total milliseconds of these cleanups
+     * FLUSH_COUNT         BIGINT   # of batches written by the flusher
+     * FLUSH_ROWS          BIGINT   # of rows written by the flusher
+     * FLUSH_TIME          BIGINT   total milliseconds of the flusher
+     * DEFRAG_COUNT        BIGINT   # of online defrag steps
+     * DEFRAG_ROWS         BIGINT   # of rows moved by online defrag
+     * DEFRAG_BYTES        BIGINT   bytes of file blocks emptied by online defrag
      * </pre> <p>
      *
      * <b>Notes:</b> <p>
@@ -457,6 +465,14 @@ extends org.hsqldb.dbinfo.DatabaseInformationMain {
             addColumn(t, "CACHE_BYTES", CARDINAL_NUMBER);        // not null
             addColumn(t, "FILE_LOST_BYTES", CARDINAL_NUMBER);    // not null
             addColumn(t, "FILE_FREE_POS", CARDINAL_NUMBER);      // not null
+            addColumn(t, "STALL_COUNT", CARDINAL_NUMBER);        // not null
+            addColumn(t, "STALL_TIME", CARDINAL_NUMBER);         // not null
+            addColumn(t, "FLUSH_COUNT", CARDINAL_NUMBER);        // not null
+            addColumn(t, "FLUSH_ROWS", CARDINAL_NUMBER);         // not null
+            addColumn(t, "FLUSH_TIME", CARDINAL_NUMBER);         // not null
+            addColumn(t, "DEFRAG_COUNT", CARDINAL_NUMBER);       // not null
+            addColumn(t, "DEFRAG_ROWS", CARDINAL_NUMBER);        // not null
+            addColumn(t, "DEFRAG_BYTES", CARDINAL_NUMBER);       // not null
 
             HsqlName name = HsqlNameManager.newInfoSchemaObjectName(
                 sysTableHsqlNames[SYSTEM_CACHEINFO].name, false,
@@ -475,6 +491,14 @@ extends org.hsqldb.dbinfo.DatabaseInformationMain {
         final int icache_length    = 4;
         final int ilost_bytes      = 5;
         final int ifree_pos        = 6;
+        final int istall_count     = 7;
+        final int istall_time      = 8;
+        final int iflush_count     = 9;
+        final int iflush_rows      = 10;
+        final int iflush_time      = 11;
+        final int idefrag_count    = 12;
+        final int idefrag_rows     = 13;
+        final int idefrag_bytes    = 14;
 
         //
         DataFileCache cache = null;
@@ -523,6 +547,14 @@ extends org.hsqldb.dbinfo.DatabaseInformationMain {
                 ValuePool.getLong(cache.getTotalCachedBlockSize());
             row[ilost_bytes] = ValuePool.getLong(cache.getLostBlockSize());
             row[ifree_pos]   = ValuePool.getLong(cache.getFileFreePos());
+            row[istall_count] = ValuePool.getLong(cache.getStallCount());
+            row[istall_time]  = ValuePool.getLong(cache.getStallTime());
+            row[iflush_count] = ValuePool.getLong(cache.getFlushCount());
+            row[iflush_rows]  = ValuePool.getLong(cache.getFlushRowCount());
+            row[iflush_time]  = ValuePool.getLong(cache.getFlushTime());
+            row[idefrag_count] = ValuePool.getLong(cache.getDefragCount());
+            row[idefrag_rows] = ValuePool.getLong(cache.getDefragRowCount());
+            row[idefrag_bytes] = ValuePool.getLong(cache.getDefragBytes());
 
             t.insertSys(session, store, row);
         }
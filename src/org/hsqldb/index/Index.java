@@ -56,6 +56,16 @@ public interface Index extends SchemaObject {
     double cachedFactor       = 8;
     int    probeDepth         = 4;
 
+    //
+    int MIN_FANOUT     = 3;
+    int MAX_FANOUT     = 1024;
+    int DEFAULT_FANOUT = 64;
+
+    //
+    int MIN_FILL_FACTOR     = 50;
+    int MAX_FILL_FACTOR     = 100;
+    int DEFAULT_FILL_FACTOR = 90;
+
     //
     Index[]    emptyArray    = new Index[]{};
     IndexUse[] emptyUseArray = new IndexUse[]{};
@@ -68,6 +78,16 @@ public interface Index extends SchemaObject {
 
     public void setPosition(int position);
 
+    /**
+     * Returns the maximum number of children of a tree node
+     */
+    public int getFanout();
+
+    /**
+     * Sets the fanout. Can be used only before the index is populated
+     */
+    public void setFanout(int fanout);
+
     public long getPersistenceId();
 
     /**
@@ -171,6 +191,24 @@ public interface Index extends SchemaObject {
                                     int distinctCount, int compareType,
                                     boolean reversed, boolean[] map);
 
+    /**
+     * Return the first node equal to the indexdata object, searching forward
+     * from the rows of an iterator previously returned by this method when
+     * the values are not smaller than those of the previous search. Used for
+     * merge joins, where the values are often increasing.
+     *
+     * @param session session object
+     * @param store store object
+     * @param from iterator from the previous search, or null
+     * @param coldata array containing index column data
+     * @param match count of columns to match
+     * @return iterator
+     */
+    public RowIterator findFirstRowFrom(Session session,
+                                        PersistentStore store,
+                                        RowIterator from, Object[] rowdata,
+                                        int matchCount, int distinctCount);
+
     /**
      * Return the first node equal to the rowdata object.
      * The rowdata has the same column mapping as this table.
@@ -70,7 +70,7 @@
 
 package org.hsqldb.index;
 
-import java.util.Stack;
+import java.util.Comparator;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -88,7 +88,9 @@ import org.hsqldb.Tokens;
 import org.hsqldb.TransactionManager;
 import org.hsqldb.error.Error;
 import org.hsqldb.error.ErrorCode;
+import org.hsqldb.lib.ArraySort;
 import org.hsqldb.lib.ArrayUtil;
+import org.hsqldb.lib.LongDeque;
 import org.hsqldb.lib.ObjectComparator;
 import org.hsqldb.lib.OrderedHashSet;
 import org.hsqldb.lib.ReadWriteLockDummy;
@@ -142,6 +144,7 @@ public class IndexBPlus implements Index {
     private boolean          isClustered;
     protected TableBase      table;
     int                      position;
+    int                      fanout;      // maximum count of children
     private IndexUse[]       asArray;
 
 //    protected NodeBPlus      root;       // B plus tree root node
@@ -150,10 +153,26 @@ public class IndexBPlus implements Index {
     //
     Object[] nullData;
 
-    //
+    // the write lock excludes all other access to the tree; with latched
+    // nodes, insert and delete share the read lock and latch the nodes
     ReadWriteLock lock;
     Lock          readLock;
     Lock          writeLock;
+    Lock          updateLock;
+    boolean       isLatched;
+
+    // guards the root reference of the tree
+    final ReadWriteLock rootLatch = new ReentrantReadWriteLock();
+
+    // count of leaves and minimum count of changes in the sample that is
+    // used to estimate the search cost
+    static final int sampleLeafCount  = 32;
+    static final int minSampleChanges = 8;
+    static final int maxSampleDepth   = 64;
+
+    // count of data nodes compared in the leaf chain by a merge join search
+    // before the tree is searched from the root
+    static final int maxMergeSteps = 64;
 
     /**
      * Constructor declaration
@@ -170,11 +189,12 @@ public class IndexBPlus implements Index {
      * @param constraint does this index belonging to a constraint
      * @param forward is this an auto-index for an FK that refers to a table
      *   defined after this table
+     * @param fanout maximum number of children of a node
      */
     public IndexBPlus(HsqlName name, long id, TableBase table, int[] columns,
                     boolean[] descending, boolean[] nullsLast,
                     Type[] colTypes, boolean pk, boolean unique,
-                    boolean constraint, boolean forward) {
+                    boolean constraint, boolean forward, int fanout) {
 
         this.persistenceId = id;
         this.name          = name;
@@ -189,6 +209,7 @@ public class IndexBPlus implements Index {
         this.isConstraint  = constraint;
         this.isForward     = forward;
         this.table         = table;
+        this.fanout        = fanout;
         this.colCheck      = table.getNewColumnCheckList();
         this.asArray = new IndexUse[]{ new IndexUse(this, colIndex.length) };
 
@@ -216,6 +237,10 @@ public class IndexBPlus implements Index {
         switch (table.getTableType()) {
 
             case TableBase.MEMORY_TABLE :
+                isLatched = true;
+                lock      = new ReentrantReadWriteLock();
+                break;
+
             case TableBase.CACHED_TABLE :
             case TableBase.TEXT_TABLE :
                 lock = new ReentrantReadWriteLock();
@@ -226,8 +251,10 @@ public class IndexBPlus implements Index {
                 break;
         }
 
-        readLock  = lock.readLock();
-        writeLock = lock.writeLock();
+        readLock   = lock.readLock();
+        writeLock  = lock.writeLock();
+        updateLock = isLatched ? readLock
+                               : writeLock;
     }
 
     // SchemaObject implementation
@@ -279,6 +306,12 @@ public class IndexBPlus implements Index {
         sb.append(((Table) table).getName().getSchemaQualifiedStatementName());
         sb.append(((Table) table).getColumnListSQL(colIndex, colIndex.length));
 
+        if (fanout != table.database.logger.getIndexFanout()) {
+            sb.append(' ').append(Tokens.T_WITH).append(' ');
+            sb.append('(').append(Tokens.T_FANOUT).append(' ');
+            sb.append(fanout).append(')');
+        }
+
         return sb.toString();
     }
 
@@ -303,6 +336,22 @@ public class IndexBPlus implements Index {
         this.position = position;
     }
 
+    public int getFanout() {
+        return fanout;
+    }
+
+    /**
+     * Can be called only before any row is inserted into the index
+     */
+    public void setFanout(int fanout) {
+
+        if (fanout < MIN_FANOUT || fanout > MAX_FANOUT) {
+            throw Error.runtimeError(ErrorCode.U_S0500, "IndexBPlus");
+        }
+
+        this.fanout = fanout;
+    }
+
     public long getPersistenceId() {
         return persistenceId;
     }
@@ -424,98 +473,194 @@ public class IndexBPlus implements Index {
         }
     }
 
+    /**
+     * Returns the estimated average count of rows for each distinct value of
+     * each column prefix of the index. The estimate is based on the count of
+     * adjacent keys that differ in the prefix. All keys are compared for a
+     * small index and a sample of nodes for a larger one.
+     */
     public double[] searchCost(Session session, PersistentStore store) {
 
-        boolean  probeDeeper = false;
-        int      counter     = 1;
-        double[] changes     = new double[colIndex.length];
-        int      depth       = 0;
-        int[]    depths      = new int[1];
+        double[] changes = new double[colIndex.length];
 
         readLock.lock();
 
         try {
-            NodeBPlus node = getAccessor(store);
-            NodeBPlus temp = node;
+            long    rowCount = store.elementCount();
+            boolean found;
 
-            if (node == null) {
-                return changes;
+            if (rowCount <= (long) sampleLeafCount * fanout) {
+                found = scanChanges(session, store, changes);
+            } else {
+                found = sampleChanges(session, store, rowCount, changes);
             }
 
-            while (true) {
-                node = temp;
-                temp = node.getKeys()[0];
+            if (!found) {
+                return changes;
+            }
 
-                if (temp == null) {
-                    break;
+            for (int i = 0; i < colIndex.length; i++) {
+                if (changes[i] < 1) {
+                    changes[i] = 1;
                 }
 
-                if (depth == Index.probeDepth) {
-                    probeDeeper = true;
+                changes[i] = rowCount / changes[i];
 
-                    break;
+                if (changes[i] < 2) {
+                    changes[i] = 2;
                 }
+            }
 
-                depth++;
+            return changes;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Counts the changes between all adjacent keys of the index. Returns
+     * false if the index is empty.
+     */
+    private boolean scanChanges(Session session, PersistentStore store,
+                                double[] changes) {
+
+        NodeBPlus node = firstNode(store);
+
+        if (node == null) {
+            return false;
+        }
+
+        while (true) {
+            NodeBPlus temp = next(session, store, node);
+
+            if (temp == null) {
+                break;
+            }
+
+            compareRowForChange(session, node.getData(store),
+                                temp.getData(store), changes);
+
+            node = temp;
+        }
+
+        return true;
+    }
+
+    /**
+     * Estimates the changes between adjacent keys from a sample. Each
+     * sample descends to a leaf at equal intervals of the index order and
+     * compares the adjacent keys of all the nodes on the way. Returns false
+     * if the index is empty.<p>
+     *
+     * The adjacent keys of a leaf give the rate of change per row. For a
+     * prefix with few distinct values, the sampled leaves may contain too
+     * few changes. The adjacent keys of an interior level are one subtree
+     * of the level below apart, so the rate is derived from the share of
+     * those keys that differ, assuming the changes are spread evenly. The
+     * lowest level with enough changes, and not all keys different, is used.
+     */
+    private boolean sampleChanges(Session session, PersistentStore store,
+                                  long rowCount, double[] changes) {
+
+        int         columns = colIndex.length;
+        double[][]  diffs   = new double[maxSampleDepth][columns];
+        long[]      pairs   = new long[maxSampleDepth];
+        long[]      nodes   = new long[maxSampleDepth];
+        long[]      sizes   = new long[maxSampleDepth];
+        NodeBPlus[] visited = new NodeBPlus[maxSampleDepth];
+        int         leaf    = 0;
+
+        for (int sample = 0; sample < sampleLeafCount; sample++) {
+            double    fraction = (sample + 0.5) / sampleLeafCount;
+            NodeBPlus x        = latchRoot(store);
+            int       level    = 0;
+
+            if (x == null) {
+                return false;
             }
 
             while (true) {
-//                temp  = next(store, node, depth, probeDepth, depths);
-//                depth = depths[0];
-//                ??? how to define the search cost in B Plus Tree???
-                temp = next(store, node);
+                int     count = x.getKeyCount();
+                boolean isNew = !x.equals(visited[level]);
+
+                // the upper levels are visited by several samples
+                visited[level] = x;
+
+                if (isNew && count > 0) {
+                    Object[] last = x.getKey(store, 0).getData(store);
 
-                if (temp == null) {
+                    for (int i = 1; i < count; i++) {
+                        Object[] current = x.getKey(store, i).getData(store);
+
+                        compareRowForChange(session, last, current,
+                                            diffs[level]);
+
+                        last = current;
+                    }
+
+                    pairs[level] += count - 1;
+                }
+
+                if (isNew) {
+                    nodes[level]++;
+
+                    sizes[level] += x.isLeaf ? count
+                                             : count + 1;
+                }
+
+                if (x.isLeaf || level == maxSampleDepth - 1) {
                     break;
                 }
 
-                compareRowForChange(session, node.getData(store),
-                                    temp.getData(store), changes);
+                int children = count + 1;
+                int i        = (int) (fraction * children);
+
+                if (i == children) {
+                    i--;
+                }
 
-                node = temp;
+                fraction = fraction * children - i;
+                x            = latchChild(store, x, i);
 
-                counter++;
+                level++;
             }
 
-//            if (probeDeeper) {
-//                double[] factors = new double[colIndex.length];
-//                int extras = probeFactor(session, store, factors, true)
-//                             + probeFactor(session, store, factors, false);
-//
-//                for (int i = 0; i < colIndex.length; i++) {
-//                    factors[i] /= 2;
-//
-//                    for (int j = 0; j < factors[i]; j++) {
-//                        changes[i] *= 2;
-//                    }
-//                }
-//            }
+            unlatch(x);
 
-            long rowCount = store.elementCount();
+            leaf = level;
+        }
 
-            for (int i = 0; i < colIndex.length; i++) {
-                if (changes[i] == 0) {
-                    changes[i] = 1;
-                }
+        for (int column = 0; column < columns; column++) {
+            double rate  = 0;
+            double found = 0;
+            double rows  = 1;
 
-                changes[i] = rowCount / changes[i];
+            // levels from the leaves up, rows is the distance between keys
+            for (int level = leaf; level >= 0; level--) {
+                double diff = diffs[level][column];
 
-                if (changes[i] < 2) {
-                    changes[i] = 2;
+                if (pairs[level] > 0 && diff > found
+                        && (level == leaf || diff < pairs[level])) {
+                    if (level == leaf) {
+                        rate = diff / pairs[level];
+                    } else {
+                        rate = -Math.log(1 - diff / pairs[level]) / rows;
+                    }
+
+                    found = diff;
+
+                    if (found >= minSampleChanges) {
+                        break;
+                    }
                 }
-            }
 
-/*
-            StringBuffer s = new StringBuffer();
+                rows *= (double) sizes[level] / nodes[level];
+            }
 
-            s.append("count " + rowCount + " columns " + colIndex.length
-                     + " selectivity " + changes[0]);
-            System.out.println(s);
-*/
-            return changes;
-        } finally {
-            readLock.unlock();
+            changes[column] = rate * (rowCount - 1);
         }
+
+        return true;
     }
 
 //    int probeFactor(Session session, PersistentStore store, double[] changes,
@@ -581,245 +726,486 @@ public class IndexBPlus implements Index {
      * Removes all links between memory nodes
      */
     public void unlinkNodes(NodeBPlus primaryRoot) {
-        System.out.println("unlinkNodes");
-//        writeLock.lock();
-//
-//        try {
-//            NodeBPlus x = primaryRoot;
-//            NodeBPlus l = x;
-//
-//            while (l != null) {
-//                x = l;
-//                l = x.getLeft(null);
-//            }
-//
-//            while (x != null) {
-//                NodeBPlus n = nextUnlink(x);
-//
-//                x = n;
-//            }
-//        } finally {
-//            writeLock.unlock();
-//        }
-    }
-
-    private NodeBPlus nextUnlink(NodeBPlus x) {
-
-//        NodeBPlus temp = x.getRight(null);
-//
-//        if (temp != null) {
-//            x    = temp;
-//            temp = x.getLeft(null);
-//
-//            while (temp != null) {
-//                x    = temp;
-//                temp = x.getLeft(null);
-//            }
-//
-//            return x;
-//        }
-//
-//        temp = x;
-//        x    = x.getParent(null);
-//
-//        while (x != null && x.isRight(temp)) {
-//            x.nRight = null;
-//
-//            temp.getRow(null).destroy();
-//            temp.delete();
-//
-//            //
-//            temp = x;
-//            x    = x.getParent(null);
-//        }
-//
-//        if (x != null) {
-//            x.nLeft = null;
-//        }
-//
-//        temp.getRow(null).destroy();
-//        temp.delete();
-//
-        return x;
-    }
 
-    public void checkIndex(PersistentStore store) {
-
-        readLock.lock();
+        writeLock.lock();
 
         try {
-            NodeBPlus p = getAccessor(store);
-            NodeBPlus f = null;
+            NodeBPlus x = primaryRoot;
 
-            while (p != null ) {
-                f = p;
-
-                checkNodes(store, p);
+            while (x != null && !x.isLeaf) {
+                x = x.getPointer(null, 0);
+            }
 
-                p = p.getKeys()[0];
+            if (primaryRoot != null && !primaryRoot.isLeaf) {
+                unlinkInteriorNodes(primaryRoot);
             }
 
-            while (f != null) {
-                checkNodes(store, f);
+            while (x != null) {
+                NodeBPlus n = x.getNextPage(null);
 
-                f = next(store, f);
+                x.delete();
+
+                x = n;
             }
         } finally {
-            readLock.unlock();
+            writeLock.unlock();
         }
     }
 
+    private void unlinkInteriorNodes(NodeBPlus x) {
 
-
-    void checkNodes(PersistentStore store, NodeBPlus p) {
-
-        if (p.isLeaf) {
-            if (p.isData
-                    || p.getParent(store)!=null
-                    || p.getPointers().length>0)  {
-                System.out.print("broken index - node type");
+        if (!x.getPointer(null, 0).isLeaf) {
+            for (int i = 0; i <= x.getKeyCount(); i++) {
+                unlinkInteriorNodes(x.getPointer(null, i));
             }
         }
 
-        else if (p.isData) {
-            if (p.isLeaf|| p.getParent(store) == null
-                    || p.getKeys().length > 0
-                    || p.getPointers().length > 0) {
-                System.out.print("broken index - node type");
-            }
+        x.delete();
+    }
 
-            NodeBPlus parent = p.getParent(store);
-            boolean flag = false;
-            for (int i=0; i<parent.getKeys().length; i++) {
-                if (p.equals(parent.getKeys()[i])) {
-                    flag = true;
-                    break;
-                }
-            }
-            if (!flag) {
-                System.out.print("broken index - no parent");
-            }
-        }
+    /**
+     * Returns the count of levels in the tree, including the leaf level.
+     */
+    public int getDepth(PersistentStore store) {
+
+        writeLock.lock();
+
+        try {
+            NodeBPlus x     = getAccessor(store);
+            int       depth = 0;
 
-        else {
-            if (p.getKeys().length + 1 != p.getPointers().length) {
-                System.out.print("broken index - no match in key & pointer");
+            while (x != null) {
+                depth++;
+
+                x = x.isLeaf ? null
+                             : x.getPointer(store, 0);
             }
+
+            return depth;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     /**
-     * Compares two table rows based on the columns of this index. The rowColMap
-     * parameter specifies which columns of the other table are to be compared
-     * with the colIndex columns of this index. The rowColMap can cover all or
-     * only some columns of this index.
-     *
-     * @param session Session
-     * @param a row from another table
-     * @param rowColMap column indexes in the other table
-     * @param b a full row in this table
-     * @return comparison result, -1,0,+1
+     * Adds to the list the positions of the rows that are in the given file
+     * blocks, in index order, up to count positions.
      */
-    public int compareRowNonUnique(Session session, Object[] a, Object[] b,
-                                   int[] rowColMap) {
+    public void getRowPositions(PersistentStore store, int[] blocks,
+                                int blockUnits, LongDeque list, int count) {
 
-        int fieldcount = rowColMap.length;
+        writeLock.lock();
 
-        for (int j = 0; j < fieldcount; j++) {
-            int i = colTypes[j].compare(session, a[colIndex[j]],
-                                        b[rowColMap[j]]);
+        try {
+            NodeBPlus x = getAccessor(store);
 
-            if (i != 0) {
-                return i;
+            while (x != null && !x.isLeaf) {
+                x = x.getPointer(store, 0);
             }
-        }
 
-        return 0;
-    }
+            for (; x != null && list.size() < count;
+                    x = x.getNextPage(store)) {
+                NodeBPlusPage page = (NodeBPlusPage) x;
 
-    public int compareRowNonUnique(Session session, Object[] a, Object[] b,
-                                   int[] rowColMap, int fieldCount) {
+                for (int i = 0; i < page.getKeyCount(); i++) {
+                    long pos = page.getKeyPos(i);
 
-        for (int j = 0; j < fieldCount; j++) {
-            int i = colTypes[j].compare(session, a[colIndex[j]],
-                                        b[rowColMap[j]]);
+                    if (isInBlocks(pos, blocks, blockUnits)) {
+                        list.add(pos);
 
-            if (i != 0) {
-                return i;
+                        if (list.size() == count) {
+                            break;
+                        }
+                    }
+                }
             }
+        } finally {
+            writeLock.unlock();
         }
-
-        return 0;
     }
 
     /**
-     * As above but use the index column data
+     * Copies the pages of the tree that are in the given file blocks to new
+     * positions and removes the old pages. The pages are visited breadth
+     * first, and the links from the parent, the neighbouring leaves and the
+     * rows are changed to each new page. The old pages are removed at the
+     * end, so their space is not reused while the tree is changed. Returns
+     * the count of pages moved.
      */
-    public int compareRowNonUnique(Session session, Object[] a, Object[] b,
-                                   int fieldCount) {
+    public int movePages(PersistentStore store, int[] blocks, int blockUnits) {
 
-        for (int j = 0; j < fieldCount; j++) {
-            int i = colTypes[j].compare(session, a[colIndex[j]],
-                                        b[colIndex[j]]);
+        writeLock.lock();
 
-            if (i != 0) {
-                return i;
+        try {
+            NodeBPlus root = getAccessor(store);
+
+            if (root == null || root.isMemory()) {
+                return 0;
             }
-        }
 
-        return 0;
-    }
+            LongDeque queue   = new LongDeque();
+            LongDeque removed = new LongDeque();
+            long      rootPos = root.getPos();
 
-    public void compareRowForChange(Session session, Object[] a, Object[] b,
-                                    double[] changes) {
+            if (isInBlocks(rootPos, blocks, blockUnits)) {
+                NodeBPlusPage page = movePage(store, (NodeBPlusPage) root);
 
-        for (int j = 0; j < colIndex.length; j++) {
-            int i = colTypes[j].compare(session, a[colIndex[j]],
-                                        b[colIndex[j]]);
+                store.setAccessor(this, page);
+                removed.add(rootPos);
 
-            if (i != 0) {
-                for (; j < colIndex.length; j++) {
-                    changes[j]++;
-                }
+                rootPos = page.getPos();
             }
-        }
-    }
 
-    public int compareRow(Session session, Object[] a, Object[] b) {
+            if (!root.isLeaf) {
+                queue.add(rootPos);
+            }
 
-        for (int j = 0; j < colIndex.length; j++) {
-            int i = colTypes[j].compare(session, a[colIndex[j]],
-                                        b[colIndex[j]]);
+            while (!queue.isEmpty()) {
+                long          pos    = queue.removeFirst();
+                NodeBPlusPage parent = (NodeBPlusPage) store.get(pos, false);
+                boolean       isLeaf = parent.getPointer(store, 0).isLeaf;
+                int           count  = parent.getKeyCount();
 
-            if (i != 0) {
-                if (isSimpleOrder) {
-                    return i;
-                }
+                for (int i = 0; i <= count; i++) {
+                    long childPos = parent.getPointerPos(i);
 
-                boolean nulls = a[colIndex[j]] == null
-                                || b[colIndex[j]] == null;
+                    if (isInBlocks(childPos, blocks, blockUnits)) {
+                        NodeBPlusPage child =
+                            (NodeBPlusPage) store.get(childPos, false);
 
-                if (colDesc[j] && !nulls) {
-                    i = -i;
-                }
+                        child = movePage(store, child);
 
-                if (nullsLast[j] && nulls) {
-                    i = -i;
+                        // the parent may have left the cache
+                        parent = (NodeBPlusPage) store.get(pos, false);
+
+                        parent.setPointerPos(i, child.getPos());
+                        removed.add(childPos);
+
+                        childPos = child.getPos();
+                    }
+
+                    if (!isLeaf) {
+                        queue.add(childPos);
+                    }
                 }
+            }
 
-                return i;
+            for (int i = 0; i < removed.size(); i++) {
+                NodeBPlusPage page = (NodeBPlusPage) store.get(removed.get(i),
+                    false);
+
+                page.remove(store);
             }
-        }
 
-        return 0;
+            return removed.size();
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     /**
-     * Compare two rows of the table for inserting rows into unique indexes
-     * Supports descending columns.
-     *
-     * @param session Session
-     * @param newRow data
+     * Returns a copy of the page at a new position, with the links from the
+     * neighbouring leaves and the rows of a leaf changed to the copy.
+     */
+    private NodeBPlusPage movePage(PersistentStore store, NodeBPlusPage page) {
+
+        if (!page.keepInMemory(true)) {
+            page = (NodeBPlusPage) store.get(page, true);
+        }
+
+        NodeBPlusPage copy = page.copyPage(store);
+
+        page.keepInMemory(false);
+
+        if (!copy.isLeaf) {
+            return copy;
+        }
+
+        copy.keepInMemory(true);
+
+        for (int i = 0; i < copy.getKeyCount(); i++) {
+            copy.getKey(store, i).setParent(store, copy);
+        }
+
+        if (copy.getNextPos() != NodeBPlus.NO_POS) {
+            NodeBPlusPage next =
+                (NodeBPlusPage) store.get(copy.getNextPos(), false);
+
+            next.setLastPos(copy.getPos());
+        }
+
+        if (copy.getLastPos() != NodeBPlus.NO_POS) {
+            NodeBPlusPage last =
+                (NodeBPlusPage) store.get(copy.getLastPos(), false);
+
+            last.setNextPos(copy.getPos());
+        }
+
+        copy.keepInMemory(false);
+
+        return copy;
+    }
+
+    private static boolean isInBlocks(long pos, int[] blocks,
+                                      int blockUnits) {
+        return ArrayUtil.find(blocks, (int) (pos / blockUnits)) != -1;
+    }
+
+    public void checkIndex(PersistentStore store) {
+
+        writeLock.lock();
+
+        try {
+            NodeBPlus root = getAccessor(store);
+
+            if (root == null) {
+                return;
+            }
+
+            NodeBPlus[] leaves = new NodeBPlus[]{ null };
+
+            checkNodes(store, root, true, leaves);
+
+            NodeBPlus f    = leaves[0];
+            NodeBPlus last = null;
+
+            while (f != null) {
+                NodeBPlus lastPage = f.getLastPage(store);
+
+                if (last == null ? lastPage != null
+                                 : !last.equals(lastPage)) {
+                    throw Error.runtimeError(ErrorCode.U_S0500,
+                                             "IndexBPlus - broken leaf chain");
+                }
+
+                last = f;
+                f    = f.getNextPage(store);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Checks a node and its subtree. Returns the depth of the subtree. The
+     * first leaf of the tree is returned in leaves[0].
+     */
+    int checkNodes(PersistentStore store, NodeBPlus p, boolean isRoot,
+                   NodeBPlus[] leaves) {
+
+        int count   = p.getKeyCount();
+        int minKeys = isRoot ? 0
+                             : getMinKeys();
+
+        if (p.isData || count < minKeys || count >= fanout) {
+            throw Error.runtimeError(ErrorCode.U_S0500,
+                                     "IndexBPlus - broken node size");
+        }
+
+        if (p.isLeaf) {
+            for (int i = 0; i < count; i++) {
+                NodeBPlus key = p.getKey(store, i);
+
+                if (!key.isData || !p.equals(key.getParent(store))) {
+                    throw Error.runtimeError(ErrorCode.U_S0500,
+                                             "IndexBPlus - no parent");
+                }
+
+                if (i > 0
+                        && compareRowForInsertOrDelete(
+                            null, key.getRow(store),
+                            p.getKey(store, i - 1).getRow(store), !isUnique,
+                            0) < 0) {
+                    throw Error.runtimeError(ErrorCode.U_S0500,
+                                             "IndexBPlus - broken order");
+                }
+            }
+
+            if (leaves[0] == null) {
+                leaves[0] = p;
+            }
+
+            return 1;
+        }
+
+        if (count == 0) {
+            throw Error.runtimeError(ErrorCode.U_S0500,
+                                     "IndexBPlus - empty interior node");
+        }
+
+        NodeBPlus.KeyValues keys = p.keyValues;
+
+        if (keys != null) {
+            boolean match = keys.ids.length == count;
+
+            for (int i = 0; match && i < count; i++) {
+                Row row = p.getKey(store, i).getRow(store);
+
+                if (keys.data == null) {
+                    Object value = row.getData()[colIndex[0]];
+
+                    match = value != null
+                            && ((Number) value).longValue() == keys.longs[i]
+                            && row.getPos() == keys.ids[i];
+                } else {
+                    match = compareRowToKey(null, row, keys.data[i],
+                                            keys.ids[i], true) == 0;
+                }
+            }
+
+            if (!match) {
+                throw Error.runtimeError(ErrorCode.U_S0500,
+                                         "IndexBPlus - broken key values");
+            }
+        }
+
+        int depth = 0;
+
+        for (int i = 0; i <= count; i++) {
+            NodeBPlus child = p.getPointer(store, i);
+
+            if (child == null) {
+                throw Error.runtimeError(
+                    ErrorCode.U_S0500,
+                    "IndexBPlus - no match in key & pointer");
+            }
+
+            int childDepth = checkNodes(store, child, false, leaves);
+
+            if (i > 0 && childDepth != depth) {
+                throw Error.runtimeError(ErrorCode.U_S0500,
+                                         "IndexBPlus - unbalanced");
+            }
+
+            if (i > 0) {
+                while (!child.isLeaf) {
+                    child = child.getPointer(store, 0);
+                }
+
+                if (!child.getKey(store, 0).equals(p.getKey(store, i - 1))) {
+                    throw Error.runtimeError(ErrorCode.U_S0500,
+                                             "IndexBPlus - broken separator");
+                }
+            }
+
+            depth = childDepth;
+        }
+
+        return depth + 1;
+    }
+
+    /**
+     * Compares two table rows based on the columns of this index. The rowColMap
+     * parameter specifies which columns of the other table are to be compared
+     * with the colIndex columns of this index. The rowColMap can cover all or
+     * only some columns of this index.
+     *
+     * @param session Session
+     * @param a row from another table
+     * @param rowColMap column indexes in the other table
+     * @param b a full row in this table
+     * @return comparison result, -1,0,+1
+     */
+    public int compareRowNonUnique(Session session, Object[] a, Object[] b,
+                                   int[] rowColMap) {
+
+        int fieldcount = rowColMap.length;
+
+        for (int j = 0; j < fieldcount; j++) {
+            int i = colTypes[j].compare(session, a[colIndex[j]],
+                                        b[rowColMap[j]]);
+
+            if (i != 0) {
+                return i;
+            }
+        }
+
+        return 0;
+    }
+
+    public int compareRowNonUnique(Session session, Object[] a, Object[] b,
+                                   int[] rowColMap, int fieldCount) {
+
+        for (int j = 0; j < fieldCount; j++) {
+            int i = colTypes[j].compare(session, a[colIndex[j]],
+                                        b[rowColMap[j]]);
+
+            if (i != 0) {
+                return i;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * As above but use the index column data
+     */
+    public int compareRowNonUnique(Session session, Object[] a, Object[] b,
+                                   int fieldCount) {
+
+        for (int j = 0; j < fieldCount; j++) {
+            int i = colTypes[j].compare(session, a[colIndex[j]],
+                                        b[colIndex[j]]);
+
+            if (i != 0) {
+                return i;
+            }
+        }
+
+        return 0;
+    }
+
+    public void compareRowForChange(Session session, Object[] a, Object[] b,
+                                    double[] changes) {
+
+        for (int j = 0; j < colIndex.length; j++) {
+            int i = colTypes[j].compare(session, a[colIndex[j]],
+                                        b[colIndex[j]]);
+
+            if (i != 0) {
+                for (; j < colIndex.length; j++) {
+                    changes[j]++;
+                }
+            }
+        }
+    }
+
+    public int compareRow(Session session, Object[] a, Object[] b) {
+
+        for (int j = 0; j < colIndex.length; j++) {
+            int i = colTypes[j].compare(session, a[colIndex[j]],
+                                        b[colIndex[j]]);
+
+            if (i != 0) {
+                if (isSimpleOrder) {
+                    return i;
+                }
+
+                boolean nulls = a[colIndex[j]] == null
+                                || b[colIndex[j]] == null;
+
+                if (colDesc[j] && !nulls) {
+                    i = -i;
+                }
+
+                if (nullsLast[j] && nulls) {
+                    i = -i;
+                }
+
+                return i;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Compare two rows of the table for inserting rows into unique indexes
+     * Supports descending columns.
+     *
+     * @param session Session
+     * @param newRow data
      * @param existingRow data
      * @param useRowId boolean
      * @param start int
@@ -867,10 +1253,46 @@ public class IndexBPlus implements Index {
         return 0;
     }
 
-    int compareObject(Session session, Object[] a, Object[] b,
-                      int[] rowColMap, int position, int opType) {
-        return colTypes[position].compare(session, a[colIndex[position]],
-                                          b[rowColMap[position]], opType);
+    /**
+     * As compareRowForInsertOrDelete but compares the row with the indexed
+     * column values and the row id of a key of an interior node
+     */
+    int compareRowToKey(Session session, Row row, Object[] key, long keyId,
+                        boolean useRowId) {
+
+        Object[] a = row.getData();
+
+        for (int j = 0; j < colIndex.length; j++) {
+            int i = colTypes[j].compare(session, a[colIndex[j]], key[j]);
+
+            if (i != 0) {
+                if (isSimpleOrder) {
+                    return i;
+                }
+
+                boolean nulls = a[colIndex[j]] == null || key[j] == null;
+
+                if (colDesc[j] && !nulls) {
+                    i = -i;
+                }
+
+                if (nullsLast[j] && nulls) {
+                    i = -i;
+                }
+
+                return i;
+            }
+        }
+
+        if (useRowId) {
+            long diff = row.getPos() - keyId;
+
+            return diff == 0L ? 0
+                              : diff > 0L ? 1
+                                          : -1;
+        }
+
+        return 0;
     }
 
     boolean hasNulls(Session session, Object[] rowData) {
@@ -902,725 +1324,769 @@ public class IndexBPlus implements Index {
      */
     public void insert(Session session, PersistentStore store, Row row) {
 
-        NodeBPlus        n;
-        NodeBPlus        x;
-        int              compare = -1;
-        Stack<NodeBPlus> stack = new Stack<NodeBPlus>();
+        NodeBPlus     x        = ((RowBPlus) row).getNode(position);
+        boolean       useRowId = !isUnique || hasNulls(session, row.getData());
+        NodeBPlusPath path     = getPath(session);
 
-        writeLock.lock();
+        updateLock.lock();
 
         try {
-            n = getAccessor(store);
-            x = ((RowBPlus) row).getNode(position);
+            if (isLatched
+                    && insert(session, store, path, row, x, useRowId, true)) {
+                return;
+            }
 
-            if (n == null) {         // empty tree
+            path.reset();
+            insert(session, store, path, row, x, useRowId, false);
+        } finally {
+            path.reset();
+            updateLock.unlock();
+        }
+    }
 
-                n = newLeafNode(store, x);
-                store.setAccessor(this, n);   // root
+    /**
+     * Descends to the leaf and inserts the node.<p>
+     *
+     * The optimistic descent latches the interior nodes for reading, one
+     * after the other, and only the leaf for change. It returns false
+     * without a change if the leaf must be split. The other descent latches
+     * each node for change and releases the latches of the ancestors when it
+     * reaches a node that will not be split by the insert.
+     */
+    private boolean insert(Session session, PersistentStore store,
+                           NodeBPlusPath path, Row row, NodeBPlus x,
+                           boolean useRowId, boolean optimistic) {
 
-                return;
+        path.lockRoot(optimistic ? rootLatch.readLock()
+                                 : rootLatch.writeLock());
+
+        NodeBPlus n = getAccessor(store);
+
+        if (n == null) {    // empty tree
+            if (optimistic) {
+                return false;
             }
 
-            while (!n.isLeaf) {
-                // searching...
-                stack.push(n);
+            n = path.latch(store, newLeafNode(store, x), true);
 
-                Row currentRow = n.getKeys()[0].row;
-                compare = searchCompare(currentRow, session, row);
-                if (compare < 0) {
-                    n = n.getPointers()[0];
-                    continue;
-                }
+            n.addKeys(store, x);
+            store.setAccessor(this, n);
 
-                currentRow = n.getKeys()[n.getKeys().length-1].row;
-                compare = searchCompare(currentRow, session, row);
-                if (compare >= 0) {
-                    n = n.getPointers()[n.getPointers().length-1];
-                    continue;
-                }
+            return true;
+        }
 
-                Row nextRow = n.getKeys()[0].row;
-                for (int i=0; i < n.getKeys().length-1; i++) {
-                    currentRow = nextRow;
-                    nextRow = n.getKeys()[i+1].row;
-                    if (searchCompare(currentRow, session, row) >= 0 &&
-                            searchCompare(nextRow, session, row) < 0) {
-                        n = n.getPointers()[i+1];
-                    }
-                }
+        n = path.latch(store, n, !optimistic || n.isLeaf);
+
+        if (optimistic || n.getKeyCount() < fanout - 1) {
+            path.releaseAncestors(n, null);
+        }
+
+        while (!n.isLeaf) {
+            int slot = findChild(session, store, n, row, useRowId);
+
+            path.push(n, slot);
+
+            n = n.getPointer(store, slot);
+            n = path.latch(store, n, !optimistic || n.isLeaf);
+
+            if (optimistic || n.getKeyCount() < fanout - 1) {
+                path.releaseAncestors(n, null);
             }
+        }
 
+        int slot = findLeafSlot(session, store, n, row);
 
-            if (n.getKeys().length < n.nodeSize) {  // if node has not been full
-                n = insertNode(session, store, n, x, null);
-            } else {                                // else: split the node
-                // copying all current node contents in temp node then insert the new element on it
-                NodeBPlus temp = new NodeBPlus();
-                temp.setKeys(store, n.getKeys());
-                temp.setPointers(n.getPointers());
-                temp = insertNode(session, store, temp, x, null);
+        if (optimistic && n.getKeyCount() >= fanout - 1) {
+            return false;
+        }
 
-                NodeBPlus newNode = new NodeBPlus();
-                int j = (n.getKeys().length + 1) / 2;
+        n.set(store, x, null, slot);
 
-                //take the first half of the temp nde in current node
-                n.setKeys(store,temp.getKeys(), 0, j);
+        if (n.getKeyCount() < fanout) {
+            return true;
+        }
 
-                // copying the rest of temp node in new node
-                newNode.setKeys(store, temp.getKeys(), j, temp.getKeys().length);
-                for (int i=0; i<newNode.getKeys().length; i++){
-                    newNode.getKeys()[i].setParent(store, newNode);
-                }
+        // split the leaf, the first key of the new leaf is copied up
+        NodeBPlus newNode = path.latch(store, n.newLeafNode(store), true);
+        NodeBPlus key     = n.split(store, newNode, fanout / 2);
+        NodeBPlus next    = path.latch(store, n.getNextPage(store), true);
 
-                // set next/last leaf node
-                if (n.getNextPage() != null) {
-                    n.getNextPage().setLastPage(newNode);
-                }
-                newNode.setNextPage(n.getNextPage());
-                newNode.setLastPage(n);
-                n.setNextPage(newNode);
-
-                // key that will be inserting into parent node
-                NodeBPlus key = temp.getKeys()[j];
-
-                while (true) {
-                    if (stack.isEmpty()) {
-                        // root case
-                        NodeBPlus root = new NodeBPlus(false, false);
-                        root.addKeys(store, key);
-                        root.addPointers(n);
-                        root.addPointers(newNode);
-
-                        store.setAccessor(this, root);
-                        break;
-                    }
-                    else {
-                        // parent case
-                        n = stack.pop();
+        if (next != null) {
+            next.setLastPage(newNode);
+        }
 
-                        if (n.getKeys().length < n.nodeSize) {
-                            n = insertNode(session, store, n, key, newNode);
-                            break;
-                        }
-                        else {
-                            // splitting one internal nodes
-                            // copying them into new node and insert new elements in temp node
-                            // then dividing it into current node and new node
-                            temp.setLeaf(false);
-                            temp.setKeys(store, n.getKeys());
-                            temp.setPointers(n.getPointers());
-                            temp = insertNode(session, store, temp, key, newNode);
-
-                            j = temp.getPointers().length / 2;
-
-                            n.setKeys(store, temp.getKeys(), 0, j-1);
-                            n.setPointers(temp.getPointers(), 0, j);
-
-                            newNode.setKeys(store, temp.getKeys(), j, temp.getKeys().length);
-                            newNode.setPointers(temp.getPointers(), j, temp.getPointers().length);
-
-                            if (n.getNextPage() != null) {
-                                n.getNextPage().setLastPage(newNode);
-                            }
-                            newNode.setNextPage(n.getNextPage());
-                            newNode.setLastPage(n);
-                            n.setNextPage(newNode);
-
-                            key = temp.getKeys()[j-1];
-                        }
+        newNode.setNextPage(next);
+        newNode.setLastPage(n);
+        n.setNextPage(newNode);
 
-                    }
-                }
+        while (true) {
+            if (path.isEmpty()) {
+                NodeBPlus root = path.latch(store, n.newInteriorNode(store),
+                                            true);
+
+                root.addPointers(n, 0);
+                root.set(store, key, newNode, 0);
+                store.setAccessor(this, root);
+
+                return true;
+            }
+
+            slot = path.getSlot();
+
+            NodeBPlus parent = path.pop();
+
+            parent.set(store, key, newNode, slot);
+
+            if (parent.getKeyCount() < fanout) {
+                return true;
+            }
+
+            // split the interior node, the middle key is moved up
+            newNode = path.latch(store, parent.newInteriorNode(store), true);
+            key     = parent.split(store, newNode, fanout / 2);
+            n       = parent;
+        }
+    }
+
+    /**
+     * Returns the reusable descent path of the session
+     */
+    NodeBPlusPath getPath(Session session) {
+        return session == null ? new NodeBPlusPath()
+                               : session.getIndexPath();
+    }
+
+    /**
+     * Returns the index of the child of an interior node that covers the row.
+     * A separator key is equal to the first key of its right subtree, or to a
+     * key that was deleted from there.
+     */
+    int findChild(Session session, PersistentStore store, NodeBPlus node,
+                  Row row, boolean useRowId) {
+
+        if (node.isLeaf) {
+            return findLeafChild(session, store, node, row, useRowId);
+        }
+
+        return findKey(session, getKeyValues(store, node), row, useRowId);
+    }
+
+    /**
+     * Returns the count of the keys of an interior node that are not greater
+     * than the row, which is the index of the child that covers the row
+     */
+    int findKey(Session session, NodeBPlus.KeyValues keys, Row row,
+                boolean useRowId) {
 
+        int low  = 0;
+        int high = keys.ids.length;
 
+        while (low < high) {
+            int mid = (low + high) >>> 1;
 
+            if (compareRowToKey(session, row, keys.data[mid], keys.ids[mid],
+                                useRowId) < 0) {
+                high = mid;
+            } else {
+                low = mid + 1;
             }
-        } finally {
-            writeLock.unlock();
         }
+
+        return low;
     }
 
-    private NodeBPlus insertNode(Session session, PersistentStore store,
-                                 NodeBPlus node, NodeBPlus key, NodeBPlus pointer) {
-//        RowComparator comparator = new RowComparator(session);
-//        ArrayUtil.toAdjustedArray(leaf.keys, data, 0, 1);
-//        ArraySort.sort(leaf.keys, 0, leaf.keys.length, comparator);
+    /**
+     * As findChild for a leaf, which has no copy of the key values
+     */
+    private int findLeafChild(Session session, PersistentStore store,
+                              NodeBPlus node, Row row, boolean useRowId) {
 
-        int pos = 0;
+        int low  = 0;
+        int high = node.getKeyCount();
 
-        Row keyRow = key.row;
-        Row currentRow = node.getKeys()[0].row;
+        while (low < high) {
+            int mid        = (low + high) >>> 1;
+            Row currentRow = node.getKey(store, mid).getRow(store);
 
-        int compare = searchCompare(currentRow, session, keyRow);
-        if (compare < 0) {
-            pos = 0;
-            return node.set(store, key, pointer, pos);
+            if (compareRowForInsertOrDelete(session, row, currentRow,
+                                            useRowId, 0) < 0) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
         }
 
-        currentRow = node.getKeys()[node.getKeys().length-1].row;
-        compare = searchCompare(currentRow, session, keyRow);
-        if (compare >= 0) {
-            pos = node.getKeys().length;
-            return node.set(store, key, pointer, pos);
+        return low;
+    }
+
+    /**
+     * Returns the indexed column values of the keys of an interior node. The
+     * values are copied from the rows of the keys the first time the node is
+     * searched after a change, so that the search does not read the rows.
+     */
+    NodeBPlus.KeyValues getKeyValues(PersistentStore store, NodeBPlus node) {
+
+        NodeBPlus.KeyValues keys = node.keyValues;
+
+        if (keys != null) {
+            return keys;
         }
 
-        Row nextRow = node.getKeys()[0].row;
-        for (int i=0; i < node.getKeys().length-1; i++) {
-            currentRow = nextRow;
-            nextRow = node.getKeys()[i+1].row;
-            if (searchCompare(currentRow, session, keyRow) >= 0 &&
-                    searchCompare(nextRow, session, keyRow) < 0) {
-                pos = i+1;
-                return node.set(store, key, pointer, pos);
+        int        count = node.getKeyCount();
+        Object[][] data  = new Object[count][];
+        long[]     ids   = new long[count];
+
+        for (int i = 0; i < count; i++) {
+            Row      row     = node.getKey(store, i).getRow(store);
+            Object[] rowData = row.getData();
+            Object[] key     = new Object[colIndex.length];
+
+            for (int j = 0; j < colIndex.length; j++) {
+                key[j] = rowData[colIndex[j]];
             }
-        }
-        return node;
-    }
 
-    private NodeBPlus newLeafNode(PersistentStore store, NodeBPlus x) {
+            data[i] = key;
+            ids[i]  = row.getPos();
+        }
 
-        NodeBPlus n = new NodeBPlus();
-        n.addKeys(store, x);
-        x.setParent(store, n);
+        keys           = new NodeBPlus.KeyValues(data, null, ids);
+        node.keyValues = keys;
 
-        return n;
+        return keys;
     }
 
+    /**
+     * Returns the insert position of the row in a leaf node. Throws if the
+     * row is a duplicate in a unique index.
+     */
+    int findLeafSlot(Session session, PersistentStore store, NodeBPlus node,
+                     Row row) {
+
+        int low  = 0;
+        int high = node.getKeyCount();
 
-    public void delete(Session session, PersistentStore store, Row row) {
+        // an equal key is always probed before the search ends
+        while (low < high) {
+            int mid        = (low + high) >>> 1;
+            Row currentRow = node.getKey(store, mid).getRow(store);
 
-        if (!row.isInMemory()) {
-            row = (Row) store.get(row, false);
+            if (searchCompare(currentRow, session, row) < 0) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
         }
 
-        NodeBPlus node = ((RowBPlus) row).getNode(position);
+        return low;
+    }
 
-        if (node != null) {
-            delete(session, store, node);
+    /**
+     * Returns an empty leaf node for the first key of the tree. For the data
+     * node of a CACHED table row, the leaf is a page in the data file.
+     */
+    private NodeBPlus newLeafNode(PersistentStore store, NodeBPlus x) {
+
+        if (x.isMemory()) {
+            return new NodeBPlus(fanout);
         }
-    }
 
-    void delete(Session session, PersistentStore store, NodeBPlus x) {
+        return NodeBPlusPage.newPage(store, position, true, fanout);
+    }
 
-        Stack<NodeBPlus> stack = new Stack<NodeBPlus>();
-        NodeBPlus n;
-        NodeBPlus root;
-        Row       row = x.getRow(store);
+    /**
+     * The minimum count of keys in a node other than the root
+     */
+    int getMinKeys() {
+        return (fanout - 1) / 2;
+    }
 
-        int compare = 0;
+    /**
+     * Builds the index, which must be empty, from the given rows. The rows
+     * are sorted once and checked for duplicates. The leaves are then filled
+     * in order and each interior level is built from the first keys of the
+     * nodes of the level below, without a descent for each row. Nodes other
+     * than the root are filled to fillFactor percent of their capacity.<p>
+     *
+     * The elements of the array are the rows, or for a CACHED table, Row
+     * objects that hold the indexed column values and the position of the
+     * row. The array is sorted in place.
+     */
+    public void load(final Session session, PersistentStore store,
+                     Row[] rows, int count, int fillFactor) {
 
-        if (x == null) {
+        if (count == 0) {
             return;
         }
 
         writeLock.lock();
-        store.writeLock();
-
-        try {
 
-            root = getAccessor(store);
-            n = root;
+        // the open node of each level and the first key of its subtree
+        NodeBPlus[] open     = null;
+        NodeBPlus[] first    = null;
+        NodeBPlus   lastLeaf = null;
 
-            if (n == null) {         // empty tree
-                return;
+        try {
+            if (getAccessor(store) != null) {
+                throw Error.runtimeError(ErrorCode.U_S0500, "IndexBPlus");
             }
 
-            while (!n.isLeaf) {
-                stack.push(n);
-
-                Row currentRow = n.getKeys()[0].row;
-                compare = searchCompare(currentRow, session, row);
-                if (compare < 0) {
-                    n = n.getPointers()[0];
-                    continue;
-                }
+            ArraySort.sort(rows, 0, count, new Comparator() {
 
-                currentRow = n.getKeys()[n.getKeys().length-1].row;
-                compare = searchCompare(currentRow, session, row);
-                if (compare >= 0) {
-                    n = n.getPointers()[n.getPointers().length-1];
-                    continue;
+                public int compare(Object a, Object b) {
+                    return compareRowForInsertOrDelete(session, (Row) a,
+                                                       (Row) b, true, 0);
                 }
+            });
 
-                Row nextRow = n.getKeys()[0].row;
-                for (int i=0; i < n.getKeys().length-1; i++) {
-                    currentRow = nextRow;
-                    nextRow = n.getKeys()[i+1].row;
-                    if (searchCompare(currentRow, session, row) >= 0 &&
-                            searchCompare(nextRow, session, row) < 0) {
-                        n = n.getPointers()[i+1];
-                    }
+            if (isUnique) {
+                for (int i = 1; i < count; i++) {
+                    searchCompare(rows[i - 1], session, rows[i]);
                 }
             }
 
-            // n is a leaf node
-
-            boolean flag = false;
+            // item counts and node counts of the levels from the leaves up
+            int[] items   = new int[8];
+            int[] nodes   = new int[8];
+            int   depth   = 0;
+            int   minKeys = getMinKeys();
 
-            for (int i = 0; i < n.getKeys().length; i++) {
+            items[0] = count;
+            nodes[0] = getNodeCount(count,
+                                    (fanout - 1) * fillFactor / 100,
+                                    minKeys);
 
-                if (n == root && x == n.getKeys()[i]) {
-
-                    n.removeKeys(store, i);
-                    return;
-
-                } else if (x == n.getKeys()[i]) {
-
-                    flag = true;
-                    break;
+            while (nodes[depth] > 1) {
+                depth++;
 
+                if (depth == items.length) {
+                    items = (int[]) ArrayUtil.resizeArray(items, depth * 2);
+                    nodes = (int[]) ArrayUtil.resizeArray(nodes, depth * 2);
                 }
-            }
 
-            if (flag) {
-
-                if (n.getKeys().length-1 >= n.nodeSize / 2) {
-                    n.removeKeys(store, x);
+                items[depth] = nodes[depth - 1];
+                nodes[depth] = getNodeCount(items[depth],
+                                            fanout * fillFactor / 100,
+                                            minKeys + 1);
+            }
 
-                    NodeBPlus parent = stack.peek();
-                    for (int i=0; i<parent.getKeys().length; i++) {
+            depth++;
 
-                        if (searchCompare(parent.getKeys()[i].getRow(store),
-                                session, x.getRow(store)) == 0) {
+            open  = new NodeBPlus[depth];
+            first = new NodeBPlus[depth];
 
-                            parent.replaceKeys(store, n.getKeys()[0], i);
-                            break;
+            int[] added = new int[depth];
+            int[] index = new int[depth];
 
-                        }
-                    }
-                }
+            for (int i = 0; i < count; i++) {
+                NodeBPlus x    = getDataNode(store, rows[i]);
+                NodeBPlus leaf = open[0];
 
-                else {  // combining nodes
+                if (leaf == null) {
+                    leaf = newLeafNode(store, x);
 
-                    NodeBPlus parent = stack.peek();
+                    leaf.keepInMemory(true);
 
-                    // Determine whether the next node comes from
-                    // the same parent. If not, borrow elements from it.
-                    int deter = sameParent(n, parent);
+                    if (lastLeaf != null) {
+                        lastLeaf.setNextPage(leaf);
+                        leaf.setLastPage(lastLeaf);
+                        lastLeaf.keepInMemory(false);
 
+                        lastLeaf = null;
+                    }
 
-                    if (deter == 1) {
-                        // borrow from the next leaf node
+                    open[0]  = leaf;
+                    first[0] = x;
+                }
 
-                        n.removeKeys(store, x);
+                leaf.addKeys(store, x);
 
-                        NodeBPlus key = n.getNextPage().removeKeys(store, 0);
-                        NodeBPlus pointer = n.getNextPage().removePointers(0);
-                        n.addKeys(store, key);
-                        n.addPointers(pointer);
+                added[0]++;
 
-                        for (int i = 0; i < parent.getKeys().length; i++) {
+                if (added[0] < getBoundary(items[0], nodes[0], index[0])) {
+                    continue;
+                }
 
-                            if (searchCompare(parent.getKeys()[i].getRow(store),
-                                    session, key.getRow(store)) == 0) {
+                // the leaf is complete and is added to the level above,
+                // which may complete the nodes of the levels above that
+                lastLeaf = leaf;
+                open[0]  = null;
 
-                                parent.replaceKeys(store, n.getNextPage().getKeys()[0], i);
-                                break;
-                            }
-                        }
+                index[0]++;
 
-                        for (int i = 0; i < parent.getKeys().length; i++) {
+                NodeBPlus child = leaf;
+                NodeBPlus key   = first[0];
 
-                            if (searchCompare(parent.getKeys()[i].getRow(store),
-                                    session, x.getRow(store)) == 0) {
+                for (int level = 1; ; level++) {
+                    if (level == depth) {
+                        store.setAccessor(this, child);
 
-                                parent.replaceKeys(store, n.getKeys()[0], i);
-                                break;
-                            }
+                        if (!child.isLeaf) {
+                            child.keepInMemory(false);
                         }
 
-                        return;
-
+                        break;
                     }
 
-                    else if (deter == 2) {
-                        // borrow from the previous node
-
-                        n.removeKeys(store, x);
+                    NodeBPlus parent = open[level];
 
-                        NodeBPlus key =
-                                n.getLastPage().removeKeys(store, n.getLastPage().getKeys().length-1);
-                        NodeBPlus pointer =
-                                n.getLastPage().removePointers(n.getLastPage().getPointers().length-1);
-                        n.addKeys(store, key, 0);
-                        n.addPointers(pointer, 0);
+                    if (parent == null) {
+                        parent = child.newInteriorNode(store);
 
-                        for (int i = 0; i < parent.getKeys().length; i++) {
+                        parent.keepInMemory(true);
+                        parent.addPointers(child, 0);
 
-                            if (searchCompare(parent.getKeys()[i].getRow(store),
-                                    session, key.getRow(store)) == 0) {
-
-                                parent.replaceKeys(store, 
-                                        n.getLastPage().getKeys()[n.getLastPage().getKeys().length-1],
-                                        i);
-                                break;
-                            }
-                        }
-
-                        for (int i = 0; i < parent.getKeys().length; i++) {
-
-                            if (searchCompare(parent.getKeys()[i].getRow(store),
-                                    session, x.getRow(store)) == 0) {
+                        open[level]  = parent;
+                        first[level] = key;
+                    } else {
+                        parent.set(store, key, child, parent.getKeyCount());
+                    }
 
-                                parent.replaceKeys(store, n.getKeys()[0], i);
-                                break;
-                            }
-                        }
+                    if (!child.isLeaf) {
+                        child.keepInMemory(false);
+                    }
 
-                        return;
+                    added[level]++;
 
+                    if (added[level] < getBoundary(items[level],
+                                                   nodes[level],
+                                                   index[level])) {
+                        break;
                     }
 
-                    else {
-                        // merging to an internal node
-                        boolean prevB = true;
+                    open[level] = null;
 
-                        if (x == n.getKeys()[0]) {
-                            prevB = false;
-                        }
+                    index[level]++;
 
-                        n.removeKeys(store, x);
+                    child = parent;
+                    key   = first[level];
+                }
+            }
+        } finally {
+            if (open != null) {
+                for (int i = 0; i < open.length; i++) {
+                    if (open[i] != null) {
+                        open[i].keepInMemory(false);
+                    }
+                }
+            }
 
-                        int tempKey = 0;
-                        int tempPointer = 0;
+            if (lastLeaf != null) {
+                lastLeaf.keepInMemory(false);
+            }
 
-                        // if the merging with the next node
-                        // then copy all elements of current node to the next node
-                        // move the first element from the next node to parent
-                        if (canMeargeNext(n, parent)) {
-                            NodeBPlus next = n.getNextPage();
+            writeLock.unlock();
+        }
+    }
 
-                            if (n.getLastPage() != null) {
-                                n.getLastPage().setNextPage(next);
-                            }
+    /**
+     * Returns the count of nodes for the items of a level. Each node gets
+     * about the same count of items, not more than perNode and not fewer
+     * than minItems, except when there is only one node.
+     */
+    private static int getNodeCount(int items, int perNode, int minItems) {
 
-                            if (next != null) {
-                                next.setLastPage(n.getLastPage());
-                            }
-                            else {
-                                return;
-                            }
+        if (perNode < minItems) {
+            perNode = minItems;
+        }
 
-                            n.setLastPage(null);
-                            n.setNextPage(null);
+        if (perNode < 1) {
+            perNode = 1;
+        }
 
-                            for (int i=n.getKeys().length; i>=0; i--){
-                                next.addKeys(store, n.getKeys()[i], 0);
-                            }
+        int nodes = (items + perNode - 1) / perNode;
 
-                            for (int i=n.getPointers().length; i>=0; i--){
-                                next.addPointers(n.getPointers()[i], 0);
-                            }
+        while (nodes > 1 && items / nodes < minItems) {
+            nodes--;
+        }
 
-                            for (int i = 0; i < parent.getKeys().length; i++) {
+        return nodes;
+    }
 
-                                if (searchCompare(parent.getKeys()[i].getRow(store), session,
-                                        next.getKeys()[n.getKeys().length].getRow(store)) == 0) {
+    /**
+     * Returns the count of items of a level that are in the nodes up to and
+     * including the given node
+     */
+    private static int getBoundary(int items, int nodes, int node) {
+        return (int) ((long) items * (node + 1) / nodes);
+    }
 
-                                    tempKey = i;
-                                    tempPointer = i;
+    /**
+     * Returns the data node of the row. A Row that is not a RowBPlus only
+     * holds the sort key and the position of a CACHED table row.
+     */
+    private NodeBPlus getDataNode(PersistentStore store, Row row) {
 
-                                    break;
-                                }
-                            }
-                            if (tempKey > 0 && parent.getKeys()[tempKey - 1] == x) {
-                                parent.replaceKeys(store, next.getKeys()[0], tempKey-1);
-                            }
+        if (!(row instanceof RowBPlus)) {
+            row = (Row) store.get(row.getPos(), false);
+        }
 
-                        }
+        return ((RowBPlus) row).getNode(position);
+    }
 
-                        // merging with the last node
-                        else {
-
-                            NodeBPlus prev = n.getLastPage();
-                            if (prev != null) {
-                                prev.setNextPage(n.getNextPage());
-                            } else {
-                                return;
-                            }
-
-                            if (n.getNextPage() != null) {
-                                n.getNextPage().setLastPage(prev);
-                            }
-
-                            n.setNextPage(null);
-                            n.setLastPage(null);
-
-                            for (int i = 0; i < n.getKeys().length; i++) {
-                                prev.addKeys(store, n.getKeys()[i]);
-                            }
-
-                            for (int i = 0; i < n.getPointers().length; i++) {
-                                prev.addPointers(n.getPointers()[i]);
-                            }
-
-                            if (prevB) {
-                                for (int i = 0; i < parent.getKeys().length; i++) {
-
-                                    if (searchCompare(parent.getKeys()[i].getRow(store), session,
-                                            n.getKeys()[0].getRow(store)) == 0) {
-
-                                        tempKey = i;
-                                        tempPointer = i + 1;
-                                        break;
-                                    }
-                                }
-                            } else {
-                                for (int i = 0; i < parent.getKeys().length; i++) {
-                                    if (searchCompare(parent.getKeys()[i].getRow(store), session,
-                                            x.getRow(store)) == 0) {
-
-                                        tempKey = i;
-                                        tempPointer = i + 1;
-                                        break;
-                                    }
-                                }
-                            }
-                        }
+    public void delete(Session session, PersistentStore store, Row row) {
 
-                        boolean finished = false;
-                        do {
-                            // if we get root
-                            if (stack.isEmpty()) {
+        if (!row.isInMemory()) {
+            row = (Row) store.get(row, false);
+        }
 
-                                root.removeKeys(store, tempKey);
-                                root.removePointers(tempPointer);
-                                finished = true;
+        NodeBPlus node = ((RowBPlus) row).getNode(position);
 
-                            }
-                            else {
+        if (node != null) {
+            delete(session, store, node);
+        }
+    }
 
-                                n = stack.pop();
+    void delete(Session session, PersistentStore store, NodeBPlus x) {
 
-                                //try borrowing from the sibling
-                                if (n.getKeys().length >= 2) {
+        if (x == null) {
+            return;
+        }
 
-                                    n.removeKeys(store, tempKey);
-                                    n.removePointers(tempPointer);
+        Row           row      = x.getRow(store);
+        boolean       useRowId = !isUnique || hasNulls(session, row.getData());
+        NodeBPlusPath path     = getPath(session);
 
-                                    finished = true;
+        updateLock.lock();
+        store.writeLock();
 
-                                } else {
-                                    // if the root has single sibling
-                                    // the tree height will decrease
+        try {
+            if (isLatched
+                    && delete(session, store, path, row, x, useRowId, true)) {
+                return;
+            }
 
-                                    if (n == root) {
+            path.reset();
+            delete(session, store, path, row, x, useRowId, false);
+        } finally {
+            path.reset();
+            store.writeUnlock();
+            updateLock.unlock();
+        }
+    }
 
-                                        n.removeKeys(store, tempKey);
-                                        n.removePointers(tempPointer);
+    /**
+     * Descends to the leaf and removes the node.<p>
+     *
+     * The optimistic descent latches the interior nodes for reading and the
+     * leaf for change. It returns false without a change if the leaf would
+     * underflow or a separator is equal to the node. The other descent
+     * latches each node for change and releases the latches of the
+     * ancestors when it reaches a node that will not underflow, except the
+     * node that holds the separator.
+     */
+    private boolean delete(Session session, PersistentStore store,
+                           NodeBPlusPath path, Row row, NodeBPlus x,
+                           boolean useRowId, boolean optimistic) {
 
-                                        if (n.getPointers().length == 1) {
-                                            root = n.getPointers()[0];
-                                            store.setAccessor(this, root);
-                                        }
+        path.lockRoot(optimistic ? rootLatch.readLock()
+                                 : rootLatch.writeLock());
 
-                                        finished = true;
+        NodeBPlus n = getAccessor(store);
 
-                                    } else {
+        if (n == null) {    // empty tree
+            return true;
+        }
 
-                                        n.removeKeys(store, tempKey);
-                                        n.removePointers(tempPointer);
+        int       minKeys         = getMinKeys();
+        NodeBPlus separatorNode   = null;
+        int       separatorDepth  = -1;
 
-                                        parent = stack.peek();
-                                        deter = sameParent2(n, parent);
+        n = path.latch(store, n, !optimistic || n.isLeaf);
 
-                                        // borrowing from next internal node
+        if (optimistic || n.isLeaf || n.getKeyCount() > 1) {
+            path.releaseAncestors(n, null);
+        }
 
-                                        if (deter == 1) {
+        while (!n.isLeaf) {
+            int slot = findChild(session, store, n, row, useRowId);
 
-                                            int index = -1;
+            if (slot > 0 && n.hasKey(x, slot - 1)) {
+                if (optimistic) {
+                    return false;
+                }
 
-                                            for (int i = 0; i < parent.getPointers().length; i++) {
-                                                if (parent.getPointers()[i] == n.getNextPage()) {
-                                                    index = i;
-                                                    break;
-                                                }
-                                            }
+                separatorNode  = n;
+                separatorDepth = path.depth;
+            }
 
-                                            n.addKeys(store, parent.removeKeys(store, index - 1));
-                                            n.addPointers(n.getNextPage().removePointers(0));
+            path.push(n, slot);
 
-                                            parent.addKeys(store, n.getNextPage().removeKeys(store, 0), index-1);
+            if (optimistic) {
+                n = n.getPointer(store, slot);
+                n = path.latch(store, n, n.isLeaf);
 
-                                            finished = true;
-                                        }
+                path.releaseAncestors(n, null);
 
-                                        // boorwing form prev internal node
-                                        else if (deter == 2) {
+                continue;
+            }
 
-                                            int index = -1;
+            // the siblings that may refill the child are latched in key
+            // order before the descent continues, so that the latches of
+            // all writers are acquired top down and from left to right
+            if (slot > 0) {
+                path.latch(store, n.getPointer(store, slot - 1), true);
+            }
 
-                                            for (int i = 0; i < parent.getPointers().length; i++) {
-                                                if (parent.getPointers()[i] == n) {
+            NodeBPlus child = path.latch(store, n.getPointer(store, slot),
+                                         true);
 
-                                                    index = i;
-                                                    break;
-                                                }
-                                            }
-                                            n.addKeys(store, parent.removeKeys(store, index - 1), 0);
-                                            n.addPointers(n.getLastPage().removePointers(
-                                                    n.getLastPage().getPointers().length - 1),
-                                                    0);
+            if (child.getKeyCount() > minKeys) {
+                path.releaseAncestors(child, separatorNode);
+            } else if (slot < n.getKeyCount()) {
+                path.latch(store, n.getPointer(store, slot + 1), true);
+            }
 
-                                            parent.addKeys(store, n.getLastPage().removeKeys(store, 
-                                                    n.getLastPage().getKeys().length - 1),
-                                                    index-1);
+            n = child;
+        }
 
-                                            finished = true;
-                                        } else {
+        int slot = n.indexOfKey(x);
 
-                                            // merging two internal nodes
-                                            if (canMeargeNext(parent, n)) {
+        if (slot < 0) {
+            throw Error.runtimeError(ErrorCode.U_S0500, "IndexBPlus");
+        }
 
-                                                for (int i = 0; i < parent.getPointers().length; i++) {
+        if (optimistic && !path.isEmpty() && n.getKeyCount() <= minKeys) {
+            return false;
+        }
 
-                                                    if (n == parent.getPointers()[i]) {
-                                                        tempKey = i;
-                                                        tempPointer = i;
-                                                        break;
-                                                    }
-                                                }
+        n.removeKeys(store, slot);
 
-                                                NodeBPlus next = n.getNextPage();
+        if (separatorNode != null) {
+            replaceSeparator(store, path, separatorDepth, n);
+        }
 
-                                                if (n.getLastPage() != null) {
-                                                    n.getLastPage().setNextPage(next);
-                                                }
-                                                if (next != null) {
-                                                    next.setLastPage(n.getLastPage());
-                                                }
-                                                else {
-                                                    return;
-                                                }
+        while (!path.isEmpty() && n.getKeyCount() < minKeys) {
+            slot = path.getSlot();
 
-                                                next.addKeys(store, parent.getKeys()[tempKey], 0);
+            NodeBPlus parent = path.pop();
+            NodeBPlus left   = slot > 0 ? parent.getPointer(store, slot - 1)
+                                        : null;
+            NodeBPlus right = slot < parent.getKeyCount()
+                              ? parent.getPointer(store, slot + 1)
+                              : null;
 
-                                                for (int i=n.getKeys().length; i>=0; i--){
-                                                    next.addKeys(store, n.getKeys()[i], 0);
-                                                }
+            if (left != null && left.getKeyCount() > minKeys) {
+                borrowFromLeft(store, parent, slot, left, n);
 
-                                                for (int i=n.getPointers().length; i>=0; i--){
-                                                    next.addPointers(n.getPointers()[i], 0);
-                                                }
+                return true;
+            }
 
+            if (right != null && right.getKeyCount() > minKeys) {
+                borrowFromRight(store, parent, slot, n, right);
 
+                return true;
+            }
 
-                                            } else {
-                                                for (int i = 0; i < parent.getPointers().length; i++) {
+            if (left != null) {
+                merge(store, path, parent, slot - 1, left, n);
+            } else {
+                merge(store, path, parent, slot, n, right);
+            }
 
-                                                    if (n == parent.getPointers()[i]) {
+            if (path.isEmpty() && parent.getKeyCount() == 0) {
 
-                                                        tempKey = i - 1;
-                                                        tempPointer = i;
-                                                        break;
-                                                    }
-                                                }
+                // the tree height decreases
+                store.setAccessor(this, parent.getPointer(store, 0));
+                parent.remove(store);
 
-                                                NodeBPlus prev = n.getLastPage();
-                                                if (prev != null) {
-                                                    prev.setNextPage(n.getNextPage());
-                                                }
+                return true;
+            }
 
-                                                if (n.getNextPage() != null) {
-                                                    n.getNextPage().setLastPage(prev);
-                                                }
+            n = parent;
+        }
 
-                                                prev.addKeys(store, parent.getKeys()[tempKey]);
+        return true;
+    }
 
-                                                for (int i=0; i<n.getKeys().length; i++){
-                                                    prev.addKeys(store, n.getKeys()[i]);
-                                                }
+    /**
+     * Replaces the separator that is equal to the deleted first key of the
+     * leaf with the key that now follows it. The separator is in the lowest
+     * node of the path where the descent was not to the first child. This
+     * ensures all separators are keys of rows that are in the index.
+     */
+    private void replaceSeparator(PersistentStore store, NodeBPlusPath path,
+                                  int depth, NodeBPlus leaf) {
 
-                                                for (int i=0; i<n.getPointers().length; i++) {
-                                                    prev.addPointers(n.getPointers()[i]);
-                                                }
+        NodeBPlus key = null;
 
-                                            }
-                                        }
-                                    }
-                                }
-                            }
-                        } while (!finished);
+        if (leaf.getKeyCount() > 0) {
+            key = leaf.getKey(store, 0);
+        } else {
+            NodeBPlus next = path.latch(store, leaf.getNextPage(store), true);
 
-                    }
-                }
+            if (next != null) {
+                key = next.getKey(store, 0);
             }
-        } catch (RuntimeException e) {
-            throw e;
-        } finally {
-            store.writeUnlock();
-            writeLock.unlock();
         }
-    }
 
-    private int sameParent(NodeBPlus n, NodeBPlus parent) {
-
-        boolean _next = canMeargeNext(n, parent);
-        boolean _prev = canMergePrev(n, parent);
-
-        NodeBPlus next = n.getNextPage();
-        NodeBPlus prev = n.getLastPage();
-
-        if (_next && next.getKeys().length - 1 >= n.nodeSize / 2.0) {
-            return 1;
-        } else if (_prev && prev.getKeys().length - 1 >= n.nodeSize / 2.0) {
-            return 2;
-        } else {
-            return 0;
+        // an empty last leaf is merged or refilled from the left
+        // and the separator is then removed or replaced
+        if (key != null) {
+            path.nodes[depth].replaceKeys(store, key, path.slots[depth] - 1);
         }
     }
 
-    private int sameParent2(NodeBPlus n, NodeBPlus parent) {
+    /**
+     * Moves the last key of the left sibling into the node.
+     */
+    private void borrowFromLeft(PersistentStore store, NodeBPlus parent,
+                                int slot, NodeBPlus left, NodeBPlus n) {
 
-        boolean _next = canMeargeNext(n, parent);
-        boolean _prev = canMergePrev(n, parent);
+        int last = left.getKeyCount() - 1;
 
-        NodeBPlus next = n.getNextPage();
-        NodeBPlus prev = n.getLastPage();
+        if (n.isLeaf) {
+            NodeBPlus key = left.moveKey(store, last, n, 0);
 
-        if (next != null && _next && next.getKeys().length - 1 >= 1) {
-            return 1;
-        } else if (prev != null && _prev && prev.getKeys().length- 1 >= 1) {
-            return 2;
+            parent.replaceKeys(store, key, slot - 1);
         } else {
-            return 0;
+            n.addPointers(left.removePointers(store, last + 1), 0);
+            n.addKeys(store, parent.getKey(store, slot - 1), 0);
+            parent.replaceKeys(store, left.removeKeys(store, last), slot - 1);
         }
     }
 
-    private boolean canMeargeNext(NodeBPlus n, NodeBPlus parent) {
+    /**
+     * Moves the first key of the right sibling into the node.
+     */
+    private void borrowFromRight(PersistentStore store, NodeBPlus parent,
+                                 int slot, NodeBPlus n, NodeBPlus right) {
 
-        boolean _next  = false;
-        NodeBPlus next = n.getNextPage();
-        int i;
+        if (n.isLeaf) {
+            right.moveKey(store, 0, n, n.getKeyCount());
+            parent.replaceKeys(store, right.getKey(store, 0), slot);
+        } else {
+            NodeBPlus pointer = right.removePointers(store, 0);
 
-        if (next != null) {
-            for (i = 0; i < parent.getPointers().length; i++) {
-                if (parent.getPointers()[i] == next) {
-                    _next = true;
-                    break;
-                }
-            }
+            n.set(store, parent.getKey(store, slot), pointer, n.getKeyCount());
+            parent.replaceKeys(store, right.removeKeys(store, 0), slot);
         }
-
-        return _next;
     }
 
-    private boolean canMergePrev(NodeBPlus n, NodeBPlus parent) {
+    /**
+     * Merges the right node into the left node and removes the separator key
+     * at the given position from the parent.
+     */
+    private void merge(PersistentStore store, NodeBPlusPath path,
+                       NodeBPlus parent, int slot, NodeBPlus left,
+                       NodeBPlus right) {
 
-        boolean _prev  = false;
-        NodeBPlus prev = n.getLastPage();
-        int i;
+        if (left.isLeaf) {
+            NodeBPlus next = path.latch(store, right.getNextPage(store),
+                                        true);
 
-        if (prev != null) {
-            for (i = 0; i < parent.getPointers().length; i++) {
-                if (parent.getPointers()[i] == prev) {
-                    _prev = true;
-                    break;
-                }
+            left.setNextPage(next);
+
+            if (next != null) {
+                next.setLastPage(left);
             }
         }
 
-        return _prev;
+        // the parent is updated before the right node is released
+        parent.removePointers(store, slot + 1);
+
+        NodeBPlus separator = parent.removeKeys(store, slot);
+
+        left.merge(store, right, separator);
     }
 
     public boolean existsParent(Session session, PersistentStore store,
@@ -1651,20 +2117,134 @@ public class IndexBPlus implements Index {
                                     int distinctCount, int compareType,
                                     boolean reversed, boolean[] map) {
 
-        if (compareType == OpTypes.MAX) {
-            return lastRow(session, store, 0);
+        if (compareType == OpTypes.MAX) {
+            return lastRow(session, store, 0);
+        }
+
+        NodeBPlus node = findNode(session, store, rowdata, defaultColMap,
+                                matchCount, compareType,
+                                TransactionManager.ACTION_READ, reversed);
+
+        if (node == null) {
+            return emptyIterator;
+        }
+
+        return new IndexRowIterator(session, store, this, node, distinctCount,
+                                    false, reversed);
+    }
+
+    /**
+     * Return the first node equal to the rowdata object, searching the leaf
+     * chain forward from the first node found by the previous search, or
+     * the node where that search stopped. The tree is searched from the
+     * root when there is no previous search, the rowdata is smaller than
+     * the data of that node, or no larger data is found within a few nodes.
+     * The returned iterator keeps the position for the next search even
+     * when it has no rows.
+     */
+    public RowIterator findFirstRowFrom(Session session,
+                                        PersistentStore store,
+                                        RowIterator from, Object[] rowdata,
+                                        int matchCount, int distinctCount) {
+
+        NodeBPlus start = null;
+
+        if (from instanceof IndexRowIterator
+                && ((IndexRowIterator) from).index == this) {
+            start = ((IndexRowIterator) from).startNode;
+        }
+
+        readLock.lock();
+
+        try {
+            NodeBPlus x = start;
+
+            for (int steps = 0; x != null && steps < maxMergeSteps;
+                    steps++) {
+                int compare = compareRowNonUnique(session,
+                                                  x.getData(store), rowdata,
+                                                  defaultColMap, matchCount);
+
+                if (compare > 0) {
+                    if (steps == 0) {
+                        break;
+                    }
+
+                    return newMergeIterator(session, store, null, x,
+                                            distinctCount);
+                }
+
+                if (compare == 0) {
+                    NodeBPlus first = x;
+
+                    x = findReadableNode(session, store, x, rowdata,
+                                         matchCount);
+
+                    return newMergeIterator(session, store, x, first,
+                                            distinctCount);
+                }
+
+                x = next(session, store, x);
+            }
+
+            if (x == null && start != null) {
+                return newMergeIterator(session, store, null, null,
+                                        distinctCount);
+            }
+
+            x = findBoundary(session, store, rowdata, defaultColMap,
+                             matchCount, OpTypes.EQUAL, false, false);
+
+            NodeBPlus first = x;
+
+            x = findReadableNode(session, store, x, rowdata, matchCount);
+
+            return newMergeIterator(session, store, x, first, distinctCount);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the given node or the first node after it with the same data
+     * that can be read by the session.
+     */
+    private NodeBPlus findReadableNode(Session session,
+                                       PersistentStore store, NodeBPlus x,
+                                       Object[] rowdata, int matchCount) {
+
+        while (session != null && x != null) {
+            Row row = x.getRow(store);
+
+            if (session.database.txManager.canRead(
+                    session, store, row, TransactionManager.ACTION_READ,
+                    colIndex)) {
+                break;
+            }
+
+            x = next(session, store, x);
+
+            if (x != null
+                    && compareRowNonUnique(
+                        session, x.getData(store), rowdata, defaultColMap,
+                        matchCount) != 0) {
+                x = null;
+            }
         }
 
-        NodeBPlus node = findNode(session, store, rowdata, defaultColMap,
-                                matchCount, compareType,
-                                TransactionManager.ACTION_READ, reversed);
+        return x;
+    }
 
-        if (node == null) {
-            return emptyIterator;
-        }
+    private IndexRowIterator newMergeIterator(Session session,
+            PersistentStore store, NodeBPlus node, NodeBPlus start,
+            int distinctCount) {
 
-        return new IndexRowIterator(session, store, this, node, distinctCount,
-                                    false, reversed);
+        IndexRowIterator it = new IndexRowIterator(session, store, this,
+            node, distinctCount, false, false);
+
+        it.startNode = start;
+
+        return it;
     }
 
     /**
@@ -1747,19 +2327,7 @@ public class IndexBPlus implements Index {
         readLock.lock();
 
         try {
-            NodeBPlus x = getAccessor(store);
-            NodeBPlus l = x;
-
-            while (l != null && !l.isLeaf) {
-                x = l;
-                l = x.getPointers()[0];
-            }
-
-            if (l == null) {
-                return emptyIterator;
-            }
-
-            x = l.getKeys()[0];
+            NodeBPlus x = firstNode(store);
 
             while (session != null && x != null) {
                 Row row = x.getRow(store);
@@ -1770,7 +2338,7 @@ public class IndexBPlus implements Index {
                     break;
                 }
 
-                x = next(store, x);
+                x = next(session, store, x);
             }
 
             if (x == null) {
@@ -1789,19 +2357,7 @@ public class IndexBPlus implements Index {
         readLock.lock();
 
         try {
-            NodeBPlus x = getAccessor(store);
-            NodeBPlus l = x;
-
-            while (l != null && !l.isLeaf) {
-                x = l;
-                l = x.getPointers()[0];
-            }
-
-            if (l == null) {
-                return emptyIterator;
-            }
-
-            x = l.getKeys()[0];
+            NodeBPlus x = firstNode(store);
 
             if (x == null) {
                 return emptyIterator;
@@ -1824,19 +2380,7 @@ public class IndexBPlus implements Index {
         readLock.lock();
 
         try {
-            NodeBPlus x = getAccessor(store);
-            NodeBPlus l = x;
-
-            while (!l.isLeaf) {
-                x = l;
-                l = x.getPointers()[x.getPointers().length-1];
-            }
-
-            if (l == null) {
-                return emptyIterator;
-            }
-
-            x = l.getKeys()[l.getKeys().length-1];
+            NodeBPlus x = lastNode(store);
 
             while (session != null && x != null) {
                 Row row = x.getRow(store);
@@ -1847,7 +2391,7 @@ public class IndexBPlus implements Index {
                     break;
                 }
 
-                x = last(store, x);
+                x = last(session, store, x);
             }
 
             if (x == null) {
@@ -1861,6 +2405,118 @@ public class IndexBPlus implements Index {
         }
     }
 
+    /**
+     * Returns the first data node of the leftmost leaf or null if empty
+     */
+    NodeBPlus firstNode(PersistentStore store) {
+
+        NodeBPlus x = latchRoot(store);
+
+        if (x == null) {
+            return null;
+        }
+
+        while (!x.isLeaf) {
+            x = latchChild(store, x, 0);
+        }
+
+        NodeBPlus result = x.getKeyCount() == 0 ? null
+                                                : x.getKey(store, 0);
+
+        unlatch(x);
+
+        return result;
+    }
+
+    /**
+     * Returns the last data node of the rightmost leaf or null if empty
+     */
+    NodeBPlus lastNode(PersistentStore store) {
+
+        NodeBPlus x = latchRoot(store);
+
+        if (x == null) {
+            return null;
+        }
+
+        while (!x.isLeaf) {
+            x = latchChild(store, x, x.getKeyCount());
+        }
+
+        NodeBPlus result = x.getKeyCount() == 0 ? null
+                                                : x.getKey(store,
+                                                    x.getKeyCount() - 1);
+
+        unlatch(x);
+
+        return result;
+    }
+
+    /**
+     * Returns the root node latched for reading, or null if the tree is
+     * empty. Nodes are latched only when the index is changed concurrently.
+     */
+    private NodeBPlus latchRoot(PersistentStore store) {
+
+        if (!isLatched) {
+            return getAccessor(store);
+        }
+
+        Lock lock = rootLatch.readLock();
+
+        lock.lock();
+
+        try {
+            NodeBPlus x = getAccessor(store);
+
+            if (x != null) {
+                x.latch(false);
+            }
+
+            return x;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Latches the child at the position for reading and releases the node
+     */
+    private NodeBPlus latchChild(PersistentStore store, NodeBPlus x,
+                                 int pos) {
+
+        NodeBPlus child = x.getPointer(store, pos);
+
+        if (isLatched) {
+            child.latch(false);
+            x.unlatch(false);
+        }
+
+        return child;
+    }
+
+    private void latch(NodeBPlus x) {
+
+        if (isLatched && x != null) {
+            x.latch(false);
+        }
+    }
+
+    /**
+     * Latches the last leaf for reading without waiting. A writer may hold
+     * the last leaf while it waits for the leaf that is held by the caller.
+     */
+    private boolean tryLatch(NodeBPlus x) {
+        return !isLatched || x == null || x.tryLatch(false);
+    }
+
+    private void unlatch(NodeBPlus x) {
+
+        if (isLatched && x != null) {
+            x.unlatch(false);
+        }
+    }
+
     /**
      * Returns the node after the given one
      */
@@ -1876,125 +2532,400 @@ public class IndexBPlus implements Index {
         }
 
         while (true) {
-            x = next(store, x);
+            x = next(session, store, x);
+
+            if (x == null) {
+                return x;
+            }
+
+            if (session == null) {
+                return x;
+            }
+
+            Row row = x.getRow(store);
+
+            if (session.database.txManager.canRead(
+                    session, store, row, TransactionManager.ACTION_READ,
+                    null)) {
+                return x;
+            }
+        }
+    }
+
+    NodeBPlus last(Session session, PersistentStore store, NodeBPlus x,
+                 int distinctCount) {
+
+        if (x == null) {
+            return null;
+        }
+
+        if (distinctCount != 0) {
+            return findDistinctNode(session, store, x, distinctCount, true);
+        }
+
+        while (true) {
+            x = last(session, store, x);
 
             if (x == null) {
                 return x;
             }
 
-            if (session == null) {
-                return x;
+            if (session == null) {
+                return x;
+            }
+
+            Row row = x.getRow(store);
+
+            if (session.database.txManager.canRead(
+                    session, store, row, TransactionManager.ACTION_READ,
+                    null)) {
+                return x;
+            }
+        }
+    }
+
+    /**
+     * Returns the data node after the given one in the leaf chain, or null
+     * at the end of the index
+     */
+    NodeBPlus next(Session session, PersistentStore store, NodeBPlus x) {
+        return getAdjacent(session, store, x, false);
+    }
+
+    /**
+     * Returns the data node before the given one in the leaf chain, or null
+     * at the start of the index
+     */
+    NodeBPlus last(Session session, PersistentStore store, NodeBPlus x) {
+        return getAdjacent(session, store, x, true);
+    }
+
+    /**
+     * Returns the data node after or before the given one. If the node is
+     * no longer in the index, null is returned, or when the index is changed
+     * concurrently, the node that follows the position of the removed node.
+     */
+    private NodeBPlus getAdjacent(Session session, PersistentStore store,
+                                  NodeBPlus x, boolean reversed) {
+
+        if (x == null) {
+            return null;
+        }
+
+        RowBPlus row = x.getRow(store);
+
+        x = row.getNode(position);
+
+        while (true) {
+            NodeBPlus leaf = latchLeaf(store, x);
+
+            if (leaf == null) {
+                return isLatched ? findAdjacent(session, store, row, reversed)
+                                 : null;
+            }
+
+            int       i      = leaf.indexOfKey(x);
+            NodeBPlus result = getLeafKey(store, leaf, reversed ? i
+                                                                : i + 1,
+                                          reversed);
+
+            if (result != leaf) {
+                return result;
+            }
+
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Returns the data node that follows, or precedes if reversed, the
+     * position of a row that has been removed from the index by another
+     * session while it was read.
+     */
+    private NodeBPlus findAdjacent(Session session, PersistentStore store,
+                                   Row row, boolean reversed) {
+
+        boolean useRowId = !isUnique || hasNulls(session, row.getData());
+
+        while (true) {
+            NodeBPlus x = latchRoot(store);
+
+            if (x == null) {
+                return null;
+            }
+
+            while (!x.isLeaf) {
+                x = latchChild(store, x,
+                               findChild(session, store, x, row, useRowId));
+            }
+
+            NodeBPlus result = getLeafKey(store, x,
+                                          findChild(session, store, x, row,
+                                              useRowId), reversed);
+
+            if (result != x) {
+                return result;
+            }
+
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Returns the key at the position of the latched leaf, or the key before
+     * the position if reversed. The key is in the next or last leaf if the
+     * position is at the end or start of the leaf. The leaf is released.
+     * Returns the leaf itself if the last leaf could not be latched without
+     * waiting, in which case the search is repeated.
+     */
+    private NodeBPlus getLeafKey(PersistentStore store, NodeBPlus leaf, int i,
+                                 boolean reversed) {
+
+        NodeBPlus result;
+
+        if (reversed) {
+            if (i > 0) {
+                result = leaf.getKey(store, i - 1);
+            } else {
+                NodeBPlus last = leaf.getLastPage(store);
+
+                if (!tryLatch(last)) {
+                    unlatch(leaf);
+
+                    return leaf;
+                }
+
+                result = last == null ? null
+                                      : last.getKey(store,
+                                                    last.getKeyCount() - 1);
+
+                unlatch(last);
+            }
+        } else {
+            if (i < leaf.getKeyCount()) {
+                result = leaf.getKey(store, i);
+            } else {
+                NodeBPlus next = leaf.getNextPage(store);
+
+                latch(next);
+
+                result = next == null ? null
+                                      : next.getKey(store, 0);
+
+                unlatch(next);
+            }
+        }
+
+        unlatch(leaf);
+
+        return result;
+    }
+
+    /**
+     * Returns the leaf that contains the data node, latched for reading, or
+     * null if the node is no longer in the index. A concurrent split or
+     * merge may move the node to a different leaf after its parent is read,
+     * in which case the parent is read again.
+     */
+    private NodeBPlus latchLeaf(PersistentStore store, NodeBPlus x) {
+
+        while (true) {
+            NodeBPlus leaf = x.getParent(store);
+
+            if (leaf == null) {
+                return null;
+            }
+
+            if (!isLatched) {
+                if (leaf.indexOfKey(x) < 0) {
+                    throw Error.runtimeError(ErrorCode.U_S0500,
+                                             "IndexBPlus");
+                }
+
+                return leaf;
+            }
+
+            leaf.latch(false);
+
+            if (leaf.indexOfKey(x) >= 0) {
+                return leaf;
+            }
+
+            leaf.unlatch(false);
+        }
+    }
+
+    /**
+     * Fills the batch of the iterator with the readable data nodes that
+     * follow the last node read by the iterator, or precede it if reversed.
+     * The nodes are read from one leaf at a time while it is latched, then
+     * checked for visibility. The leaf and the slot of the last node are kept,
+     * so the next batch continues in the same leaf or the adjacent one
+     * without a search, unless the leaf has been changed in between. The
+     * batch is empty at the end of the index.
+     */
+    void readBatch(IndexRowIterator it) {
+
+        PersistentStore store = it.store;
+
+        it.batchCount = 0;
+        it.batchPos   = 0;
+
+        while (it.batchCount == 0) {
+            if (!readLeaf(it)) {
+                return;
+            }
+
+            if (it.session == null) {
+                continue;
+            }
+
+            int count = 0;
+
+            for (int i = 0; i < it.batchCount; i++) {
+                NodeBPlus x   = it.batch[i];
+                Row       row = x.getRow(store);
+
+                if (it.session.database.txManager.canRead(
+                        it.session, store, row,
+                        TransactionManager.ACTION_READ, null)) {
+                    it.batch[count++] = x;
+                }
+            }
+
+            for (int i = count; i < it.batchCount; i++) {
+                it.batch[i] = null;
             }
 
-            Row row = x.getRow(store);
-
-            if (session.database.txManager.canRead(
-                    session, store, row, TransactionManager.ACTION_READ,
-                    null)) {
-                return x;
-            }
+            it.batchCount = count;
         }
     }
 
-    NodeBPlus last(Session session, PersistentStore store, NodeBPlus x,
-                 int distinctCount) {
+    /**
+     * Reads into the batch the data nodes of the current leaf after the last
+     * node read, or the nodes of the adjacent leaf if the last node is at the
+     * end of its leaf. Returns false at the end of the index. The batch may
+     * be empty when a latch could not be acquired and the read is repeated.
+     */
+    private boolean readLeaf(IndexRowIterator it) {
 
-        if (x == null) {
-            return null;
-        }
+        PersistentStore store    = it.store;
+        boolean         reversed = it.reversed;
+        NodeBPlus       x        = it.lastRead;
+        NodeBPlus       leaf     = it.leaf;
+        int             slot     = it.slot;
 
-        if (distinctCount != 0) {
-            return findDistinctNode(session, store, x, distinctCount, true);
+        if (it.batch == null) {
+            it.batch = new NodeBPlus[fanout];
         }
 
-        while (true) {
-            x = last(store, x);
+        if (leaf != null && !leaf.isMemory()) {
 
-            if (x == null) {
-                return x;
-            }
+            // the page may have been released from the cache since
+            x    = x.getRow(store).getNode(position);
+            leaf = x.getParent(store);
+        }
 
-            if (session == null) {
-                return x;
-            }
+        if (leaf != null) {
+            latch(leaf);
 
-            Row row = x.getRow(store);
+            if (slot >= leaf.getKeyCount() || !leaf.hasKey(x, slot)) {
+                unlatch(leaf);
 
-            if (session.database.txManager.canRead(
-                    session, store, row, TransactionManager.ACTION_READ,
-                    null)) {
-                return x;
+                leaf = null;
             }
         }
-    }
 
-    NodeBPlus next(PersistentStore store, NodeBPlus x) {
+        if (leaf == null) {
+            RowBPlus row = x.getRow(store);
 
-        if (x == null) {
-            return null;
-        }
-
-        RowBPlus row = x.getRow(store);
+            x    = row.getNode(position);
+            leaf = latchLeaf(store, x);
 
-        x = row.getNode(position);
+            if (leaf == null) {
+                x = isLatched ? findAdjacent(it.session, store, row, reversed)
+                              : null;
 
-        NodeBPlus temp = x.getParent(store);
+                if (x == null) {
+                    return false;
+                }
 
-        if (temp != null) {
-            int i = ArrayUtil.find(temp.getKeys(), x);
-            if (i < 0) {
-                System.out.println("wrong parent!");
-                return x;
-                // error
-            }
+                // the next batch starts from the node after the removed one
+                it.batch[it.batchCount++] = x;
+                it.lastRead               = x;
+                it.leaf                   = null;
 
-            if (i < temp.getKeys().length - 1) {
-                return temp.getKeys()[i + 1];
+                return true;
             }
 
-            temp = temp.getNextPage();
-            if (temp != null) {
-                return temp.getKeys()[0];
-            } else {
-                return null;
-            }
+            slot = leaf.indexOfKey(x);
         }
 
-        return x;
-    }
+        int count = leaf.getKeyCount();
 
-    NodeBPlus last(PersistentStore store, NodeBPlus x) {
+        if (reversed ? slot == 0
+                     : slot == count - 1) {
+            NodeBPlus adjacent = reversed ? leaf.getLastPage(store)
+                                          : leaf.getNextPage(store);
 
-        if (x == null) {
-            return null;
-        }
+            if (adjacent == null) {
+                unlatch(leaf);
 
-        RowBPlus row = x.getRow(store);
+                return false;
+            }
 
-        x = row.getNode(position);
+            if (reversed) {
+                if (!tryLatch(adjacent)) {
+                    unlatch(leaf);
+                    Thread.yield();
 
-        NodeBPlus temp = x.getParent(store);
+                    it.leaf = null;
 
-        if (temp != null) {
-            int i = ArrayUtil.find(temp.getKeys(), x);
-            if (i < 0) {
-                System.out.println("wrong parent!");
-                return x;
-                // error
+                    return true;
+                }
+            } else {
+                latch(adjacent);
             }
 
-            if (i > 0) {
-                return temp.getKeys()[i - 1];
+            unlatch(leaf);
+
+            leaf  = adjacent;
+            count = leaf.getKeyCount();
+            slot  = reversed ? count
+                             : -1;
+        }
+
+        if (it.batch.length < count) {
+            it.batch = new NodeBPlus[count];
+        }
+
+        if (reversed) {
+            for (int i = slot - 1; i >= 0; i--) {
+                it.batch[it.batchCount++] = leaf.getKey(store, i);
             }
 
-            temp = temp.getLastPage();
-            if (temp != null) {
-                return temp.getKeys()[temp.getKeys().length-1];
-            } else {
-                return null;
+            slot = 0;
+        } else {
+            for (int i = slot + 1; i < count; i++) {
+                it.batch[it.batchCount++] = leaf.getKey(store, i);
             }
+
+            slot = count - 1;
         }
-        return x;
+
+        if (it.batchCount == 0) {
+            unlatch(leaf);
+
+            return false;
+        }
+
+        it.lastRead = it.batch[it.batchCount - 1];
+        it.leaf     = leaf;
+        it.slot     = slot;
+
+        unlatch(leaf);
+
+        return true;
     }
 
     boolean isEqualReadable(Session session, PersistentStore store,
@@ -2018,7 +2949,7 @@ public class IndexBPlus implements Index {
         data = node.getData(store);
 
         while (true) {
-            c = last(store, c);
+            c = last(session, store, c);
 
             if (c == null) {
                 break;
@@ -2092,14 +3023,8 @@ public class IndexBPlus implements Index {
         readLock.lock();
 
         try {
-            NodeBPlus x          = getAccessor(store);
-            NodeBPlus n          = null;
-            NodeBPlus key        = null;
-            NodeBPlus result     = null;
-            Row     currentRow = null;
-            Row     nextRow    = null;
-            int     currentCompare = 0;
-            int     nextCompare    = 0;
+            NodeBPlus result;
+            Row       currentRow;
 
             if (compareType != OpTypes.EQUAL
                     && compareType != OpTypes.IS_NULL) {
@@ -2111,219 +3036,10 @@ public class IndexBPlus implements Index {
                 }
             }
 
-            while (x != null && !x.isLeaf) {
-                currentCompare = 0;
-                nextCompare    = 0;
-
-                nextRow = x.getKeys()[0].getRow(store);
-
-                if (fieldCount > 0) {
-                    nextCompare = compareRowNonUnique(session, nextRow.getData(),
-                            rowdata, rowColMap, fieldCount);
-                }
-
-                for (int j=0; j<x.getKeys().length; j++) {
-
-                    key = x.getKeys()[j];
-                    currentRow = nextRow;
-                    currentCompare = nextCompare;
-
-                    if (j == x.getKeys().length-1) {
-
-                        nextRow = null;
-
-                    }
-                    else {
-
-                        nextRow = x.getKeys()[j + 1].getRow(store);
-                        if (fieldCount > 0) {
-                            nextCompare = compareRowNonUnique(session, nextRow.getData(),
-                                    rowdata, rowColMap, fieldCount);
-                        }
-                    }
-
-                    if (currentCompare == 0 ) {
-                        switch (compareType) {
-
-                            case OpTypes.IS_NULL :
-                            case OpTypes.EQUAL : {
-                                result = key;
-
-                                if (reversed) {
-                                    n = x.getPointers()[j+1];
-                                } else {
-                                    n = x.getPointers()[j];
-                                }
-
-                                break;
-                            }
-                            case OpTypes.NOT :
-                            case OpTypes.GREATER : {
-                                currentCompare = compareObject(session, currentRow.getData(),
-                                        rowdata, rowColMap, fieldCount,
-                                        compareType);
-
-                                if (currentCompare <= 0) {
-                                    n = x.getPointers()[j+1];
-                                } else {
-                                    result = key;
-                                    n = x.getPointers()[j];
-                                }
-
-                                break;
-                            }
-                            case OpTypes.GREATER_EQUAL_PRE :
-                            case OpTypes.GREATER_EQUAL : {
-                                currentCompare = compareObject(session, currentRow.getData(),
-                                        rowdata, rowColMap, fieldCount,
-                                        compareType);
-
-                                if (currentCompare < 0) {
-                                    n = x.getPointers()[j+1];
-                                } else {
-                                    result = key;
-                                    n = x.getPointers()[j];
-                                }
-
-                                break;
-                            }
-                            case OpTypes.SMALLER : {
-                                currentCompare = compareObject(session, currentRow.getData(),
-                                        rowdata, rowColMap, fieldCount,
-                                        compareType);
-
-                                if (currentCompare < 0) {
-                                    result = key;
-                                    n = x.getPointers()[j+1];
-                                } else {
-                                    n = x.getPointers()[j];
-                                }
-
-                                break;
-                            }
-                            case OpTypes.SMALLER_EQUAL : {
-                                currentCompare = compareObject(session, currentRow.getData(),
-                                        rowdata, rowColMap, fieldCount,
-                                        compareType);
-
-                                if (compareType <= 0) {
-                                    result = key;
-                                    n = x.getPointers()[j+1];
-                                } else {
-                                    n = x.getPointers()[j];
-                                }
-
-                                break;
-                            }
-                            default :
-                                Error.runtimeError(ErrorCode.U_S0500, "Index");
-                        }
-
-                        break;
-
-                    } else if (currentCompare < 0 ) {
-                        if (nextRow!=null && nextCompare > 0) {
-                            n = x.getPointers()[j+1];
-                            break;
-
-                        } else if (nextRow == null) {
-                            n = x.getPointers()[j+1];
-                            break;
-
-                        }
-                    }
-                    else if (currentCompare > 0) {
-                        n = x.getPointers()[j];
-                        break;
-                    }
-
-
-                }
-
-                if (n == null) {
-                    break;
-                }
-
-                x = n;
-            }
-
-            if (x == null) {
-                return null;
-            }
-
-            // in leaf node
-            for (int j=0; j<x.getKeys().length; j++) {
-
-                key = x.getKeys()[j];
-                currentRow = x.getKeys()[j].getRow(store);
-                if (fieldCount > 0) {
-                    currentCompare = compareRowNonUnique(session, currentRow.getData(),
-                            rowdata, rowColMap, fieldCount);
-                }
-
-                if (currentCompare == 0) {
-                    switch (compareType) {
-
-                        case OpTypes.IS_NULL:
-                        case OpTypes.EQUAL: {
-                            result = key;
-
-                            break;
-                        }
-                        case OpTypes.NOT:
-                        case OpTypes.GREATER: {
-                            currentCompare = compareObject(session, currentRow.getData(),
-                                    rowdata, rowColMap, fieldCount,
-                                    compareType);
-
-                            if (currentCompare > 0) {
-                                result = key;
-                            }
-
-                            break;
-                        }
-                        case OpTypes.GREATER_EQUAL_PRE:
-                        case OpTypes.GREATER_EQUAL: {
-                            currentCompare = compareObject(session, currentRow.getData(),
-                                    rowdata, rowColMap, fieldCount,
-                                    compareType);
-
-                            if (currentCompare >= 0) {
-                                result = key;
-                            }
-
-                            break;
-                        }
-                        case OpTypes.SMALLER: {
-                            currentCompare = compareObject(session, currentRow.getData(),
-                                    rowdata, rowColMap, fieldCount,
-                                    compareType);
-
-                            if (currentCompare < 0) {
-                                result = key;
-                            }
-
-                            break;
-                        }
-                        case OpTypes.SMALLER_EQUAL: {
-                            currentCompare = compareObject(session, currentRow.getData(),
-                                    rowdata, rowColMap, fieldCount,
-                                    compareType);
-
-                            if (compareType <= 0) {
-                                result = key;
-                            }
-
-                            break;
-                        }
-                        default:
-                            Error.runtimeError(ErrorCode.U_S0500, "Index");
-                    }
-                }
-            }
-
+            result = findBoundary(session, store, rowdata, rowColMap,
+                                  fieldCount, compareType, reversed, false);
 
-                    // MVCC 190
+            // MVCC 190
             if (session == null) {
                 return result;
             }
@@ -2337,8 +3053,8 @@ public class IndexBPlus implements Index {
                     break;
                 }
 
-                result = reversed ? last(store, result)
-                                  : next(store, result);
+                result = reversed ? last(session, store, result)
+                                  : next(session, store, result);
 
                 if (result == null) {
                     break;
@@ -2378,171 +3094,272 @@ public class IndexBPlus implements Index {
 
         readLock.lock();
 
-
         try {
-            NodeBPlus x          = getAccessor(store);
-            NodeBPlus n          = null;
-            NodeBPlus key        = null;
-            NodeBPlus result     = null;
-            Object[] rowData    = node.getData(store);
-            Row     currentRow = null;
-            Row     nextRow    = null;
-            int     currentCompare = 0;
-            int     nextCompare    = 0;
+            Object[]  rowData = node.getData(store);
+            NodeBPlus result  = findBoundary(session, store, rowData,
+                                             colIndex, fieldCount, 0,
+                                             reversed, true);
 
-            while (x != null && !x.isLeaf) {
-                currentCompare = 0;
-                nextCompare    = 0;
+            // MVCC 190
+            if (session == null) {
+                return result;
+            }
 
-                nextRow = x.getKeys()[0].getRow(store);
+            while (result != null) {
+                Row currentRow = result.getRow(store);
 
-                if (fieldCount > 0) {
-                    nextCompare = compareRowNonUnique(session, currentRow.getData(),
-                            rowData, colIndex, fieldCount);
+                if (session.database.txManager.canRead(
+                        session, store, currentRow,
+                        TransactionManager.ACTION_READ, colIndex)) {
+                    break;
                 }
 
-                for (int j=0; j<x.getKeys().length-1; j++) {
+                result = reversed ? last(session, store, result)
+                                  : next(session, store, result);
+            }
+
+            return result;
+        } finally {
+            readLock.unlock();
+        }
+    }
 
-                    key = x.getKeys()[j];
-                    currentRow = nextRow;
-                    currentCompare = nextCompare;
+    /**
+     * Returns the first matching node, or the last one if reversed. The nodes
+     * of the index are divided by the search condition into three ranges in
+     * index order: before the match, matching and after the match.
+     */
+    private NodeBPlus findBoundary(Session session, PersistentStore store,
+                                   Object[] rowdata, int[] rowColMap,
+                                   int fieldCount, int compareType,
+                                   boolean reversed, boolean distinct) {
 
-                    nextRow = x.getKeys()[j+1].getRow(store);
-                    if (fieldCount > 0) {
-                        nextCompare = compareRowNonUnique(session, nextRow.getData(),
-                                rowData, colIndex, fieldCount);
-                    }
+        while (true) {
+            NodeBPlus x = latchRoot(store);
 
-                    if (currentCompare == 0 ) {
+            if (x == null) {
+                return null;
+            }
 
-                        if (reversed) {
-                            n = x.getPointers()[j+1];
-                        } else {
-                            n = x.getPointers()[j];
-                        }
+            NodeBPlus result = findBoundary(session, store, x, rowdata,
+                                            rowColMap, fieldCount,
+                                            compareType, reversed, distinct);
 
-                        break;
+            if (result != x) {
+                return result;
+            }
 
-                    }
-                    else if (currentCompare < 0 ) {
+            Thread.yield();
+        }
+    }
 
-                        if (reversed){
-                            result = key;
-                        }
+    /**
+     * Descends from the latched root node. Returns the root node itself if
+     * the sibling leaf could not be latched and the search is repeated.
+     */
+    private NodeBPlus findBoundary(Session session, PersistentStore store,
+                                   NodeBPlus x, Object[] rowdata,
+                                   int[] rowColMap, int fieldCount,
+                                   int compareType, boolean reversed,
+                                   boolean distinct) {
+
+        NodeBPlus root = x;
+
+        // count of the keys in the before range, or else in the before
+        // and matching ranges when reversed
+        int limit = reversed ? 1
+                             : 0;
+        int i;
 
-                        if (nextCompare > 0) {
-                            n = x.getPointers()[j+1];
-                            break;
-                        }
-                    }
-                    else if (currentCompare > 0) {
+        while (true) {
+            int high = x.getKeyCount();
 
-                        if (!reversed) {
-                            result = key;
-                        }
+            i = 0;
 
-                        n = x.getPointers()[j];
+            if (x.isLeaf) {
+                while (i < high) {
+                    int mid = (i + high) >>> 1;
+                    Object[] currentData =
+                        x.getKey(store, mid).getRow(store).getData();
 
-                        break;
+                    if (compareForFind(session, currentData, colIndex,
+                                       rowdata, rowColMap, fieldCount,
+                                       compareType, reversed,
+                                       distinct) >= limit) {
+                        high = mid;
+                    } else {
+                        i = mid + 1;
                     }
+                }
 
+                break;
+            }
 
-                }
+            i = findBoundaryKey(session, getKeyValues(store, x), rowdata,
+                                rowColMap, fieldCount, compareType, reversed,
+                                distinct, limit);
 
-                if (n == null) {
-                    break;
-                }
+            x = latchChild(store, x, i);
+        }
 
-                x = n;
-            }
+        NodeBPlus result = getLeafKey(store, x, i, reversed);
 
+        if (result == x) {
+            return root;
+        }
 
-            // in leaf node
-            if (x != null) {
+        if (result != null) {
+            Object[] currentData = result.getRow(store).getData();
 
-                currentCompare = 0;
+            if (compareForFind(session, currentData, colIndex, rowdata,
+                               rowColMap, fieldCount, compareType, reversed,
+                               distinct) != 0) {
+                result = null;
+            }
+        }
 
-                if (reversed) {
+        return result;
+    }
 
-                    for (int j = x.getKeys().length - 1; j >= 0; j--) {
+    /**
+     * Returns the count of the keys of an interior node that compare below
+     * the limit with the search condition, which is the index of the child
+     * that contains the boundary.
+     */
+    int findBoundaryKey(Session session, NodeBPlus.KeyValues keys,
+                        Object[] rowdata, int[] rowColMap, int fieldCount,
+                        int compareType, boolean reversed, boolean distinct,
+                        int limit) {
 
-                        key = x.getKeys()[j];
-                        currentRow = key.getRow(store);
+        int i    = 0;
+        int high = keys.ids.length;
 
-                        if (fieldCount > 0) {
-                            currentCompare = compareRowNonUnique(session, currentRow.getData(),
-                                    rowData, colIndex, fieldCount);
-                        }
+        while (i < high) {
+            int mid = (i + high) >>> 1;
 
-                        if (currentCompare < 0) {
-                            result = key;
-                            break;
-                        }
+            if (compareForFind(session, keys.data[mid], defaultColMap,
+                               rowdata, rowColMap, fieldCount, compareType,
+                               reversed, distinct) >= limit) {
+                high = mid;
+            } else {
+                i = mid + 1;
+            }
+        }
 
-                    }
-                } else {
+        return i;
+    }
 
-                    for (int j = 0; j < x.getKeys().length; j++) {
+    /**
+     * Returns -1, 0 or 1 when the row data is before, within or after the
+     * range that is searched. The current data is a row of the table, with
+     * colIndex as the column map, or the key values of an interior node,
+     * with defaultColMap.
+     */
+    private int compareForFind(Session session, Object[] currentData,
+                               int[] currentColMap, Object[] rowdata,
+                               int[] rowColMap, int fieldCount,
+                               int compareType, boolean reversed,
+                               boolean distinct) {
 
-                        key = x.getKeys()[j];
-                        currentRow = key.getRow(store);
+        int i = 0;
 
-                        if (fieldCount > 0) {
-                            currentCompare = compareRowNonUnique(session, currentRow.getData(),
-                                    rowData, colIndex, fieldCount);
-                        }
+        for (int j = 0; j < fieldCount; j++) {
+            i = colTypes[j].compare(session, currentData[currentColMap[j]],
+                                    rowdata[rowColMap[j]]);
 
-                        if (currentCompare > 0) {
-                            result = key;
-                            break;
-                        }
-                    }
-                }
+            if (i != 0) {
+                break;
             }
+        }
 
-            // MVCC 190
-            if (session == null) {
-                return result;
+        if (distinct) {
+            if (reversed) {
+                return i < 0 ? 0
+                             : 1;
             }
 
-            while (result != null) {
-                currentRow = result.getRow(store);
+            return i <= 0 ? -1
+                          : 0;
+        }
 
-                if (session.database.txManager.canRead(
-                        session, store, currentRow,
-                        TransactionManager.ACTION_READ, colIndex)) {
-                    break;
-                }
+        if (i != 0) {
+            return i < 0 ? -1
+                         : 1;
+        }
 
-                result = reversed ? last(store, result)
-                                  : next(store, result);
-            }
+        switch (compareType) {
 
-            return result;
-        } finally {
-            readLock.unlock();
+            case OpTypes.IS_NULL :
+            case OpTypes.EQUAL :
+                return 0;
+
+            case OpTypes.NOT :
+            case OpTypes.GREATER :
+                i = colTypes[fieldCount].compare(
+                    session, currentData[currentColMap[fieldCount]],
+                    rowdata[rowColMap[fieldCount]], compareType);
+
+                return i <= 0 ? -1
+                              : 0;
+
+            case OpTypes.GREATER_EQUAL_PRE :
+            case OpTypes.GREATER_EQUAL :
+                i = colTypes[fieldCount].compare(
+                    session, currentData[currentColMap[fieldCount]],
+                    rowdata[rowColMap[fieldCount]], compareType);
+
+                return i < 0 ? -1
+                             : 0;
+
+            case OpTypes.SMALLER :
+                i = colTypes[fieldCount].compare(
+                    session, currentData[currentColMap[fieldCount]],
+                    rowdata[rowColMap[fieldCount]], compareType);
+
+                return i < 0 ? 0
+                             : 1;
+
+            case OpTypes.SMALLER_EQUAL :
+                i = colTypes[fieldCount].compare(
+                    session, currentData[currentColMap[fieldCount]],
+                    rowdata[rowColMap[fieldCount]], compareType);
+
+                return i <= 0 ? 0
+                              : 1;
+
+            default :
+                throw Error.runtimeError(ErrorCode.U_S0500, "Index");
         }
     }
 
+    public int searchCompare(Row currentRow, Session session, Row row) {
 
-    public int searchCompare(Row currentRow, Session session, Row row){
-        final Object[] rowData       = row.getData();
-        boolean        compareRowId  = !isUnique || hasNulls(session, rowData);
-        int            compare       = 0;
+        final Object[] rowData      = row.getData();
+        boolean        compareRowId = !isUnique || hasNulls(session, rowData);
+        int            compare;
 
-        compare = compareRowForInsertOrDelete(session, row,
-                currentRow,
-                compareRowId, 0);
+        if (isSimple) {
+            compare = colTypes[0].compare(session, rowData[colIndex[0]],
+                                          currentRow.getData()[colIndex[0]]);
+
+            if (compare == 0 && compareRowId) {
+                compare = compareRowForInsertOrDelete(session, row,
+                                                      currentRow,
+                                                      compareRowId, 1);
+            }
+        } else {
+            compare = compareRowForInsertOrDelete(session, row, currentRow,
+                                                  compareRowId, 0);
+        }
 
         if (compare == 0) {
             if (isConstraint) {
                 Constraint c =
-                        ((Table) table).getUniqueConstraintForIndex(this);
+                    ((Table) table).getUniqueConstraintForIndex(this);
 
                 throw c.getException(row.getData());
             } else {
-                throw Error.error(ErrorCode.X_23505,
-                        name.statementName);
+                throw Error.error(ErrorCode.X_23505, name.statementName);
             }
         }
 
@@ -2581,6 +3398,19 @@ public class IndexBPlus implements Index {
         boolean               single;
         boolean               reversed;
 
+        // data nodes read from the leaf chain that follow nextnode
+        NodeBPlus[] batch;
+        int         batchCount;
+        int         batchPos;
+
+        // the last node read into the batch, its leaf and its slot
+        NodeBPlus lastRead;
+        NodeBPlus leaf;
+        int       slot;
+
+        // the node where the next merge join search starts
+        NodeBPlus startNode;
+
         /**
          * When session == null, rows from all sessions are returned
          */
@@ -2601,6 +3431,7 @@ public class IndexBPlus implements Index {
             }
 
             nextnode = node;
+            lastRead = node;
         }
 
         public boolean hasNext() {
@@ -2619,17 +3450,24 @@ public class IndexBPlus implements Index {
 
             if (single) {
                 nextnode = null;
+            } else if (batchPos < batchCount) {
+                nextnode = batch[batchPos++];
             } else {
                 index.readLock.lock();
                 store.writeLock();
 
                 try {
-                    if (reversed) {
-                        nextnode = index.last(session, store, nextnode,
-                                              distinctCount);
+                    if (distinctCount != 0) {
+                        nextnode = reversed
+                                   ? index.last(session, store, nextnode,
+                                                distinctCount)
+                                   : index.next(session, store, nextnode,
+                                                distinctCount);
                     } else {
-                        nextnode = index.next(session, store, nextnode,
-                                              distinctCount);
+                        index.readBatch(this);
+
+                        nextnode = batchPos < batchCount ? batch[batchPos++]
+                                                         : null;
                     }
                 } finally {
                     store.writeUnlock();
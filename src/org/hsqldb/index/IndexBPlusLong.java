@@ -0,0 +1,307 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package org.hsqldb.index;
+
+import org.hsqldb.HsqlNameManager.HsqlName;
+import org.hsqldb.OpTypes;
+import org.hsqldb.Row;
+import org.hsqldb.Session;
+import org.hsqldb.TableBase;
+import org.hsqldb.error.Error;
+import org.hsqldb.error.ErrorCode;
+import org.hsqldb.persist.PersistentStore;
+import org.hsqldb.types.Type;
+import org.hsqldb.types.Types;
+
+/**
+ * Implementation of a B+ tree index on a single TINYINT, SMALLINT, INTEGER
+ * or BIGINT column in ascending order.<p>
+ *
+ * The interior nodes keep the key values in an array of longs. A descent
+ * compares the search value with these as primitives, without the Type of
+ * the column. A node that has a null key uses the general key values of
+ * IndexBPlus instead. The leaves are the same as in IndexBPlus.
+ *
+ * @version 2.3.0
+ * @since 2.3.0
+ */
+public class IndexBPlusLong extends IndexBPlus {
+
+    final boolean isBigint;
+
+    /**
+     * Constructor declaration
+     *
+     * @param name HsqlName of the index
+     * @param id persistnece id
+     * @param table table of the index
+     * @param columns array of column indexes
+     * @param descending boolean[]
+     * @param nullsLast boolean[]
+     * @param colTypes array of column types
+     * @param pk if index is for a primary key
+     * @param unique is this a unique index
+     * @param constraint does this index belonging to a constraint
+     * @param forward is this an auto-index for an FK that refers to a table
+     *   defined after this table
+     * @param fanout maximum number of children of a node
+     */
+    public IndexBPlusLong(HsqlName name, long id, TableBase table,
+                          int[] columns, boolean[] descending,
+                          boolean[] nullsLast, Type[] colTypes, boolean pk,
+                          boolean unique, boolean constraint,
+                          boolean forward, int fanout) {
+
+        super(name, id, table, columns, descending, nullsLast, colTypes, pk,
+              unique, constraint, forward, fanout);
+
+        if (!isLongKey(columns, descending, nullsLast, colTypes)) {
+            throw Error.runtimeError(ErrorCode.U_S0500, "IndexBPlusLong");
+        }
+
+        isBigint = colTypes[0].typeCode == Types.SQL_BIGINT;
+    }
+
+    /**
+     * Returns true if an index on the columns can use this class
+     */
+    public static boolean isLongKey(int[] columns, boolean[] descending,
+                                    boolean[] nullsLast, Type[] colTypes) {
+
+        if (columns.length != 1) {
+            return false;
+        }
+
+        if ((descending != null && descending[0])
+                || (nullsLast != null && nullsLast[0])) {
+            return false;
+        }
+
+        switch (colTypes[0].typeCode) {
+
+            case Types.TINYINT :
+            case Types.SQL_SMALLINT :
+            case Types.SQL_INTEGER :
+            case Types.SQL_BIGINT :
+                return true;
+
+            default :
+                return false;
+        }
+    }
+
+    NodeBPlus.KeyValues getKeyValues(PersistentStore store, NodeBPlus node) {
+
+        NodeBPlus.KeyValues keys = node.keyValues;
+
+        if (keys != null) {
+            return keys;
+        }
+
+        int    count = node.getKeyCount();
+        long[] longs = new long[count];
+        long[] ids   = new long[count];
+
+        for (int i = 0; i < count; i++) {
+            Row    row   = node.getKey(store, i).getRow(store);
+            Object value = row.getData()[colIndex[0]];
+
+            if (value == null) {
+                return super.getKeyValues(store, node);
+            }
+
+            longs[i] = ((Number) value).longValue();
+            ids[i]   = row.getPos();
+        }
+
+        keys           = new NodeBPlus.KeyValues(null, longs, ids);
+        node.keyValues = keys;
+
+        return keys;
+    }
+
+    int findKey(Session session, NodeBPlus.KeyValues keys, Row row,
+                boolean useRowId) {
+
+        if (keys.longs == null) {
+            return super.findKey(session, keys, row, useRowId);
+        }
+
+        Object value = row.getData()[colIndex[0]];
+
+        // null is before all the keys
+        if (value == null) {
+            return 0;
+        }
+
+        long[] longs = keys.longs;
+        long   v     = ((Number) value).longValue();
+        long   rowId = row.getPos();
+        int    low   = 0;
+        int    high  = longs.length;
+
+        while (low < high) {
+            int  mid = (low + high) >>> 1;
+            long key = longs[mid];
+
+            if (v < key || (v == key && useRowId && rowId < keys.ids[mid])) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+
+        return low;
+    }
+
+    int findBoundaryKey(Session session, NodeBPlus.KeyValues keys,
+                        Object[] rowdata, int[] rowColMap, int fieldCount,
+                        int compareType, boolean reversed, boolean distinct,
+                        int limit) {
+
+        if (keys.longs == null) {
+            return super.findBoundaryKey(session, keys, rowdata, rowColMap,
+                                         fieldCount, compareType, reversed,
+                                         distinct, limit);
+        }
+
+        long[] longs = keys.longs;
+        int    i     = 0;
+        int    high  = longs.length;
+
+        while (i < high) {
+            int mid = (i + high) >>> 1;
+
+            if (compareForFind(session, longs[mid], rowdata, rowColMap,
+                               fieldCount, compareType, reversed,
+                               distinct) >= limit) {
+                high = mid;
+            } else {
+                i = mid + 1;
+            }
+        }
+
+        return i;
+    }
+
+    /**
+     * As IndexBPlus.compareForFind for a key value that is not null
+     */
+    private int compareForFind(Session session, long key, Object[] rowdata,
+                               int[] rowColMap, int fieldCount,
+                               int compareType, boolean reversed,
+                               boolean distinct) {
+
+        int i = 0;
+
+        if (fieldCount > 0) {
+            i = compareKey(session, key, rowdata[rowColMap[0]]);
+        }
+
+        if (distinct) {
+            if (reversed) {
+                return i < 0 ? 0
+                             : 1;
+            }
+
+            return i <= 0 ? -1
+                          : 0;
+        }
+
+        if (i != 0) {
+            return i < 0 ? -1
+                         : 1;
+        }
+
+        switch (compareType) {
+
+            case OpTypes.IS_NULL :
+            case OpTypes.EQUAL :
+                return 0;
+
+            case OpTypes.NOT :
+            case OpTypes.GREATER :
+                i = compareKey(session, key, rowdata[rowColMap[fieldCount]]);
+
+                return i <= 0 ? -1
+                              : 0;
+
+            case OpTypes.GREATER_EQUAL_PRE :
+            case OpTypes.GREATER_EQUAL :
+                i = compareKey(session, key, rowdata[rowColMap[fieldCount]]);
+
+                return i < 0 ? -1
+                             : 0;
+
+            case OpTypes.SMALLER :
+                i = compareKey(session, key, rowdata[rowColMap[fieldCount]]);
+
+                return i < 0 ? 0
+                             : 1;
+
+            case OpTypes.SMALLER_EQUAL :
+                i = compareKey(session, key, rowdata[rowColMap[fieldCount]]);
+
+                return i <= 0 ? 0
+                              : 1;
+
+            default :
+                throw Error.runtimeError(ErrorCode.U_S0500, "Index");
+        }
+    }
+
+    /**
+     * Compares a key value with a search value. A null search value is
+     * before all keys. A value of another class is compared by the Type of
+     * the column.
+     */
+    private int compareKey(Session session, long key, Object value) {
+
+        if (value instanceof Integer || value instanceof Long) {
+            long v = ((Number) value).longValue();
+
+            return key < v ? -1
+                           : key == v ? 0
+                                      : 1;
+        }
+
+        if (value == null) {
+            return 1;
+        }
+
+        Object keyObject = isBigint ? (Object) Long.valueOf(key)
+                                    : (Object) Integer.valueOf((int) key);
+
+        return colTypes[0].compare(session, keyObject, value);
+    }
+}
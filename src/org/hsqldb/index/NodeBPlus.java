@@ -70,6 +70,8 @@
 
 package org.hsqldb.index;
 
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
 import org.hsqldb.Row;
 import org.hsqldb.RowBPlus;
 import org.hsqldb.RowBPlusDisk;
@@ -80,8 +82,6 @@ import org.hsqldb.persist.PersistentStore;
 import org.hsqldb.rowio.RowOutputInterface;
 import org.hsqldb.rowio.RowInputInterface;
 
-import javax.xml.soap.Node;
-
 // fredt@users 20020221 - patch 513005 by sqlbob@users (RMP)
 // fredt@users 20020920 - path 1.7.1 - refactoring to cut mamory footprint
 // fredt@users 20021205 - path 1.7.2
@@ -109,24 +109,37 @@ public class NodeBPlus implements CachedObject {
     public boolean   isLeaf;
     public boolean   isData;        // Note: data node is a corresponding node to a single row
                                     // in oder to organize the data.
-    public int       nodeSize = 3;
     public NodeBPlus   nNext;    // node of next index (nNext==null || nNext.iId=iId+1)
 
     //
     protected NodeBPlus   nParent  = null;
 
-    protected NodeBPlus[] keys     = new NodeBPlus[]{};
-    protected NodeBPlus[] pointers = new NodeBPlus[]{};
+    // keys and pointers are allocated once with room for one key more than
+    // the maximum, which is the state of a node just before it is split
+    protected NodeBPlus[] keys     = emptyArray;
+    protected NodeBPlus[] pointers = emptyArray;
+    protected int         keyCount;
     protected NodeBPlus nextPage   = null;    // next leaf node
     protected NodeBPlus lastPage   = null;    // last leaf node
 
     protected final Row row;
 
-    NodeBPlus() {
+    // latch of a memory leaf or interior node, null for other nodes
+    final ReentrantReadWriteLock latch;
+
+    // indexed column values of the keys of an interior node, built when the
+    // node is searched and cleared when its keys are changed
+    KeyValues keyValues;
+
+    static final NodeBPlus[] emptyArray = new NodeBPlus[]{};
+
+    NodeBPlus(int fanout) {
         // default new created leaf node
-        row = null;
+        row    = null;
         isLeaf = true;
         isData = false;
+        keys   = new NodeBPlus[fanout];
+        latch  = new ReentrantReadWriteLock();
     }
 
     public NodeBPlus(Row r) {
@@ -134,27 +147,104 @@ public class NodeBPlus implements CachedObject {
         row = r;
         isLeaf = false;
         isData = true;
+        latch  = null;
     }
 
-    public NodeBPlus(boolean isData, boolean isLeaf){
-        // new created interior node
-        this.row    = null;
+    NodeBPlus(boolean isLeaf) {
+        // page node without key and pointer arrays
+        row         = null;
         this.isLeaf = isLeaf;
-        this.isData = isData;
+        isData      = false;
+        latch       = null;
+    }
+
+    NodeBPlus(boolean isData, boolean isLeaf, int fanout) {
+        // new created interior node
+        this.row      = null;
+        this.isLeaf   = isLeaf;
+        this.isData   = isData;
+        this.keys     = new NodeBPlus[fanout];
+        this.pointers = new NodeBPlus[fanout + 1];
+        this.latch    = new ReentrantReadWriteLock();
+    }
+
+    /**
+     * Latches a memory leaf or interior node, shared for reading or
+     * exclusive for a change. Pages and data nodes have no latch.
+     */
+    void latch(boolean exclusive) {
+
+        if (latch != null) {
+            if (exclusive) {
+                latch.writeLock().lock();
+            } else {
+                latch.readLock().lock();
+            }
+        }
     }
 
-    public NodeBPlus newInteriorNode(){
-        return new NodeBPlus(false, false);
+    /**
+     * Latches the node if this is possible without waiting
+     */
+    boolean tryLatch(boolean exclusive) {
+
+        if (latch == null) {
+            return true;
+        }
+
+        return exclusive ? latch.writeLock().tryLock()
+                         : latch.readLock().tryLock();
+    }
+
+    void unlatch(boolean exclusive) {
+
+        if (latch != null) {
+            if (exclusive) {
+                latch.writeLock().unlock();
+            } else {
+                latch.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns a new leaf of the same capacity as this node
+     */
+    public NodeBPlus newLeafNode(PersistentStore store) {
+        return new NodeBPlus(keys.length);
+    }
+
+    /**
+     * Returns a new interior node of the same capacity as this node
+     */
+    public NodeBPlus newInteriorNode(PersistentStore store) {
+        return new NodeBPlus(false, false, keys.length);
     }
 
     public void delete() {
-        ArrayUtil.clearArray(ArrayUtil.CLASS_CODE_OBJECT, keys, 0, keys.length);
-        ArrayUtil.clearArray(ArrayUtil.CLASS_CODE_OBJECT, pointers, 0, pointers.length);
+
+        keyValues = null;
+
+        ArrayUtil.clearArray(ArrayUtil.CLASS_CODE_OBJECT, keys, 0, keyCount);
+
+        if (pointers.length > 0) {
+            ArrayUtil.clearArray(ArrayUtil.CLASS_CODE_OBJECT, pointers, 0,
+                                 keyCount + 1);
+        }
+
+        keyCount = 0;
         nextPage = null;
         lastPage = null;
-        nParent = null;
+        nParent  = null;
     }
 
+    /**
+     * Clears a leaf or interior node that is no longer in the tree and
+     * releases its storage
+     */
+    public void remove(PersistentStore store) {
+        delete();
+    }
 
     NodeBPlus getParent(PersistentStore store) {
         return nParent;
@@ -167,21 +257,25 @@ public class NodeBPlus implements CachedObject {
         return this;
     }
 
-    public NodeBPlus set(PersistentStore store, NodeBPlus key, NodeBPlus pointer, int pos) {
-        if (isLeaf) {
-            // leaf node
-            keys = (NodeBPlus[])ArrayUtil.toAdjustedArray(keys, key, pos, 1);
-            key.setParent(store, this);
-        }
-        else {
-            // interior node
-            keys = (NodeBPlus[])ArrayUtil.toAdjustedArray(keys, key, pos, 1);
-            pointers = (NodeBPlus[])ArrayUtil.toAdjustedArray(pointers, pointer, pos+1, 1);
+    /**
+     * Inserts a key at pos. In an interior node, the pointer to the subtree
+     * that follows the key is inserted at pos + 1.
+     */
+    public NodeBPlus set(PersistentStore store, NodeBPlus key,
+                         NodeBPlus pointer, int pos) {
+
+        if (!isLeaf) {
+            System.arraycopy(pointers, pos + 1, pointers, pos + 2,
+                             keyCount - pos);
+
+            pointers[pos + 1] = pointer;
         }
+
+        insertKey(store, key, pos);
+
         return this;
     }
 
-
     public void replace(PersistentStore store, Index index, NodeBPlus n) {
 
         // TODO
@@ -234,19 +328,44 @@ public class NodeBPlus implements CachedObject {
         }
     }
 
-    public NodeBPlus[] getKeys() {
-        return keys;
+    public int getKeyCount() {
+        return keyCount;
     }
 
-    public NodeBPlus[] getPointers() {
-        return pointers;
+    public NodeBPlus getKey(PersistentStore store, int pos) {
+        return keys[pos];
     }
 
-    public NodeBPlus getNextPage() {
+    public NodeBPlus getPointer(PersistentStore store, int pos) {
+        return pointers[pos];
+    }
+
+    /**
+     * Returns true if the key node is at the given position
+     */
+    boolean hasKey(NodeBPlus key, int pos) {
+        return keys[pos] == key;
+    }
+
+    /**
+     * Returns the position of the key node or -1 if not in this node
+     */
+    public int indexOfKey(NodeBPlus key) {
+
+        for (int i = 0; i < keyCount; i++) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    public NodeBPlus getNextPage(PersistentStore store) {
         return nextPage;
     }
 
-    public NodeBPlus getLastPage() {
+    public NodeBPlus getLastPage(PersistentStore store) {
         return lastPage;
     }
 
@@ -254,99 +373,172 @@ public class NodeBPlus implements CachedObject {
         this.isLeaf = isLeaf;
     }
 
-    public void setKeys(PersistentStore store, NodeBPlus[] keys) {
-        setKeys(store, keys, 0, keys.length);
-    }
+    /**
+     * Moves the keys from pos onwards to the empty node right and returns
+     * the separator for the parent. A leaf keeps a copy of the separator as
+     * the first key of right. An interior node moves the key at pos up, with
+     * the pointers after it going to right.
+     */
+    public NodeBPlus split(PersistentStore store, NodeBPlus right, int pos) {
+
+        NodeBPlus separator = keys[pos];
+
+        keyValues = null;
 
-    public void setKeys(PersistentStore store, NodeBPlus[] keys, int start, int end) {
         if (isLeaf) {
-            for (int i = 0 ; i < this.keys.length; i++) {
-                this.keys[i].setParent(store, null);
-            }
-            for (int i = start; i < end; i++) {
-                keys[i].setParent(store, this);
+            for (int i = pos; i < keyCount; i++) {
+                right.keys[i - pos] = keys[i];
+
+                keys[i].setParent(store, right);
             }
+
+            right.keyCount = keyCount - pos;
+        } else {
+            System.arraycopy(keys, pos + 1, right.keys, 0, keyCount - pos - 1);
+            System.arraycopy(pointers, pos + 1, right.pointers, 0,
+                             keyCount - pos);
+            ArrayUtil.clearArray(ArrayUtil.CLASS_CODE_OBJECT, pointers,
+                                 pos + 1, keyCount + 1);
+
+            right.keyCount = keyCount - pos - 1;
         }
-        this.keys = (NodeBPlus[]) ArrayUtil.resizeArrayIfDifferent(this.keys, end - start);
-        ArrayUtil.copyArray(keys, this.keys, start, end);
+
+        ArrayUtil.clearArray(ArrayUtil.CLASS_CODE_OBJECT, keys, pos, keyCount);
+
+        keyCount = pos;
+
+        return separator;
     }
 
-    public void addKeys(PersistentStore store, NodeBPlus key) {
+    /**
+     * Appends all the keys of right to this node and empties right. For
+     * interior nodes, the separator from the parent is appended before them.
+     */
+    public void merge(PersistentStore store, NodeBPlus right,
+                      NodeBPlus separator) {
+
+        keyValues = null;
+
         if (isLeaf) {
-            key.setParent(store, this);
+            for (int i = 0; i < right.keyCount; i++) {
+                keys[keyCount + i] = right.keys[i];
+
+                right.keys[i].setParent(store, this);
+            }
+        } else {
+            keys[keyCount++] = separator;
+
+            System.arraycopy(right.pointers, 0, pointers, keyCount,
+                             right.keyCount + 1);
+            System.arraycopy(right.keys, 0, keys, keyCount, right.keyCount);
         }
-        keys = (NodeBPlus[]) ArrayUtil.toAdjustedArray(this.keys, key, this.keys.length, 1);
+
+        keyCount += right.keyCount;
+
+        right.remove(store);
+    }
+
+    public void addKeys(PersistentStore store, NodeBPlus key) {
+        insertKey(store, key, keyCount);
     }
 
     public void addKeys(PersistentStore store, NodeBPlus key, int pos) {
+        insertKey(store, key, pos);
+    }
+
+    void insertKey(PersistentStore store, NodeBPlus key, int pos) {
+
+        keyValues = null;
+
         if (isLeaf) {
             key.setParent(store, this);
         }
-        keys = (NodeBPlus[]) ArrayUtil.toAdjustedArray(this.keys, key, pos, 1);
+
+        System.arraycopy(keys, pos, keys, pos + 1, keyCount - pos);
+
+        keys[pos] = key;
+
+        keyCount++;
     }
 
     public NodeBPlus removeKeys(PersistentStore store, int pos) {
 
-        if (pos >= keys.length) {
+        if (pos >= keyCount) {
             return null;
         }
 
         NodeBPlus node = keys[pos];
 
-        if (node != null) {
-            if (isLeaf) {
-                node.setParent(store, null);
-            }
-            keys = (NodeBPlus[]) ArrayUtil.toAdjustedArray(this.keys, null, pos, -1);
+        if (isLeaf) {
+            node.setParent(store, null);
         }
 
+        deleteKey(pos);
+
         return node;
     }
 
-    public NodeBPlus removeKeys(PersistentStore store, NodeBPlus key) {
-        for (int i = 0; i < keys.length; i++) {
-            if (keys[i] == key) {
-                return removeKeys(store, i);
-            }
-        }
-        return null;
+    /**
+     * Moves the key at pos of a leaf to the position toPos of another leaf.
+     * The data node is linked to the other leaf before it is removed from
+     * this one, as the parent of the node is read by concurrent readers.
+     */
+    NodeBPlus moveKey(PersistentStore store, int pos, NodeBPlus leaf,
+                      int toPos) {
+
+        NodeBPlus node = getKey(store, pos);
+
+        leaf.insertKey(store, node, toPos);
+        deleteKey(pos);
+
+        return node;
+    }
+
+    void deleteKey(int pos) {
+
+        keyValues = null;
+
+        keyCount--;
+
+        System.arraycopy(keys, pos + 1, keys, pos, keyCount - pos);
+
+        keys[keyCount] = null;
     }
 
     public void replaceKeys(PersistentStore store, NodeBPlus key, int pos) {
 
-        if (pos < keys.length) {
+        keyValues = null;
+
+        if (pos < keyCount) {
             if (isLeaf) {
                 keys[pos].setParent(store, null);
                 key.setParent(store, this);
             }
-            keys = (NodeBPlus[]) ArrayUtil.toAdjustedArray(this.keys, key, pos, 0);
+
+            keys[pos] = key;
         }
     }
 
-    public void setPointers(NodeBPlus[] pointers) {
-        setPointers(pointers, 0, pointers.length);
-//        this.pointers = (NodeBPlus[]) ArrayUtil.duplicateArray(pointers);
-    }
+    /**
+     * The pointer methods work on keyCount + 1 pointers, so in an interior
+     * node they are called before the matching key is added or removed.
+     */
+    public void addPointers(NodeBPlus pointer, int pos) {
 
-    public void setPointers(NodeBPlus[] pointers, int start, int end) {
-        this.pointers = (NodeBPlus[]) ArrayUtil.resizeArrayIfDifferent(this.pointers, end - start);
-        ArrayUtil.copyArray(pointers, this.pointers, start, end);
-    }
+        System.arraycopy(pointers, pos, pointers, pos + 1,
+                         keyCount + 1 - pos);
 
-    public void addPointers(NodeBPlus pointer){
-        pointers = (NodeBPlus[]) ArrayUtil.toAdjustedArray(this.pointers, pointer, this.pointers.length, 1);
+        pointers[pos] = pointer;
     }
 
-    public void addPointers(NodeBPlus pointer, int pos){
-        pointers = (NodeBPlus[]) ArrayUtil.toAdjustedArray(this.pointers, pointer, pos, 1);
-    }
-
-    public NodeBPlus removePointers( int pos) {
+    public NodeBPlus removePointers(PersistentStore store, int pos) {
 
         NodeBPlus pointer = pointers[pos];
-        if (pointer != null ) {
-            pointers = (NodeBPlus[]) ArrayUtil.toAdjustedArray(this.pointers, null, pos, -1);
-        }
+
+        System.arraycopy(pointers, pos + 1, pointers, pos, keyCount - pos);
+
+        pointers[keyCount] = null;
+
         return pointer;
     }
 
@@ -411,5 +603,22 @@ public class NodeBPlus implements CachedObject {
         return true;
     }
 
+    /**
+     * The indexed column values and the row ids of the keys of an interior
+     * node, in key order. For an index on a single integral column, the
+     * values may be kept in longs instead of data. The fields are final, so
+     * a reader that sees the object also sees the complete arrays.
+     */
+    static final class KeyValues {
 
+        final Object[][] data;
+        final long[]     longs;
+        final long[]     ids;
+
+        KeyValues(Object[][] data, long[] longs, long[] ids) {
+            this.data  = data;
+            this.longs = longs;
+            this.ids   = ids;
+        }
+    }
 }
@@ -89,8 +89,8 @@ import org.hsqldb.types.Type;
 
 /**
  *  Cached table Node implementation.<p>
- *  Only integral references to left, right and parent nodes in the BPlus tree
- *  are held and used as pointers data.<p>
+ *  Only the file position of the leaf page that holds the node is stored
+ *  with the row. The leaf and interior pages are NodeBPlusPage objects.<p>
  *
  *  iId is a reference to the Index object that contains this node.<br>
  *  This fields can be eliminated in the future, by changing the
@@ -118,6 +118,7 @@ public class NodeBPlusDisk extends NodeBPlus {
     public NodeBPlusDisk(RowBPlusDisk r, RowInputInterface in,
                        int id) throws IOException {
 
+        super(r);
 
         row      = r;
         iId      = id;
@@ -129,6 +130,9 @@ public class NodeBPlusDisk extends NodeBPlus {
     }
 
     public NodeBPlusDisk(RowBPlusDisk r, int id) {
+
+        super(r);
+
         row = r;
         iId = id;
     }
@@ -172,19 +176,6 @@ public class NodeBPlusDisk extends NodeBPlus {
         return row.getData();
     }
 
-    private NodeBPlusDisk findNode(PersistentStore store, int pos) {
-
-        NodeBPlusDisk ret = null;
-        RowBPlusDisk  r   = (RowBPlusDisk) store.get(pos, false);
-
-        if (r != null) {
-            ret = (NodeBPlusDisk) r.getNode(iId);
-        }
-
-        return ret;
-    }
-
-
     NodeBPlus getParent(PersistentStore store) {
 
         NodeBPlusDisk node = this;
@@ -199,11 +190,7 @@ public class NodeBPlusDisk extends NodeBPlus {
             return null;
         }
 
-        if (node.nParent == null || !node.nParent.isInMemory()) {
-            node.nParent = findNode(store, iParent);
-        }
-
-        return node.nParent;
+        return (NodeBPlus) store.get(node.iParent, false);
     }
 
 
@@ -227,7 +214,6 @@ public class NodeBPlusDisk extends NodeBPlus {
 
         node.iParent = n == null ? NO_POS
                                  : (int) n.getPos();
-        node.nParent = (NodeBPlusDisk) n;
 
         row.keepInMemory(false);
 
@@ -247,20 +233,7 @@ public class NodeBPlusDisk extends NodeBPlus {
         return NodeBPlusDisk.SIZE_IN_BYTE;
     }
 
-    public void setInMemory(boolean in) {
-
-        if (!in) {
-            if (nParent != null) {
-                for (int i=0; i < nParent.getKeys().length; i++) {
-                    if (row.getPos() == nParent.getKeys()[i].getPos()) {
-                        nParent.getKeys()[i] = null;
-                    }
-                }
-            }
-
-            nParent = null;
-        }
-    }
+    public void setInMemory(boolean in) {}
 
     public void write(RowOutputInterface out) {
 
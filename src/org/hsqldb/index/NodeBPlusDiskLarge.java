@@ -60,6 +60,8 @@ public class NodeBPlusDiskLarge extends NodeBPlus {
     public NodeBPlusDiskLarge(RowBPlusDisk r, RowInputInterface in,
                        int id) throws IOException {
 
+        super(r);
+
         int ext;
 
         row      = r;
@@ -77,6 +79,9 @@ public class NodeBPlusDiskLarge extends NodeBPlus {
     }
 
     public NodeBPlusDiskLarge(RowBPlusDisk r, int id) {
+
+        super(r);
+
         row = r;
         iId = id;
     }
@@ -120,18 +125,6 @@ public class NodeBPlusDiskLarge extends NodeBPlus {
         return row.getData();
     }
 
-    private NodeBPlusDiskLarge findNode(PersistentStore store, long pos) {
-
-        NodeBPlusDiskLarge ret = null;
-        RowBPlusDisk  r   = (RowBPlusDisk) store.get(pos, false);
-
-        if (r != null) {
-            ret = (NodeBPlusDiskLarge) r.getNode(iId);
-        }
-
-        return ret;
-    }
-
     NodeBPlus getParent(PersistentStore store) {
 
         NodeBPlusDiskLarge node = this;
@@ -146,11 +139,7 @@ public class NodeBPlusDiskLarge extends NodeBPlus {
             return null;
         }
 
-        if (node.nParent == null || !node.nParent.isInMemory()) {
-            node.nParent = findNode(store, iParent);
-        }
-
-        return node.nParent;
+        return (NodeBPlus) store.get(node.iParent, false);
     }
 
     NodeBPlus setParent(PersistentStore store, NodeBPlus n) {
@@ -172,13 +161,7 @@ public class NodeBPlusDiskLarge extends NodeBPlus {
         row.setNodesChanged();
 
         node.iParent = n == null ? NO_POS
-                                 : ((NodeBPlusDisk) n).getID();
-
-        if (n != null && !n.isInMemory()) {
-            n = findNode(store, n.getPos());
-        }
-
-        node.nParent = (NodeBPlusDiskLarge) n;
+                                 : n.getPos();
 
         row.keepInMemory(false);
 
@@ -225,20 +208,7 @@ public class NodeBPlusDiskLarge extends NodeBPlus {
         return NodeBPlusDiskLarge.SIZE_IN_BYTE;
     }
 
-    public void setInMemory(boolean in) {
-
-        if (!in) {
-            if (nParent != null) {
-                for (int i=0; i < nParent.getKeys().length; i++) {
-                    if (row.getPos() == nParent.getKeys()[i].getPos()) {
-                        nParent.getKeys()[i] = null;
-                    }
-                }
-            }
-
-            nParent = null;
-        }
-    }
+    public void setInMemory(boolean in) {}
 
     public void write(RowOutputInterface out) {
         write(out, null);
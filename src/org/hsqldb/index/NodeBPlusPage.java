@@ -0,0 +1,600 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.index;
+
+import java.io.IOException;
+
+import org.hsqldb.RowBPlus;
+import org.hsqldb.error.Error;
+import org.hsqldb.error.ErrorCode;
+import org.hsqldb.lib.LongLookup;
+import org.hsqldb.persist.PersistentStore;
+import org.hsqldb.rowio.RowInputInterface;
+import org.hsqldb.rowio.RowOutputInterface;
+
+/**
+ * Leaf or interior node of a B+ tree for a CACHED table, stored as a fixed
+ * size page in the .data file and held in the DataFileCache like the rows.<p>
+ *
+ * Only file positions are held. The keys are the positions of the rows and
+ * are resolved to the row's node for the index. The pointers and the leaf
+ * chain links are the positions of other pages. A page can therefore be
+ * dropped from the cache at any time when it is not kept in memory.<p>
+ *
+ * The page starts with a negative int where a row has the parent position
+ * of its first node, which allows the store to tell the two apart when
+ * reading from the file.
+ *
+ * @version 2.3.0
+ * @since 2.3.0
+ */
+public class NodeBPlusPage extends NodeBPlus {
+
+    static final int PAGE_MARKER = -1;
+
+    // size, marker, index id, capacity, leaf flag, key count, next, last
+    static final int    HEADER_SIZE    = 6 * 4 + 2 * 8;
+    static final long[] emptyPositions = new long[]{};
+
+    //
+    private long             position = NO_POS;
+    private int              storageSize;
+    private int              keepCount;
+    private volatile boolean isInMemory;
+    private int              accessCount;
+    private boolean          isNew;
+    private boolean          hasChanged;
+    private final int        iId;
+    private final long[]     keyPos;
+    private final long[]     pointerPos;
+    private long             nextPos = NO_POS;
+    private long             lastPos = NO_POS;
+
+    NodeBPlusPage(int id, boolean isLeaf, int capacity) {
+
+        super(isLeaf);
+
+        iId        = id;
+        keyPos     = new long[capacity];
+        pointerPos = isLeaf ? emptyPositions
+                            : new long[capacity + 1];
+        isNew      = true;
+        hasChanged = true;
+    }
+
+    /**
+     * Constructor when read from the disk into the Cache.
+     */
+    public NodeBPlusPage(RowInputInterface in) throws IOException {
+
+        super(false);
+
+        position    = in.getPos();
+        storageSize = in.getSize();
+
+        in.readInt();
+
+        iId = in.readInt();
+
+        int capacity = in.readInt();
+
+        isLeaf   = in.readInt() != 0;
+        keyCount = in.readInt();
+        nextPos  = in.readLong();
+        lastPos  = in.readLong();
+        keyPos   = new long[capacity];
+
+        for (int i = 0; i < keyCount; i++) {
+            keyPos[i] = in.readLong();
+        }
+
+        if (isLeaf) {
+            pointerPos = emptyPositions;
+        } else {
+            pointerPos = new long[capacity + 1];
+
+            for (int i = 0; i <= keyCount; i++) {
+                pointerPos[i] = in.readLong();
+            }
+        }
+    }
+
+    /**
+     * Returns true if the object read into the buffer is a page and not a row
+     */
+    public static boolean isPage(RowInputInterface in) {
+
+        // the int after the size is negative only for a page
+        return in.getBuffer()[4] < 0;
+    }
+
+    /**
+     * Creates a page and allocates its space in the file of the store
+     */
+    static NodeBPlusPage newPage(PersistentStore store, int id,
+                                 boolean isLeaf, int capacity) {
+
+        NodeBPlusPage page = new NodeBPlusPage(id, isLeaf, capacity);
+
+        store.add(null, page, false);
+
+        return page;
+    }
+
+    public NodeBPlus newLeafNode(PersistentStore store) {
+        return newPage(store, iId, true, keyPos.length);
+    }
+
+    public NodeBPlus newInteriorNode(PersistentStore store) {
+        return newPage(store, iId, false, keyPos.length);
+    }
+
+    public void delete() {
+
+        keyValues  = null;
+        keyCount   = 0;
+        nextPos    = NO_POS;
+        lastPos    = NO_POS;
+        hasChanged = true;
+    }
+
+    public void remove(PersistentStore store) {
+
+        delete();
+        store.remove(this);
+    }
+
+    public NodeBPlus getKey(PersistentStore store, int pos) {
+
+        RowBPlus row = (RowBPlus) store.get(keyPos[pos], false);
+
+        return row.getNode(iId);
+    }
+
+    public NodeBPlus getPointer(PersistentStore store, int pos) {
+        return getPage(store, pointerPos[pos]);
+    }
+
+    public NodeBPlus getNextPage(PersistentStore store) {
+        return getPage(store, nextPos);
+    }
+
+    public NodeBPlus getLastPage(PersistentStore store) {
+        return getPage(store, lastPos);
+    }
+
+    private static NodeBPlus getPage(PersistentStore store, long pos) {
+
+        if (pos == NO_POS) {
+            return null;
+        }
+
+        return (NodeBPlus) store.get(pos, false);
+    }
+
+    boolean hasKey(NodeBPlus key, int pos) {
+        return keyPos[pos] == key.getPos();
+    }
+
+    public int indexOfKey(NodeBPlus key) {
+
+        long pos = key.getPos();
+
+        for (int i = 0; i < keyCount; i++) {
+            if (keyPos[i] == pos) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    public NodeBPlus set(PersistentStore store, NodeBPlus key,
+                         NodeBPlus pointer, int pos) {
+
+        if (!isLeaf) {
+            System.arraycopy(pointerPos, pos + 1, pointerPos, pos + 2,
+                             keyCount - pos);
+
+            pointerPos[pos + 1] = pointer.getPos();
+        }
+
+        insertKey(store, key, pos);
+
+        return this;
+    }
+
+    public NodeBPlus split(PersistentStore store, NodeBPlus right, int pos) {
+
+        NodeBPlusPage page      = (NodeBPlusPage) right;
+        NodeBPlus     separator = getKey(store, pos);
+
+        keyValues = null;
+
+        if (isLeaf) {
+            for (int i = pos; i < keyCount; i++) {
+                page.keyPos[i - pos] = keyPos[i];
+
+                getKey(store, i).setParent(store, page);
+            }
+
+            page.keyCount = keyCount - pos;
+        } else {
+            System.arraycopy(keyPos, pos + 1, page.keyPos, 0,
+                             keyCount - pos - 1);
+            System.arraycopy(pointerPos, pos + 1, page.pointerPos, 0,
+                             keyCount - pos);
+
+            page.keyCount = keyCount - pos - 1;
+        }
+
+        keyCount        = pos;
+        hasChanged      = true;
+        page.hasChanged = true;
+
+        return separator;
+    }
+
+    public void merge(PersistentStore store, NodeBPlus right,
+                      NodeBPlus separator) {
+
+        NodeBPlusPage page = (NodeBPlusPage) right;
+
+        keyValues = null;
+
+        if (isLeaf) {
+            for (int i = 0; i < page.keyCount; i++) {
+                keyPos[keyCount + i] = page.keyPos[i];
+
+                page.getKey(store, i).setParent(store, this);
+            }
+        } else {
+            keyPos[keyCount++] = separator.getPos();
+
+            System.arraycopy(page.pointerPos, 0, pointerPos, keyCount,
+                             page.keyCount + 1);
+            System.arraycopy(page.keyPos, 0, keyPos, keyCount,
+                             page.keyCount);
+        }
+
+        keyCount   += page.keyCount;
+        hasChanged = true;
+
+        page.remove(store);
+    }
+
+    void insertKey(PersistentStore store, NodeBPlus key, int pos) {
+
+        keyValues = null;
+
+        if (isLeaf) {
+            key.setParent(store, this);
+        }
+
+        System.arraycopy(keyPos, pos, keyPos, pos + 1, keyCount - pos);
+
+        keyPos[pos] = key.getPos();
+
+        keyCount++;
+
+        hasChanged = true;
+    }
+
+    public NodeBPlus removeKeys(PersistentStore store, int pos) {
+
+        if (pos >= keyCount) {
+            return null;
+        }
+
+        NodeBPlus node = getKey(store, pos);
+
+        if (isLeaf) {
+            node.setParent(store, null);
+        }
+
+        deleteKey(pos);
+
+        return node;
+    }
+
+    void deleteKey(int pos) {
+
+        keyValues = null;
+
+        keyCount--;
+
+        System.arraycopy(keyPos, pos + 1, keyPos, pos, keyCount - pos);
+
+        hasChanged = true;
+    }
+
+    public void replaceKeys(PersistentStore store, NodeBPlus key, int pos) {
+
+        keyValues = null;
+
+        if (pos < keyCount) {
+            if (isLeaf) {
+                getKey(store, pos).setParent(store, null);
+                key.setParent(store, this);
+            }
+
+            keyPos[pos] = key.getPos();
+            hasChanged  = true;
+        }
+    }
+
+    public void addPointers(NodeBPlus pointer, int pos) {
+
+        System.arraycopy(pointerPos, pos, pointerPos, pos + 1,
+                         keyCount + 1 - pos);
+
+        pointerPos[pos] = pointer.getPos();
+        hasChanged      = true;
+    }
+
+    public NodeBPlus removePointers(PersistentStore store, int pos) {
+
+        NodeBPlus pointer = getPointer(store, pos);
+
+        System.arraycopy(pointerPos, pos + 1, pointerPos, pos,
+                         keyCount - pos);
+
+        hasChanged = true;
+
+        return pointer;
+    }
+
+    public void setNextPage(NodeBPlus n) {
+
+        nextPos    = n == null ? NO_POS
+                               : n.getPos();
+        hasChanged = true;
+    }
+
+    public void setLastPage(NodeBPlus n) {
+
+        lastPos    = n == null ? NO_POS
+                               : n.getPos();
+        hasChanged = true;
+    }
+
+    public int getCapacity() {
+        return keyPos.length;
+    }
+
+    long getKeyPos(int pos) {
+        return keyPos[pos];
+    }
+
+    long getPointerPos(int pos) {
+        return pointerPos[pos];
+    }
+
+    void setPointerPos(int pos, long pointer) {
+
+        pointerPos[pos] = pointer;
+        hasChanged      = true;
+    }
+
+    long getNextPos() {
+        return nextPos;
+    }
+
+    void setNextPos(long pos) {
+
+        nextPos    = pos;
+        hasChanged = true;
+    }
+
+    long getLastPos() {
+        return lastPos;
+    }
+
+    void setLastPos(long pos) {
+
+        lastPos    = pos;
+        hasChanged = true;
+    }
+
+    /**
+     * Creates a copy of the page at a new position in the file of the store.
+     * The links to the page from its parent, its neighbours and its rows are
+     * not changed.
+     */
+    NodeBPlusPage copyPage(PersistentStore store) {
+
+        NodeBPlusPage page = newPage(store, iId, isLeaf, keyPos.length);
+
+        System.arraycopy(keyPos, 0, page.keyPos, 0, keyCount);
+
+        if (!isLeaf) {
+            System.arraycopy(pointerPos, 0, page.pointerPos, 0, keyCount + 1);
+        }
+
+        page.keyCount = keyCount;
+        page.nextPos  = nextPos;
+        page.lastPos  = lastPos;
+
+        return page;
+    }
+
+    boolean equals(NodeBPlus n) {
+        return n != null && n.getPos() == position;
+    }
+
+    public boolean equals(Object obj) {
+
+        if (obj == this) {
+            return true;
+        }
+
+        if (obj instanceof NodeBPlusPage) {
+            return ((NodeBPlusPage) obj).position == position;
+        }
+
+        return false;
+    }
+
+    /**
+     * Hash code is the file position, as for rows in the cache
+     */
+    public int hashCode() {
+        return (int) position;
+    }
+
+    public boolean isMemory() {
+        return false;
+    }
+
+    public long getPos() {
+        return position;
+    }
+
+    public void setPos(long pos) {
+        position = pos;
+    }
+
+    public int getStorageSize() {
+        return storageSize;
+    }
+
+    public void setStorageSize(int size) {
+        storageSize = size;
+    }
+
+    public int getRealSize(RowOutputInterface out) {
+        return HEADER_SIZE + (keyPos.length * 2 + 1) * 8;
+    }
+
+    public void updateAccessCount(int count) {
+        accessCount = count;
+    }
+
+    public int getAccessCount() {
+        return accessCount;
+    }
+
+    public boolean isNew() {
+        return isNew;
+    }
+
+    public synchronized boolean hasChanged() {
+        return hasChanged;
+    }
+
+    public synchronized boolean isKeepInMemory() {
+        return keepCount > 0;
+    }
+
+    public synchronized boolean keepInMemory(boolean keep) {
+
+        if (!isInMemory) {
+            return false;
+        }
+
+        if (keep) {
+            keepCount++;
+        } else {
+            keepCount--;
+
+            if (keepCount < 0) {
+                throw Error.runtimeError(ErrorCode.U_S0500,
+                                         "NodeBPlusPage - keep count");
+            }
+        }
+
+        return true;
+    }
+
+    public synchronized boolean isInMemory() {
+        return isInMemory;
+    }
+
+    public synchronized void setInMemory(boolean in) {
+
+        isInMemory = in;
+
+        if (!in) {
+            keepCount = 0;
+        }
+    }
+
+    public void restore() {}
+
+    public void destroy() {}
+
+    public void write(RowOutputInterface out) {
+
+        write(out, null);
+
+        hasChanged = false;
+        isNew      = false;
+    }
+
+    /**
+     * Writes the whole page. With a lookup, the positions of the rows and
+     * pages are translated to their new positions.
+     */
+    public void write(RowOutputInterface out, LongLookup lookup) {
+
+        out.writeSize(storageSize);
+        out.writeInt(PAGE_MARKER);
+        out.writeInt(iId);
+        out.writeInt(keyPos.length);
+        out.writeInt(isLeaf ? 1
+                            : 0);
+        out.writeInt(keyCount);
+        out.writeLong(getTranslatePointer(nextPos, lookup));
+        out.writeLong(getTranslatePointer(lastPos, lookup));
+
+        for (int i = 0; i < keyCount; i++) {
+            out.writeLong(getTranslatePointer(keyPos[i], lookup));
+        }
+
+        if (!isLeaf) {
+            for (int i = 0; i <= keyCount; i++) {
+                out.writeLong(getTranslatePointer(pointerPos[i], lookup));
+            }
+        }
+
+        out.writeEnd();
+    }
+
+    private static long getTranslatePointer(long pointer, LongLookup lookup) {
+
+        if (pointer == NO_POS || lookup == null) {
+            return pointer;
+        }
+
+        return lookup.lookup(pointer);
+    }
+}
@@ -0,0 +1,211 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.index;
+
+import java.util.concurrent.locks.Lock;
+
+import org.hsqldb.lib.ArrayUtil;
+import org.hsqldb.persist.PersistentStore;
+
+/**
+ * The path from the root of a B+ tree down to a leaf, with the position of
+ * the child taken at each interior node. An instance is kept by each Session
+ * and reused by the index insert and delete operations.<p>
+ *
+ * The path also holds the latches that the operation has acquired, in the
+ * order they were acquired, and the lock of the root reference of the
+ * index while it is held. The pages of a CACHED table that are used by an
+ * operation are kept in the cache until they are released, so that the
+ * changes are not made to a page that has been dropped from the cache in
+ * the meantime.
+ *
+ * @version 2.3.0
+ * @since 2.3.0
+ */
+public class NodeBPlusPath {
+
+    NodeBPlus[] nodes = new NodeBPlus[8];
+    int[]       slots = new int[8];
+    int         depth;
+    NodeBPlus[] keptNodes     = new NodeBPlus[8];
+    boolean[]   keptExclusive = new boolean[8];
+    int         keptCount;
+    Lock        rootLock;
+
+    void push(NodeBPlus node, int slot) {
+
+        if (depth == nodes.length) {
+            nodes = (NodeBPlus[]) ArrayUtil.resizeArray(nodes, depth * 2);
+            slots = (int[]) ArrayUtil.resizeArray(slots, depth * 2);
+        }
+
+        nodes[depth] = node;
+        slots[depth] = slot;
+
+        depth++;
+    }
+
+    boolean isEmpty() {
+        return depth == 0;
+    }
+
+    /**
+     * Returns the child position in the node at the top of the path
+     */
+    int getSlot() {
+        return slots[depth - 1];
+    }
+
+    NodeBPlus pop() {
+
+        depth--;
+
+        NodeBPlus node = nodes[depth];
+
+        nodes[depth] = null;
+
+        return node;
+    }
+
+    /**
+     * Acquires the lock of the root reference until the ancestors are
+     * released or the path is reset
+     */
+    void lockRoot(Lock lock) {
+
+        lock.lock();
+
+        rootLock = lock;
+    }
+
+    /**
+     * Latches a node and keeps a page in the cache until the node is
+     * released. Returns the node, which is read again if it was no longer in
+     * the cache.
+     */
+    NodeBPlus latch(PersistentStore store, NodeBPlus node, boolean exclusive) {
+
+        if (node == null) {
+            return null;
+        }
+
+        if (!node.isMemory() && !node.keepInMemory(true)) {
+            node = (NodeBPlus) store.get(node, true);
+        }
+
+        node.latch(exclusive);
+
+        if (keptCount == keptNodes.length) {
+            keptNodes = (NodeBPlus[]) ArrayUtil.resizeArray(keptNodes,
+                    keptCount * 2);
+            keptExclusive = (boolean[]) ArrayUtil.resizeArray(keptExclusive,
+                    keptCount * 2);
+        }
+
+        keptNodes[keptCount]     = node;
+        keptExclusive[keptCount] = exclusive;
+
+        keptCount++;
+
+        return node;
+    }
+
+    /**
+     * Releases the lock of the root reference and all the nodes except the
+     * given node, which is safe from a split or merge, and the retained
+     * node, which may be null.
+     */
+    void releaseAncestors(NodeBPlus node, NodeBPlus retained) {
+
+        int count = 0;
+
+        for (int i = 0; i < keptCount; i++) {
+            NodeBPlus kept = keptNodes[i];
+
+            if (kept == node || kept == retained) {
+                keptNodes[count]     = kept;
+                keptExclusive[count] = keptExclusive[i];
+
+                count++;
+            } else {
+                release(kept, keptExclusive[i]);
+            }
+        }
+
+        for (int i = count; i < keptCount; i++) {
+            keptNodes[i] = null;
+        }
+
+        keptCount = count;
+
+        unlockRoot();
+    }
+
+    /**
+     * Empties the path without keeping references to the nodes and
+     * releases all latches
+     */
+    void reset() {
+
+        while (depth > 0) {
+            nodes[--depth] = null;
+        }
+
+        while (keptCount > 0) {
+            keptCount--;
+
+            release(keptNodes[keptCount], keptExclusive[keptCount]);
+
+            keptNodes[keptCount] = null;
+        }
+
+        unlockRoot();
+    }
+
+    private void unlockRoot() {
+
+        if (rootLock != null) {
+            rootLock.unlock();
+
+            rootLock = null;
+        }
+    }
+
+    private static void release(NodeBPlus node, boolean exclusive) {
+
+        node.unlatch(exclusive);
+
+        if (!node.isMemory()) {
+            node.keepInMemory(false);
+        }
+    }
+}
@@ -49,6 +49,7 @@ import org.hsqldb.lib.LongKeyHashMap;
 import org.hsqldb.result.ResultMetaData;
 import org.hsqldb.rowio.RowInputInterface;
 import org.hsqldb.rowio.RowOutputInterface;
+import org.hsqldb.types.Type;
 
 /**
  * Implementation of RowSetNavigator for result sets.
@@ -84,6 +85,15 @@ implements Comparator {
     TreeMap        rowMap;
     LongKeyHashMap idMap;
 
+    // hash table of groups, with indexes into table
+    int[]  groupColumns;
+    Type[] groupTypes;
+    int[]  groupBuckets;
+    int[]  groupLinks;
+    int[]  groupHashes;
+    int    groupHash;
+    Object groupHashData;
+
     RowSetNavigatorData(Session session) {
         this.session = session;
     }
@@ -98,7 +108,8 @@ implements Comparator {
 
         if (select.isGrouped) {
             mainIndex = select.groupIndex;
-            rowMap    = new TreeMap(this);
+
+            initGroupHash();
         }
 
         if (select.idIndex != null) {
@@ -166,6 +177,10 @@ implements Comparator {
             rowMap.put(data, data);
         }
 
+        if (groupBuckets != null) {
+            addGroupHash(data);
+        }
+
         if (idMap != null) {
             Long id = (Long) data[visibleColumnCount];
 
@@ -237,6 +252,14 @@ implements Comparator {
         this.table = emptyTable;
         this.size  = 0;
 
+        if (rowMap != null) {
+            rowMap.clear();
+        }
+
+        if (groupBuckets != null) {
+            ArrayUtil.fillArray(groupBuckets, -1);
+        }
+
         reset();
     }
 
@@ -600,7 +623,110 @@ implements Comparator {
             return simpleAggregateData;
         }
 
-        return (Object[]) rowMap.get(data);
+        if (rowMap != null) {
+            return (Object[]) rowMap.get(data);
+        }
+
+        int hash = getGroupHash(data);
+
+        groupHash     = hash;
+        groupHashData = data;
+
+        for (int i = groupBuckets[hash & (groupBuckets.length - 1)]; i >= 0;
+                i = groupLinks[i]) {
+            if (groupHashes[i] == hash
+                    && mainIndex.compareRow(session, table[i], data) == 0) {
+                return table[i];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Groups are found with a hash table on the group columns when some of
+     * the columns have types that are hashed consistently with comparison.
+     * The other columns do not contribute to the hash. If no column can be
+     * hashed, a TreeMap is used.
+     */
+    private void initGroupHash() {
+
+        groupColumns = mainIndex.getColumns();
+        groupTypes   = mainIndex.getColumnTypes();
+
+        boolean hashable = false;
+
+        for (int i = 0; i < groupTypes.length; i++) {
+            hashable |= groupTypes[i].isHashable();
+        }
+
+        if (!hashable) {
+            rowMap = new TreeMap(this);
+
+            return;
+        }
+
+        groupBuckets = new int[16];
+        groupLinks   = new int[16];
+        groupHashes  = new int[16];
+
+        ArrayUtil.fillArray(groupBuckets, -1);
+    }
+
+    private void addGroupHash(Object[] data) {
+
+        int hash = data == groupHashData ? groupHash
+                                         : getGroupHash(data);
+        int index = size - 1;
+
+        groupHashData = null;
+
+        if (index == groupLinks.length) {
+            groupLinks  = (int[]) ArrayUtil.resizeArray(groupLinks,
+                    index * 2);
+            groupHashes = (int[]) ArrayUtil.resizeArray(groupHashes,
+                    index * 2);
+        }
+
+        if (index == groupBuckets.length) {
+            groupBuckets = new int[index * 2];
+
+            ArrayUtil.fillArray(groupBuckets, -1);
+
+            for (int i = 0; i < index; i++) {
+                int bucket = groupHashes[i] & (groupBuckets.length - 1);
+
+                groupLinks[i]        = groupBuckets[bucket];
+                groupBuckets[bucket] = i;
+            }
+        }
+
+        int bucket = hash & (groupBuckets.length - 1);
+
+        groupHashes[index]   = hash;
+        groupLinks[index]    = groupBuckets[bucket];
+        groupBuckets[bucket] = index;
+    }
+
+    /**
+     * Returns the hash code of the group columns of the row. The high bits
+     * are also used for partitioning the groups.
+     */
+    public int getGroupHash(Object[] data) {
+
+        int hash = 0;
+
+        for (int i = 0; i < groupColumns.length; i++) {
+            Object value = data[groupColumns[i]];
+
+            if (value != null && groupTypes[i].isHashable()) {
+                hash = hash * 31 + Type.getHashCode(value);
+            }
+        }
+
+        hash *= 0x9e3779b9;
+
+        return hash ^ (hash >>> 16);
     }
 
     boolean containsRow(Object[] data) {
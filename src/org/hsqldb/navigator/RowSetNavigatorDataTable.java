@@ -81,6 +81,16 @@ public class RowSetNavigatorDataTable extends RowSetNavigatorData {
 
     public RowSetNavigatorDataTable(Session session,
                                     QuerySpecification select) {
+        this(session, select, !select.isAggregated);
+    }
+
+    /**
+     * The rows of an aggregated result are kept in memory while they hold
+     * the aggregates. isCached is true when they hold the final values.
+     */
+    public RowSetNavigatorDataTable(Session session,
+                                    QuerySpecification select,
+                                    boolean isCached) {
 
         super(session);
 
@@ -90,7 +100,7 @@ public class RowSetNavigatorDataTable extends RowSetNavigatorData {
         visibleColumnCount = select.indexLimitVisible;
         table              = select.resultTable.duplicate();
         table.store = store = session.sessionData.getNewResultRowStore(table,
-                !select.isAggregated);
+                isCached);
         isAggregate       = select.isAggregated;
         isSimpleAggregate = select.isAggregated && !select.isGrouped;
         reindexTable      = select.isGrouped;
@@ -32,6 +32,7 @@
 package org.hsqldb.persist;
 
 import org.hsqldb.lib.ArraySort;
+import org.hsqldb.lib.ArrayUtil;
 import org.hsqldb.lib.Iterator;
 import org.hsqldb.lib.ObjectComparator;
 import org.hsqldb.lib.StopWatch;
@@ -42,6 +43,11 @@ import org.hsqldb.map.BaseHashMap;
  *
  * Manages memory for the cache map and its contents based on least recently
  * used clearup.<p>
+ *
+ * With the scan resistant policy, rows that are read into the cache are
+ * cold until they are accessed again after a correlation window. Cold rows
+ * are removed first, in clock order and in small batches, so that a large
+ * scan does not replace the rows that are used repeatedly.<p>
  * Also provides services for selecting rows to be saved and passing them
  * to DataFileCache.<p>
  *
@@ -51,6 +57,11 @@ import org.hsqldb.map.BaseHashMap;
  */
 public class Cache extends BaseHashMap {
 
+    /** values for hsqldb.cache_policy */
+    public static final int POLICY_ACCESS_COUNT   = 0;
+    public static final int POLICY_SCAN_RESISTANT = 1;
+
+//
     final DataFileCache                        dataFileCache;
     private int                                capacity;         // number of Rows
     private long                               bytesCapacity;    // number of bytes
@@ -58,6 +69,9 @@ public class Cache extends BaseHashMap {
     private final BaseHashMap.BaseHashIterator objectIterator;
     private boolean                            updateAccess;
     private long                               maxPositionOnCleanup;
+    private final int                          policy;
+    private final int                          coldWindow;
+    private int                                clockHand;
 
 //
     private CachedObject[] rowTable;
@@ -67,22 +81,32 @@ public class Cache extends BaseHashMap {
     StopWatch saveAllTimer = new StopWatch(false);
     StopWatch sortTimer    = new StopWatch(false);
     int       saveRowCount = 0;
+    long      putCount     = 0;
 
-    Cache(DataFileCache dfc) {
+    // cleanups in put and rows written by the flusher
+    StopWatch stallTimer    = new StopWatch(false);
+    StopWatch flushTimer    = new StopWatch(false);
+    long      stallCount    = 0;
+    long      flushCount    = 0;
+    long      flushRowCount = 0;
 
-        super(dfc.capacity(), BaseHashMap.objectKeyOrValue,
+    Cache(DataFileCache dfc, int capacity, long bytesCapacity) {
+
+        super(capacity, BaseHashMap.objectKeyOrValue,
               BaseHashMap.noKeyOrValue, true);
 
-        maxCapacity      = dfc.capacity();
-        dataFileCache    = dfc;
-        capacity         = dfc.capacity();
-        bytesCapacity    = dfc.bytesCapacity();
-        rowComparator    = new CachedObjectComparator();
-        rowTable         = new CachedObject[capacity];
-        cacheBytesLength = 0;
-        objectIterator   = new BaseHashIterator(true);
-        updateAccess     = true;
-        comparator       = rowComparator;
+        maxCapacity        = capacity;
+        dataFileCache      = dfc;
+        this.capacity      = capacity;
+        this.bytesCapacity = bytesCapacity;
+        rowComparator      = new CachedObjectComparator();
+        rowTable           = new CachedObject[capacity];
+        cacheBytesLength   = 0;
+        objectIterator     = new BaseHashIterator(true);
+        comparator         = rowComparator;
+        policy             = dfc.database.logger.getCachePolicy();
+        updateAccess       = policy == POLICY_ACCESS_COUNT;
+        coldWindow         = capacity / 4;
     }
 
     /**
@@ -100,10 +124,8 @@ public class Cache extends BaseHashMap {
      */
     public CachedObject get(long pos) {
 
-        if (accessCount > ACCESS_MAX && updateAccess) {
-            updateAccessCounts();
-            resetAccessCount();
-            updateObjectAccessCounts();
+        if (accessCount > ACCESS_MAX) {
+            resetAccessCounts();
         }
 
         int lookup = getObjectLookup(pos);
@@ -112,7 +134,15 @@ public class Cache extends BaseHashMap {
             return null;
         }
 
-        accessTable[lookup] = ++accessCount;
+        int count = accessTable[lookup];
+
+        // a cold row becomes hot if it is accessed after the window
+        if (count > 0 || policy == POLICY_ACCESS_COUNT
+                || accessCount + count > coldWindow) {
+            accessTable[lookup] = ++accessCount;
+        } else {
+            accessCount++;
+        }
 
         CachedObject object = (CachedObject) objectKeyTable[lookup];
 
@@ -128,6 +158,9 @@ public class Cache extends BaseHashMap {
 
         if (size() >= capacity
                 || storageSize + cacheBytesLength > bytesCapacity) {
+            stallCount++;
+
+            stallTimer.start();
             cleanUp(false);
 
             if (size() >= capacity) {
@@ -137,18 +170,25 @@ public class Cache extends BaseHashMap {
             if (size() >= capacity) {
                 cleanUp(true);
             }
+
+            stallTimer.stop();
         }
 
-        if (accessCount > ACCESS_MAX && updateAccess) {
-            updateAccessCounts();
-            resetAccessCount();
-            updateObjectAccessCounts();
+        if (accessCount > ACCESS_MAX) {
+            resetAccessCounts();
         }
 
         super.addOrRemoveObject(row, row.getPos(), false);
         row.setInMemory(true);
 
+        // new rows are cold, with the negated access count of the put
+        if (policy == POLICY_SCAN_RESISTANT) {
+            accessTable[getObjectLookup(row.getPos())] = -accessCount;
+        }
+
         cacheBytesLength += storageSize;
+
+        putCount++;
     }
 
     /**
@@ -180,6 +220,19 @@ public class Cache extends BaseHashMap {
         objectKeyTable[lookup] = row;
     }
 
+    private void resetAccessCounts() {
+
+        if (updateAccess) {
+            updateAccessCounts();
+        }
+
+        resetAccessCount();
+
+        if (updateAccess) {
+            updateObjectAccessCounts();
+        }
+    }
+
     private void updateAccessCounts() {
 
         CachedObject r;
@@ -191,6 +244,11 @@ public class Cache extends BaseHashMap {
             if (r != null) {
                 count = r.getAccessCount();
 
+                // row counts may come from the clock of another stripe
+                if (count > accessCount) {
+                    count = accessCount;
+                }
+
                 if (count > accessTable[i]) {
                     accessTable[i] = count;
                 }
@@ -226,16 +284,61 @@ public class Cache extends BaseHashMap {
      */
     private void cleanUp(boolean all) {
 
+        if (all) {
+            cleanUp(size(), true);
+        } else if (policy == POLICY_SCAN_RESISTANT) {
+            int batchCount = capacity / 16 + 1;
+
+            cleanUpCold(size() - capacity + batchCount,
+                        cacheBytesLength - bytesCapacity
+                        + bytesCapacity / 16);
+        } else {
+            cleanUp(size() / 2, false);
+        }
+    }
+
+    /**
+     * Removes rows until the row count and the bytes are not above the
+     * given limits. Returns false if they are already below the limits.
+     */
+    boolean cleanUp(int rowLimit, long bytesLimit) {
+
+        int  removeCount = size() - rowLimit;
+        long removeBytes = cacheBytesLength - bytesLimit;
+
+        if (removeCount <= 0 && removeBytes <= 0) {
+            return false;
+        }
+
+        flushTimer.start();
+
+        if (policy == POLICY_SCAN_RESISTANT) {
+            cleanUpCold(removeCount, removeBytes);
+        } else {
+            if (removeBytes > 0) {
+                int count = (int) (removeBytes * size() / cacheBytesLength);
+
+                removeCount = Math.max(removeCount, count + 1);
+            }
+
+            cleanUp(removeCount, false);
+        }
+
+        flushTimer.stop();
+
+        return true;
+    }
+
+    private void cleanUp(int removeCount, boolean all) {
+
         if (updateAccess) {
             updateAccessCounts();
         }
 
-        int removeCount  = size() / 2;
         int accessTarget = getAccessCountCeiling(removeCount, removeCount / 8);
         int savecount    = 0;
 
         if (all) {
-            removeCount  = size();
             accessTarget = accessCount + 1;
         }
 
@@ -288,6 +391,165 @@ public class Cache extends BaseHashMap {
                                     / dataFileCache.dataFileScale;
     }
 
+    /**
+     * Removes a small batch of rows, moving the clock hand over the slots
+     * of the map. Cold rows are removed, together with the hot rows that
+     * have the lowest access count when the number of cold rows is too low
+     * for the next batches.<p>
+     *
+     * The cold rows have an access count of zero or less. Hot rows are
+     * never removed while there are enough cold rows, therefore a scan
+     * replaces only its own rows.
+     */
+    private void cleanUpCold(int removeCount, long removeBytes) {
+
+        int batchCount = capacity / 16 + 1;
+        int limit      = objectKeyTable.length;
+        int coldCount = 0;
+        int hotTarget = 1;
+        int savecount = 0;
+
+        for (int i = 0; i < limit; i++) {
+            if (objectKeyTable[i] != null && accessTable[i] <= 0) {
+                coldCount++;
+            }
+        }
+
+        if (coldCount < batchCount + coldWindow) {
+            hotTarget = getAccessCountCeiling(batchCount, batchCount / 8);
+        }
+
+        for (int i = 0; i < limit; i++) {
+            if (removeCount <= 0 && removeBytes <= 0) {
+                break;
+            }
+
+            if (clockHand >= limit) {
+                clockHand = 0;
+            }
+
+            int          lookup = clockHand++;
+            CachedObject row    = (CachedObject) objectKeyTable[lookup];
+
+            if (row == null) {
+                continue;
+            }
+
+            boolean oldRow = accessTable[lookup] < hotTarget;
+            boolean newRow = row.isNew()
+                             && row.getStorageSize()
+                                >= DataFileCache.initIOBufferSize;
+
+            if (!oldRow && !newRow) {
+                continue;
+            }
+
+            synchronized (row) {
+                if (row.isKeepInMemory()) {
+                    continue;
+                }
+
+                if (row.hasChanged()) {
+                    rowTable[savecount++] = row;
+                }
+
+                if (oldRow) {
+                    row.setInMemory(false);
+                    super.addOrRemoveObject(null, row.getPos(), true);
+
+                    cacheBytesLength -= row.getStorageSize();
+                    removeBytes      -= row.getStorageSize();
+
+                    removeCount--;
+                }
+            }
+
+            if (savecount == rowTable.length) {
+                saveRows(savecount);
+
+                savecount = 0;
+            }
+        }
+
+        saveRows(savecount);
+
+        this.maxPositionOnCleanup = dataFileCache.fileFreePosition
+                                    / dataFileCache.dataFileScale;
+    }
+
+    /**
+     * Writes the changed rows with the lowest file positions, up to the
+     * given count, if the changed rows are above the given limits. Returns
+     * the number of rows written.
+     */
+    int saveChangedRows(int rowLimit, long bytesLimit, int maxCount) {
+
+        int  count = 0;
+        long bytes = 0;
+
+        objectIterator.reset();
+
+        for (; objectIterator.hasNext() && count < rowTable.length; ) {
+            CachedObject row = (CachedObject) objectIterator.next();
+
+            synchronized (row) {
+                if (row.hasChanged() && !row.isKeepInMemory()) {
+                    rowTable[count++] = row;
+                    bytes             += row.getStorageSize();
+                }
+            }
+        }
+
+        if (count <= rowLimit && bytes <= bytesLimit) {
+            ArrayUtil.clearArray(ArrayUtil.CLASS_CODE_OBJECT, rowTable, 0,
+                                 count);
+
+            return 0;
+        }
+
+        flushTimer.start();
+
+        if (count > maxCount) {
+            rowComparator.setType(CachedObjectComparator.COMPARE_POSITION);
+            ArraySort.sort(rowTable, 0, count, rowComparator);
+            ArrayUtil.clearArray(ArrayUtil.CLASS_CODE_OBJECT, rowTable,
+                                 maxCount, count);
+
+            count = maxCount;
+        }
+
+        saveRows(count);
+        flushTimer.stop();
+
+        flushCount++;
+
+        flushRowCount += count;
+
+        return count;
+    }
+
+    /**
+     * Returns the count of changed rows that can be saved.
+     */
+    int getChangedCount() {
+
+        int count = 0;
+
+        objectIterator.reset();
+
+        for (; objectIterator.hasNext(); ) {
+            CachedObject row = (CachedObject) objectIterator.next();
+
+            synchronized (row) {
+                if (row.hasChanged() && !row.isKeepInMemory()) {
+                    count++;
+                }
+            }
+        }
+
+        return count;
+    }
+
     void clearUnchanged() {
 
         objectIterator.reset();
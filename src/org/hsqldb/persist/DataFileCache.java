@@ -36,12 +36,15 @@ import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.hsqldb.Database;
+import org.hsqldb.DatabaseManager;
 import org.hsqldb.HsqlException;
+import org.hsqldb.Session;
 import org.hsqldb.error.Error;
 import org.hsqldb.error.ErrorCode;
 import org.hsqldb.lib.FileAccess;
 import org.hsqldb.lib.FileArchiver;
 import org.hsqldb.lib.FileUtil;
+import org.hsqldb.lib.HsqlTimer;
 import org.hsqldb.lib.Iterator;
 import org.hsqldb.map.BitMap;
 import org.hsqldb.rowio.RowInputBinary180;
@@ -85,6 +88,7 @@ public class DataFileCache {
     public DataSpaceManager  spaceManager;
     static final int         initIOBufferSize = 4096;
     private static final int diskBlockSize    = 4096;
+    private static final int flushBatchSize   = 256;
 
     //
     protected String   dataFileName;
@@ -126,7 +130,11 @@ public class DataFileCache {
     protected volatile long         fileFreePosition;
     protected int                   maxCacheRows;     // number of Rows
     protected long                  maxCacheBytes;    // number of bytes
-    protected Cache                 cache;
+    protected StripedCache          cache;
+    protected long                  writeCount;       // rows written or released
+    protected int                   flushInterval;    // milliseconds
+    private CacheFlusher            flusher;
+    private DataFileDefragOnline    defragOnline;
 
     //
     private RAShadowFile shadowFile;
@@ -140,14 +148,14 @@ public class DataFileCache {
 
         initParams(db, baseFileName, false);
 
-        cache = new Cache(this);
+        cache = new StripedCache(this);
     }
 
     public DataFileCache(Database db, String baseFileName, boolean defrag) {
 
         initParams(db, baseFileName, true);
 
-        cache = new Cache(this);
+        cache = new StripedCache(this);
 
         try {
             if (database.logger.isStoredFileAccess()) {
@@ -197,6 +205,7 @@ public class DataFileCache {
         cacheReadonly = database.isFilesReadOnly();
         maxCacheRows  = database.logger.propCacheMaxRows;
         maxCacheBytes = database.logger.propCacheMaxSize;
+        flushInterval = database.logger.propCacheFlushInterval;
         maxDataFileSize = (long) Integer.MAX_VALUE * dataFileScale
                           * database.logger.getDataFileFactor();
 
@@ -205,6 +214,7 @@ public class DataFileCache {
             this.backupFileName = baseFileName + Logger.newFileExtension;
             this.maxCacheRows   = 1024;
             this.maxCacheBytes  = 1024 * 4096;
+            this.flushInterval  = 0;
         }
     }
 
@@ -386,6 +396,12 @@ public class DataFileCache {
                 spaceManager = new DataSpaceManagerSimple(this);
             }
 
+            if (flushInterval > 0) {
+                flusher = new CacheFlusher();
+
+                flusher.start();
+            }
+
             logInfoEvent("dataFileCache open end");
         } catch (Throwable t) {
             logSevereEvent("DataFileCache.open", t);
@@ -653,6 +669,7 @@ public class DataFileCache {
      */
     public void release() {
 
+        stopFlusher();
         writeLock.lock();
 
         try {
@@ -683,6 +700,7 @@ public class DataFileCache {
      */
     public void close() {
 
+        stopFlusher();
         writeLock.lock();
 
         try {
@@ -716,11 +734,117 @@ public class DataFileCache {
         }
     }
 
+    private void stopFlusher() {
+
+        if (flusher != null) {
+            flusher.stop();
+
+            flusher = null;
+        }
+    }
+
+    /**
+     * Writes changed rows when they are above a quarter of the cache
+     * limits, until they are below one eighth of the limits. Then removes
+     * rows when the cache is above seven eighths of the limits, until it is
+     * at three quarters. The rows are written in the order of their file
+     * position. The write lock is released after each batch, so that
+     * sessions can read and change rows during a long flush.
+     */
+    void flush() {
+
+        int  rowLimit   = maxCacheRows / 4;
+        long bytesLimit = maxCacheBytes / 4;
+
+        while (true) {
+            writeLock.lock();
+
+            try {
+                if (dataFile == null || cacheReadonly) {
+                    return;
+                }
+
+                if (cache.saveChangedRows(rowLimit, bytesLimit, flushBatchSize)
+                        == 0) {
+                    break;
+                }
+            } finally {
+                writeLock.unlock();
+            }
+
+            rowLimit   = maxCacheRows / 8;
+            bytesLimit = maxCacheBytes / 8;
+        }
+
+        if (cache.size() < maxCacheRows / 8 * 7
+                && cache.getTotalCachedBlockSize() < maxCacheBytes / 8 * 7) {
+            return;
+        }
+
+        writeLock.lock();
+
+        try {
+            if (dataFile == null || cacheReadonly) {
+                return;
+            }
+
+            cache.cleanUp(maxCacheRows / 4 * 3, maxCacheBytes / 4 * 3);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Writes all the changed rows in batches, releasing the write lock after
+     * each batch. Used before an incremental checkpoint, so that sessions
+     * can read and change rows while most of the rows are written. Stops
+     * after writing as many rows as were changed at the start, when
+     * sessions change rows as fast as they are written.
+     */
+    void flushAll() {
+
+        int limit;
+
+        writeLock.lock();
+
+        try {
+            if (dataFile == null || cacheReadonly) {
+                return;
+            }
+
+            limit = cache.getChangedCount();
+        } finally {
+            writeLock.unlock();
+        }
+
+        while (limit > 0) {
+            writeLock.lock();
+
+            try {
+                if (dataFile == null || cacheReadonly) {
+                    return;
+                }
+
+                int count = cache.saveChangedRows(0, 0, flushBatchSize);
+
+                if (count == 0) {
+                    break;
+                }
+
+                limit -= count;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
     protected void clear() {
 
         writeLock.lock();
 
         try {
+            writeCount++;
+
             cache.clear();
         } finally {
             writeLock.unlock();
@@ -919,16 +1043,10 @@ public class DataFileCache {
 
     public int getStorageSize(long i) {
 
-        readLock.lock();
+        CachedObject value = cache.get(i);
 
-        try {
-            CachedObject value = cache.get(i);
-
-            if (value != null) {
-                return value.getStorageSize();
-            }
-        } finally {
-            readLock.unlock();
+        if (value != null) {
+            return value.getStorageSize();
         }
 
         return readSize(i);
@@ -950,36 +1068,11 @@ public class DataFileCache {
     public CachedObject get(CachedObject object, PersistentStore store,
                             boolean keep) {
 
-        readLock.lock();
-
-        long pos;
-
-        try {
-            if (object.isInMemory()) {
-                if (keep) {
-                    object.keepInMemory(true);
-                }
-
-                return object;
-            }
-
-            pos = object.getPos();
+        long         pos   = object.getPos();
+        CachedObject value = cache.get(object, keep);
 
-            if (pos < 0) {
-                return null;
-            }
-
-            object = cache.get(pos);
-
-            if (object != null) {
-                if (keep) {
-                    object.keepInMemory(true);
-                }
-
-                return object;
-            }
-        } finally {
-            readLock.unlock();
+        if (value != null || pos < 0) {
+            return value;
         }
 
         return getFromFile(pos, store, keep);
@@ -994,20 +1087,10 @@ public class DataFileCache {
             return null;
         }
 
-        readLock.lock();
-
-        try {
-            object = cache.get(pos);
-
-            if (object != null) {
-                if (keep) {
-                    object.keepInMemory(true);
-                }
+        object = cache.get(pos, keep);
 
-                return object;
-            }
-        } finally {
-            readLock.unlock();
+        if (object != null) {
+            return object;
         }
 
         return getFromFile(pos, size, store, keep);
@@ -1021,20 +1104,10 @@ public class DataFileCache {
             return null;
         }
 
-        readLock.lock();
+        object = cache.get(pos, keep);
 
-        try {
-            object = cache.get(pos);
-
-            if (object != null) {
-                if (keep) {
-                    object.keepInMemory(true);
-                }
-
-                return object;
-            }
-        } finally {
-            readLock.unlock();
+        if (object != null) {
+            return object;
         }
 
         return getFromFile(pos, store, keep);
@@ -1044,21 +1117,41 @@ public class DataFileCache {
                                      boolean keep) {
 
         CachedObject object = null;
+        long         count  = 0;
 
-        writeLock.lock();
+        // while other sessions use the file, read with the read lock
+        if (!writeLock.tryLock()) {
+            readLock.lock();
 
-        try {
-            object = cache.get(pos);
+            try {
+                object = cache.get(pos, keep);
 
-            if (object != null) {
-                if (keep) {
-                    object.keepInMemory(true);
+                if (object != null) {
+                    return object;
                 }
 
-                return object;
+                count  = writeCount;
+                object = readShared(pos, 0, store);
+            } finally {
+                readLock.unlock();
             }
 
-            for (int j = 0; j < 2; j++) {
+            writeLock.lock();
+        }
+
+        try {
+            CachedObject cached = cache.get(pos, keep);
+
+            if (cached != null) {
+                return cached;
+            }
+
+            // the row may have been written or released after it was read
+            if (count != writeCount) {
+                object = null;
+            }
+
+            for (int j = 0; object == null && j < 2; j++) {
                 try {
                     readObject(pos);
 
@@ -1091,6 +1184,9 @@ public class DataFileCache {
                 }
             }
 
+            // the row is complete before other threads can find it
+            store.set(object);
+
             // for text tables with empty rows at the beginning,
             // pos may move forward in readObject
             cache.put(object);
@@ -1099,8 +1195,6 @@ public class DataFileCache {
                 object.keepInMemory(true);
             }
 
-            store.set(object);
-
             return object;
         } catch (HsqlException e) {
             logSevereEvent(dataFileName + " getFromFile failed " + pos, e);
@@ -1115,21 +1209,41 @@ public class DataFileCache {
                                      PersistentStore store, boolean keep) {
 
         CachedObject object = null;
+        long         count  = 0;
 
-        writeLock.lock();
+        // while other sessions use the file, read with the read lock
+        if (!writeLock.tryLock()) {
+            readLock.lock();
 
-        try {
-            object = cache.get(pos);
+            try {
+                object = cache.get(pos, keep);
 
-            if (object != null) {
-                if (keep) {
-                    object.keepInMemory(true);
+                if (object != null) {
+                    return object;
                 }
 
-                return object;
+                count  = writeCount;
+                object = readShared(pos, size, store);
+            } finally {
+                readLock.unlock();
+            }
+
+            writeLock.lock();
+        }
+
+        try {
+            CachedObject cached = cache.get(pos, keep);
+
+            if (cached != null) {
+                return cached;
             }
 
-            for (int j = 0; j < 2; j++) {
+            // the row may have been written or released after it was read
+            if (count != writeCount) {
+                object = null;
+            }
+
+            for (int j = 0; object == null && j < 2; j++) {
                 try {
                     readObject(pos, size);
 
@@ -1148,6 +1262,9 @@ public class DataFileCache {
                 }
             }
 
+            // the row is complete before other threads can find it
+            store.set(object);
+
             // for text tables with empty rows at the beginning,
             // pos may move forward in readObject
             cache.put(object);
@@ -1156,8 +1273,6 @@ public class DataFileCache {
                 object.keepInMemory(true);
             }
 
-            store.set(object);
-
             return object;
         } catch (HsqlException e) {
             logSevereEvent(dataFileName + " getFromFile failed " + pos, e);
@@ -1183,21 +1298,75 @@ public class DataFileCache {
 
     private int readSize(long pos) {
 
-        writeLock.lock();
+        byte[] sizeBuffer = new byte[4];
+
+        readLock.lock();
 
         try {
-            dataFile.seek(pos * dataFileScale);
+            dataFile.read(pos * dataFileScale, sizeBuffer, 0, 4);
 
-            return dataFile.readInt();
+            return getInt(sizeBuffer);
         } catch (Throwable t) {
             logSevereEvent("DataFileCache.readSize", t, pos);
 
             throw Error.error(ErrorCode.DATA_FILE_ERROR, t);
         } finally {
-            writeLock.unlock();
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Reads a row with positional reads while holding the read lock, so that
+     * the sessions can read rows that are not in the cache at the same time.
+     * A new row input is used for each row. Returns null if the read fails;
+     * the row is then read again with the write lock, which reports the
+     * error.
+     */
+    private CachedObject readShared(long pos, int size,
+                                    PersistentStore store) {
+
+        try {
+            long              filePos = pos * dataFileScale;
+            RowInputInterface in;
+
+            if (size == 0) {
+                byte[] sizeBuffer = new byte[4];
+
+                dataFile.read(filePos, sizeBuffer, 0, 4);
+
+                size = getInt(sizeBuffer);
+                in   = newRowInput(size);
+
+                in.resetRow(pos, size);
+                dataFile.read(filePos + 4, in.getBuffer(), 4, size - 4);
+            } else {
+                in = newRowInput(size);
+
+                in.resetBlock(pos, size);
+                dataFile.read(filePos, in.getBuffer(), 0, size);
+            }
+
+            return store.get(in);
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
+    private RowInputInterface newRowInput(int size) {
+
+        if (is180) {
+            return new RowInputBinary180(new byte[size]);
+        } else {
+            return new RowInputBinaryDecode(database.logger.getCrypto(),
+                                            new byte[size]);
         }
     }
 
+    private static int getInt(byte[] buffer) {
+        return ((buffer[0] & 0xff) << 24) + ((buffer[1] & 0xff) << 16)
+               + ((buffer[2] & 0xff) << 8) + (buffer[3] & 0xff);
+    }
+
     private void readObject(long pos) {
 
         try {
@@ -1244,17 +1413,9 @@ public class DataFileCache {
         writeLock.lock();
 
         try {
-            Iterator it = cache.getIterator();
+            writeCount++;
 
-            while (it.hasNext()) {
-                CachedObject o   = (CachedObject) it.next();
-                long         pos = o.getPos();
-
-                if (pos >= start && pos < limit) {
-                    o.setInMemory(false);
-                    it.remove();
-                }
-            }
+            cache.releaseRange(start, limit);
         } finally {
             writeLock.unlock();
         }
@@ -1265,6 +1426,8 @@ public class DataFileCache {
         writeLock.lock();
 
         try {
+            writeCount++;
+
             return cache.release(pos);
         } finally {
             writeLock.unlock();
@@ -1308,6 +1471,8 @@ public class DataFileCache {
 
     public void saveRowOutput(long pos) {
 
+        writeCount++;
+
         try {
             dataFile.seek(pos * dataFileScale);
             dataFile.write(rowOut.getOutputStream().getBuffer(), 0,
@@ -1321,6 +1486,8 @@ public class DataFileCache {
 
     protected void saveRowNoLock(CachedObject row) {
 
+        writeCount++;
+
         try {
             rowOut.reset();
             row.write(rowOut);
@@ -1337,7 +1504,7 @@ public class DataFileCache {
     protected void copyShadow(CachedObject[] rows, int offset, int count) {
 
         if (shadowFile != null) {
-            long time    = cache.saveAllTimer.elapsedTime();
+            long time    = cache.getSaveAllTime();
             long seekpos = 0;
 
             try {
@@ -1356,7 +1523,7 @@ public class DataFileCache {
                 throw Error.error(ErrorCode.DATA_FILE_ERROR, t);
             }
 
-            time = cache.saveAllTimer.elapsedTime() - time;
+            time = cache.getSaveAllTime() - time;
 
             logDetailEvent("copyShadow [size, time] "
                            + shadowFile.getSavedLength() + " " + time);
@@ -1577,6 +1744,68 @@ public class DataFileCache {
         return cache.incrementAccessCount();
     }
 
+    public long getCachePutCount() {
+        return cache.getPutCount();
+    }
+
+    /**
+     * Returns the number of times a session had to clean up the cache
+     * before adding a row.
+     */
+    public long getStallCount() {
+        return cache.getStallCount();
+    }
+
+    public long getStallTime() {
+        return cache.getStallTime();
+    }
+
+    public long getFlushCount() {
+        return cache.getFlushCount();
+    }
+
+    public long getFlushRowCount() {
+        return cache.getFlushRowCount();
+    }
+
+    public long getFlushTime() {
+        return cache.getFlushTime();
+    }
+
+    /**
+     * Executes one step of the online defrag of the .data file and returns
+     * the count of file blocks emptied. Applies only to files with table
+     * spaces.
+     */
+    public int defragOnline(Session session, int rowLimit) {
+
+        if (cacheReadonly
+                || !(spaceManager instanceof DataSpaceManagerBlocks)) {
+            return 0;
+        }
+
+        if (defragOnline == null) {
+            defragOnline = new DataFileDefragOnline(this);
+        }
+
+        return defragOnline.defrag(session, rowLimit);
+    }
+
+    public long getDefragCount() {
+        return defragOnline == null ? 0
+                                    : defragOnline.stepCount;
+    }
+
+    public long getDefragRowCount() {
+        return defragOnline == null ? 0
+                                    : defragOnline.rowCount;
+    }
+
+    public long getDefragBytes() {
+        return defragOnline == null ? 0
+                                    : defragOnline.freedBytes;
+    }
+
     public String getFileName() {
         return dataFileName;
     }
@@ -1607,7 +1836,7 @@ public class DataFileCache {
             if (!fileModified) {
 
                 // unset saved flag;
-                long start = cache.saveAllTimer.elapsedTime();
+                long start = cache.getSaveAllTime();
 
                 dataFile.seek(FLAGS_POS);
 
@@ -1685,4 +1914,33 @@ public class DataFileCache {
             database.logger.logDetailEvent(message);
         }
     }
+
+    /**
+     * Runs flush() periodically with the timer of the database manager.
+     */
+    class CacheFlusher implements Runnable {
+
+        private Object timerTask;
+
+        public void run() {
+
+            try {
+                flush();
+            } catch (Throwable t) {
+                logSevereEvent("DataFileCache.flush", t);
+            }
+        }
+
+        public void start() {
+            timerTask = DatabaseManager.getTimer().schedulePeriodicallyAfter(
+                flushInterval, flushInterval, this, true);
+        }
+
+        public void stop() {
+
+            HsqlTimer.cancel(timerTask);
+
+            timerTask = null;
+        }
+    }
 }
@@ -148,10 +148,10 @@ public class DataFileCacheSession extends DataFileCache {
         Iterator it = cache.getIterator();
 
         while (it.hasNext()) {
-            Row row = (Row) it.next();
+            CachedObject object = (CachedObject) it.next();
 
-            row.setInMemory(false);
-            row.destroy();
+            object.setInMemory(false);
+            object.destroy();
         }
 
         cache.clear();
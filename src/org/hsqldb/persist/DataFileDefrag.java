@@ -183,8 +183,8 @@ final class DataFileDefrag {
         pointerLookup.clear();
         database.logger.logDetailEvent("lookup begins " + table.getName().name
                                        + " " + stopw.elapsedTime());
-        RowStoreBPlusDisk.moveDataToSpace(store, dataFileOut, space,
-                                        pointerLookup);
+        long rowCount = RowStoreBPlusDisk.moveDataToSpace(store, dataFileOut,
+            space, pointerLookup);
 
         for (int i = 0; i < table.getIndexCount(); i++) {
             if (rootsArray[i] == -1) {
@@ -203,15 +203,14 @@ final class DataFileDefrag {
         // log any discrepency in row count
         long count = rootsArray[table.getIndexCount() * 2];
 
-        if (count != pointerLookup.size()) {
+        if (count != rowCount) {
             database.logger.logSevereEvent("discrepency in row count "
                                            + table.getName().name + " "
-                                           + count + " "
-                                           + pointerLookup.size(), null);
+                                           + count + " " + rowCount, null);
         }
 
         rootsArray[table.getIndexCount()]     = 0;
-        rootsArray[table.getIndexCount() * 2] = pointerLookup.size();
+        rootsArray[table.getIndexCount() * 2] = rowCount;
 
         database.logger.logDetailEvent("table written "
                                        + table.getName().name);
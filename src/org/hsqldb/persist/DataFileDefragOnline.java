@@ -0,0 +1,278 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+
+package org.hsqldb.persist;
+
+import org.hsqldb.Database;
+import org.hsqldb.Row;
+import org.hsqldb.Session;
+import org.hsqldb.Table;
+import org.hsqldb.TableBase;
+import org.hsqldb.index.Index;
+import org.hsqldb.index.IndexBPlus;
+import org.hsqldb.lib.HsqlArrayList;
+import org.hsqldb.lib.LongDeque;
+import org.hsqldb.lib.StopWatch;
+
+/**
+ * Moves the rows and index pages of CACHED tables out of sparse file blocks
+ * while the database is online.<p>
+ *
+ * Each step works on one table space, the spaces taken in turn. The blocks
+ * of the space that are at least half free are selected, the emptiest
+ * first. The rows in these blocks are deleted from the indexes and inserted
+ * again at new positions, as the indexes order rows with equal keys by
+ * their positions. The index pages in the blocks are then copied to new
+ * positions. The blocks that become empty are returned to the
+ * DataSpaceManagerBlocks for use by any table space.<p>
+ *
+ * A step is executed by a statement that locks the catalog, so no other
+ * statement is executed while it runs. The count of rows moved in each step
+ * is limited. A step is skipped while another session is in a transaction
+ * or holds an updatable result, as these may refer to rows by position.
+ *
+ * @version 2.3.0
+ * @since 2.3.0
+ */
+final class DataFileDefragOnline {
+
+    static final int maxBlockCount = 4;
+
+    //
+    final DataFileCache cache;
+    final Database      database;
+    int                 lastSpaceId = -1;
+
+    // reporting vars
+    long stepCount;
+    long rowCount;
+    long pageCount;
+    long freedBytes;
+
+    DataFileDefragOnline(DataFileCache cache) {
+        this.cache    = cache;
+        this.database = cache.database;
+    }
+
+    /**
+     * Executes one step and returns the count of file blocks that were
+     * emptied.
+     */
+    int defrag(Session session, int rowLimit) {
+
+        if (hasRowReferences(session)) {
+            return 0;
+        }
+
+        DataSpaceManagerBlocks spaceManager =
+            (DataSpaceManagerBlocks) cache.spaceManager;
+        HsqlArrayList tables = getNextSpaceTables();
+
+        if (tables.isEmpty()) {
+            return 0;
+        }
+
+        int spaceId = lastSpaceId;
+        TableSpaceManagerBlocks tableSpace =
+            (TableSpaceManagerBlocks) spaceManager.getTableSpace(spaceId);
+        int       scale      = cache.getDataFileScale();
+        int       blockUnits = spaceManager.getFileBlockItemCount();
+        StopWatch sw         = new StopWatch();
+        int       rows       = 0;
+        int       pages      = 0;
+
+        tableSpace.releaseToBlocks();
+
+        long freshStart = tableSpace.getFreshBlockFreePos() / scale;
+        long freshLimit = tableSpace.getFreshBlockLimit() / scale;
+        int[] blocks = spaceManager.getSparseBlocks(spaceId, maxBlockCount,
+            freshStart, freshLimit);
+
+        if (blocks.length == 0) {
+            return 0;
+        }
+
+        for (int i = 0; i < tables.size() && rows < rowLimit; i++) {
+            Table           table = (Table) tables.get(i);
+            PersistentStore store = table.getRowStore(session);
+
+            rows += moveRows(session, store, tableSpace, blocks, blockUnits,
+                             rowLimit - rows);
+        }
+
+        for (int i = 0; i < tables.size(); i++) {
+            Table           table = (Table) tables.get(i);
+            PersistentStore store = table.getRowStore(session);
+            Index[]         keys  = store.getAccessorKeys();
+
+            for (int j = 0; j < keys.length; j++) {
+                pages += ((IndexBPlus) keys[j]).movePages(store, blocks,
+                        blockUnits);
+            }
+        }
+
+        tableSpace.releaseToBlocks();
+
+        int emptied = spaceManager.getEmptyBlockCount(blocks);
+
+        stepCount++;
+
+        rowCount   += rows;
+        pageCount  += pages;
+        freedBytes += (long) emptied * spaceManager.getFileBlockSize();
+
+        database.logger.logInfoEvent("online defrag space " + spaceId
+                                     + " blocks " + blocks.length
+                                     + " rows " + rows + " pages " + pages
+                                     + " emptied " + emptied + " time "
+                                     + sw.elapsedTime());
+
+        return emptied;
+    }
+
+    /**
+     * Moves the rows of the table that are in the blocks to new positions
+     * and returns the count of rows moved. Rows with uncommitted changes
+     * are not moved.
+     */
+    private int moveRows(Session session, PersistentStore store,
+                         TableSpaceManagerBlocks tableSpace, int[] blocks,
+                         int blockUnits, int rowLimit) {
+
+        Index[] keys = store.getAccessorKeys();
+
+        if (keys.length == 0) {
+            return 0;
+        }
+
+        LongDeque list  = new LongDeque();
+        int       count = 0;
+
+        ((IndexBPlus) keys[0]).getRowPositions(store, blocks, blockUnits,
+                                               list, rowLimit);
+
+        for (int i = 0; i < list.size(); i++) {
+            Row row = (Row) store.get(list.get(i), false);
+
+            if (row.rowAction != null) {
+                continue;
+            }
+
+            Object[] data = row.getData();
+
+            store.delete(session, row);
+            database.txManager.removeTransactionInfo(row);
+            store.remove(row);
+
+            // the released space is not reused for the moved row
+            tableSpace.releaseToBlocks();
+
+            row = (Row) store.getNewCachedObject(session, data, false);
+
+            store.indexRow(session, row);
+
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns true if a session other than the given one is in a
+     * transaction or holds an updatable result.
+     */
+    private boolean hasRowReferences(Session session) {
+
+        Session[] sessions = database.sessionManager.getAllSessions();
+
+        for (int i = 0; i < sessions.length; i++) {
+            if (sessions[i] == session) {
+                continue;
+            }
+
+            if (sessions[i].isInMidTransaction()
+                    || sessions[i].sessionData.hasUpdatableResult()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Selects the table space after the last one and returns its CACHED
+     * tables.
+     */
+    private HsqlArrayList getNextSpaceTables() {
+
+        HsqlArrayList allTables = database.schemaManager.getAllTables(true);
+        HsqlArrayList tables    = new HsqlArrayList();
+        int           firstId   = Integer.MAX_VALUE;
+        int           nextId    = Integer.MAX_VALUE;
+
+        for (int i = 0; i < allTables.size(); i++) {
+            Table table = (Table) allTables.get(i);
+
+            if (table.getTableType() != TableBase.CACHED_TABLE) {
+                continue;
+            }
+
+            int spaceId = table.getSpaceID();
+
+            if (spaceId < firstId) {
+                firstId = spaceId;
+            }
+
+            if (spaceId > lastSpaceId && spaceId < nextId) {
+                nextId = spaceId;
+            }
+        }
+
+        if (nextId == Integer.MAX_VALUE) {
+            nextId = firstId;
+        }
+
+        for (int i = 0; i < allTables.size(); i++) {
+            Table table = (Table) allTables.get(i);
+
+            if (table.getTableType() == TableBase.CACHED_TABLE
+                    && table.getSpaceID() == nextId) {
+                tables.add(table);
+            }
+        }
+
+        lastSpaceId = nextId;
+
+        return tables;
+    }
+}
@@ -33,6 +33,7 @@ package org.hsqldb.persist;
 
 import org.hsqldb.error.Error;
 import org.hsqldb.error.ErrorCode;
+import org.hsqldb.lib.ArrayUtil;
 import org.hsqldb.lib.DoubleIntIndex;
 import org.hsqldb.lib.IntKeyHashMap;
 import org.hsqldb.lib.Iterator;
@@ -612,9 +613,8 @@ public class DataSpaceManagerBlocks implements DataSpaceManager {
 
             freeTableSpacePart(position, units);
 
-            int blockIndex = (int) ((position + units) / fileBlockItemCount);
-
-            ba.endBlockUpdate(blockIndex + 1);
+            // the last block may be any block in the list
+            ba.endBlockUpdate(-1);
             ba.reset();
         } finally {
             cache.writeLock.unlock();
@@ -693,6 +693,101 @@ public class DataSpaceManagerBlocks implements DataSpaceManager {
         return fragment;
     }
 
+    /**
+     * Returns the indexes of up to count file blocks of the table space that
+     * have free holes of at least half the block, the emptiest first. The first block and the
+     * blocks in the given range of file positions are not included.
+     */
+    int[] getSparseBlocks(int spaceId, int count, long excludeStart,
+                          long excludeLimit) {
+
+        int[] blocks     = new int[count];
+        int[] freeUnits  = new int[count];
+        int   blockCount = 0;
+        int   firstBlock = (int) (excludeStart / fileBlockItemCount);
+        int lastBlock = (int) (Math.max(excludeStart, excludeLimit - 1)
+                               / fileBlockItemCount);
+
+        cache.writeLock.lock();
+
+        try {
+            ba.initialise(false);
+
+            for (; ba.nextBlockForTable(spaceId); ) {
+                int index = ba.currentBlockIndex;
+
+                // free space at the end of a block is used as a fresh
+                // region after a checkpoint, only the holes are counted
+                int free = ba.getFreeSpaceValue() - ba.getFreeBlockValue();
+
+                if (free < fileBlockItemCount / 2) {
+                    continue;
+                }
+
+                // the first block holds the file header
+                if (index == 0
+                        || (index >= firstBlock && index <= lastBlock)) {
+                    continue;
+                }
+
+                int i = blockCount;
+
+                for (; i > 0 && freeUnits[i - 1] < free; i--) {
+                    if (i < count) {
+                        blocks[i]    = blocks[i - 1];
+                        freeUnits[i] = freeUnits[i - 1];
+                    }
+                }
+
+                if (i < count) {
+                    blocks[i]    = index;
+                    freeUnits[i] = free;
+
+                    if (blockCount < count) {
+                        blockCount++;
+                    }
+                }
+            }
+
+            ba.reset();
+        } finally {
+            cache.writeLock.unlock();
+        }
+
+        return (int[]) ArrayUtil.resizeArray(blocks, blockCount);
+    }
+
+    /**
+     * Returns the count of the given file blocks that are empty.
+     */
+    int getEmptyBlockCount(int[] blocks) {
+
+        int count = 0;
+
+        cache.writeLock.lock();
+
+        try {
+            ba.initialise(false);
+
+            for (int i = 0; i < blocks.length; i++) {
+                if (ba.moveToBlock(blocks[i])
+                        && ba.getTableId() == tableIdEmpty) {
+                    count++;
+                }
+            }
+
+            ba.reset();
+        } finally {
+            cache.writeLock.unlock();
+        }
+
+        return count;
+    }
+
+    int getFileBlockItemCount() {
+        return fileBlockItemCount;
+    }
+
     public int getFileBlockSize() {
         return fileBlockSize;
     }
@@ -37,6 +37,7 @@ import org.hsqldb.Database;
 import org.hsqldb.DatabaseURL;
 import org.hsqldb.error.Error;
 import org.hsqldb.error.ErrorCode;
+import org.hsqldb.index.Index;
 import org.hsqldb.lib.HashMap;
 import org.hsqldb.lib.HashSet;
 import org.hsqldb.lib.Iterator;
@@ -167,6 +168,8 @@ public class HsqlDatabaseProperties extends HsqlProperties {
 
     //
     public static final String hsqldb_inc_backup = "hsqldb.inc_backup";
+    public static final String hsqldb_inc_checkpoint =
+        "hsqldb.inc_checkpoint";
 
     //
     public static final String  hsqldb_version  = "version";
@@ -216,18 +219,32 @@ public class HsqlDatabaseProperties extends HsqlProperties {
         "hsqldb.cache_file_scale";
     public static final String hsqldb_cache_free_count =
         "hsqldb.cache_free_count";
-    public static final String hsqldb_cache_rows = "hsqldb.cache_rows";
+    public static final String hsqldb_cache_policy = "hsqldb.cache_policy";
+    public static final String hsqldb_cache_flush_interval =
+        "hsqldb.cache_flush_interval";
+    public static final String hsqldb_batch_filter = "hsqldb.batch_filter";
+    public static final String hsqldb_cache_rows   = "hsqldb.cache_rows";
     public static final String hsqldb_cache_size = "hsqldb.cache_size";
     public static final String hsqldb_default_table_type =
         "hsqldb.default_table_type";
     public static final String hsqldb_defrag_limit   = "hsqldb.defrag_limit";
+    public static final String hsqldb_defrag_online_rows =
+        "hsqldb.defrag_online_rows";
+    public static final String hsqldb_defrag_online_interval =
+        "hsqldb.defrag_online_interval";
     public static final String hsqldb_files_readonly = "files_readonly";
     public static final String hsqldb_lock_file      = "hsqldb.lock_file";
+    public static final String hsqldb_index_fanout   = "hsqldb.index_fanout";
+    public static final String hsqldb_index_fill_factor =
+        "hsqldb.index_fill_factor";
+    public static final String hsqldb_log_binary     = "hsqldb.log_binary";
     public static final String hsqldb_log_data       = "hsqldb.log_data";
     public static final String hsqldb_log_size       = "hsqldb.log_size";
     public static final String hsqldb_nio_data_file  = "hsqldb.nio_data_file";
     public static final String hsqldb_nio_max_size   = "hsqldb.nio_max_size";
+    public static final String hsqldb_nio_full_map   = "hsqldb.nio_full_map";
     public static final String hsqldb_script_format  = "hsqldb.script_format";
+    public static final String hsqldb_script_threads = "hsqldb.script_threads";
     public static final String hsqldb_temp_directory = "hsqldb.temp_directory";
     public static final String hsqldb_result_max_memory_rows =
         "hsqldb.result_max_memory_rows";
@@ -361,18 +378,30 @@ public class HsqlDatabaseProperties extends HsqlProperties {
         dbMeta.put(jdbc_translate_tti_types,
                    HsqlProperties.getMeta(jdbc_translate_tti_types,
                                           SQL_PROPERTY, true));
+        dbMeta.put(hsqldb_batch_filter,
+                   HsqlProperties.getMeta(hsqldb_batch_filter, SQL_PROPERTY,
+                                          true));
         dbMeta.put(hsqldb_inc_backup,
                    HsqlProperties.getMeta(hsqldb_inc_backup, SQL_PROPERTY,
                                           true));
+        dbMeta.put(hsqldb_inc_checkpoint,
+                   HsqlProperties.getMeta(hsqldb_inc_checkpoint,
+                                          SQL_PROPERTY, false));
         dbMeta.put(hsqldb_lock_file,
                    HsqlProperties.getMeta(hsqldb_lock_file, SQL_PROPERTY,
                                           true));
+        dbMeta.put(hsqldb_log_binary,
+                   HsqlProperties.getMeta(hsqldb_log_binary, SQL_PROPERTY,
+                                          false));
         dbMeta.put(hsqldb_log_data,
                    HsqlProperties.getMeta(hsqldb_log_data, SQL_PROPERTY,
                                           true));
         dbMeta.put(hsqldb_nio_data_file,
                    HsqlProperties.getMeta(hsqldb_nio_data_file, SQL_PROPERTY,
                                           true));
+        dbMeta.put(hsqldb_nio_full_map,
+                   HsqlProperties.getMeta(hsqldb_nio_full_map, SQL_PROPERTY,
+                                          false));
         dbMeta.put(hsqldb_full_log_replay,
                    HsqlProperties.getMeta(hsqldb_full_log_replay,
                                           SQL_PROPERTY, false));
@@ -515,6 +544,23 @@ public class HsqlDatabaseProperties extends HsqlProperties {
         dbMeta.put(hsqldb_cache_free_count,
                    HsqlProperties.getMeta(hsqldb_cache_free_count,
                                           SQL_PROPERTY, 512, 0, 4096));
+        dbMeta.put(hsqldb_cache_policy,
+                   HsqlProperties.getMeta(hsqldb_cache_policy, SQL_PROPERTY,
+                                          Cache.POLICY_ACCESS_COUNT,
+                                          Cache.POLICY_ACCESS_COUNT,
+                                          Cache.POLICY_SCAN_RESISTANT));
+        dbMeta.put(hsqldb_cache_flush_interval,
+                   HsqlProperties.getMeta(hsqldb_cache_flush_interval,
+                                          SQL_PROPERTY, 0, 0, 60000));
+        dbMeta.put(hsqldb_script_threads,
+                   HsqlProperties.getMeta(hsqldb_script_threads,
+                                          SQL_PROPERTY, 1, 0, 256));
+        dbMeta.put(hsqldb_defrag_online_rows,
+                   HsqlProperties.getMeta(hsqldb_defrag_online_rows,
+                                          SQL_PROPERTY, 0, 0, 1000000));
+        dbMeta.put(hsqldb_defrag_online_interval,
+                   HsqlProperties.getMeta(hsqldb_defrag_online_interval,
+                                          SQL_PROPERTY, 1000, 10, 3600000));
         dbMeta.put(hsqldb_result_max_memory_rows,
                    HsqlProperties.getMeta(hsqldb_result_max_memory_rows,
                                           SQL_PROPERTY, 0, 0,
@@ -522,6 +568,17 @@ public class HsqlDatabaseProperties extends HsqlProperties {
         dbMeta.put(hsqldb_nio_max_size,
                    HsqlProperties.getMeta(hsqldb_nio_max_size, SQL_PROPERTY,
                                           256, 64, 262144));
+        dbMeta.put(hsqldb_index_fanout,
+                   HsqlProperties.getMeta(hsqldb_index_fanout, SQL_PROPERTY,
+                                          Index.DEFAULT_FANOUT,
+                                          Index.MIN_FANOUT,
+                                          Index.MAX_FANOUT));
+        dbMeta.put(hsqldb_index_fill_factor,
+                   HsqlProperties.getMeta(hsqldb_index_fill_factor,
+                                          SQL_PROPERTY,
+                                          Index.DEFAULT_FILL_FACTOR,
+                                          Index.MIN_FILL_FACTOR,
+                                          Index.MAX_FILL_FACTOR));
     }
 
     private Database database;
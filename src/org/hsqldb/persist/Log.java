@@ -50,6 +50,7 @@ import org.hsqldb.scriptio.ScriptReaderBase;
 import org.hsqldb.scriptio.ScriptReaderDecode;
 import org.hsqldb.scriptio.ScriptReaderText;
 import org.hsqldb.scriptio.ScriptWriterBase;
+import org.hsqldb.scriptio.ScriptWriterBinary;
 import org.hsqldb.scriptio.ScriptWriterEncode;
 import org.hsqldb.scriptio.ScriptWriterText;
 
@@ -401,6 +402,18 @@ public class Log {
         }
     }
 
+    /**
+     * Writes the changed rows of the data file cache before a checkpoint.
+     */
+    void flushCache() {
+
+        if (filesReadOnly || cache == null) {
+            return;
+        }
+
+        cache.flushAll();
+    }
+
     /**
      * Performs checkpoint including pre and post operations. Returns to the
      * same state as before the checkpoint.
@@ -656,6 +669,11 @@ public class Log {
             throw Error.error(ErrorCode.FILE_IO_ERROR, logFileName);
         }
 
+        if (writeDelay == 0) {
+            session.logSyncWriter = dbLogWriter;
+            session.logSyncCount  = dbLogWriter.size();
+        }
+
         if (maxLogSize > 0 && dbLogWriter.size() > maxLogSize) {
             database.logger.setCheckpointRequired();
         }
@@ -699,8 +717,13 @@ public class Log {
 
         try {
             if (crypto == null) {
-                dbLogWriter = new ScriptWriterText(database, logFileName,
-                                                   false, false, false);
+                if (database.logger.propLogBinary) {
+                    dbLogWriter = new ScriptWriterBinary(database,
+                                                         logFileName);
+                } else {
+                    dbLogWriter = new ScriptWriterText(database, logFileName,
+                                                       false, false, false);
+                }
             } else {
                 dbLogWriter = new ScriptWriterEncode(database, logFileName,
                                                      crypto);
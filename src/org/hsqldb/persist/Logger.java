@@ -60,6 +60,7 @@ import org.hsqldb.error.Error;
 import org.hsqldb.error.ErrorCode;
 import org.hsqldb.index.Index;
 import org.hsqldb.index.IndexBPlus;
+import org.hsqldb.index.IndexBPlusLong;
 import org.hsqldb.index.IndexBPlusMemory;
 import org.hsqldb.lib.ArrayUtil;
 import org.hsqldb.lib.FileAccess;
@@ -112,21 +113,45 @@ public class Logger {
     private boolean  loggingEnabled;
     private boolean  syncFile = false;
 
+    // URL properties that apply when an existing database is opened
+    static final String[] urlAccessProperties = new String[] {
+        HsqlDatabaseProperties.hsqldb_cache_policy,
+        HsqlDatabaseProperties.hsqldb_cache_flush_interval,
+        HsqlDatabaseProperties.hsqldb_nio_full_map,
+        HsqlDatabaseProperties.hsqldb_log_binary,
+        HsqlDatabaseProperties.hsqldb_script_threads,
+        HsqlDatabaseProperties.hsqldb_inc_checkpoint,
+        HsqlDatabaseProperties.hsqldb_defrag_online_rows,
+        HsqlDatabaseProperties.hsqldb_defrag_online_interval,
+        HsqlDatabaseProperties.hsqldb_batch_filter
+    };
+
     //
     boolean propIsFileDatabase;
+    boolean propBatchFilter = true;
     boolean propIncrementBackup;
+    boolean propIncrementCheckpoint;
     boolean propNioDataFile;
     long    propNioMaxSize    = 256 * 1024 * 1024L;
+    boolean propNioFullMap;
     int     propMaxFreeBlocks = 512;
+    int     propIndexFanout   = Index.DEFAULT_FANOUT;
+    int     propIndexFillFactor = Index.DEFAULT_FILL_FACTOR;
     int     propCacheMaxRows;
     int     propCacheMaxSize;
+    int     propCachePolicy;
+    int     propCacheFlushInterval;
+    int     propScriptThreads;
     int     propCacheDefragLimit;
+    int     propDefragOnlineRows;
+    int     propDefragOnlineInterval;
     int     propDataFileScale;
     String  propTextSourceDefault = "";
     boolean propTextAllowFullPath;
     int     propWriteDelay;
     int     propLogSize;
     boolean propLogData = true;
+    boolean propLogBinary;
     int     propEventLogLevel;
     int     propSqlLogLevel;
     int     propGC;
@@ -334,6 +359,17 @@ public class Logger {
                     HsqlDatabaseProperties.hsqldb_readonly, true);
             }
 
+            // cache and data file access properties are not stored
+            for (int i = 0; i < urlAccessProperties.length; i++) {
+                String name  = urlAccessProperties[i];
+                String value = database.urlProperties.getProperty(name);
+
+                if (value != null) {
+                    database.databaseProperties.setDatabaseProperty(name,
+                            value);
+                }
+            }
+
             // hsqldb.lock_file=false is applied
             if (!database.urlProperties.isPropertyTrue(
                     HsqlDatabaseProperties.hsqldb_lock_file, true)) {
@@ -481,6 +517,26 @@ public class Logger {
 
         propCheckPersistence = database.databaseProperties.getIntegerProperty(
             HsqlDatabaseProperties.hsqldb_files_check);
+        propCachePolicy = database.databaseProperties.getIntegerProperty(
+            HsqlDatabaseProperties.hsqldb_cache_policy);
+        propCacheFlushInterval =
+            database.databaseProperties.getIntegerProperty(
+                HsqlDatabaseProperties.hsqldb_cache_flush_interval);
+        propNioFullMap = database.databaseProperties.isPropertyTrue(
+            HsqlDatabaseProperties.hsqldb_nio_full_map);
+        propLogBinary = database.databaseProperties.isPropertyTrue(
+            HsqlDatabaseProperties.hsqldb_log_binary);
+        propScriptThreads = database.databaseProperties.getIntegerProperty(
+            HsqlDatabaseProperties.hsqldb_script_threads);
+        propIncrementCheckpoint = database.databaseProperties.isPropertyTrue(
+            HsqlDatabaseProperties.hsqldb_inc_checkpoint);
+        propDefragOnlineRows = database.databaseProperties.getIntegerProperty(
+            HsqlDatabaseProperties.hsqldb_defrag_online_rows);
+        propDefragOnlineInterval =
+            database.databaseProperties.getIntegerProperty(
+                HsqlDatabaseProperties.hsqldb_defrag_online_interval);
+        propBatchFilter = database.databaseProperties.isPropertyTrue(
+            HsqlDatabaseProperties.hsqldb_batch_filter);
 
         if (!database.urlProperties.isPropertyTrue(
                 HsqlDatabaseProperties.sql_pad_space, true)) {
@@ -626,6 +682,10 @@ public class Logger {
         propNioMaxSize =
             database.databaseProperties.getIntegerProperty(
                 HsqlDatabaseProperties.hsqldb_nio_max_size) * 1024 * 1024L;
+        propIndexFanout = database.databaseProperties.getIntegerProperty(
+            HsqlDatabaseProperties.hsqldb_index_fanout);
+        propIndexFillFactor = database.databaseProperties.getIntegerProperty(
+            HsqlDatabaseProperties.hsqldb_index_fill_factor);
         propCacheMaxRows = database.databaseProperties.getIntegerProperty(
             HsqlDatabaseProperties.hsqldb_cache_rows);
         propCacheMaxSize =
@@ -1002,6 +1062,23 @@ public class Logger {
         }
     }
 
+    /**
+     * Used after transaction commit, when the locks of the transaction
+     * manager have been released. With write delay 0, returns when the
+     * log is synced up to the commit statement of the session. Concurrent
+     * commits are synced together.
+     */
+    public void syncCommit(Session session) {
+
+        ScriptWriterBase writer = session.logSyncWriter;
+
+        if (writer != null) {
+            session.logSyncWriter = null;
+
+            writer.syncTo(session.logSyncCount);
+        }
+    }
+
     public synchronized void synchLog() {
 
         if (loggingEnabled) {
@@ -1051,6 +1128,59 @@ public class Logger {
         checkpointDue      = false;
     }
 
+    /**
+     * With incremental checkpoints, writes the changed rows of CACHED tables
+     * while sessions continue to execute statements. The checkpoint that
+     * follows has only the rows changed since then left to write.
+     */
+    public void prepareCheckpoint() {
+
+        if (!propIncrementCheckpoint || !logsStatements) {
+            return;
+        }
+
+        logInfoEvent("Checkpoint prepare start");
+
+        try {
+            log.flushCache();
+        } catch (Throwable t) {
+            logSevereEvent("Checkpoint prepare failed", t);
+        }
+
+        logInfoEvent("Checkpoint prepare end");
+    }
+
+    /**
+     * Executes one step of the online defrag of the .data file, moving
+     * a limited number of rows out of sparse file blocks. Used only with
+     * hsqldb.files_space.
+     */
+    public synchronized void defragOnline(Session session) {
+
+        if (propDefragOnlineRows == 0 || !logsStatements || !hasCache()) {
+            return;
+        }
+
+        try {
+            log.getCache().defragOnline(session, propDefragOnlineRows);
+        } catch (HsqlException e) {
+            logSevereEvent("online defrag failed", e);
+
+            throw e;
+        }
+    }
+
+    /**
+     * Returns true if online defrag steps are run periodically.
+     */
+    public boolean isDefragOnline() {
+        return propDefragOnlineRows > 0 && isLogged();
+    }
+
+    public int getDefragOnlineInterval() {
+        return propDefragOnlineInterval;
+    }
+
     /**
      *  Sets the maximum size to which the log file can grow
      *  before being automatically checkpointed.
@@ -1288,6 +1418,46 @@ public class Logger {
         return propCacheDefragLimit;
     }
 
+    public int getCachePolicy() {
+        return propCachePolicy;
+    }
+
+    public int getCacheFlushInterval() {
+        return propCacheFlushInterval;
+    }
+
+    /**
+     * Returns the number of threads used for loading the .script file, with
+     * 0 standing for the number of available processors.
+     */
+    public int getScriptThreads() {
+
+        if (propScriptThreads == 0) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+
+        return propScriptThreads;
+    }
+
+    /**
+     * Returns true if rows of table scans are filtered in batches.
+     */
+    public boolean getBatchFilter() {
+        return propBatchFilter;
+    }
+
+    public void setIndexFanout(int value) {
+        propIndexFanout = value;
+    }
+
+    public int getIndexFanout() {
+        return propIndexFanout;
+    }
+
+    public int getIndexFillFactor() {
+        return propIndexFillFactor;
+    }
+
     public void setDefaultTextTableProperties(String source,
             HsqlProperties props) {
 
@@ -1437,6 +1607,13 @@ public class Logger {
                           boolean unique, boolean constraint,
                           boolean forward) {
 
+        if (IndexBPlusLong.isLongKey(columns, descending, nullsLast,
+                                     colTypes)) {
+            return new IndexBPlusLong(name, id, table, columns, descending,
+                                      nullsLast, colTypes, pk, unique,
+                                      constraint, forward, propIndexFanout);
+        }
+
         switch (table.getTableType()) {
 
             case TableBase.INFO_SCHEMA_TABLE :
@@ -1444,7 +1621,8 @@ public class Logger {
             case TableBase.MEMORY_TABLE :
                 return new IndexBPlusMemory(name, id, table, columns,
                                           descending, nullsLast, colTypes, pk,
-                                          unique, constraint, forward);
+                                          unique, constraint, forward,
+                                          propIndexFanout);
 
             case TableBase.CACHED_TABLE :
             case TableBase.CHANGE_SET_TABLE :
@@ -1457,7 +1635,7 @@ public class Logger {
             case TableBase.TRANSITION_TABLE :
                 return new IndexBPlus(name, id, table, columns, descending,
                                     nullsLast, colTypes, pk, unique,
-                                    constraint, forward);
+                                    constraint, forward, propIndexFanout);
         }
 
         throw Error.runtimeError(ErrorCode.U_S0500, "Logger");
@@ -1538,6 +1716,18 @@ public class Logger {
             return String.valueOf(propMaxFreeBlocks);
         }
 
+        if (HsqlDatabaseProperties.hsqldb_cache_flush_interval.equals(name)) {
+            return String.valueOf(propCacheFlushInterval);
+        }
+
+        if (HsqlDatabaseProperties.hsqldb_script_threads.equals(name)) {
+            return String.valueOf(propScriptThreads);
+        }
+
+        if (HsqlDatabaseProperties.hsqldb_cache_policy.equals(name)) {
+            return String.valueOf(propCachePolicy);
+        }
+
         if (HsqlDatabaseProperties.hsqldb_cache_rows.equals(name)) {
             return String.valueOf(propCacheMaxRows);
         }
@@ -1602,6 +1792,39 @@ public class Logger {
             return String.valueOf(propNioMaxSize / (1024 * 1024));
         }
 
+        if (HsqlDatabaseProperties.hsqldb_nio_full_map.equals(name)) {
+            return String.valueOf(propNioFullMap);
+        }
+
+        if (HsqlDatabaseProperties.hsqldb_log_binary.equals(name)) {
+            return String.valueOf(propLogBinary);
+        }
+
+        if (HsqlDatabaseProperties.hsqldb_inc_checkpoint.equals(name)) {
+            return String.valueOf(propIncrementCheckpoint);
+        }
+
+        if (HsqlDatabaseProperties.hsqldb_defrag_online_rows.equals(name)) {
+            return String.valueOf(propDefragOnlineRows);
+        }
+
+        if (HsqlDatabaseProperties.hsqldb_defrag_online_interval.equals(
+                name)) {
+            return String.valueOf(propDefragOnlineInterval);
+        }
+
+        if (HsqlDatabaseProperties.hsqldb_batch_filter.equals(name)) {
+            return String.valueOf(propBatchFilter);
+        }
+
+        if (HsqlDatabaseProperties.hsqldb_index_fanout.equals(name)) {
+            return String.valueOf(propIndexFanout);
+        }
+
+        if (HsqlDatabaseProperties.hsqldb_index_fill_factor.equals(name)) {
+            return String.valueOf(propIndexFillFactor);
+        }
+
         if (HsqlDatabaseProperties.hsqldb_script_format.equals(name)) {
             return ScriptWriterBase.LIST_SCRIPT_FORMATS[0].toLowerCase();
         }
@@ -1768,6 +1991,14 @@ public class Logger {
         sb.append(propGC);
         list.add(sb.toString());
         sb.setLength(0);
+
+        if (propIndexFanout != Index.DEFAULT_FANOUT) {
+            sb.append("SET DATABASE ").append(Tokens.T_INDEX).append(' ');
+            sb.append(Tokens.T_FANOUT).append(' ').append(propIndexFanout);
+            list.add(sb.toString());
+            sb.setLength(0);
+        }
+
         sb.append("SET DATABASE ").append(Tokens.T_DEFAULT).append(' ');
         sb.append(Tokens.T_RESULT).append(' ').append(Tokens.T_MEMORY);
         sb.append(' ').append(Tokens.T_ROWS).append(' ');
@@ -37,6 +37,8 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import org.hsqldb.Database;
 import org.hsqldb.error.Error;
@@ -71,6 +73,7 @@ final class RAFile implements RandomAccessInterface {
     //
     final Database                  database;
     final RandomAccessFile          file;
+    final FileChannel               channel;
     final FileDescriptor            fileDescriptor;
     private final boolean           readOnly;
     final String                    fileName;
@@ -152,6 +155,19 @@ final class RAFile implements RandomAccessInterface {
             java.io.File fi     = new java.io.File(name);
             long         length = fi.length();
 
+            // the whole file is mapped in segments, without a size limit
+            if (database.logger.propNioFullMap) {
+                try {
+                    return new RAFileNIO(database, name, readonly, length,
+                                         Long.MAX_VALUE);
+                } catch (Throwable t) {
+                    database.logger.logWarningEvent("NIO full map failed",
+                                                    t);
+
+                    return new RAFile(database, name, readonly, true, false);
+                }
+            }
+
             if (length > database.logger.propNioMaxSize) {
                 return new RAFile(database, name, readonly, true, false);
             }
@@ -185,6 +201,7 @@ final class RAFile implements RandomAccessInterface {
         valueBuffer    = new byte[8];
         vbao           = new HsqlByteArrayOutputStream(valueBuffer);
         vbai           = new HsqlByteArrayInputStream(valueBuffer);
+        channel        = file.getChannel();
         fileDescriptor = file.getFD();
         fileLength     = length();
 
@@ -353,6 +370,28 @@ final class RAFile implements RandomAccessInterface {
         }
     }
 
+    /**
+     * Reads from the file channel, without using the read buffer, which is
+     * shared by the other read methods.
+     */
+    public void read(long position, byte[] b, int offset,
+                     int length) throws IOException {
+
+        if (position + length > fileLength) {
+            throw new EOFException();
+        }
+
+        ByteBuffer byteBuffer = ByteBuffer.wrap(b, offset, length);
+
+        while (byteBuffer.hasRemaining()) {
+            long readPosition = position + byteBuffer.position() - offset;
+
+            if (channel.read(byteBuffer, readPosition) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
     public void writeInt(int i) throws IOException {
 
         vbao.reset();
@@ -97,6 +97,11 @@ public final class RAFileHybrid implements RandomAccessInterface {
         store.write(b, offset, length);
     }
 
+    public void read(long position, byte[] b, int offset,
+                     int length) throws IOException {
+        store.read(position, b, offset, length);
+    }
+
     public int readInt() throws IOException {
         return store.readInt();
     }
@@ -184,6 +184,20 @@ final class RAFileInJar implements RandomAccessInterface {
         }
     }
 
+    public synchronized void read(long position, byte[] b, int offset,
+                                  int length) throws IOException {
+
+        long filePointer = seekPosition;
+
+        try {
+            seekPosition = position;
+
+            read(b, offset, length);
+        } finally {
+            seekPosition = filePointer;
+        }
+    }
+
     public void write(byte[] b, int off, int len) throws IOException {}
 
     public void writeInt(int i) throws IOException {}
@@ -34,8 +34,10 @@ package org.hsqldb.persist;
 import java.io.FileDescriptor;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
@@ -50,7 +52,12 @@ import org.hsqldb.lib.java.JavaSystem;
  * TABLE .data file and cannot be used for TEXT TABLE source files.
  *
  * Once the maximum data file size allowed for NIO is reached, an ordinary
- * ScaledRAFile is used for data access.
+ * ScaledRAFile is used for data access.<p>
+ *
+ * The file is mapped in segments of fixed size, which are added when the file
+ * is enlarged. With the hsqldb.nio_full_map property, there is no maximum
+ * size and files of any size are mapped. The segments are unmapped when the
+ * file is closed.
  *
  * @author Fred Toussi (fredt@users dot sourceforge.net)
  * @version  2.3.0
@@ -83,6 +90,26 @@ final class RAFileNIO implements RandomAccessInterface {
     static final long largeBufferMask = 0xffffffffffffffffl
                                         << largeBufferScale;
 
+    // unmaps buffers with newer JVM's
+    private static Object unsafe;
+    private static Method invokeCleanerMethod;
+
+    static {
+        try {
+            Class unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field       = unsafeClass.getDeclaredField("theUnsafe");
+
+            field.setAccessible(true);
+
+            unsafe = field.get(null);
+            invokeCleanerMethod = unsafeClass.getMethod("invokeCleaner",
+                    new Class[]{ ByteBuffer.class });
+        } catch (Throwable t) {
+            unsafe              = null;
+            invokeCleanerMethod = null;
+        }
+    }
+
     RAFileNIO(Database database, String name, boolean readOnly,
                     long requiredLength, long maxLength) throws IOException {
 
@@ -232,6 +259,37 @@ final class RAFileNIO implements RandomAccessInterface {
         }
     }
 
+    /**
+     * Reads from views of the mapped buffers, which have their own
+     * positions.
+     */
+    public void read(long position, byte[] b, int offset,
+                     int length) throws IOException {
+
+        try {
+            while (length > 0) {
+                ByteBuffer view = getBufferView(position);
+                int        transferLength = view.remaining();
+
+                if (transferLength > length) {
+                    transferLength = length;
+                }
+
+                view.get(b, offset, transferLength);
+
+                position += transferLength;
+                offset   += transferLength;
+                length   -= transferLength;
+            }
+        } catch (Throwable t) {
+            database.logger.logWarningEvent(JVM_ERROR, t);
+
+            IOException io = JavaSystem.toIOException(t);
+
+            throw io;
+        }
+    }
+
     public int readInt() throws IOException {
 
         try {
@@ -379,10 +437,11 @@ final class RAFileNIO implements RandomAccessInterface {
     private boolean enlargeFile(long newFileLength) {
 
         try {
-            long newBufferLength = newFileLength;
+            long newBufferLength = largeBufferSize;
 
-            if (!readOnly) {
-                newBufferLength = largeBufferSize;
+            // the last segment of a read only file is smaller
+            if (readOnly && newFileLength - fileLength < largeBufferSize) {
+                newBufferLength = newFileLength - fileLength;
             }
 
             MapMode mapMode = readOnly ? FileChannel.MapMode.READ_ONLY
@@ -505,6 +564,25 @@ final class RAFileNIO implements RandomAccessInterface {
         currentPosition = offset;
     }
 
+    private ByteBuffer getBufferView(long offset) throws IOException {
+
+        int bufferIndex = (int) (offset >> largeBufferScale);
+
+        if (bufferIndex >= buffers.length) {
+            throw new IOException("read beyond end of file");
+        }
+
+        ByteBuffer view = buffers[bufferIndex].duplicate();
+
+        view.position((int) (offset & ~largeBufferMask));
+
+        if (!view.hasRemaining()) {
+            throw new IOException("read beyond end of file");
+        }
+
+        return view;
+    }
+
     private void setCurrentBuffer(long offset) {
 
         int bufferIndex = (int) (offset >> largeBufferScale);
@@ -512,14 +590,16 @@ final class RAFileNIO implements RandomAccessInterface {
         // when moving to last position in file
         if (bufferIndex == buffers.length) {
             bufferIndex    = buffers.length - 1;
-            bufferPosition = largeBufferSize;
+            bufferPosition = (long) bufferIndex << largeBufferScale;
             buffer         = buffers[bufferIndex];
+            bufferLength   = buffer.limit();
 
             return;
         }
 
         buffer         = buffers[bufferIndex];
         bufferPosition = offset &= largeBufferMask;
+        bufferLength   = buffer.limit();
     }
 
     /**
@@ -532,6 +612,14 @@ final class RAFileNIO implements RandomAccessInterface {
             return;
         }
 
+        if (invokeCleanerMethod != null) {
+            try {
+                invokeCleanerMethod.invoke(unsafe, new Object[]{ buffer });
+
+                return;
+            } catch (Throwable e) {}
+        }
+
         try {
             Method cleanerMethod = buffer.getClass().getMethod("cleaner");
 
@@ -31,9 +31,12 @@
 
 package org.hsqldb.persist;
 
+import java.io.EOFException;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import org.hsqldb.Database;
 import org.hsqldb.error.Error;
@@ -50,6 +53,7 @@ import org.hsqldb.error.ErrorCode;
 final class RAFileSimple implements RandomAccessInterface {
 
     final RandomAccessFile file;
+    final FileChannel      channel;
     final boolean          readOnly;
     final Database         database;
 
@@ -58,6 +62,7 @@ final class RAFileSimple implements RandomAccessInterface {
                        throws FileNotFoundException, IOException {
 
         this.file     = new RandomAccessFile(name, openMode);
+        this.channel  = file.getChannel();
         this.database = database;
         readOnly      = openMode.equals("r");
     }
@@ -94,6 +99,20 @@ final class RAFileSimple implements RandomAccessInterface {
         file.write(b, off, len);
     }
 
+    public void read(long position, byte[] b, int offset,
+                     int length) throws IOException {
+
+        ByteBuffer byteBuffer = ByteBuffer.wrap(b, offset, length);
+
+        while (byteBuffer.hasRemaining()) {
+            long readPosition = position + byteBuffer.position() - offset;
+
+            if (channel.read(byteBuffer, readPosition) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
     public void writeInt(int i) throws IOException {
         file.writeInt(i);
     }
@@ -85,6 +85,23 @@ final class RAStorageWrapper implements RandomAccessInterface {
         file.write(b, off, len);
     }
 
+    /**
+     * Storage objects have a single file pointer, which is restored after
+     * the read.
+     */
+    public synchronized void read(long position, byte[] b, int offset,
+                                  int length) throws IOException {
+
+        long filePointer = file.getFilePointer();
+
+        try {
+            file.seek(position);
+            file.read(b, offset, length);
+        } finally {
+            file.seek(filePointer);
+        }
+    }
+
     public void writeInt(int i) throws IOException {
         file.writeInt(i);
     }
@@ -34,8 +34,12 @@ package org.hsqldb.persist;
 import java.io.IOException;
 
 /**
+* Positional reads do not use or change the file pointer. They can be called
+* by several threads at the same time, while no thread calls the other
+* methods.
+*
 * @author Fred Toussi (fredt@users dot sourceforge.net)
-* @version  2.2.9
+* @version  2.3.0
 * @since 2.0.0
 */
 public interface RandomAccessInterface {
@@ -52,6 +56,9 @@ public interface RandomAccessInterface {
 
     void write(byte[] b, int offset, int length) throws IOException;
 
+    void read(long position, byte[] b, int offset,
+              int length) throws IOException;
+
     int readInt() throws IOException;
 
     void writeInt(int i) throws IOException;
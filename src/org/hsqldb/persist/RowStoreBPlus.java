@@ -259,6 +259,31 @@ public abstract class RowStoreBPlus implements PersistentStore {
         }
     }
 
+    /**
+     * Adds the row to the primary index only. Used when the rows of a table
+     * are loaded before the other indexes are built with
+     * indexRows(Session, Index).
+     */
+    public void indexRowPrimary(Session session, Row row) {
+
+        indexList[0].insert(session, this, row);
+        elementCount.incrementAndGet();
+    }
+
+    /**
+     * Adds all the rows to an empty index other than the primary index.
+     * Different indexes of the store can be built by different threads at
+     * the same time.
+     */
+    public void indexRows(Session session, Index index) {
+
+        RowIterator it = indexList[0].firstRow(this);
+
+        while (it.hasNext()) {
+            index.insert(session, this, it.getNextRow());
+        }
+    }
+
     //
     public final void indexRows(Session session) {
 
@@ -483,6 +508,13 @@ public abstract class RowStoreBPlus implements PersistentStore {
         try {
             Table       table = (Table) this.table;
             RowIterator it    = other.rowIterator();
+            Row[][]     keys  = null;
+            int         count = 0;
+
+            // indexes of temp tables are built row by row
+            if (!table.isTemp()) {
+                keys = new Row[indexList.length][1024];
+            }
 
             while (it.hasNext()) {
                 Row      row      = it.getNextRow();
@@ -510,7 +542,28 @@ public abstract class RowStoreBPlus implements PersistentStore {
                 // get object without RowAction
                 Row newrow = (Row) getNewCachedObject(session, data, false);
 
-                indexRow(session, newrow);
+                if (keys == null) {
+                    indexRow(session, newrow);
+
+                    continue;
+                }
+
+                if (count == keys[0].length) {
+                    for (int i = 0; i < keys.length; i++) {
+                        keys[i] = (Row[]) ArrayUtil.resizeArray(keys[i],
+                                count * 2);
+                    }
+                }
+
+                for (int i = 0; i < keys.length; i++) {
+                    keys[i][count] = getIndexKey(newrow, indexList[i]);
+                }
+
+                count++;
+            }
+
+            if (keys != null) {
+                loadIndexes(session, keys, count);
             }
 
             if (table.isTemp()) {
@@ -549,6 +602,37 @@ public abstract class RowStoreBPlus implements PersistentStore {
         }
     }
 
+    /**
+     * Returns the object that is sorted when an index is built from all the
+     * rows. This is the row itself in memory.
+     */
+    Row getIndexKey(Row row, Index index) {
+        return row;
+    }
+
+    /**
+     * Builds all the indexes from the sort keys of the rows that have been
+     * added to the store without indexing
+     */
+    void loadIndexes(Session session, Row[][] keys, int count) {
+
+        int fillFactor = table.database.logger.getIndexFillFactor();
+
+        for (int i = 0; i < indexList.length; i++) {
+            ((IndexBPlus) indexList[i]).load(session, this, keys[i], count,
+                                             fillFactor);
+
+            keys[i] = null;
+        }
+
+        elementCount.addAndGet(count);
+
+        synchronized (this) {
+            baseElementCount = elementCount.get();
+            searchCost       = null;
+        }
+    }
+
     public void reindex(Session session, Index index) {
 
         setAccessor(index, null);
@@ -594,6 +678,7 @@ public abstract class RowStoreBPlus implements PersistentStore {
 
         int           position = newIndex.getPosition();
         RowIterator   it       = primaryIndex.firstRow(this);
+        Row[]         rows     = new Row[1024];
         int           rowCount = 0;
         HsqlException error    = null;
 
@@ -601,15 +686,19 @@ public abstract class RowStoreBPlus implements PersistentStore {
             while (it.hasNext()) {
                 Row row = it.getNextRow();
 
-                ((RowBPlus) row).insertNode(position);
+                if (rowCount == rows.length) {
+                    rows = (Row[]) ArrayUtil.resizeArray(rows, rowCount * 2);
+                }
 
-                // count before inserting
-                rowCount++;
+                ((RowBPlus) row).insertNode(position);
 
-                newIndex.insert(session, this, row);
+                rows[rowCount++] = row;
             }
 
             it.release();
+            ((IndexBPlus) newIndex).load(
+                session, this, rows, rowCount,
+                table.database.logger.getIndexFillFactor());
 
             return true;
         } catch (java.lang.OutOfMemoryError e) {
@@ -47,15 +47,20 @@ import org.hsqldb.error.ErrorCode;
 import org.hsqldb.index.Index;
 import org.hsqldb.index.NodeBPlus;
 import org.hsqldb.index.NodeBPlusDisk;
+import org.hsqldb.index.NodeBPlusPage;
 import org.hsqldb.lib.ArrayUtil;
 import org.hsqldb.lib.DoubleIntIndex;
+import org.hsqldb.lib.LongDeque;
 import org.hsqldb.lib.LongLookup;
 import org.hsqldb.navigator.RowIterator;
 import org.hsqldb.rowio.RowInputInterface;
 import org.hsqldb.rowio.RowOutputInterface;
 
 /*
- * Implementation of PersistentStore for CACHED tables.
+ * Implementation of PersistentStore for CACHED tables.<p>
+ *
+ * The rows and the leaf and interior pages of the B+ tree indexes are all
+ * held in the data file and the DataFileCache.
  *
  * @author Fred Toussi (fredt@users dot sourceforge.net)
  * @version 2.3.0
@@ -103,7 +108,10 @@ public class RowStoreBPlusDisk extends RowStoreBPlus implements PersistentStore
     }
 
     public void set(CachedObject object) {
-        database.txManager.setTransactionInfo(this, object);
+
+        if (object instanceof Row) {
+            database.txManager.setTransactionInfo(this, object);
+        }
     }
 
     public CachedObject get(long key) {
@@ -131,7 +139,10 @@ public class RowStoreBPlusDisk extends RowStoreBPlus implements PersistentStore
 
         int size = object.getRealSize(rowOut);
 
-        size += indexList.length * NodeBPlusDisk.SIZE_IN_BYTE;
+        if (object instanceof Row) {
+            size += indexList.length * NodeBPlusDisk.SIZE_IN_BYTE;
+        }
+
         size = rowOut.getStorageSize(size);
 
         object.setStorageSize(size);
@@ -159,6 +170,10 @@ public class RowStoreBPlusDisk extends RowStoreBPlus implements PersistentStore
     public CachedObject get(RowInputInterface in) {
 
         try {
+            if (NodeBPlusPage.isPage(in)) {
+                return new NodeBPlusPage(in);
+            }
+
             if (largeData) {
                 return new RowBPlusDiskLarge(table, in);
             } else {
@@ -185,6 +200,35 @@ public class RowStoreBPlusDisk extends RowStoreBPlus implements PersistentStore
         return row;
     }
 
+    /**
+     * Returns a Row with only the indexed column values and the position of
+     * the row, so the rows can leave the cache while the index is sorted
+     */
+    Row getIndexKey(Row row, Index index) {
+
+        int[] cols  = index.getColumns();
+        int   limit = 0;
+
+        for (int i = 0; i < cols.length; i++) {
+            if (cols[i] >= limit) {
+                limit = cols[i] + 1;
+            }
+        }
+
+        Object[] data    = row.getData();
+        Object[] keyData = new Object[limit];
+
+        for (int i = 0; i < cols.length; i++) {
+            keyData[cols[i]] = data[cols[i]];
+        }
+
+        Row key = new Row(table, keyData);
+
+        key.setPos(row.getPos());
+
+        return key;
+    }
+
     public void indexRow(Session session, Row row) {
 
         try {
@@ -320,30 +364,38 @@ public class RowStoreBPlusDisk extends RowStoreBPlus implements PersistentStore
         elementCount.set(0);
     }
 
+    /**
+     * Returns the root page of the index, which is read again if it is no
+     * longer in the cache
+     */
     public CachedObject getAccessor(Index key) {
 
-        NodeBPlus node = (NodeBPlus) accessorList[key.getPosition()];
+        CachedObject page = accessorList[key.getPosition()];
 
-        if (node == null) {
+        if (page == null) {
             return null;
         }
 
-        RowBPlus row = (RowBPlus) get(node.getRow(this), false);
-
-        node                            = row.getNode(key.getPosition());
-        accessorList[key.getPosition()] = node;
+        if (!page.isInMemory()) {
+            page                            = get(page.getPos(), false);
+            accessorList[key.getPosition()] = page;
+        }
 
-        return node;
+        return page;
     }
 
     public void setAccessor(Index key, long accessor) {
 
-        CachedObject object = get(accessor, false);
+        CachedObject object = accessor < 0 ? null
+                                           : get(accessor, false);
 
-        if (object != null) {
-            NodeBPlus node = ((RowBPlus) object).getNode(key.getPosition());
+        // the pages on disk were created with the fanout of the index
+        if (object instanceof NodeBPlusPage) {
+            int capacity = ((NodeBPlusPage) object).getCapacity();
 
-            object = node;
+            if (capacity != key.getFanout()) {
+                key.setFanout(capacity);
+            }
         }
 
         setAccessor(key, object);
@@ -379,7 +431,7 @@ public class RowStoreBPlusDisk extends RowStoreBPlus implements PersistentStore
         }
 
         DoubleIntIndex pointerLookup = new DoubleIntIndex((int) rowCount,
-            true);
+            false);
 
         pointerLookup.setKeysSearchTarget();
         cache.writeLock.lock();
@@ -400,6 +452,10 @@ public class RowStoreBPlusDisk extends RowStoreBPlus implements PersistentStore
                 newAccessorList[i] = cache.get(pos, this, false);
             }
 
+            LongDeque pages = new LongDeque();
+
+            getPagePositions(this, pages);
+
             RowIterator it = rowIterator();
 
             // todo - check this - must remove from old space, not new one
@@ -410,6 +466,13 @@ public class RowStoreBPlusDisk extends RowStoreBPlus implements PersistentStore
                 tableSpace.release(row.getPos(), row.getStorageSize());
             }
 
+            for (int i = 0; i < pages.size(); i++) {
+                CachedObject page = get(pages.get(i), false);
+
+                cache.remove(page);
+                tableSpace.release(page.getPos(), page.getStorageSize());
+            }
+
             accessorList = newAccessorList;
         } finally {
             cache.writeLock.unlock();
@@ -419,12 +482,18 @@ public class RowStoreBPlusDisk extends RowStoreBPlus implements PersistentStore
                                        + table.getName().name);
     }
 
-    public static void moveDataToSpace(PersistentStore store,
+    /**
+     * Writes the rows and the index pages of the store to new positions in
+     * the table space and returns the count of rows. The pointerLookup maps
+     * the old positions of both to the new ones.
+     */
+    public static long moveDataToSpace(PersistentStore store,
                                        DataFileCache cache,
                                        TableSpaceManager tableSpace,
                                        LongLookup pointerLookup) {
 
-        RowIterator it = store.rowIterator();
+        RowIterator it       = store.rowIterator();
+        long        rowCount = 0;
 
         while (it.hasNext()) {
             CachedObject row = it.getNextRow();
@@ -432,6 +501,20 @@ public class RowStoreBPlusDisk extends RowStoreBPlus implements PersistentStore
                 false);
 
             pointerLookup.addUnsorted(row.getPos(), newPos);
+
+            rowCount++;
+        }
+
+        LongDeque pages = new LongDeque();
+
+        getPagePositions(store, pages);
+
+        for (int i = 0; i < pages.size(); i++) {
+            CachedObject page = store.get(pages.get(i), false);
+            long newPos = tableSpace.getFilePosition(page.getStorageSize(),
+                false);
+
+            pointerLookup.addUnsorted(page.getPos(), newPos);
         }
 
         it = store.rowIterator();
@@ -446,6 +529,52 @@ public class RowStoreBPlusDisk extends RowStoreBPlus implements PersistentStore
 
             cache.saveRowOutput(pos);
         }
+
+        for (int i = 0; i < pages.size(); i++) {
+            CachedObject page = store.get(pages.get(i), false);
+
+            cache.rowOut.reset();
+            page.write(cache.rowOut, pointerLookup);
+
+            long pos = pointerLookup.lookup(page.getPos());
+
+            cache.saveRowOutput(pos);
+        }
+
+        return rowCount;
+    }
+
+    /**
+     * Adds the positions of the pages of all the indexes to the list, each
+     * tree in breadth first order
+     */
+    static void getPagePositions(PersistentStore store, LongDeque list) {
+
+        Index[] keys = store.getAccessorKeys();
+
+        for (int i = 0; i < keys.length; i++) {
+            CachedObject root = store.getAccessor(keys[i]);
+
+            if (root == null) {
+                continue;
+            }
+
+            int j = list.size();
+
+            list.add(root.getPos());
+
+            for (; j < list.size(); j++) {
+                NodeBPlus page = (NodeBPlus) store.get(list.get(j), false);
+
+                if (page.isLeaf) {
+                    continue;
+                }
+
+                for (int k = 0; k <= page.getKeyCount(); k++) {
+                    list.add(page.getPointer(store, k).getPos());
+                }
+            }
+        }
     }
 
     long getStorageSizeEstimate() {
@@ -454,8 +583,7 @@ public class RowStoreBPlusDisk extends RowStoreBPlus implements PersistentStore
             return 0;
         }
 
-        CachedObject accessor = getAccessor(indexList[0]);
-        CachedObject row      = get(accessor.getPos());
+        CachedObject row = rowIterator().getNextRow();
 
         return row.getStorageSize() * elementCount.get();
     }
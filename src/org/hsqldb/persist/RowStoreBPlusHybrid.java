@@ -46,6 +46,7 @@ import org.hsqldb.index.Index;
 import org.hsqldb.index.IndexBPlus;
 import org.hsqldb.index.NodeBPlus;
 import org.hsqldb.index.NodeBPlusDisk;
+import org.hsqldb.index.NodeBPlusPage;
 import org.hsqldb.lib.ArrayUtil;
 import org.hsqldb.navigator.RowIterator;
 import org.hsqldb.rowio.RowInputInterface;
@@ -158,7 +159,9 @@ public class RowStoreBPlusHybrid extends RowStoreBPlus implements PersistentStor
         if (isCached) {
             int size = object.getRealSize(cache.rowOut);
 
-            size += indexList.length * NodeBPlusDisk.SIZE_IN_BYTE;
+            if (object instanceof Row) {
+                size += indexList.length * NodeBPlusDisk.SIZE_IN_BYTE;
+            }
             size = cache.rowOut.getStorageSize(size);
 
             object.setStorageSize(size);
@@ -169,6 +172,10 @@ public class RowStoreBPlusHybrid extends RowStoreBPlus implements PersistentStor
             cache.add(object);
         }
 
+        if (!(object instanceof Row)) {
+            return;
+        }
+
         Object[] data = ((Row) object).getData();
 
         for (int i = 0; i < nullsList.length; i++) {
@@ -182,6 +189,10 @@ public class RowStoreBPlusHybrid extends RowStoreBPlus implements PersistentStor
 
         try {
             if (isCached) {
+                if (NodeBPlusPage.isPage(in)) {
+                    return new NodeBPlusPage(in);
+                }
+
                 return new RowBPlusDisk(table, in);
             }
         } catch (HsqlException e) {
@@ -373,7 +384,6 @@ public class RowStoreBPlusHybrid extends RowStoreBPlus implements PersistentStor
 
     public final void changeToDiskTable(Session session) {
 
-        System.out.println("change to disk table");
         cache =
             ((PersistentStoreCollectionSession) manager).getSessionDataCache();
 
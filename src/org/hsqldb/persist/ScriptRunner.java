@@ -52,6 +52,7 @@ import org.hsqldb.lib.StopWatch;
 import org.hsqldb.map.ValuePool;
 import org.hsqldb.result.Result;
 import org.hsqldb.scriptio.ScriptReaderBase;
+import org.hsqldb.scriptio.ScriptReaderBinary;
 import org.hsqldb.scriptio.ScriptReaderDecode;
 import org.hsqldb.scriptio.ScriptReaderText;
 import org.hsqldb.types.Type;
@@ -63,7 +64,7 @@ import org.hsqldb.types.Type;
  * logged to the application log. If memory runs out, an exception is thrown.
  *
  * @author Fred Toussi (fredt@users dot sourceforge.net)
- * @version 2.2.7
+ * @version 2.3.0
  * @since 1.7.2
  */
 public class ScriptRunner {
@@ -100,7 +101,11 @@ public class ScriptRunner {
 
         try {
             if (crypto == null) {
-                scr = new ScriptReaderText(database, logFilename, false);
+                if (ScriptReaderBinary.isBinaryLog(database, logFilename)) {
+                    scr = new ScriptReaderBinary(database, logFilename);
+                } else {
+                    scr = new ScriptReaderText(database, logFilename, false);
+                }
             } else {
                 scr = new ScriptReaderDecode(database, logFilename, crypto,
                                              true);
@@ -0,0 +1,525 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.persist;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.hsqldb.lib.Iterator;
+
+/**
+ * Row cache of a DataFileCache, split into stripes by file position.<p>
+ *
+ * Each stripe is a Cache with its own share of the row and byte limits, its
+ * own read / write lock and its own access count. A cache hit locks only
+ * the stripe of the position for reading. Callers that change the cache
+ * hold the write lock of the DataFileCache, so the stripes are changed by
+ * one thread at a time, and the write lock of a stripe is only held while
+ * its map is changed. The stripes are cleaned up separately.<p>
+ *
+ * Small caches have a single stripe.
+ *
+ * @version 2.3.0
+ * @since 2.3.0
+ */
+public class StripedCache {
+
+    static final int maxStripeCount = 16;
+    static final int minStripeRows  = 1024;
+
+    //
+    private final Cache[] stripes;
+    private final Lock[]  readLocks;
+    private final Lock[]  writeLocks;
+    private final int     stripeShift;
+
+    StripedCache(DataFileCache dfc) {
+
+        int capacity = dfc.capacity();
+        int count    = 1;
+        int bits     = 0;
+
+        while (count < maxStripeCount
+                && capacity / (count * 2) >= minStripeRows) {
+            count *= 2;
+
+            bits++;
+        }
+
+        stripes     = new Cache[count];
+        readLocks   = new Lock[count];
+        writeLocks  = new Lock[count];
+        stripeShift = 32 - bits;
+
+        for (int i = 0; i < count; i++) {
+            ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+            stripes[i] = new Cache(dfc, capacity / count,
+                                   dfc.bytesCapacity() / count);
+            readLocks[i]  = lock.readLock();
+            writeLocks[i] = lock.writeLock();
+        }
+    }
+
+    /**
+     * Positions are spread over the stripes by the high bits of a
+     * multiplicative hash, as the low bits of positions are often the same.
+     */
+    private int getStripeIndex(long pos) {
+
+        if (stripes.length == 1) {
+            return 0;
+        }
+
+        int hash = (int) (pos ^ (pos >>> 32)) * 0x9e3779b9;
+
+        return hash >>> stripeShift;
+    }
+
+    int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * Returns a row if in memory cache.
+     */
+    CachedObject get(long pos) {
+        return get(pos, false);
+    }
+
+    /**
+     * Returns a row if in memory cache, marking it to be kept in memory if
+     * keep is true.
+     */
+    CachedObject get(long pos, boolean keep) {
+
+        int  i    = getStripeIndex(pos);
+        Lock lock = readLocks[i];
+
+        lock.lock();
+
+        try {
+            CachedObject object = stripes[i].get(pos);
+
+            if (object != null && keep) {
+                object.keepInMemory(true);
+            }
+
+            return object;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the object if it is in memory, or the object for the same
+     * position if that is in memory cache.
+     */
+    CachedObject get(CachedObject object, boolean keep) {
+
+        long pos  = object.getPos();
+        int  i    = getStripeIndex(pos);
+        Lock lock = readLocks[i];
+
+        lock.lock();
+
+        try {
+            if (!object.isInMemory()) {
+                object = stripes[i].get(pos);
+
+                if (object == null) {
+                    return null;
+                }
+            }
+
+            if (keep) {
+                object.keepInMemory(true);
+            }
+
+            return object;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a row to the cache.
+     */
+    void put(CachedObject row) {
+
+        int  i    = getStripeIndex(row.getPos());
+        Lock lock = writeLocks[i];
+
+        lock.lock();
+
+        try {
+            stripes[i].put(row);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes an object from memory cache. Does not release the file storage.
+     */
+    CachedObject release(long pos) {
+
+        int  i    = getStripeIndex(pos);
+        Lock lock = writeLocks[i];
+
+        lock.lock();
+
+        try {
+            return stripes[i].release(pos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replace a row in the cache.
+     */
+    void replace(long pos, CachedObject row) {
+
+        int  i    = getStripeIndex(pos);
+        Lock lock = writeLocks[i];
+
+        lock.lock();
+
+        try {
+            stripes[i].replace(pos, row);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the rows in the given range of positions without saving them.
+     */
+    void releaseRange(long start, long limit) {
+
+        for (int i = 0; i < stripes.length; i++) {
+            writeLocks[i].lock();
+
+            try {
+                Iterator it = stripes[i].getIterator();
+
+                while (it.hasNext()) {
+                    CachedObject o   = (CachedObject) it.next();
+                    long         pos = o.getPos();
+
+                    if (pos >= start && pos < limit) {
+                        o.setInMemory(false);
+                        it.remove();
+                    }
+                }
+            } finally {
+                writeLocks[i].unlock();
+            }
+        }
+    }
+
+    void clearUnchanged() {
+
+        for (int i = 0; i < stripes.length; i++) {
+            writeLocks[i].lock();
+
+            try {
+                stripes[i].clearUnchanged();
+            } finally {
+                writeLocks[i].unlock();
+            }
+        }
+    }
+
+    /**
+     * Writes out all modified cached Rows.
+     */
+    void saveAll() {
+
+        for (int i = 0; i < stripes.length; i++) {
+            writeLocks[i].lock();
+
+            try {
+                stripes[i].saveAll();
+            } finally {
+                writeLocks[i].unlock();
+            }
+        }
+    }
+
+    /**
+     * Writes changed rows of each stripe, up to the given count in total,
+     * if the changed rows of the stripe are above its share of the limits.
+     * Returns the number of rows written.
+     */
+    int saveChangedRows(int rowLimit, long bytesLimit, int maxCount) {
+
+        int count = 0;
+
+        for (int i = 0; i < stripes.length; i++) {
+            count += stripes[i].saveChangedRows(rowLimit / stripes.length,
+                                                bytesLimit / stripes.length,
+                                                maxCount / stripes.length
+                                                + 1);
+        }
+
+        return count;
+    }
+
+    /**
+     * Removes rows from the stripes that are above their share of the
+     * limits. Returns false if no stripe is above the limits.
+     */
+    boolean cleanUp(int rowLimit, long bytesLimit) {
+
+        boolean result = false;
+
+        for (int i = 0; i < stripes.length; i++) {
+            writeLocks[i].lock();
+
+            try {
+                result |= stripes[i].cleanUp(rowLimit / stripes.length,
+                                             bytesLimit / stripes.length);
+            } finally {
+                writeLocks[i].unlock();
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the count of changed rows in all the stripes.
+     */
+    int getChangedCount() {
+
+        int count = 0;
+
+        for (int i = 0; i < stripes.length; i++) {
+            writeLocks[i].lock();
+
+            try {
+                count += stripes[i].getChangedCount();
+            } finally {
+                writeLocks[i].unlock();
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * clears out the memory cache
+     */
+    void clear() {
+
+        for (int i = 0; i < stripes.length; i++) {
+            writeLocks[i].lock();
+
+            try {
+                stripes[i].clear();
+            } finally {
+                writeLocks[i].unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns an iterator over the rows of all the stripes. Used only when
+     * the cache is not changed by other threads.
+     */
+    Iterator getIterator() {
+        return new StripeIterator();
+    }
+
+    int size() {
+
+        int size = 0;
+
+        for (int i = 0; i < stripes.length; i++) {
+            size += stripes[i].size();
+        }
+
+        return size;
+    }
+
+    long getTotalCachedBlockSize() {
+
+        long size = 0;
+
+        for (int i = 0; i < stripes.length; i++) {
+            size += stripes[i].getTotalCachedBlockSize();
+        }
+
+        return size;
+    }
+
+    /**
+     * Returns the access count of the first stripe. The counts of the rows
+     * are limited to the access count of their own stripe when they are
+     * copied to the stripe.
+     */
+    int incrementAccessCount() {
+        return stripes[0].incrementAccessCount();
+    }
+
+    long getSaveAllTime() {
+
+        long time = 0;
+
+        for (int i = 0; i < stripes.length; i++) {
+            time += stripes[i].saveAllTimer.elapsedTime();
+        }
+
+        return time;
+    }
+
+    long getPutCount() {
+
+        long count = 0;
+
+        for (int i = 0; i < stripes.length; i++) {
+            count += stripes[i].putCount;
+        }
+
+        return count;
+    }
+
+    long getStallCount() {
+
+        long count = 0;
+
+        for (int i = 0; i < stripes.length; i++) {
+            count += stripes[i].stallCount;
+        }
+
+        return count;
+    }
+
+    long getStallTime() {
+
+        long time = 0;
+
+        for (int i = 0; i < stripes.length; i++) {
+            time += stripes[i].stallTimer.elapsedTime();
+        }
+
+        return time;
+    }
+
+    long getFlushCount() {
+
+        long count = 0;
+
+        for (int i = 0; i < stripes.length; i++) {
+            count += stripes[i].flushCount;
+        }
+
+        return count;
+    }
+
+    long getFlushRowCount() {
+
+        long count = 0;
+
+        for (int i = 0; i < stripes.length; i++) {
+            count += stripes[i].flushRowCount;
+        }
+
+        return count;
+    }
+
+    long getFlushTime() {
+
+        long time = 0;
+
+        for (int i = 0; i < stripes.length; i++) {
+            time += stripes[i].flushTimer.elapsedTime();
+        }
+
+        return time;
+    }
+
+    class StripeIterator implements Iterator {
+
+        int      stripe = -1;
+        Iterator it;
+        Iterator current;
+
+        public boolean hasNext() {
+
+            while (it == null || !it.hasNext()) {
+                if (stripe + 1 == stripes.length) {
+                    return false;
+                }
+
+                it = stripes[++stripe].getIterator();
+            }
+
+            return true;
+        }
+
+        public Object next() throws NoSuchElementException {
+
+            if (!hasNext()) {
+                throw new NoSuchElementException("Hash Iterator");
+            }
+
+            current = it;
+
+            return it.next();
+        }
+
+        public int nextInt() throws NoSuchElementException {
+            throw new NoSuchElementException("Hash Iterator");
+        }
+
+        public long nextLong() throws NoSuchElementException {
+            throw new NoSuchElementException("Hash Iterator");
+        }
+
+        public void remove() throws NoSuchElementException {
+
+            if (current == null) {
+                throw new NoSuchElementException("Hash Iterator");
+            }
+
+            current.remove();
+        }
+
+        public void setValue(Object value) {
+            throw new NoSuchElementException("Hash Iterator");
+        }
+    }
+}
@@ -264,6 +264,24 @@ public class TableSpaceManagerBlocks implements TableSpaceManager {
         freshBlockLimit   = 0;
     }
 
+    /**
+     * Adds the released spaces to the free space of the file blocks. Used
+     * when rows are moved out of blocks, so that the released spaces are
+     * not allocated again to the moved rows.
+     */
+    synchronized void releaseToBlocks() {
+        spaceManager.freeTableSpace(lookup, freshBlockFreePos,
+                                    freshBlockFreePos, true);
+    }
+
+    long getFreshBlockFreePos() {
+        return freshBlockFreePos;
+    }
+
+    long getFreshBlockLimit() {
+        return freshBlockLimit;
+    }
+
     public long getLostBlocksSize() {
         return lookup.getTotalValues();
     }
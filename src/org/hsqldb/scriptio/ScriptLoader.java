@@ -0,0 +1,390 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.scriptio;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+import org.hsqldb.Database;
+import org.hsqldb.HsqlException;
+import org.hsqldb.Session;
+import org.hsqldb.Table;
+import org.hsqldb.error.Error;
+import org.hsqldb.error.ErrorCode;
+import org.hsqldb.index.Index;
+import org.hsqldb.lib.HashMap;
+import org.hsqldb.lib.HsqlArrayList;
+import org.hsqldb.lib.IntKeyHashMap;
+import org.hsqldb.persist.PersistentStore;
+import org.hsqldb.persist.RowStoreBPlus;
+import org.hsqldb.persist.RowStoreBPlusMemory;
+import org.hsqldb.rowio.RowInputTextLog;
+
+/**
+ * Loads the rows of MEMORY tables from the INSERT statements of a .script
+ * file with several threads.<p>
+ *
+ * The reader thread adds the statements, which are collected in batches
+ * for each table. The values of the batches are decoded by the threads of
+ * the loader in any order, while the rows of each table are inserted in
+ * the order of the statements, by one thread at a time. The rows of
+ * different tables are inserted at the same time. The rows are added only
+ * to the primary index of the table. When all the rows have been loaded,
+ * the other indexes of all the tables are built at the same time, one
+ * index per thread.<p>
+ *
+ * The number of batches that have not been inserted is limited, so that
+ * the reader thread waits when the inserts fall behind.
+ *
+ * @version 2.3.0
+ * @since 2.3.0
+ */
+class ScriptLoader {
+
+    static final int batchRows = 1024;
+
+    //
+    final Database        database;
+    final ExecutorService executor;
+    final Semaphore       permits;
+    final int             maxBatches;
+    final ThreadLocal     sessions = new ThreadLocal();
+
+    //
+    HashMap       loaderMap  = new HashMap();
+    HsqlArrayList loaderList = new HsqlArrayList();
+    TableLoader   currentLoader;
+    String[]      statements = new String[batchRows];
+    int           statementCount;
+    int           taskCount;
+
+    //
+    volatile Throwable failure;
+
+    ScriptLoader(Database database, int threadCount) {
+
+        this.database = database;
+        maxBatches    = threadCount * 4;
+        permits       = new Semaphore(maxBatches);
+        executor = Executors.newFixedThreadPool(threadCount,
+                new ThreadFactory() {
+
+            public Thread newThread(Runnable r) {
+
+                Thread thread = new Thread(r, "HSQLDB Script Loader");
+
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Returns true if the rows of the store can be loaded
+     */
+    static boolean isLoadable(PersistentStore store) {
+        return store instanceof RowStoreBPlusMemory;
+    }
+
+    /**
+     * Adds an INSERT statement for the table
+     */
+    void add(Table table, PersistentStore store, String statement) {
+
+        if (currentLoader == null || currentLoader.table != table) {
+            submitBatch();
+
+            currentLoader = (TableLoader) loaderMap.get(table);
+
+            if (currentLoader == null) {
+                currentLoader = new TableLoader(table, (RowStoreBPlus) store);
+
+                loaderMap.put(table, currentLoader);
+                loaderList.add(currentLoader);
+            }
+        }
+
+        statements[statementCount++] = statement;
+
+        if (statementCount == batchRows) {
+            submitBatch();
+        }
+    }
+
+    private void submitBatch() {
+
+        checkFailure();
+
+        if (statementCount == 0) {
+            return;
+        }
+
+        permits.acquireUninterruptibly();
+
+        String[] list = new String[statementCount];
+
+        System.arraycopy(statements, 0, list, 0, statementCount);
+
+        statementCount = 0;
+
+        submit(new Batch(currentLoader, currentLoader.batchCount++, list));
+    }
+
+    /**
+     * Waits until all the rows are inserted and builds the other indexes.
+     * Throws the first exception thrown by a loader thread.
+     */
+    void finish() {
+
+        submitBatch();
+        waitForTasks();
+
+        for (int i = 0; i < loaderList.size(); i++) {
+            TableLoader loader  = (TableLoader) loaderList.get(i);
+            Index[]     indexes = loader.table.getIndexList();
+
+            for (int j = 1; j < indexes.length; j++) {
+                submit(new IndexBuilder(loader, indexes[j]));
+            }
+        }
+
+        waitForTasks();
+    }
+
+    void close() {
+        executor.shutdownNow();
+    }
+
+    private synchronized void submit(Runnable task) {
+
+        taskCount++;
+
+        executor.execute(task);
+    }
+
+    private synchronized void taskDone(Throwable t) {
+
+        if (t != null && failure == null) {
+            failure = t;
+
+            // the reader thread must not wait for inserts that will not happen
+            permits.release(maxBatches);
+        }
+
+        taskCount--;
+
+        if (taskCount == 0) {
+            notifyAll();
+        }
+    }
+
+    private synchronized void waitForTasks() {
+
+        while (taskCount > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                throw Error.error(ErrorCode.GENERAL_ERROR, e);
+            }
+        }
+
+        checkFailure();
+    }
+
+    private void checkFailure() {
+
+        Throwable t = failure;
+
+        if (t == null) {
+            return;
+        }
+
+        if (t instanceof HsqlException) {
+            throw (HsqlException) t;
+        }
+
+        throw Error.error(ErrorCode.GENERAL_ERROR, t);
+    }
+
+    /**
+     * Each thread of the loader uses its own session
+     */
+    Session getSession() {
+
+        Session session = (Session) sessions.get();
+
+        if (session == null) {
+            session = database.sessionManager.getSysSessionForScript(database);
+
+            sessions.set(session);
+        }
+
+        return session;
+    }
+
+    /**
+     * Inserts the batches of one table in order
+     */
+    class TableLoader {
+
+        final Table         table;
+        final RowStoreBPlus store;
+        int                 batchCount;
+
+        // guarded by this
+        IntKeyHashMap decodedBatches = new IntKeyHashMap();
+        int           nextBatch;
+        boolean       isInserting;
+
+        TableLoader(Table table, RowStoreBPlus store) {
+            this.table = table;
+            this.store = store;
+        }
+
+        /**
+         * Adds the decoded rows of a batch. The thread inserts the rows of
+         * this and any following batches that have been decoded, unless
+         * another thread is inserting the rows of the table.
+         */
+        void insert(int batchNumber, Object[][] rows) {
+
+            synchronized (this) {
+                decodedBatches.put(batchNumber, rows);
+
+                if (isInserting) {
+                    return;
+                }
+
+                isInserting = true;
+            }
+
+            Session session = getSession();
+
+            while (true) {
+                synchronized (this) {
+                    rows = (Object[][]) decodedBatches.remove(nextBatch);
+
+                    if (rows == null) {
+                        isInserting = false;
+
+                        return;
+                    }
+
+                    nextBatch++;
+                }
+
+                try {
+                    for (int i = 0; i < rows.length; i++) {
+                        table.insertPrimaryFromScript(session, store,
+                                                      rows[i]);
+                    }
+                } finally {
+                    permits.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes the values of a batch of statements
+     */
+    class Batch implements Runnable {
+
+        final TableLoader loader;
+        final int         batchNumber;
+        final String[]    list;
+
+        Batch(TableLoader loader, int batchNumber, String[] list) {
+
+            this.loader      = loader;
+            this.batchNumber = batchNumber;
+            this.list        = list;
+        }
+
+        public void run() {
+
+            Throwable t = null;
+
+            try {
+                if (failure == null) {
+                    RowInputTextLog rowIn = new RowInputTextLog();
+                    Object[][]      rows  = new Object[list.length][];
+
+                    for (int i = 0; i < list.length; i++) {
+                        rowIn.setSource(list[i]);
+
+                        rows[i] =
+                            rowIn.readData(loader.table.getColumnTypes());
+                    }
+
+                    loader.insert(batchNumber, rows);
+                }
+            } catch (Throwable e) {
+                t = e;
+            } finally {
+                taskDone(t);
+            }
+        }
+    }
+
+    /**
+     * Builds one index of a table
+     */
+    class IndexBuilder implements Runnable {
+
+        final TableLoader loader;
+        final Index       index;
+
+        IndexBuilder(TableLoader loader, Index index) {
+            this.loader = loader;
+            this.index  = index;
+        }
+
+        public void run() {
+
+            Throwable t = null;
+
+            try {
+                if (failure == null) {
+                    loader.store.indexRows(getSession(), index);
+                }
+            } catch (Throwable e) {
+                t = e;
+            } finally {
+                taskDone(t);
+            }
+        }
+    }
+}
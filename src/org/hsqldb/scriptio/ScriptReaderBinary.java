@@ -0,0 +1,282 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.scriptio;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+import org.hsqldb.Database;
+import org.hsqldb.Session;
+import org.hsqldb.Table;
+import org.hsqldb.error.Error;
+import org.hsqldb.error.ErrorCode;
+import org.hsqldb.lib.HsqlArrayList;
+import org.hsqldb.rowio.RowInputBinary;
+import org.hsqldb.types.Type;
+
+/**
+ * Reads back a log file written by ScriptWriterBinary.<p>
+ *
+ * The column values of INSERT and DELETE records are decoded directly for
+ * the table, without parsing SQL. Only the statements that were logged as
+ * SQL text are compiled. Reading stops at the end of the file, or at an
+ * incomplete record or a record with a wrong checksum, which can be left
+ * at the end of the file after a crash.
+ *
+ * @version 2.3.0
+ * @since 2.3.0
+ */
+public class ScriptReaderBinary extends ScriptReaderBase {
+
+    DataInputStream dataInput;
+    RowInputBinary  rowIn      = new RowInputBinary(new byte[256]);
+    CRC32           checksum   = new CRC32();
+    HsqlArrayList   tableNames = new HsqlArrayList();
+    HsqlArrayList   tables     = new HsqlArrayList();
+
+    public ScriptReaderBinary(Database db,
+                              String fileName) throws IOException {
+
+        super(db);
+
+        InputStream inputStream =
+            database.logger.getFileAccess().openInputStreamElement(fileName);
+
+        dataInput = new DataInputStream(new BufferedInputStream(inputStream,
+                1 << 14));
+
+        if (dataInput.readInt() != ScriptWriterBinary.LOG_MAGIC
+                || dataInput.readInt() != ScriptWriterBinary.LOG_VERSION) {
+            dataInput.close();
+
+            throw Error.error(ErrorCode.FILE_IO_ERROR, fileName);
+        }
+    }
+
+    /**
+     * Returns true if the file starts with the magic number of a binary log
+     */
+    public static boolean isBinaryLog(Database db, String fileName) {
+
+        DataInputStream in = null;
+
+        try {
+            in = new DataInputStream(
+                db.logger.getFileAccess().openInputStreamElement(fileName));
+
+            return in.readInt() == ScriptWriterBinary.LOG_MAGIC;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            try {
+                if (in != null) {
+                    in.close();
+                }
+            } catch (IOException e) {}
+        }
+    }
+
+    protected void readDDL(Session session) {
+        throw Error.runtimeError(ErrorCode.U_S0500, "ScriptReaderBinary");
+    }
+
+    protected void readExistingData(Session session) {
+        throw Error.runtimeError(ErrorCode.U_S0500, "ScriptReaderBinary");
+    }
+
+    public boolean readLoggedStatement(Session session) {
+
+        while (true) {
+            if (!readRecord()) {
+                return false;
+            }
+
+            lineCount++;
+
+            try {
+                if (processRecord(session)) {
+                    return true;
+                }
+            } catch (IOException e) {
+                throw Error.error(e, ErrorCode.FILE_IO_ERROR, null);
+            }
+        }
+    }
+
+    /**
+     * Reads the next complete record into rowIn. Returns false at the end
+     * of the valid records.
+     */
+    private boolean readRecord() {
+
+        try {
+            int length = dataInput.readInt();
+
+            if (length <= 0) {
+                return false;
+            }
+
+            rowIn.resetBlock(0, length);
+            dataInput.readFully(rowIn.getBuffer(), 0, length);
+
+            int value = dataInput.readInt();
+
+            checksum.reset();
+            checksum.update(rowIn.getBuffer(), 0, length);
+
+            if (value != (int) checksum.getValue()) {
+                database.logger.logWarningEvent(
+                    "log record checksum error: " + (lineCount + 1), null);
+
+                return false;
+            }
+
+            return true;
+        } catch (EOFException e) {
+            return false;
+        } catch (IOException e) {
+            throw Error.error(e, ErrorCode.FILE_IO_ERROR, null);
+        } catch (OutOfMemoryError e) {
+
+            // length of a damaged record
+            return false;
+        }
+    }
+
+    /**
+     * Sets the fields for the record. Returns false for table records,
+     * which are not returned to the caller.
+     */
+    private boolean processRecord(Session session) throws IOException {
+
+        int type = rowIn.readByte();
+
+        rowData      = null;
+        currentTable = null;
+
+        switch (type) {
+
+            case ScriptWriterBinary.TABLE_DEFINITION : {
+                int    id     = rowIn.readInt();
+                String schema = rowIn.readString();
+                String name   = rowIn.readString();
+
+                while (tables.size() <= id) {
+                    tableNames.add(null);
+                    tableNames.add(null);
+                    tables.add(null);
+                }
+
+                tableNames.set(id * 2, schema);
+                tableNames.set(id * 2 + 1, name);
+                tables.set(id, null);
+
+                return false;
+            }
+            case SESSION_ID :
+                sessionNumber = (int) rowIn.readLong();
+                break;
+
+            case SET_SCHEMA_STATEMENT :
+                currentSchema = rowIn.readString();
+                break;
+
+            case ANY_STATEMENT :
+                statement = rowIn.readString();
+
+                // the statement may change the tables
+                for (int i = 0; i < tables.size(); i++) {
+                    tables.set(i, null);
+                }
+                break;
+
+            case COMMIT_STATEMENT :
+                break;
+
+            case INSERT_STATEMENT :
+            case DELETE_STATEMENT : {
+                currentTable = getTable(session, rowIn.readInt());
+                currentStore =
+                    database.persistentStoreCollection.getStore(currentTable);
+
+                Type[] colTypes;
+
+                if (type == INSERT_STATEMENT) {
+                    colTypes = currentTable.getColumnTypes();
+                } else if (currentTable.hasPrimaryKey()) {
+                    colTypes = currentTable.getPrimaryKeyTypes();
+                } else {
+                    colTypes = currentTable.getColumnTypes();
+                }
+
+                rowData = rowIn.readData(colTypes);
+
+                break;
+            }
+            default :
+                throw Error.error(ErrorCode.ERROR_IN_SCRIPT_FILE,
+                                  String.valueOf(type));
+        }
+
+        statementType = type;
+
+        return true;
+    }
+
+    private Table getTable(Session session, int id) {
+
+        Table table = (Table) tables.get(id);
+
+        if (table == null) {
+            String schema = (String) tableNames.get(id * 2);
+            String name   = (String) tableNames.get(id * 2 + 1);
+
+            table = database.schemaManager.getUserTable(session, name,
+                    schema);
+
+            tables.set(id, table);
+        }
+
+        return table;
+    }
+
+    public void close() {
+
+        try {
+            dataInput.close();
+        } catch (Exception e) {}
+    }
+}
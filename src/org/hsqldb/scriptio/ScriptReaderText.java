@@ -67,6 +67,9 @@ public class ScriptReaderText extends ScriptReaderBase {
     RowInputTextLog rowIn;
     boolean         isInsert;
 
+    // the values of INSERT statements are decoded later
+    boolean deferData;
+
     public ScriptReaderText(Database db) {
         super(db);
     }
@@ -160,6 +163,15 @@ public class ScriptReaderText extends ScriptReaderBase {
 
     protected void readExistingData(Session session) {
 
+        ScriptLoader loader  = null;
+        int          threads = database.logger.getScriptThreads();
+
+        if (threads > 1 && database.recoveryMode == 0
+                && !database.databaseProperties.isVersion18()) {
+            loader    = new ScriptLoader(database, threads);
+            deferData = true;
+        }
+
         try {
             String tablename = null;
             database.setReferentialIntegrity(false);
@@ -184,6 +196,19 @@ public class ScriptReaderText extends ScriptReaderBase {
                                 currentTable);
                     }
 
+                    if (loader != null) {
+                        if (ScriptLoader.isLoadable(currentStore)) {
+                            loader.add(currentTable, currentStore, statement);
+
+                            continue;
+                        }
+
+                        if (rowData == null) {
+                            rowData = rowIn.readData(
+                                currentTable.getColumnTypes());
+                        }
+                    }
+
                     try {
                         currentTable.insertFromScript(session, currentStore,
                                                       rowData);
@@ -196,6 +221,10 @@ public class ScriptReaderText extends ScriptReaderBase {
                 }
             }
 
+            if (loader != null) {
+                loader.finish();
+            }
+
             database.setReferentialIntegrity(true);
         } catch (Throwable t) {
             database.logger.logSevereEvent("readExistingData failed", t);
@@ -205,6 +234,12 @@ public class ScriptReaderText extends ScriptReaderBase {
                               new Object[] {
                 new Integer(lineCount), t.toString()
             });
+        } finally {
+            if (loader != null) {
+                loader.close();
+            }
+
+            deferData = false;
         }
     }
 
@@ -279,6 +314,12 @@ public class ScriptReaderText extends ScriptReaderBase {
         currentStore =
             database.persistentStoreCollection.getStore(currentTable);
 
+        if (deferData && statementType == INSERT_STATEMENT) {
+            rowData = null;
+
+            return;
+        }
+
         Type[] colTypes;
 
         if (statementType == INSERT_STATEMENT) {
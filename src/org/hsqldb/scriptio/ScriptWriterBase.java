@@ -86,7 +86,7 @@ import org.hsqldb.result.Result;
  * DatabaseScriptReader and its subclasses read back the data at startup time.
  *
  * @author Fred Toussi (fredt@users dot sourceforge.net)
- * @version 2.1.1
+ * @version 2.3.0
  * @since 1.7.2
  */
 public abstract class ScriptWriterBase implements Runnable {
@@ -114,6 +114,8 @@ public abstract class ScriptWriterBase implements Runnable {
     long             lineCount;
     volatile boolean needsSync;
     private int      syncCount;
+    private long     syncedByteCount;
+    private Object   syncLock = new Object();
     static final int INSERT             = 0;
     static final int INSERT_WITH_SCHEMA = 1;
 
@@ -198,23 +200,68 @@ public abstract class ScriptWriterBase implements Runnable {
 
     public void forceSync() {
 
-        if (isClosed) {
-            return;
+        synchronized (syncLock) {
+            if (isClosed) {
+                return;
+            }
+
+            needsSync = false;
+
+            synchronized (fileStreamOut) {
+                try {
+                    fileStreamOut.flush();
+                    outDescriptor.sync();
+
+                    syncCount++;
+
+                    syncedByteCount = byteCount;
+/*
+                    System.out.println(
+                        this.outFile + " FD.sync done at "
+                        + new java.sql.Timestamp(System.currentTimeMillis()));
+*/
+                } catch (IOException e) {
+                    database.logger.logWarningEvent(
+                        "ScriptWriter synch error: ", e);
+                }
+            }
         }
+    }
 
-        needsSync = false;
+    /**
+     * Group commit. Returns when the file is synced up to the given byte
+     * count. Called after a commit statement has been written, without
+     * holding the locks used for writing.<p>
+     *
+     * The first thread to arrive flushes the stream and syncs the file
+     * descriptor while other threads continue to write to the stream. The
+     * threads that wait on the lock in the meantime return without a sync
+     * if their statements were written before the flush, otherwise the next
+     * thread syncs all the statements written since.
+     */
+    public void syncTo(long count) {
+
+        synchronized (syncLock) {
+            if (isClosed || syncedByteCount >= count) {
+                return;
+            }
+
+            needsSync = false;
+
+            long flushedCount;
 
-        synchronized (fileStreamOut) {
             try {
-                fileStreamOut.flush();
+                synchronized (fileStreamOut) {
+                    fileStreamOut.flush();
+
+                    flushedCount = byteCount;
+                }
+
                 outDescriptor.sync();
 
                 syncCount++;
-/*
-                System.out.println(
-                    this.outFile + " FD.sync done at "
-                    + new java.sql.Timestamp(System.currentTimeMillis()));
-*/
+
+                syncedByteCount = flushedCount;
             } catch (IOException e) {
                 database.logger.logWarningEvent("ScriptWriter synch error: ",
                                                 e);
@@ -231,14 +278,16 @@ public abstract class ScriptWriterBase implements Runnable {
         }
 
         try {
-            synchronized (fileStreamOut) {
-                finishStream();
-                forceSync();
-                fileStreamOut.close();
-
-                fileStreamOut = null;
-                outDescriptor = null;
-                isClosed      = true;
+            synchronized (syncLock) {
+                synchronized (fileStreamOut) {
+                    finishStream();
+                    forceSync();
+                    fileStreamOut.close();
+
+                    fileStreamOut = null;
+                    outDescriptor = null;
+                    isClosed      = true;
+                }
             }
         } catch (IOException e) {
             throw Error.error(ErrorCode.FILE_IO_ERROR);
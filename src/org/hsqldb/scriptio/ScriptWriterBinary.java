@@ -0,0 +1,276 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.scriptio;
+
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+import org.hsqldb.Database;
+import org.hsqldb.HsqlNameManager.HsqlName;
+import org.hsqldb.NumberSequence;
+import org.hsqldb.Row;
+import org.hsqldb.Session;
+import org.hsqldb.Table;
+import org.hsqldb.error.Error;
+import org.hsqldb.error.ErrorCode;
+import org.hsqldb.lib.HashMap;
+import org.hsqldb.lib.HsqlArrayList;
+import org.hsqldb.rowio.RowOutputBinary;
+
+/**
+ * Writes the .log file in a binary format, as an alternative to
+ * ScriptWriterText. Used only for the log.<p>
+ *
+ * The file starts with a magic number and a format version. Each record is
+ * an int length, followed by a type byte and the contents of the record,
+ * followed by the CRC32 checksum of the type byte and the contents.<p>
+ *
+ * INSERT and DELETE records contain the id of the table and the column
+ * values in the RowOutputBinary encoding. DELETE records contain only the
+ * primary key columns if the table has a primary key. The schema and name
+ * of a table are written in a table record before the table is first used
+ * in the file, or after it is renamed. COMMIT records have no contents,
+ * SESSION_ID and SET_SCHEMA records are written when the session or the
+ * schema changes, as in the text log, and all other statements are written
+ * as SQL text.<p>
+ *
+ * The file is read by ScriptReaderBinary.
+ *
+ * @version 2.3.0
+ * @since 2.3.0
+ */
+public class ScriptWriterBinary extends ScriptWriterBase {
+
+    public static final int LOG_MAGIC        = 0xB1A0C0DE;
+    public static final int LOG_VERSION      = 1;
+    static final int        TABLE_DEFINITION = 16;
+
+    //
+    RowOutputBinary rowOut;
+    CRC32           checksum   = new CRC32();
+    HashMap         tableIdMap = new HashMap();
+    HsqlArrayList   tableNames = new HsqlArrayList();
+
+    public ScriptWriterBinary(Database db, String file) {
+
+        super(db, file, false, false, false);
+
+        rowOut.reset();
+        rowOut.writeInt(LOG_MAGIC);
+        rowOut.writeInt(LOG_VERSION);
+
+        try {
+            writeRowOutToFile();
+        } catch (IOException e) {
+            throw Error.error(e, ErrorCode.FILE_IO_ERROR,
+                              ErrorCode.M_Message_Pair, new Object[] {
+                e.toString(), outFile
+            });
+        }
+    }
+
+    protected void initBuffers() {
+        rowOut = new RowOutputBinary(256, 1);
+    }
+
+    protected void writeDataTerm() throws IOException {}
+
+    protected void writeSessionIdAndSchema(Session session)
+    throws IOException {
+
+        if (session == null) {
+            return;
+        }
+
+        writeSessionId(session);
+
+        if (schemaToLog != session.loggedSchema) {
+            startRecord(ScriptReaderBase.SET_SCHEMA_STATEMENT);
+            rowOut.writeString(schemaToLog.name);
+            endRecord();
+
+            session.loggedSchema = schemaToLog;
+        }
+    }
+
+    private void writeSessionId(Session session) throws IOException {
+
+        if (session != currentSession) {
+            startRecord(ScriptReaderBase.SESSION_ID);
+            rowOut.writeLong(session.getId());
+            endRecord();
+
+            currentSession = session;
+        }
+    }
+
+    /**
+     * Returns the id of the table in this file, writing a table record
+     * for a table that has not been used before or has been renamed.
+     */
+    private int getTableId(Table table) throws IOException {
+
+        HsqlName name = table.getName();
+        Integer  id   = (Integer) tableIdMap.get(table);
+
+        if (id != null) {
+            int index = id.intValue() * 2;
+
+            if (tableNames.get(index) == name.name
+                    && tableNames.get(index + 1) == name.schema.name) {
+                return id.intValue();
+            }
+        }
+
+        id = new Integer(tableNames.size() / 2);
+
+        startRecord(TABLE_DEFINITION);
+        rowOut.writeInt(id.intValue());
+        rowOut.writeString(name.schema.name);
+        rowOut.writeString(name.name);
+        endRecord();
+        tableIdMap.put(table, id);
+        tableNames.add(name.name);
+        tableNames.add(name.schema.name);
+
+        return id.intValue();
+    }
+
+    private void startRecord(int type) {
+
+        rowOut.reset();
+        rowOut.writeInt(0);
+        rowOut.writeByte(type);
+    }
+
+    private void endRecord() throws IOException {
+
+        int length = rowOut.size() - RowOutputBinary.INT_STORE_SIZE;
+
+        checksum.reset();
+        checksum.update(rowOut.getBuffer(), RowOutputBinary.INT_STORE_SIZE,
+                        length);
+        rowOut.writeIntData(length, 0);
+        rowOut.writeInt((int) checksum.getValue());
+        writeRowOutToFile();
+    }
+
+    public void writeLogStatement(Session session,
+                                  String s) throws IOException {
+
+        if (session != null) {
+            schemaToLog = session.currentSchema;
+
+            writeSessionIdAndSchema(session);
+        }
+
+        startRecord(ScriptReaderBase.ANY_STATEMENT);
+        rowOut.writeString(s);
+        endRecord();
+
+        needsSync = true;
+    }
+
+    public void writeOtherStatement(Session session,
+                                    String s) throws IOException {
+
+        writeLogStatement(session, s);
+
+        if (writeDelay == 0) {
+            sync();
+        }
+    }
+
+    public void writeRow(Session session, Row row,
+                         Table table) throws IOException {
+
+        writeSessionId(session);
+
+        int id = getTableId(table);
+
+        startRecord(ScriptReaderBase.INSERT_STATEMENT);
+        rowOut.writeInt(id);
+        rowOut.writeData(row, table.getColumnTypes());
+        endRecord();
+    }
+
+    public void writeInsertStatement(Session session, Row row,
+                                     Table table) throws IOException {
+        writeRow(session, row, table);
+    }
+
+    public void writeDeleteStatement(Session session, Table table,
+                                     Object[] data) throws IOException {
+
+        writeSessionId(session);
+
+        int id = getTableId(table);
+
+        startRecord(ScriptReaderBase.DELETE_STATEMENT);
+        rowOut.writeInt(id);
+        rowOut.writeData(table.getColumnCount(), table.getColumnTypes(), data,
+                         null, table.getPrimaryKey());
+        endRecord();
+    }
+
+    public void writeSequenceStatement(Session session,
+                                       NumberSequence seq) throws IOException {
+
+        StringBuffer sb = new StringBuffer(128);
+
+        sb.append("ALTER SEQUENCE ");
+        sb.append(seq.getSchemaName().statementName).append('.');
+        sb.append(seq.getName().statementName);
+        sb.append(" RESTART WITH ").append(seq.peek());
+        writeLogStatement(session, sb.toString());
+    }
+
+    public void writeCommitStatement(Session session) throws IOException {
+
+        writeSessionId(session);
+        startRecord(ScriptReaderBase.COMMIT_STATEMENT);
+        endRecord();
+
+        needsSync = true;
+    }
+
+    void writeRowOutToFile() throws IOException {
+
+        synchronized (fileStreamOut) {
+            fileStreamOut.write(rowOut.getBuffer(), 0, rowOut.size());
+
+            byteCount += rowOut.size();
+
+            lineCount++;
+        }
+    }
+}
@@ -295,10 +295,6 @@ public class ScriptWriterText extends ScriptWriterBase {
         writeRowOutToFile();
 
         needsSync = true;
-
-        if (writeDelay == 0) {
-            sync();
-        }
     }
 
     protected void finishStream() throws IOException {
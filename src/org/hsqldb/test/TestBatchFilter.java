@@ -0,0 +1,212 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Random;
+
+import org.hsqldb.lib.HsqlArrayList;
+import org.hsqldb.lib.StopWatch;
+
+/**
+ * Tests queries with conditions on table scans that are evaluated for
+ * batches of rows.<p>
+ *
+ * The conditions compare INTEGER, BIGINT, DOUBLE, DATE and TIMESTAMP
+ * columns, with some null values, to constants, to arithmetic on columns
+ * and to columns of outer ranges, together with conditions that are not
+ * evaluated in batches. The database is opened first with
+ * hsqldb.batch_filter=false and then with hsqldb.batch_filter=true and the
+ * results must be the same. The tests run for MEMORY and CACHED tables and
+ * report the time of each query.<p>
+ *
+ * Usage: java org.hsqldb.test.TestBatchFilter [rows [path]]
+ */
+public class TestBatchFilter {
+
+    static final String[] queries = {
+        "SELECT COUNT(*), SUM(I) FROM T WHERE I > 500",
+        "SELECT COUNT(*), SUM(B) FROM T WHERE I BETWEEN 100 AND 200 "
+        + "AND D < 0.5",
+        "SELECT COUNT(*) FROM T WHERE I + B * 2 > 1000 AND B - I <= 20000",
+        "SELECT COUNT(*), MAX(S) FROM T WHERE D * 2 <= 0.7 AND S LIKE 'a%'",
+        "SELECT COUNT(*), MIN(ID) FROM T WHERE DT >= DATE '2001-03-01' "
+        + "AND DT < DATE '2003-01-01'",
+        "SELECT COUNT(*), MAX(ID) FROM T "
+        + "WHERE TS < TIMESTAMP '2001-06-01 12:00:00.5' AND I <> 7",
+        "SELECT COUNT(*) FROM T WHERE (I = 17 OR I = 18) AND D >= 0.25",
+        "SELECT COUNT(*) FROM T WHERE I * 5000000 > 0 AND D <> 0.5",
+        "SELECT ID, I, D FROM T WHERE I > 990 AND B > 500 ORDER BY ID",
+        "SELECT ID FROM T WHERE D > 0.98 LIMIT 5",
+        "SELECT COUNT(*) FROM T A, T B WHERE A.ID < 30 AND B.I < A.I + 3 "
+        + "AND B.D > 0.9",
+        "SELECT COUNT(*) FROM T A WHERE A.ID < 30 AND EXISTS (SELECT 1 "
+        + "FROM T B WHERE B.I = A.I + 1 AND B.D > A.D)",
+    };
+    int rowCount;
+
+    public TestBatchFilter(int rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int rows = args.length > 0 ? Integer.parseInt(args[0])
+                                   : 100000;
+        String path = args.length > 1 ? args[1]
+                                      : "/hsql/testbatchfilter/test";
+
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+
+        TestBatchFilter test = new TestBatchFilter(rows);
+        String url = "jdbc:hsqldb:file:" + path
+                     + ";hsqldb.cache_rows=" + rows * 2
+                     + ";hsqldb.cache_size=" + rows;
+
+        test.run("MEMORY", url);
+        test.run("CACHED", url);
+    }
+
+    void run(String type, String url) throws Exception {
+
+        Connection conn = DriverManager.getConnection(url
+            + ";hsqldb.batch_filter=false", "SA", "");
+        Statement st     = conn.createStatement();
+        Random    random = new Random(rowCount);
+
+        st.execute("DROP TABLE T IF EXISTS");
+        st.execute("CREATE " + type + " TABLE T (ID INT PRIMARY KEY, "
+                   + "I INT, B BIGINT, D DOUBLE, DT DATE, TS TIMESTAMP, "
+                   + "S VARCHAR(20))");
+
+        PreparedStatement ps =
+            conn.prepareStatement("INSERT INTO T VALUES (?, ?, ?, ?, ?, ?, ?)");
+
+        for (int i = 0; i < rowCount; i++) {
+            ps.setInt(1, i);
+
+            // some null values
+            if (i % 17 == 0) {
+                ps.setNull(2, java.sql.Types.INTEGER);
+            } else {
+                ps.setInt(2, random.nextInt(1000));
+            }
+
+            ps.setLong(3, random.nextInt(20000) - 1000);
+
+            if (i % 19 == 0) {
+                ps.setNull(4, java.sql.Types.DOUBLE);
+            } else {
+                ps.setDouble(4, random.nextInt(100) / 100.0);
+            }
+
+            ps.setDate(5, new java.sql.Date((11000 + random.nextInt(1500))
+                                            * 86400000L));
+
+            java.sql.Timestamp ts = new java.sql.Timestamp(
+                (11000 + random.nextInt(1500)) * 86400000L
+                + random.nextInt(2) * 43200000L);
+
+            ts.setNanos(random.nextInt(2) * 500000000);
+            ps.setTimestamp(6, ts);
+            ps.setString(7, (char) ('a' + random.nextInt(4)) + "s"
+                            + random.nextInt(1000));
+            ps.executeUpdate();
+        }
+
+        String[][] expected = new String[queries.length][];
+
+        for (int i = 0; i < queries.length; i++) {
+            expected[i] = execute(type + " rows", conn, queries[i]);
+        }
+
+        st.execute("SHUTDOWN");
+
+        conn = DriverManager.getConnection(url + ";hsqldb.batch_filter=true",
+                                           "SA", "");
+        st = conn.createStatement();
+
+        for (int i = 0; i < queries.length; i++) {
+            String[] result = execute(type + " batch", conn, queries[i]);
+
+            if (result.length != expected[i].length) {
+                throw new RuntimeException(queries[i] + " rows "
+                                           + expected[i].length + " batch "
+                                           + result.length);
+            }
+
+            for (int j = 0; j < result.length; j++) {
+                if (!result[j].equals(expected[i][j])) {
+                    throw new RuntimeException(queries[i] + " row "
+                                               + expected[i][j] + " batch "
+                                               + result[j]);
+                }
+            }
+        }
+
+        st.execute("SHUTDOWN");
+    }
+
+    String[] execute(String type, Connection conn,
+                     String query) throws Exception {
+
+        Statement     st   = conn.createStatement();
+        StopWatch     sw   = new StopWatch();
+        ResultSet     rs   = st.executeQuery(query);
+        int           cols = rs.getMetaData().getColumnCount();
+        HsqlArrayList list = new HsqlArrayList();
+
+        while (rs.next()) {
+            StringBuffer sb = new StringBuffer();
+
+            for (int i = 0; i < cols; i++) {
+                sb.append(rs.getString(i + 1));
+                sb.append(',');
+            }
+
+            list.add(sb.toString());
+        }
+
+        System.out.println(type + " " + query + " rows " + list.size()
+                           + " time " + sw.elapsedTime() + " ms");
+
+        String[] result = new String[list.size()];
+
+        list.toArray(result);
+
+        return result;
+    }
+}
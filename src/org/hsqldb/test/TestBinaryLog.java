@@ -0,0 +1,213 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.test;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+
+import org.hsqldb.lib.StopWatch;
+import org.hsqldb.scriptio.ScriptWriterBinary;
+
+/**
+ * Compares the text and the binary .log formats.<p>
+ *
+ * For each format, rows are inserted, updated and deleted after a
+ * checkpoint, with columns of different types, a table without a primary
+ * key, a column added and a table renamed in the middle, and a
+ * transaction that is not committed. The database is closed without a
+ * checkpoint and reopened, so that the data is recovered from the .log
+ * file, and the contents of the tables must be the same as before. The
+ * time to write the log, the size of the log and the time to recover are
+ * reported.<p>
+ *
+ * Usage: java org.hsqldb.test.TestBinaryLog [rows [path]]
+ */
+public class TestBinaryLog {
+
+    int rowCount;
+
+    public TestBinaryLog(int rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int rows = args.length > 0 ? Integer.parseInt(args[0])
+                                   : 100000;
+        String path = args.length > 1 ? args[1]
+                                      : "/hsql/testbinarylog/test";
+
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+
+        TestBinaryLog test = new TestBinaryLog(rows);
+
+        test.run(path + "text", false);
+        test.run(path + "binary", true);
+    }
+
+    void run(String path, boolean binary) throws Exception {
+
+        String url = "jdbc:hsqldb:file:" + path + ";hsqldb.log_binary="
+                     + binary;
+        Connection conn = DriverManager.getConnection(url, "SA", "");
+        Statement  st   = conn.createStatement();
+
+        st.execute("DROP SCHEMA S IF EXISTS CASCADE");
+        st.execute("CREATE SCHEMA S");
+        st.execute("SET SCHEMA S");
+        st.execute("CREATE SEQUENCE Q");
+        st.execute("CREATE CACHED TABLE T (ID INT PRIMARY KEY, "
+                   + "A VARCHAR(100), B DECIMAL(10,2), C TIMESTAMP, "
+                   + "D VARBINARY(20), E DOUBLE)");
+        st.execute("CREATE TABLE U (ID INT, V VARCHAR(20))");
+        st.execute("CREATE TABLE W (ID INT)");
+        st.execute("CHECKPOINT");
+
+        StopWatch sw = new StopWatch();
+        PreparedStatement ps = conn.prepareStatement(
+            "INSERT INTO T VALUES (NEXT VALUE FOR Q, ?, ?, ?, ?, ?)");
+
+        for (int i = 0; i < rowCount; i++) {
+            ps.setString(1, i % 10 == 0 ? null
+                                        : "row \u00e9 '" + i + "'");
+            ps.setBigDecimal(2, new BigDecimal(i).movePointLeft(2));
+            ps.setTimestamp(3, new Timestamp(1000000000000L + i * 1000L));
+            ps.setBytes(4, new byte[] {
+                (byte) i, (byte) (i >> 8), 0
+            });
+            ps.setDouble(5, i / 3.0);
+            ps.executeUpdate();
+        }
+
+        st.execute("UPDATE T SET A = 'updated' WHERE MOD(ID, 7) = 0");
+        st.execute("DELETE FROM T WHERE MOD(ID, 5) = 0");
+        st.execute("ALTER TABLE T ADD COLUMN F INT DEFAULT 7");
+        st.execute("UPDATE T SET F = ID WHERE MOD(ID, 3) = 0");
+
+        for (int i = 0; i < 100; i++) {
+            st.execute("INSERT INTO U VALUES (" + (i % 10) + ", 'u" + i
+                       + "')");
+        }
+
+        st.execute("ALTER TABLE U RENAME TO U2");
+        st.execute("DELETE FROM U2 WHERE ID = 3");
+        st.execute("INSERT INTO U2 VALUES (100, 'renamed')");
+
+        long writeTime = sw.elapsedTime();
+        String expected = getContents(conn);
+
+        Connection other = DriverManager.getConnection(url, "SA", "");
+
+        other.setAutoCommit(false);
+        other.createStatement().execute("INSERT INTO S.W VALUES (1)");
+        st.execute("SHUTDOWN IMMEDIATELY");
+
+        long logSize = new File(path + ".log").length();
+
+        if (binary != isBinaryLog(path + ".log")) {
+            throw new RuntimeException("log format");
+        }
+
+        sw.zero();
+
+        conn = DriverManager.getConnection(url, "SA", "");
+
+        long readTime = sw.elapsedTime();
+
+        if (!expected.equals(getContents(conn))) {
+            throw new RuntimeException("recovered data differs");
+        }
+
+        ResultSet rs = conn.createStatement().executeQuery(
+            "SELECT COUNT(*) FROM S.W");
+
+        rs.next();
+
+        if (rs.getInt(1) != 0) {
+            throw new RuntimeException("uncommitted row recovered");
+        }
+
+        System.out.println((binary ? "binary" : "text") + " log write "
+                           + writeTime + " ms size " + logSize
+                           + " bytes recovery " + readTime + " ms");
+        conn.createStatement().execute("SHUTDOWN");
+    }
+
+    static boolean isBinaryLog(String fileName) throws Exception {
+
+        DataInputStream in =
+            new DataInputStream(new FileInputStream(fileName));
+
+        try {
+            return in.readInt() == ScriptWriterBinary.LOG_MAGIC;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns the contents of the tables as a string
+     */
+    static String getContents(Connection conn) throws Exception {
+
+        StringBuffer sb = new StringBuffer();
+        Statement    st = conn.createStatement();
+        String[] queries = new String[] {
+            "SELECT * FROM S.T ORDER BY ID", "SELECT * FROM S.U2 ORDER BY V",
+            "SELECT NEXT_VALUE FROM INFORMATION_SCHEMA.SEQUENCES "
+            + "WHERE SEQUENCE_SCHEMA = 'S'"
+        };
+
+        for (int i = 0; i < queries.length; i++) {
+            ResultSet rs      = st.executeQuery(queries[i]);
+            int       columns = rs.getMetaData().getColumnCount();
+
+            while (rs.next()) {
+                for (int j = 1; j <= columns; j++) {
+                    sb.append(rs.getString(j)).append(',');
+                }
+
+                sb.append('\n');
+            }
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,221 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Random;
+
+import org.hsqldb.Session;
+import org.hsqldb.Table;
+import org.hsqldb.index.Index;
+import org.hsqldb.jdbc.JDBCConnection;
+import org.hsqldb.lib.StopWatch;
+import org.hsqldb.persist.PersistentStore;
+
+/**
+ * Reads the rows of a CACHED table with many sessions at the same time.<p>
+ *
+ * Each thread has its own connection and reads random rows by primary
+ * key, while one more thread updates rows. The table is larger than the
+ * cache, so that rows are read from the file and removed from the cache
+ * while they are read from the cache by the other threads. The values are checked by the readers and the indexes are
+ * checked at the end. The number of lookups per second is reported.<p>
+ *
+ * Usage: java org.hsqldb.test.TestCacheConcurrency [threads [rows [path]]]
+ */
+public class TestCacheConcurrency {
+
+    static final int   lookupCount = 20000;
+    String             url;
+    int                threadCount;
+    int                rowCount;
+    volatile Throwable failure;
+
+    public TestCacheConcurrency(String url, int threadCount, int rowCount) {
+
+        this.url         = url;
+        this.threadCount = threadCount;
+        this.rowCount    = rowCount;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int threads = args.length > 0 ? Integer.parseInt(args[0])
+                                      : 32;
+        int rows    = args.length > 1 ? Integer.parseInt(args[1])
+                                      : 100000;
+        String path = args.length > 2 ? args[2]
+                                      : "/hsql/testcacheconcurrency/test";
+
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+
+        String url = "jdbc:hsqldb:file:" + path
+                     + ";hsqldb.cache_rows=" + (rows / 2)
+                     + ";hsqldb.cache_size=100000";
+        TestCacheConcurrency test = new TestCacheConcurrency(url, threads,
+            rows);
+
+        test.run();
+    }
+
+    void run() throws Exception {
+
+        Connection conn = DriverManager.getConnection(url, "SA", "");
+        Statement  st   = conn.createStatement();
+
+        st.execute("DROP TABLE T IF EXISTS");
+        st.execute("CREATE CACHED TABLE T (ID INT PRIMARY KEY, K INT, "
+                   + "V VARCHAR(20))");
+
+        PreparedStatement ps =
+            conn.prepareStatement("INSERT INTO T VALUES (?, ?, ?)");
+
+        for (int i = 0; i < rowCount; i++) {
+            ps.setInt(1, i);
+            ps.setInt(2, 0);
+            ps.setString(3, "v" + i);
+            ps.executeUpdate();
+        }
+
+        st.execute("CHECKPOINT");
+
+        Thread[]  threads = new Thread[threadCount + 1];
+        StopWatch sw      = new StopWatch();
+
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new Reader(i);
+
+            threads[i].start();
+        }
+
+        threads[threadCount] = new Writer();
+
+        threads[threadCount].start();
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+
+        long time = sw.elapsedTime();
+
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+
+        Session session = (Session) ((JDBCConnection) conn).getSession();
+        Table table = session.database.schemaManager.getUserTable(session,
+            "T", "PUBLIC");
+        PersistentStore store = table.getRowStore(session);
+        Index[]         list  = table.getIndexList();
+
+        for (int i = 0; i < list.length; i++) {
+            list[i].checkIndex(store);
+        }
+
+        ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM T WHERE ID >= 0");
+
+        rs.next();
+
+        if (rs.getInt(1) != rowCount) {
+            throw new RuntimeException("rows " + rs.getInt(1));
+        }
+
+        System.out.println("threads " + threadCount + " lookups "
+                           + (long) threadCount * lookupCount * 1000
+                             / Math.max(time, 1) + " per second");
+        st.execute("SHUTDOWN");
+    }
+
+    class Reader extends Thread {
+
+        int threadNo;
+
+        Reader(int threadNo) {
+            this.threadNo = threadNo;
+        }
+
+        public void run() {
+
+            try {
+                Connection conn   = DriverManager.getConnection(url, "SA", "");
+                Random     random = new Random(threadNo);
+                PreparedStatement ps =
+                    conn.prepareStatement("SELECT V FROM T WHERE ID = ?");
+
+                for (int i = 0; i < lookupCount; i++) {
+                    int id = random.nextInt(rowCount);
+
+                    ps.setInt(1, id);
+
+                    ResultSet rs = ps.executeQuery();
+
+                    if (!rs.next() || !rs.getString(1).equals("v" + id)) {
+                        throw new RuntimeException("lookup " + id);
+                    }
+                }
+
+                conn.close();
+            } catch (Throwable t) {
+                failure = t;
+            }
+        }
+    }
+
+    /**
+     * Changes the K column of random rows, while the readers run.
+     */
+    class Writer extends Thread {
+
+        public void run() {
+
+            try {
+                Connection conn   = DriverManager.getConnection(url, "SA", "");
+                Random     random = new Random(-1);
+                PreparedStatement ps = conn.prepareStatement(
+                    "UPDATE T SET K = K + 1 WHERE ID = ?");
+
+                for (int i = 0; i < lookupCount; i++) {
+                    ps.setInt(1, random.nextInt(rowCount));
+                    ps.executeUpdate();
+                }
+
+                conn.close();
+            } catch (Throwable t) {
+                failure = t;
+            }
+        }
+    }
+}
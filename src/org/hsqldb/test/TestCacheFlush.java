@@ -0,0 +1,173 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Random;
+
+import org.hsqldb.Session;
+import org.hsqldb.Table;
+import org.hsqldb.index.Index;
+import org.hsqldb.jdbc.JDBCConnection;
+import org.hsqldb.persist.PersistentStore;
+
+/**
+ * Compares the cache cleanups in sessions with and without the background
+ * flusher of the data file cache.<p>
+ *
+ * Rows of a CACHED table are inserted and updated in random order, so
+ * that most rows in the cache are changed when it becomes full. The longest
+ * statement time and the counters of INFORMATION_SCHEMA.SYSTEM_CACHEINFO
+ * are reported. With the flusher, some rows must be written by the flusher
+ * and the rows must be the same after the database is reopened.<p>
+ *
+ * Usage: java org.hsqldb.test.TestCacheFlush [rows [path]]
+ */
+public class TestCacheFlush {
+
+    int rowCount;
+
+    public TestCacheFlush(int rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int rows = args.length > 0 ? Integer.parseInt(args[0])
+                                   : 200000;
+        String path = args.length > 1 ? args[1]
+                                      : "/hsql/testcacheflush/test";
+
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+
+        TestCacheFlush test = new TestCacheFlush(rows);
+
+        test.run(path + "0", 0);
+        test.run(path + "1", 10);
+    }
+
+    void run(String path, int interval) throws Exception {
+
+        String url = "jdbc:hsqldb:file:" + path
+                     + ";hsqldb.cache_rows=10000;hsqldb.cache_size=2000"
+                     + ";hsqldb.cache_flush_interval=" + interval;
+        Connection conn   = DriverManager.getConnection(url, "SA", "");
+        Statement  st     = conn.createStatement();
+        Random     random = new Random(rowCount);
+
+        st.execute("DROP TABLE T IF EXISTS");
+        st.execute("CREATE CACHED TABLE T (ID INT PRIMARY KEY, K INT, "
+                   + "V VARCHAR(40))");
+        st.execute("CREATE INDEX IK ON T(K)");
+
+        PreparedStatement insert =
+            conn.prepareStatement("INSERT INTO T VALUES (?, ?, ?)");
+        PreparedStatement update =
+            conn.prepareStatement("UPDATE T SET V = ? WHERE ID = ?");
+        long maxTime = 0;
+        long sum     = 0;
+
+        for (int i = 0; i < rowCount; i++) {
+            int  id   = random.nextInt(1000) * rowCount + i;
+            long time = System.nanoTime();
+
+            insert.setInt(1, id);
+            insert.setInt(2, i);
+            insert.setString(3, "row " + i);
+            insert.executeUpdate();
+
+            if (i % 4 == 0) {
+                update.setString(1, "updated row " + i);
+                update.setInt(2, id);
+                update.executeUpdate();
+            }
+
+            time = System.nanoTime() - time;
+
+            if (time > maxTime) {
+                maxTime = time;
+            }
+
+            sum += i;
+        }
+
+        ResultSet rs = st.executeQuery(
+            "SELECT STALL_COUNT, STALL_TIME, FLUSH_COUNT, FLUSH_ROWS, "
+            + "FLUSH_TIME FROM INFORMATION_SCHEMA.SYSTEM_CACHEINFO");
+
+        rs.next();
+        System.out.println("interval " + interval + " rows " + rowCount
+                           + " max statement " + maxTime / 1000000
+                           + " ms stalls " + rs.getLong(1) + " "
+                           + rs.getLong(2) + " ms flush batches "
+                           + rs.getLong(3) + " rows " + rs.getLong(4) + " "
+                           + rs.getLong(5) + " ms");
+
+        if (interval > 0 && rs.getLong(4) == 0) {
+            throw new RuntimeException("no rows written by the flusher");
+        }
+
+        st.execute("SHUTDOWN");
+
+        conn = DriverManager.getConnection(url, "SA", "");
+
+        Session session = (Session) ((JDBCConnection) conn).getSession();
+        Table table = session.database.schemaManager.getUserTable(session,
+            "T", "PUBLIC");
+        PersistentStore store = table.getRowStore(session);
+        Index[]         list  = table.getIndexList();
+
+        for (int i = 0; i < list.length; i++) {
+            list[i].checkIndex(store);
+        }
+
+        st = conn.createStatement();
+        rs = st.executeQuery(
+            "SELECT COUNT(*), SUM(CAST(K AS BIGINT)), "
+            + "SUM(CASE WHEN V LIKE 'updated%' THEN 1 ELSE 0 END) FROM T");
+
+        rs.next();
+
+        if (rs.getInt(1) != rowCount || rs.getLong(2) != sum
+                || rs.getInt(3) != (rowCount + 3) / 4) {
+            throw new RuntimeException("rows " + rs.getInt(1) + " sum "
+                                       + rs.getLong(2) + " updated "
+                                       + rs.getInt(3));
+        }
+
+        st.execute("SHUTDOWN");
+    }
+}
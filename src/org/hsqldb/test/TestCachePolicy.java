@@ -0,0 +1,191 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Random;
+
+import org.hsqldb.Session;
+import org.hsqldb.jdbc.JDBCConnection;
+import org.hsqldb.lib.StopWatch;
+import org.hsqldb.persist.Cache;
+import org.hsqldb.persist.DataFileCache;
+
+/**
+ * Compares the cache policies with a workload that mixes scans of a large
+ * CACHED table with point lookups of a small set of rows of another table.<p>
+ *
+ * In each round, a slice of the large table is scanned and then each row
+ * of the hot set is read by its primary key. The rows that are read from
+ * the file during the lookups are counted and the time of the lookups is
+ * reported. With the scan resistant policy, the scans must not remove most
+ * of the hot set from the cache.<p>
+ *
+ * Usage: java org.hsqldb.test.TestCachePolicy [rows [path]]
+ */
+public class TestCachePolicy {
+
+    static final int cacheRows = 10000;
+    static final int hotCount  = 2000;
+    static final int rounds    = 10;
+    int              rowCount;
+
+    public TestCachePolicy(int rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int rows = args.length > 0 ? Integer.parseInt(args[0])
+                                   : 200000;
+        String path = args.length > 1 ? args[1]
+                                      : "/hsql/testcachepolicy/test";
+
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+
+        TestCachePolicy test = new TestCachePolicy(rows);
+        long countAccess = test.run(path + Cache.POLICY_ACCESS_COUNT,
+                                    Cache.POLICY_ACCESS_COUNT);
+        long countScan = test.run(path + Cache.POLICY_SCAN_RESISTANT,
+                                  Cache.POLICY_SCAN_RESISTANT);
+
+        if (countScan > hotCount * rounds / 4 || countScan > countAccess) {
+            throw new RuntimeException("hot rows read " + countScan
+                                       + " access count policy "
+                                       + countAccess);
+        }
+    }
+
+    /**
+     * Returns the count of rows read from the file during the lookups
+     */
+    long run(String path, int policy) throws Exception {
+
+        String url = "jdbc:hsqldb:file:" + path + ";hsqldb.cache_rows="
+                     + cacheRows + ";hsqldb.cache_size=100000"
+                     + ";hsqldb.cache_policy=" + policy;
+        Connection conn   = DriverManager.getConnection(url, "SA", "");
+        Statement  st     = conn.createStatement();
+        Random     random = new Random(rowCount);
+
+        st.execute("DROP TABLE HOT IF EXISTS");
+        st.execute("DROP TABLE BIG IF EXISTS");
+        st.execute("CREATE CACHED TABLE HOT (ID INT PRIMARY KEY, "
+                   + "V VARCHAR(20))");
+        st.execute("CREATE CACHED TABLE BIG (ID INT PRIMARY KEY, "
+                   + "V VARCHAR(20))");
+
+        PreparedStatement ps =
+            conn.prepareStatement("INSERT INTO HOT VALUES (?, ?)");
+
+        for (int i = 0; i < hotCount * 2; i++) {
+            ps.setInt(1, i);
+            ps.setString(2, "h" + i);
+            ps.executeUpdate();
+        }
+
+        ps = conn.prepareStatement("INSERT INTO BIG VALUES (?, ?)");
+
+        for (int i = 0; i < rowCount; i++) {
+            ps.setInt(1, i);
+            ps.setString(2, "b" + i);
+            ps.executeUpdate();
+        }
+
+        st.execute("CHECKPOINT");
+
+        int[] ids = new int[hotCount];
+
+        for (int i = 0; i < hotCount; i++) {
+            ids[i] = random.nextInt(hotCount * 2);
+        }
+
+        Session session = (Session) ((JDBCConnection) conn).getSession();
+        DataFileCache cache = session.database.logger.getCache();
+        PreparedStatement lookup =
+            conn.prepareStatement("SELECT V FROM HOT WHERE ID = ?");
+        PreparedStatement scan = conn.prepareStatement(
+            "SELECT COUNT(*) FROM BIG WHERE ID >= ? AND ID < ? "
+            + "AND V LIKE 'b%'");
+        StopWatch sw        = new StopWatch(false);
+        long      readCount = 0;
+        int       slice     = rowCount / rounds;
+
+        // the first pass warms up the cache
+        lookup(lookup, ids);
+
+        for (int round = 0; round < rounds; round++) {
+            scan.setInt(1, round * slice);
+            scan.setInt(2, round * slice + slice);
+
+            ResultSet rs = scan.executeQuery();
+
+            rs.next();
+
+            if (rs.getInt(1) != slice) {
+                throw new RuntimeException("scan " + rs.getInt(1));
+            }
+
+            long count = cache.getCachePutCount();
+
+            sw.start();
+            lookup(lookup, ids);
+            sw.stop();
+
+            readCount += cache.getCachePutCount() - count;
+        }
+
+        System.out.println("policy " + policy + " rows " + rowCount
+                           + " hot rows read " + readCount + " lookups "
+                           + sw.elapsedTime() + " ms");
+        st.execute("SHUTDOWN");
+
+        return readCount;
+    }
+
+    void lookup(PreparedStatement ps, int[] ids) throws Exception {
+
+        for (int i = 0; i < ids.length; i++) {
+            ps.setInt(1, ids[i]);
+
+            ResultSet rs = ps.executeQuery();
+
+            if (!rs.next() || !rs.getString(1).equals("h" + ids[i])) {
+                throw new RuntimeException("lookup " + ids[i]);
+            }
+        }
+    }
+}
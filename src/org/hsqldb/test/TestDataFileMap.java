@@ -0,0 +1,207 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package org.hsqldb.test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Random;
+
+import org.hsqldb.lib.StopWatch;
+
+/**
+ * Reads a CACHED table that is larger than the NIO maximum size, with and
+ * without the hsqldb.nio_full_map property.<p>
+ *
+ * The .data file is opened in normal and in read only mode. The rows are
+ * read with a full scan and with random lookups and the time is reported.
+ * Rows are then added with the full map, so that the file is enlarged
+ * and new segments are mapped, and the table is checked again after the
+ * database is reopened without the full map.<p>
+ *
+ * Usage: java org.hsqldb.test.TestDataFileMap [rows [path]]
+ */
+public class TestDataFileMap {
+
+    static final int rowSize     = 10000;
+    static final int lookupCount = 5000;
+    String           path;
+    int              rowCount;
+
+    public TestDataFileMap(String path, int rowCount) {
+        this.path     = path;
+        this.rowCount = rowCount;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int rows    = args.length > 0 ? Integer.parseInt(args[0])
+                                      : 20000;
+        String path = args.length > 1 ? args[1]
+                                      : "/hsql/testdatafilemap/test";
+
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+
+        TestDataFileMap test = new TestDataFileMap(path, rows);
+
+        test.fill();
+        test.read(false, false);
+        test.read(true, false);
+        test.read(false, true);
+        test.read(true, true);
+        test.extend();
+    }
+
+    String getURL(boolean fullMap, boolean readOnly) {
+
+        return "jdbc:hsqldb:file:" + path
+               + ";hsqldb.nio_max_size=64;hsqldb.nio_full_map=" + fullMap
+               + ";hsqldb.files_readonly=" + readOnly
+               + ";hsqldb.cache_rows=1000;hsqldb.cache_size=1000";
+    }
+
+    void fill() throws Exception {
+
+        Connection conn = DriverManager.getConnection(getURL(false, false),
+            "SA", "");
+        Statement st = conn.createStatement();
+
+        st.execute("DROP TABLE T IF EXISTS");
+        st.execute("CREATE CACHED TABLE T (ID INT PRIMARY KEY, "
+                   + "V VARBINARY(" + rowSize + "))");
+        insert(conn, 0, rowCount);
+        st.execute("SHUTDOWN");
+    }
+
+    void insert(Connection conn, int start, int count) throws Exception {
+
+        PreparedStatement ps =
+            conn.prepareStatement("INSERT INTO T VALUES (?, ?)");
+        Random random = new Random(start);
+        byte[] value  = new byte[rowSize];
+
+        conn.setAutoCommit(false);
+
+        for (int i = start; i < start + count; i++) {
+            random.nextBytes(value);
+            TestDataFileRead.setRowId(value, i);
+            ps.setInt(1, i);
+            ps.setBytes(2, value);
+            ps.executeUpdate();
+
+            if (i % 1000 == 999) {
+                conn.commit();
+            }
+        }
+
+        conn.commit();
+        conn.setAutoCommit(true);
+    }
+
+    void read(boolean fullMap, boolean readOnly) throws Exception {
+
+        Connection conn = DriverManager.getConnection(getURL(fullMap,
+            readOnly), "SA", "");
+        Statement st = conn.createStatement();
+        StopWatch sw = new StopWatch();
+
+        check(conn, rowCount);
+
+        long scanTime = sw.elapsedTime();
+
+        sw.zero();
+
+        PreparedStatement ps =
+            conn.prepareStatement("SELECT V FROM T WHERE ID = ?");
+        Random random = new Random(rowCount);
+
+        for (int i = 0; i < lookupCount; i++) {
+            int id = random.nextInt(rowCount);
+
+            ps.setInt(1, id);
+
+            ResultSet rs = ps.executeQuery();
+
+            if (!rs.next()
+                    || TestDataFileRead.getRowId(rs.getBytes(1)) != id) {
+                throw new RuntimeException("lookup " + id);
+            }
+        }
+
+        System.out.println("full map " + fullMap + " read only " + readOnly
+                           + " scan " + scanTime + " ms lookups "
+                           + sw.elapsedTime() + " ms");
+        st.execute("SHUTDOWN");
+    }
+
+    void extend() throws Exception {
+
+        Connection conn = DriverManager.getConnection(getURL(true, false),
+            "SA", "");
+
+        insert(conn, rowCount, rowCount / 2);
+        check(conn, rowCount + rowCount / 2);
+        conn.createStatement().execute("SHUTDOWN");
+
+        conn = DriverManager.getConnection(getURL(false, false), "SA", "");
+
+        check(conn, rowCount + rowCount / 2);
+        conn.createStatement().execute("SHUTDOWN");
+        System.out.println("rows " + (rowCount + rowCount / 2)
+                           + " after extending with full map");
+    }
+
+    /**
+     * Scans the table and checks the ids stored in the rows.
+     */
+    void check(Connection conn, int count) throws Exception {
+
+        Statement st = conn.createStatement();
+        ResultSet rs = st.executeQuery("SELECT ID, V FROM T");
+        int       rows = 0;
+
+        while (rs.next()) {
+            if (TestDataFileRead.getRowId(rs.getBytes(2)) != rs.getInt(1)) {
+                throw new RuntimeException("row " + rs.getInt(1));
+            }
+
+            rows++;
+        }
+
+        if (rows != count) {
+            throw new RuntimeException("rows " + rows);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package org.hsqldb.test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Random;
+
+import org.hsqldb.lib.StopWatch;
+
+/**
+ * Reads random rows of a large CACHED table with one and then with many
+ * sessions at the same time.<p>
+ *
+ * The rows are larger than the cache, so that nearly every read is a cache
+ * miss that reads the .data file. The default arguments create a .data file
+ * of about 2 GB. The table is kept and reused by the next runs with the same
+ * path. The first bytes of each row hold its id and are checked by the
+ * readers. The number of reads and the bytes read per second are reported.<p>
+ *
+ * Usage: java org.hsqldb.test.TestDataFileRead [threads [rows [size [path]]]]
+ */
+public class TestDataFileRead {
+
+    static final int   readCount = 2000;
+    String             url;
+    int                rowCount;
+    int                rowSize;
+    volatile Throwable failure;
+
+    public TestDataFileRead(String url, int rowCount, int rowSize) {
+
+        this.url      = url;
+        this.rowCount = rowCount;
+        this.rowSize  = rowSize;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int threads = args.length > 0 ? Integer.parseInt(args[0])
+                                      : 16;
+        int rows    = args.length > 1 ? Integer.parseInt(args[1])
+                                      : 200000;
+        int size    = args.length > 2 ? Integer.parseInt(args[2])
+                                      : 10000;
+        String path = args.length > 3 ? args[3]
+                                      : "/hsql/testdatafileread/test";
+
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+
+        String url = "jdbc:hsqldb:file:" + path
+                     + ";hsqldb.cache_rows=1000;hsqldb.cache_size=1000";
+        TestDataFileRead test = new TestDataFileRead(url, rows, size);
+
+        test.fill();
+        test.run(1);
+        test.run(threads);
+        test.shutdown();
+    }
+
+    void fill() throws Exception {
+
+        Connection conn = DriverManager.getConnection(url, "SA", "");
+        Statement  st   = conn.createStatement();
+
+        st.execute("CREATE CACHED TABLE IF NOT EXISTS T (ID INT PRIMARY KEY, "
+                   + "V VARBINARY(" + rowSize + "))");
+
+        ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM T");
+
+        rs.next();
+
+        if (rs.getInt(1) == rowCount) {
+            return;
+        }
+
+        st.execute("DELETE FROM T");
+        conn.setAutoCommit(false);
+
+        PreparedStatement ps =
+            conn.prepareStatement("INSERT INTO T VALUES (?, ?)");
+        Random    random = new Random(rowCount);
+        byte[]    value  = new byte[rowSize];
+        StopWatch sw     = new StopWatch();
+
+        for (int i = 0; i < rowCount; i++) {
+            random.nextBytes(value);
+            setRowId(value, i);
+            ps.setInt(1, i);
+            ps.setBytes(2, value);
+            ps.executeUpdate();
+
+            if (i % 1000 == 999) {
+                conn.commit();
+            }
+        }
+
+        conn.commit();
+        st.execute("CHECKPOINT");
+        System.out.println("rows " + rowCount + " size " + rowSize
+                           + " inserted " + sw.elapsedTime() + " ms");
+        conn.close();
+    }
+
+    void run(int threadCount) throws Exception {
+
+        Thread[]  threads = new Thread[threadCount];
+        StopWatch sw      = new StopWatch();
+
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new Reader(i);
+
+            threads[i].start();
+        }
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+
+        long time = Math.max(sw.elapsedTime(), 1);
+
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+
+        long reads = (long) threadCount * readCount;
+
+        System.out.println("threads " + threadCount + " reads "
+                           + reads * 1000 / time + " per second "
+                           + reads * rowSize / 1000 / time + " MB/s");
+    }
+
+    void shutdown() throws Exception {
+
+        Connection conn = DriverManager.getConnection(url, "SA", "");
+
+        conn.createStatement().execute("SHUTDOWN");
+    }
+
+    static void setRowId(byte[] value, int id) {
+
+        value[0] = (byte) (id >>> 24);
+        value[1] = (byte) (id >>> 16);
+        value[2] = (byte) (id >>> 8);
+        value[3] = (byte) id;
+    }
+
+    static int getRowId(byte[] value) {
+        return ((value[0] & 0xff) << 24) + ((value[1] & 0xff) << 16)
+               + ((value[2] & 0xff) << 8) + (value[3] & 0xff);
+    }
+
+    class Reader extends Thread {
+
+        int threadNo;
+
+        Reader(int threadNo) {
+            this.threadNo = threadNo;
+        }
+
+        public void run() {
+
+            try {
+                Connection conn   = DriverManager.getConnection(url, "SA", "");
+                Random     random = new Random(threadNo);
+                PreparedStatement ps =
+                    conn.prepareStatement("SELECT V FROM T WHERE ID = ?");
+
+                for (int i = 0; i < readCount; i++) {
+                    int id = random.nextInt(rowCount);
+
+                    ps.setInt(1, id);
+
+                    ResultSet rs = ps.executeQuery();
+
+                    if (!rs.next() || getRowId(rs.getBytes(1)) != id) {
+                        throw new RuntimeException("read " + id);
+                    }
+                }
+
+                conn.close();
+            } catch (Throwable t) {
+                failure = t;
+            }
+        }
+    }
+}
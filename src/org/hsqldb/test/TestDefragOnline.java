@@ -0,0 +1,277 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+
+package org.hsqldb.test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.hsqldb.Session;
+import org.hsqldb.Table;
+import org.hsqldb.index.Index;
+import org.hsqldb.index.IndexBPlus;
+import org.hsqldb.jdbc.JDBCConnection;
+import org.hsqldb.persist.PersistentStore;
+
+/**
+ * Tests the online defrag of the .data file with hsqldb.files_space.<p>
+ *
+ * A CACHED table in its own table space and one in the default space are
+ * filled, then most of the rows are deleted. The database is reopened with
+ * hsqldb.defrag_online_rows. The rows of a table are first updated through
+ * an updatable result set that is kept open for many defrag intervals. Then
+ * rows are updated while the online defrag runs, until file blocks have
+ * been emptied. The contents of the tables are
+ * compared with the expected values, and again with a check of the indexes
+ * after the database is reopened.<p>
+ *
+ * Usage: java org.hsqldb.test.TestDefragOnline [rows [path]]
+ */
+public class TestDefragOnline {
+
+    String path;
+    int    rowCount;
+
+    public TestDefragOnline(String path, int rowCount) {
+        this.path     = path;
+        this.rowCount = rowCount;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int rows = args.length > 0 ? Integer.parseInt(args[0])
+                                   : 100000;
+        String path = args.length > 1 ? args[1]
+                                      : "/hsql/testdefragonline/test";
+
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+
+        TestDefragOnline test = new TestDefragOnline(path, rows);
+
+        test.run();
+    }
+
+    void run() throws Exception {
+
+        TestUtil.deleteDatabase(path);
+
+        String url = "jdbc:hsqldb:file:" + path
+                     + ";hsqldb.cache_rows=10000;hsqldb.cache_size=10000";
+        Connection conn = DriverManager.getConnection(url
+            + ";hsqldb.files_space=true", "SA", "");
+        Statement st = conn.createStatement();
+
+        st.execute("CREATE CACHED TABLE T (ID INT PRIMARY KEY, A INT, "
+                   + "F VARCHAR(200))");
+        st.execute("CREATE INDEX IA ON T(A)");
+        st.execute("SET TABLE T NEW SPACE");
+        st.execute("CREATE CACHED TABLE U (ID INT, A INT, F VARCHAR(200))");
+        st.execute("CREATE INDEX IUA ON U(A)");
+        conn.setAutoCommit(false);
+
+        PreparedStatement psT =
+            conn.prepareStatement("INSERT INTO T VALUES (?, ?, ?)");
+        PreparedStatement psU =
+            conn.prepareStatement("INSERT INTO U VALUES (?, ?, ?)");
+
+        for (int i = 0; i < rowCount; i++) {
+            String filler = "filler " + i + " abcdefghijklmnopqrstuvwxyz"
+                            + " abcdefghijklmnopqrstuvwxyz";
+
+            psT.setInt(1, i);
+            psT.setInt(2, i % 100);
+            psT.setString(3, filler);
+            psT.executeUpdate();
+            psU.setInt(1, i);
+            psU.setInt(2, i % 100);
+            psU.setString(3, filler);
+            psU.executeUpdate();
+        }
+
+        conn.commit();
+        st.execute("DELETE FROM T WHERE MOD(ID, 10) <> 0");
+        st.execute("DELETE FROM U WHERE MOD(ID, 10) <> 0");
+        conn.commit();
+        conn.setAutoCommit(true);
+        st.execute("SHUTDOWN");
+
+        //
+        conn = DriverManager.getConnection(url
+                                           + ";hsqldb.defrag_online_rows=2000"
+                                           + ";hsqldb.defrag_online_interval=20",
+                                           "SA", "");
+        st = conn.createStatement();
+
+        int expected = rowCount / 10;
+        int updates  = updateResultSet(conn, expected);
+
+        PreparedStatement update =
+            conn.prepareStatement("UPDATE T SET A = A + 1 WHERE ID = ?");
+        long freed = 0;
+        long start = System.currentTimeMillis();
+
+        for (int i = 0;
+                freed == 0 && System.currentTimeMillis() - start < 60000;
+                i++) {
+            update.setInt(1, (i * 10) % rowCount);
+            update.executeUpdate();
+
+            updates++;
+
+            if (updates % 100 == 0) {
+                ResultSet rs = st.executeQuery(
+                    "SELECT DEFRAG_COUNT, DEFRAG_ROWS, DEFRAG_BYTES "
+                    + "FROM INFORMATION_SCHEMA.SYSTEM_CACHEINFO");
+
+                rs.next();
+
+                freed = rs.getLong(3);
+
+                if (freed > 0) {
+                    System.out.println("defrag steps " + rs.getLong(1)
+                                       + " rows " + rs.getLong(2)
+                                       + " bytes " + freed + " updates "
+                                       + updates + " time "
+                                       + (System.currentTimeMillis()
+                                          - start) + " ms");
+                }
+            }
+        }
+
+        if (freed == 0) {
+            throw new RuntimeException("no file block emptied");
+        }
+
+        checkTables(conn, expected, updates);
+        st.execute("SHUTDOWN");
+
+        conn = DriverManager.getConnection(url, "SA", "");
+
+        checkIndexes(conn, "T");
+        checkIndexes(conn, "U");
+        checkTables(conn, expected, updates);
+        conn.createStatement().execute("SHUTDOWN");
+        TestUtil.deleteDatabase(path);
+    }
+
+    /**
+     * Reads the rows of T into an updatable result set, waits while defrag
+     * steps are due, then updates each row and returns the count of rows
+     * updated.
+     */
+    int updateResultSet(Connection conn, int expected) throws Exception {
+
+        Statement st = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY,
+                                            ResultSet.CONCUR_UPDATABLE);
+        ResultSet rs    = st.executeQuery("SELECT ID, A FROM T");
+        int       count = 0;
+
+        Thread.sleep(1000);
+
+        while (rs.next()) {
+            rs.updateInt(2, rs.getInt(2) + 1);
+            rs.updateRow();
+
+            count++;
+        }
+
+        rs.close();
+        st.close();
+
+        if (count != expected) {
+            throw new RuntimeException("result set updated " + count);
+        }
+
+        return count;
+    }
+
+    void checkIndexes(Connection conn, String tableName) {
+
+        Session session = (Session) ((JDBCConnection) conn).getSession();
+        Table table = session.database.schemaManager.getUserTable(session,
+            tableName, "PUBLIC");
+        PersistentStore store = table.getRowStore(session);
+        Index[]         list  = table.getIndexList();
+
+        for (int i = 0; i < list.length; i++) {
+            ((IndexBPlus) list[i]).checkIndex(store);
+        }
+    }
+
+    void checkTables(Connection conn, int expected,
+                     int updates) throws Exception {
+
+        Statement st       = conn.createStatement();
+        long      sumId    = 0;
+        long      sumA     = updates;
+        String[]  tables   = new String[] {
+            "T", "U"
+        };
+
+        for (int i = 0; i < rowCount; i += 10) {
+            sumId += i;
+            sumA  += i % 100;
+        }
+
+        for (int i = 0; i < tables.length; i++) {
+            ResultSet rs = st.executeQuery("SELECT COUNT(*), SUM(ID), SUM(A) "
+                                           + "FROM " + tables[i]);
+
+            rs.next();
+
+            long expectedA = tables[i].equals("T") ? sumA
+                                                   : sumA - updates;
+
+            if (rs.getInt(1) != expected || rs.getLong(2) != sumId
+                    || rs.getLong(3) != expectedA) {
+                throw new RuntimeException(tables[i] + " rows "
+                                           + rs.getInt(1) + " sums "
+                                           + rs.getLong(2) + " "
+                                           + rs.getLong(3));
+            }
+
+            rs = st.executeQuery("SELECT COUNT(*) FROM " + tables[i]
+                                 + " WHERE A BETWEEN 0 AND 1000");
+
+            rs.next();
+
+            if (rs.getInt(1) != expected) {
+                throw new RuntimeException(tables[i] + " index rows "
+                                           + rs.getInt(1));
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package org.hsqldb.test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Random;
+
+import org.hsqldb.lib.HsqlArrayList;
+import org.hsqldb.lib.StopWatch;
+
+/**
+ * Tests GROUP BY queries when the groups exceed the result memory rows
+ * setting.<p>
+ *
+ * The queries group by INTEGER, VARCHAR, DECIMAL and DATE columns, and by
+ * a VARCHAR_IGNORECASE column, which is not hashed. Each query is run
+ * without a limit and then with a result memory rows setting much smaller
+ * than the count of groups, so the rows of most groups are stored in
+ * partitions on disk. The results must be the same. The tests run for
+ * MEMORY and CACHED tables.<p>
+ *
+ * Usage: java org.hsqldb.test.TestGroupBySpill [rows [path]]
+ */
+public class TestGroupBySpill {
+
+    static final String[] queries = {
+        "SELECT K, COUNT(*), SUM(V), MIN(S), MAX(D) FROM T GROUP BY K "
+        + "ORDER BY K",
+        "SELECT S, K, AVG(D), COUNT(DISTINCT V) FROM T GROUP BY S, K "
+        + "ORDER BY S, K",
+        "SELECT DT, SUM(D), COUNT(V) FROM T GROUP BY DT "
+        + "HAVING COUNT(*) > 2 ORDER BY DT",
+        "SELECT C, COUNT(*), MAX(ID) FROM T GROUP BY C ORDER BY C",
+        "SELECT K, C, SUM(V) FROM T GROUP BY K, C ORDER BY K, C",
+        "SELECT K / 10, MAX(V), STDDEV_POP(V), EVERY(V > 0) FROM T "
+        + "GROUP BY K / 10 ORDER BY 1",
+        "SELECT K, COUNT(*) * 2 + MAX(V) FROM T GROUP BY K "
+        + "HAVING SUM(V) > 1000 ORDER BY 2 DESC, K",
+        "SELECT MOD(ID, 500), GROUP_CONCAT(S ORDER BY ID) FROM T "
+        + "GROUP BY MOD(ID, 500) ORDER BY 1",
+    };
+    int rowCount;
+
+    public TestGroupBySpill(int rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int rows = args.length > 0 ? Integer.parseInt(args[0])
+                                   : 20000;
+        String path = args.length > 1 ? args[1]
+                                      : "/hsql/testgroupbyspill/test";
+
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+
+        TestGroupBySpill test = new TestGroupBySpill(rows);
+        String url = "jdbc:hsqldb:file:" + path
+                     + ";hsqldb.cache_rows=2000;hsqldb.cache_size=1000";
+
+        test.run("MEMORY", url);
+        test.run("CACHED", url);
+    }
+
+    void run(String type, String url) throws Exception {
+
+        Connection conn   = DriverManager.getConnection(url, "SA", "");
+        Statement  st     = conn.createStatement();
+        Random     random = new Random(rowCount);
+
+        st.execute("DROP TABLE T IF EXISTS");
+        st.execute("CREATE " + type + " TABLE T (ID INT PRIMARY KEY, "
+                   + "K INT, S VARCHAR(20), D DECIMAL(10,2), DT DATE, "
+                   + "C VARCHAR_IGNORECASE(10), V INT)");
+
+        PreparedStatement ps =
+            conn.prepareStatement("INSERT INTO T VALUES (?, ?, ?, ?, ?, ?, ?)");
+
+        for (int i = 0; i < rowCount; i++) {
+            ps.setInt(1, i);
+            ps.setInt(2, random.nextInt(rowCount / 4));
+
+            // some null keys and some trailing spaces
+            if (i % 13 == 0) {
+                ps.setNull(3, java.sql.Types.VARCHAR);
+            } else {
+                ps.setString(3, "s" + random.nextInt(rowCount / 10)
+                             + (i % 7 == 0 ? " "
+                                           : ""));
+            }
+
+            ps.setBigDecimal(4,
+                             java.math.BigDecimal.valueOf(random.nextInt(2000),
+                                 random.nextInt(3)));
+            ps.setDate(5, new java.sql.Date((10000 + random.nextInt(3000))
+                                            * 86400000L));
+            ps.setString(6, (i % 2 == 0 ? "c"
+                                        : "C") + random.nextInt(rowCount
+                                        / 8));
+            ps.setInt(7, random.nextInt(1000) - 100);
+            ps.executeUpdate();
+        }
+
+        for (int i = 0; i < queries.length; i++) {
+            st.execute("SET SESSION RESULT MEMORY ROWS 0");
+
+            String[] expected = execute(type + " memory", conn, queries[i]);
+
+            st.execute("SET SESSION RESULT MEMORY ROWS " + rowCount / 50);
+
+            String[] result = execute(type + " spill", conn, queries[i]);
+
+            if (result.length != expected.length) {
+                throw new RuntimeException(queries[i] + " rows "
+                                           + expected.length + " spill "
+                                           + result.length);
+            }
+
+            for (int j = 0; j < result.length; j++) {
+                if (!result[j].equals(expected[j])) {
+                    throw new RuntimeException(queries[i] + " row "
+                                               + expected[j] + " spill "
+                                               + result[j]);
+                }
+            }
+        }
+
+        st.execute("SET SESSION RESULT MEMORY ROWS 0");
+        st.execute("SHUTDOWN");
+    }
+
+    String[] execute(String type, Connection conn,
+                     String query) throws Exception {
+
+        Statement     st   = conn.createStatement();
+        StopWatch     sw   = new StopWatch();
+        ResultSet     rs   = st.executeQuery(query);
+        int           cols = rs.getMetaData().getColumnCount();
+        HsqlArrayList list = new HsqlArrayList();
+
+        while (rs.next()) {
+            StringBuffer sb = new StringBuffer();
+
+            for (int i = 0; i < cols; i++) {
+                String value = rs.getString(i + 1);
+
+                // values of a group that compare equal may differ in case
+                // or trailing spaces
+                sb.append(value == null ? null
+                                        : value.trim().toLowerCase());
+                sb.append(',');
+            }
+
+            list.add(sb.toString());
+        }
+
+        System.out.println(type + " " + query + " rows " + list.size()
+                           + " time " + sw.elapsedTime() + " ms");
+
+        String[] result = new String[list.size()];
+
+        list.toArray(result);
+
+        return result;
+    }
+}
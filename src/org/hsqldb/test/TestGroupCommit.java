@@ -0,0 +1,160 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.hsqldb.lib.StopWatch;
+
+/**
+ * Measures the commit throughput with WRITE DELAY 0.<p>
+ *
+ * Each thread has its own connection and inserts rows in auto-commit mode,
+ * so each insert is a commit that is synced to the .log file. The test is
+ * run with one thread and with the given number of threads, and the
+ * commits per second are reported. The database is then closed without a
+ * checkpoint and reopened, and all the committed rows must be recovered
+ * from the .log file.<p>
+ *
+ * Usage: java org.hsqldb.test.TestGroupCommit [threads [commits [path]]]
+ */
+public class TestGroupCommit {
+
+    String             url;
+    int                commitCount;
+    volatile Throwable failure;
+
+    public TestGroupCommit(String url, int commitCount) {
+        this.url         = url;
+        this.commitCount = commitCount;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int threads = args.length > 0 ? Integer.parseInt(args[0])
+                                      : 16;
+        int commits = args.length > 1 ? Integer.parseInt(args[1])
+                                      : 500;
+        String path = args.length > 2 ? args[2]
+                                      : "/hsql/testgroupcommit/test";
+
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+
+        TestGroupCommit test = new TestGroupCommit("jdbc:hsqldb:file:"
+            + path, commits);
+
+        test.run(1);
+        test.run(threads);
+    }
+
+    void run(int threadCount) throws Exception {
+
+        Connection conn = DriverManager.getConnection(url, "SA", "");
+        Statement  st   = conn.createStatement();
+
+        st.execute("SET FILES WRITE DELAY 0");
+        st.execute("DROP TABLE T IF EXISTS");
+        st.execute("CREATE TABLE T (ID INT PRIMARY KEY, V VARCHAR(20))");
+        st.execute("CHECKPOINT");
+
+        Thread[]  threads = new Thread[threadCount];
+        StopWatch sw      = new StopWatch();
+
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new Committer(i);
+
+            threads[i].start();
+        }
+
+        for (int i = 0; i < threadCount; i++) {
+            threads[i].join();
+        }
+
+        long time = sw.elapsedTime();
+
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+
+        st.execute("SHUTDOWN IMMEDIATELY");
+
+        conn = DriverManager.getConnection(url, "SA", "");
+        st   = conn.createStatement();
+
+        ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM T");
+
+        rs.next();
+
+        if (rs.getInt(1) != threadCount * commitCount) {
+            throw new RuntimeException("rows " + rs.getInt(1));
+        }
+
+        System.out.println("threads " + threadCount + " commits "
+                           + (long) threadCount * commitCount * 1000
+                             / Math.max(time, 1) + " per second");
+        st.execute("SHUTDOWN");
+    }
+
+    class Committer extends Thread {
+
+        int threadNo;
+
+        Committer(int threadNo) {
+            this.threadNo = threadNo;
+        }
+
+        public void run() {
+
+            try {
+                Connection conn = DriverManager.getConnection(url, "SA", "");
+                PreparedStatement ps =
+                    conn.prepareStatement("INSERT INTO T VALUES (?, ?)");
+
+                for (int i = 0; i < commitCount; i++) {
+                    int id = threadNo * commitCount + i;
+
+                    ps.setInt(1, id);
+                    ps.setString(2, "v" + id);
+                    ps.executeUpdate();
+                }
+
+                conn.close();
+            } catch (Throwable t) {
+                failure = t;
+            }
+        }
+    }
+}
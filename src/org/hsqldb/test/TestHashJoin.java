@@ -0,0 +1,202 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package org.hsqldb.test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.hsqldb.lib.StopWatch;
+
+/**
+ * Tests hash joins on columns without an index.<p>
+ *
+ * Two tables are joined on INTEGER, BIGINT, DECIMAL, VARCHAR and CHAR
+ * columns with inner and left outer joins. The plan of each query must use
+ * a hash join. Indexes are then created on the join columns of the inner
+ * table and the results of the same queries, now using the indexes, must
+ * be the same. The tests run for MEMORY and CACHED tables.<p>
+ *
+ * Usage: java org.hsqldb.test.TestHashJoin [rows [path]]
+ */
+public class TestHashJoin {
+
+    static final String[] queries = {
+        "SELECT COUNT(*), SUM(A.V), SUM(B.W) FROM A JOIN B ON A.K = B.K",
+        "SELECT COUNT(*), SUM(A.V), SUM(B.W) FROM A, B WHERE B.K = A.K + 1",
+        "SELECT COUNT(*), SUM(A.V), SUM(B.W) FROM A JOIN B ON A.S = B.S",
+        "SELECT COUNT(*), SUM(A.V), SUM(B.W) FROM A JOIN B "
+        + "ON A.K = B.K AND A.S = B.S",
+        "SELECT COUNT(*), SUM(A.V), SUM(B.W) FROM A JOIN B ON A.V = B.W",
+        "SELECT COUNT(*), SUM(A.V), COUNT(B.ID) FROM A LEFT JOIN B "
+        + "ON A.K = B.K AND B.W < 100",
+        "SELECT COUNT(*), SUM(A.V), COUNT(B.ID) FROM A LEFT JOIN B "
+        + "ON A.K = B.K WHERE B.ID IS NULL",
+        "SELECT COUNT(*), SUM(A.V), SUM(C.V) FROM A JOIN B ON A.K = B.K "
+        + "JOIN A C ON C.S = B.S",
+    };
+    int rowCount;
+
+    public TestHashJoin(int rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int rows = args.length > 0 ? Integer.parseInt(args[0])
+                                   : 20000;
+        String path = args.length > 1 ? args[1]
+                                      : "/hsql/testhashjoin/test";
+
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+
+        TestHashJoin test = new TestHashJoin(rows);
+
+        test.run("MEMORY", "jdbc:hsqldb:mem:hashjoin");
+        test.run("CACHED",
+                 "jdbc:hsqldb:file:" + path
+                 + ";hsqldb.cache_rows=2000;hsqldb.cache_size=1000");
+    }
+
+    void run(String type, String url) throws Exception {
+
+        Connection conn = DriverManager.getConnection(url, "SA", "");
+        Statement  st   = conn.createStatement();
+
+        st.execute("DROP TABLE A IF EXISTS");
+        st.execute("DROP TABLE B IF EXISTS");
+        st.execute("CREATE " + type + " TABLE A (ID INT PRIMARY KEY, "
+                   + "K INT, S VARCHAR(20), V INT)");
+        st.execute("CREATE " + type + " TABLE B (ID INT PRIMARY KEY, "
+                   + "K BIGINT, S CHAR(20), W DECIMAL(10,2))");
+
+        PreparedStatement psa =
+            conn.prepareStatement("INSERT INTO A VALUES (?, ?, ?, ?)");
+        PreparedStatement psb =
+            conn.prepareStatement("INSERT INTO B VALUES (?, ?, ?, ?)");
+
+        for (int i = 0; i < rowCount; i++) {
+            psa.setInt(1, i);
+            psa.setInt(2, i % (rowCount / 4));
+
+            // some null keys
+            if (i % 13 == 0) {
+                psa.setNull(3, java.sql.Types.VARCHAR);
+            } else {
+                psa.setString(3, "s" + (i % 1000));
+            }
+
+            psa.setInt(4, i % 500);
+            psa.executeUpdate();
+        }
+
+        // half the keys of B are not in A
+        for (int i = 0; i < rowCount / 2; i++) {
+            psb.setInt(1, i);
+            psb.setLong(2, i % (rowCount / 8) * 2 + 1);
+            psb.setString(3, "s" + (i % 2000));
+            psb.setBigDecimal(4, new java.math.BigDecimal(i % 1000 / 2.0));
+            psb.executeUpdate();
+        }
+
+        String[][] results = new String[queries.length][];
+
+        for (int i = 0; i < queries.length; i++) {
+            checkPlan(conn, queries[i], true);
+
+            results[i] = execute(type, conn, queries[i]);
+        }
+
+        st.execute("CREATE INDEX IBK ON B(K)");
+        st.execute("CREATE INDEX IBS ON B(S)");
+        st.execute("CREATE INDEX IBW ON B(W)");
+        st.execute("CREATE INDEX IAS ON A(S)");
+
+        for (int i = 0; i < queries.length; i++) {
+            checkPlan(conn, queries[i], false);
+
+            String[] result = execute(type, conn, queries[i]);
+
+            for (int j = 0; j < result.length; j++) {
+                if (!result[j].equals(results[i][j])) {
+                    throw new RuntimeException(queries[i] + " hash join "
+                                               + results[i][j] + " index "
+                                               + result[j]);
+                }
+            }
+        }
+
+        st.execute("SHUTDOWN");
+    }
+
+    void checkPlan(Connection conn, String query,
+                   boolean hash) throws Exception {
+
+        Statement st   = conn.createStatement();
+        ResultSet rs   = st.executeQuery("EXPLAIN PLAN FOR " + query);
+        boolean   used = false;
+
+        while (rs.next()) {
+            if (rs.getString(1).indexOf("HASH JOIN") >= 0) {
+                used = true;
+            }
+        }
+
+        if (used != hash) {
+            throw new RuntimeException(query + " hash join " + used);
+        }
+    }
+
+    String[] execute(String type, Connection conn,
+                     String query) throws Exception {
+
+        Statement st = conn.createStatement();
+        StopWatch sw = new StopWatch();
+        ResultSet rs = st.executeQuery(query);
+
+        rs.next();
+
+        String[] result = new String[rs.getMetaData().getColumnCount()];
+
+        for (int i = 0; i < result.length; i++) {
+            result[i] = rs.getString(i + 1);
+        }
+
+        System.out.println(type + " " + query + " " + result[0] + " time "
+                           + sw.elapsedTime() + " ms");
+
+        return result;
+    }
+}
@@ -0,0 +1,182 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.test;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Random;
+
+import org.hsqldb.lib.StopWatch;
+
+/**
+ * Compares the statement latency during automatic checkpoints with and
+ * without hsqldb.inc_checkpoint.<p>
+ *
+ * A CACHED table is updated at random rows in auto-commit mode with a small
+ * log size, so that automatic checkpoints are performed. As the checkpoint
+ * runs in a separate thread, the updates continue until the log file has
+ * been reset at least once, or a timeout is reached. The longest time of an
+ * update statement and the count of checkpoints are reported. The
+ * database is then closed without a checkpoint and reopened, and the sum
+ * of the updated column must include all the updates.<p>
+ *
+ * Usage: java org.hsqldb.test.TestIncrementalCheckpoint [rows [path]]
+ */
+public class TestIncrementalCheckpoint {
+
+    static final long timeout = 60000;
+    String            path;
+    int               rowCount;
+
+    public TestIncrementalCheckpoint(String path, int rowCount) {
+        this.path     = path;
+        this.rowCount = rowCount;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int rows = args.length > 0 ? Integer.parseInt(args[0])
+                                   : 100000;
+        String path = args.length > 1 ? args[1]
+                                      : "/hsql/testinccheckpoint/test";
+
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+
+        TestIncrementalCheckpoint test = new TestIncrementalCheckpoint(path,
+            rows);
+
+        test.run(false);
+        test.run(true);
+    }
+
+    void run(boolean incremental) throws Exception {
+
+        String dbPath = path + (incremental ? "inc"
+                                            : "full");
+
+        TestUtil.deleteDatabase(dbPath);
+
+        String url = "jdbc:hsqldb:file:" + dbPath
+                     + ";hsqldb.cache_rows=" + (rowCount * 2)
+                     + ";hsqldb.cache_size=" + (rowCount * 2)
+                     + ";hsqldb.log_size=1;hsqldb.inc_checkpoint="
+                     + incremental;
+        Connection conn = DriverManager.getConnection(url, "SA", "");
+        Statement  st   = conn.createStatement();
+
+        st.execute("CREATE CACHED TABLE T (ID INT PRIMARY KEY, V INT, "
+                   + "F VARCHAR(200))");
+        conn.setAutoCommit(false);
+
+        PreparedStatement ps =
+            conn.prepareStatement("INSERT INTO T VALUES (?, 0, ?)");
+
+        for (int i = 0; i < rowCount; i++) {
+            ps.setInt(1, i);
+            ps.setString(2, "filler " + i + " abcdefghijklmnopqrstuvwxyz");
+            ps.executeUpdate();
+        }
+
+        conn.commit();
+        conn.setAutoCommit(true);
+        st.execute("CHECKPOINT");
+
+        PreparedStatement update =
+            conn.prepareStatement("UPDATE T SET V = V + 1, F = ? "
+                                  + "WHERE ID = ?");
+        Random    random      = new Random(rowCount);
+        File      logFile     = new File(dbPath + ".log");
+        long      logSize     = 0;
+        int       checkpoints = 0;
+        long      maxTime     = 0;
+        int       minUpdates  = rowCount / 2;
+        int       updates     = 0;
+        StopWatch total       = new StopWatch();
+        StopWatch sw          = new StopWatch(false);
+
+        for (int i = 0; i < minUpdates || checkpoints == 0; i++) {
+            if (total.elapsedTime() > timeout) {
+                throw new RuntimeException("no checkpoint");
+            }
+
+            update.setString(1, "update " + i + " abcdefghijklmnopqrstuvwxyz");
+            update.setInt(2, random.nextInt(rowCount));
+            sw.zero();
+            sw.start();
+            update.executeUpdate();
+            sw.stop();
+
+            updates++;
+
+            maxTime = Math.max(maxTime, sw.elapsedTime());
+
+            long size = logFile.length();
+
+            if (size < logSize) {
+                checkpoints++;
+            }
+
+            logSize = size;
+        }
+
+        // waits until the checkpoint that reset the log has completed
+        update.setInt(2, 0);
+        update.executeUpdate();
+
+        updates++;
+
+        System.out.println("inc_checkpoint " + incremental + " updates "
+                           + updates + " checkpoints " + checkpoints
+                           + " total " + total.elapsedTime()
+                           + " ms longest update " + maxTime + " ms");
+        st.execute("SHUTDOWN IMMEDIATELY");
+
+        conn = DriverManager.getConnection(url, "SA", "");
+        st   = conn.createStatement();
+
+        ResultSet rs = st.executeQuery("SELECT COUNT(*), SUM(V) FROM T");
+
+        rs.next();
+
+        if (rs.getInt(1) != rowCount || rs.getLong(2) != updates) {
+            throw new RuntimeException("recovered " + rs.getInt(1)
+                                       + " rows with sum " + rs.getLong(2));
+        }
+
+        st.execute("SHUTDOWN");
+        TestUtil.deleteDatabase(dbPath);
+    }
+}
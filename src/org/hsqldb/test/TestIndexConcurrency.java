@@ -0,0 +1,282 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Random;
+
+import org.hsqldb.Session;
+import org.hsqldb.Table;
+import org.hsqldb.index.Index;
+import org.hsqldb.jdbc.JDBCConnection;
+import org.hsqldb.lib.StopWatch;
+import org.hsqldb.persist.PersistentStore;
+
+/**
+ * Checks the B+ tree indexes of a MEMORY table that is changed and read by
+ * several sessions at the same time.<p>
+ *
+ * The database uses MVCC and a small fanout, so that nodes are split and
+ * merged often. Each thread has its own connection and its own range of
+ * ID values. In each round, the threads insert rows in random order,
+ * delete some of them and count the rows in their range with range scans
+ * of the primary key and the non-unique index, while the other threads
+ * change the same index trees. After each round, the indexes are checked
+ * and the row count is compared.<p>
+ *
+ * Usage: java org.hsqldb.test.TestIndexConcurrency [threads [rows [rounds]]]
+ */
+public class TestIndexConcurrency {
+
+    static final String url =
+        "jdbc:hsqldb:mem:concurrency;hsqldb.index_fanout=4";
+    int                 threadCount;
+    int                 rowCount;
+    int                 roundCount;
+    volatile Throwable  failure;
+
+    public TestIndexConcurrency(int threadCount, int rowCount,
+                                int roundCount) {
+
+        this.threadCount = threadCount;
+        this.rowCount    = rowCount;
+        this.roundCount  = roundCount;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int threads = args.length > 0 ? Integer.parseInt(args[0])
+                                      : 8;
+        int rows    = args.length > 1 ? Integer.parseInt(args[1])
+                                      : 5000;
+        int rounds  = args.length > 2 ? Integer.parseInt(args[2])
+                                      : 5;
+
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+
+        TestIndexConcurrency test = new TestIndexConcurrency(threads, rows,
+            rounds);
+
+        test.run();
+    }
+
+    void run() throws Exception {
+
+        Connection conn = DriverManager.getConnection(url, "SA", "");
+        Statement  st   = conn.createStatement();
+
+        st.execute("SET DATABASE TRANSACTION CONTROL MVCC");
+        st.execute("CREATE MEMORY TABLE T (ID INT PRIMARY KEY, K INT, "
+                   + "V VARCHAR(20))");
+        st.execute("CREATE INDEX IK ON T(K)");
+
+        StopWatch sw    = new StopWatch();
+        int       count = 0;
+
+        for (int round = 0; round < roundCount; round++) {
+            Thread[] threads = new Thread[threadCount];
+
+            for (int i = 0; i < threadCount; i++) {
+                threads[i] = new Worker(i, round);
+
+                threads[i].start();
+            }
+
+            for (int i = 0; i < threadCount; i++) {
+                threads[i].join();
+            }
+
+            if (failure != null) {
+                throw new RuntimeException("round " + round, failure);
+            }
+
+            // each round adds rowCount rows and deletes a third of them
+            count += threadCount * (rowCount - (rowCount + 2) / 3);
+
+            check(conn, count, round);
+        }
+
+        System.out.println("threads " + threadCount + " rounds "
+                           + roundCount + " time " + sw.elapsedTime()
+                           + " ms");
+        st.execute("SHUTDOWN");
+    }
+
+    void check(Connection conn, int count, int round) throws Exception {
+
+        Session session = (Session) ((JDBCConnection) conn).getSession();
+        Table table = session.database.schemaManager.getUserTable(session,
+            "T", "PUBLIC");
+        PersistentStore store = table.getRowStore(session);
+        Index[]         list  = table.getIndexList();
+
+        for (int i = 0; i < list.length; i++) {
+            list[i].checkIndex(store);
+        }
+
+        Statement st = conn.createStatement();
+        ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM T WHERE K >= 0");
+
+        rs.next();
+
+        int keyCount = rs.getInt(1);
+
+        rs = st.executeQuery("SELECT COUNT(*) FROM T WHERE ID >= 0");
+
+        rs.next();
+
+        int idCount = rs.getInt(1);
+
+        if (keyCount != count || idCount != count) {
+            throw new RuntimeException("round " + round + " expected "
+                                       + count + " found " + keyCount + " "
+                                       + idCount);
+        }
+
+        System.out.println("round " + round + " rows " + count);
+    }
+
+    /**
+     * Changes and reads the rows with ID values in the range of the thread
+     * for one round. K is ID / 10, so the range of K is also disjoint from
+     * the ranges of the other threads.
+     */
+    class Worker extends Thread {
+
+        int threadNo;
+        int round;
+        int low;
+        int high;
+
+        Worker(int threadNo, int round) {
+
+            this.threadNo = threadNo;
+            this.round    = round;
+            this.low = (round * threadCount + threadNo) * rowCount * 10;
+            this.high     = low + rowCount * 10;
+        }
+
+        public void run() {
+
+            try {
+                runRound();
+            } catch (Throwable t) {
+                failure = t;
+            }
+        }
+
+        void runRound() throws Exception {
+
+            Connection conn = DriverManager.getConnection(url, "SA", "");
+            Random     random = new Random(low);
+            int[]      ids    = new int[rowCount];
+            PreparedStatement insert =
+                conn.prepareStatement("INSERT INTO T VALUES (?, ?, ?)");
+            PreparedStatement delete =
+                conn.prepareStatement("DELETE FROM T WHERE ID = ?");
+
+            for (int i = 0; i < rowCount; i++) {
+                int j = random.nextInt(i + 1);
+
+                ids[i] = ids[j];
+                ids[j] = low + i * 10;
+            }
+
+            for (int i = 0; i < rowCount; i++) {
+                insert.setInt(1, ids[i]);
+                insert.setInt(2, ids[i] / 10);
+                insert.setString(3, "v" + ids[i]);
+                insert.executeUpdate();
+
+                if (i % 500 == 0) {
+                    checkRange(conn, i + 1);
+                }
+            }
+
+            int count = rowCount;
+
+            for (int i = 0; i < rowCount; i++) {
+                if ((ids[i] - low) / 10 % 3 == 0) {
+                    delete.setInt(1, ids[i]);
+                    delete.executeUpdate();
+
+                    count--;
+
+                    if (count % 500 == 0) {
+                        checkRange(conn, count);
+                    }
+                }
+            }
+
+            checkRange(conn, count);
+            conn.close();
+        }
+
+        void checkRange(Connection conn, int count) throws Exception {
+
+            PreparedStatement ps = conn.prepareStatement(
+                "SELECT COUNT(*) FROM T WHERE ID >= ? AND ID < ?");
+
+            ps.setInt(1, low);
+            ps.setInt(2, high);
+
+            ResultSet rs = ps.executeQuery();
+
+            rs.next();
+
+            int idCount = rs.getInt(1);
+
+            ps = conn.prepareStatement(
+                "SELECT COUNT(*) FROM T WHERE K BETWEEN ? AND ?");
+
+            ps.setInt(1, low / 10);
+            ps.setInt(2, high / 10 - 1);
+
+            rs = ps.executeQuery();
+
+            rs.next();
+
+            int keyCount = rs.getInt(1);
+
+            if (idCount != count || keyCount != count) {
+                throw new RuntimeException("thread " + threadNo
+                                           + " expected " + count
+                                           + " found " + idCount + " "
+                                           + keyCount);
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Random;
+
+import org.hsqldb.Session;
+import org.hsqldb.Table;
+import org.hsqldb.index.Index;
+import org.hsqldb.jdbc.JDBCConnection;
+import org.hsqldb.lib.StopWatch;
+import org.hsqldb.persist.PersistentStore;
+
+/**
+ * Compares the search cost estimates of B+ tree indexes with the exact
+ * average count of rows per distinct value.<p>
+ *
+ * A MEMORY and a CACHED table have indexed columns with a few, some and
+ * many distinct values, and a two column index. The estimate for each
+ * column prefix must be within a factor of two of the exact value. The
+ * time of the estimates is reported.<p>
+ *
+ * Usage: java org.hsqldb.test.TestIndexCost [rows [path]]
+ */
+public class TestIndexCost {
+
+    int rowCount;
+
+    public TestIndexCost(int rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int rows = args.length > 0 ? Integer.parseInt(args[0])
+                                   : 200000;
+        String path = args.length > 1 ? args[1]
+                                      : "/hsql/testindexcost/test";
+
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+
+        TestIndexCost test = new TestIndexCost(rows);
+
+        test.run("MEMORY", "jdbc:hsqldb:mem:cost");
+        test.run("CACHED",
+                 "jdbc:hsqldb:file:" + path
+                 + ";hsqldb.cache_rows=10000;hsqldb.cache_size=10000");
+    }
+
+    void run(String type, String url) throws Exception {
+
+        Connection conn   = DriverManager.getConnection(url, "SA", "");
+        Statement  st     = conn.createStatement();
+        Random     random = new Random(rowCount);
+
+        st.execute("DROP TABLE T IF EXISTS");
+        st.execute("CREATE " + type + " TABLE T (ID INT PRIMARY KEY, "
+                   + "A INT, B INT, C INT)");
+        st.execute("CREATE INDEX IA ON T(A)");
+        st.execute("CREATE INDEX IB ON T(B)");
+        st.execute("CREATE INDEX IC ON T(C)");
+        st.execute("CREATE INDEX IAB ON T(A, B)");
+
+        PreparedStatement ps =
+            conn.prepareStatement("INSERT INTO T VALUES (?, ?, ?, ?)");
+
+        for (int i = 0; i < rowCount; i++) {
+            ps.setInt(1, i);
+            ps.setInt(2, random.nextInt(7));
+            ps.setInt(3, random.nextInt(2500));
+            ps.setInt(4, random.nextInt(rowCount / 4));
+            ps.executeUpdate();
+        }
+
+        Session session = (Session) ((JDBCConnection) conn).getSession();
+        Table table = session.database.schemaManager.getUserTable(session,
+            "T", "PUBLIC");
+        PersistentStore store = table.getRowStore(session);
+        Index[]         list  = table.getIndexList();
+        StopWatch       sw    = new StopWatch();
+
+        for (int i = 0; i < list.length; i++) {
+            String   name = list[i].getName().name;
+            double[] cost;
+
+            if (!name.startsWith("I")) {
+                continue;
+            }
+
+            sw.zero();
+
+            cost = list[i].searchCost(session, store);
+
+            long time = sw.elapsedTime();
+
+            for (int j = 0; j < cost.length; j++) {
+                String columns = name.substring(1, j + 2);
+                double exact   = exactCost(conn, columns);
+
+                System.out.println(type + " " + name + " " + columns
+                                   + " estimate " + (long) cost[j]
+                                   + " exact " + (long) exact + " time "
+                                   + time + " ms");
+
+                if (cost[j] > exact * 2 || cost[j] < exact / 2) {
+                    throw new RuntimeException(name + " " + columns
+                                               + " estimate " + cost[j]
+                                               + " exact " + exact);
+                }
+            }
+        }
+
+        st.execute("SHUTDOWN");
+    }
+
+    /**
+     * Returns the average count of rows per distinct value of the columns,
+     * which are given as a string of single letter column names
+     */
+    double exactCost(Connection conn, String columns) throws Exception {
+
+        StringBuffer sb = new StringBuffer();
+
+        for (int i = 0; i < columns.length(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+
+            sb.append(columns.charAt(i));
+        }
+
+        Statement st = conn.createStatement();
+        ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM (SELECT "
+                                       + sb + " FROM T GROUP BY " + sb
+                                       + ")");
+
+        rs.next();
+
+        double distinct = rs.getInt(1);
+
+        return Math.max(rowCount / distinct, 2);
+    }
+}
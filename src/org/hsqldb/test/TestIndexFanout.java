@@ -0,0 +1,230 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Random;
+
+import org.hsqldb.Session;
+import org.hsqldb.Table;
+import org.hsqldb.index.Index;
+import org.hsqldb.index.IndexBPlus;
+import org.hsqldb.jdbc.JDBCConnection;
+import org.hsqldb.lib.StopWatch;
+import org.hsqldb.persist.PersistentStore;
+
+/**
+ * Compares B+ tree indexes of different fanout on a memory table.<p>
+ *
+ * For each fanout, a table with a non-unique index is populated with rows
+ * in random order. The tree depth, the insert time and the average time
+ * of an indexed point lookup are reported, then half the rows are deleted
+ * and the index structure is checked.<p>
+ *
+ * Finally a cached table is created in a file database with a non-default
+ * index fanout. The database is reopened and the fanout and structure of
+ * each index are checked.<p>
+ *
+ * Usage: java org.hsqldb.test.TestIndexFanout [rows [lookups [path]]]
+ */
+public class TestIndexFanout {
+
+    static final int[] fanouts = new int[] {
+        3, 16, 64, 256, 1024
+    };
+    int                rowCount;
+    int                lookupCount;
+
+    public TestIndexFanout(int rowCount, int lookupCount) {
+        this.rowCount    = rowCount;
+        this.lookupCount = lookupCount;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int rows    = args.length > 0 ? Integer.parseInt(args[0])
+                                      : 100000;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1])
+                                      : 20000;
+        String path = args.length > 2 ? args[2]
+                                      : "/hsql/testindexfanout/test";
+
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+
+        TestIndexFanout test = new TestIndexFanout(rows, lookups);
+
+        for (int i = 0; i < fanouts.length; i++) {
+            test.run(fanouts[i]);
+        }
+
+        test.runReopen(path);
+    }
+
+    void run(int fanout) throws Exception {
+
+        Connection conn =
+            DriverManager.getConnection("jdbc:hsqldb:mem:fanout" + fanout,
+                                        "SA", "");
+        Statement st     = conn.createStatement();
+        Random    random = new Random(fanout);
+
+        st.execute("CREATE MEMORY TABLE T (ID INT, K INT)");
+        st.execute("CREATE INDEX IK ON T(K) WITH (FANOUT " + fanout + ")");
+
+        PreparedStatement ps =
+            conn.prepareStatement("INSERT INTO T VALUES (?, ?)");
+        StopWatch sw = new StopWatch();
+
+        for (int i = 0; i < rowCount; i++) {
+            ps.setInt(1, i);
+            ps.setInt(2, random.nextInt(rowCount));
+            ps.executeUpdate();
+        }
+
+        long insertTime = sw.elapsedTime();
+
+        ps = conn.prepareStatement("SELECT COUNT(*) FROM T WHERE K = ?");
+
+        sw.zero();
+
+        for (int i = 0; i < lookupCount; i++) {
+            ps.setInt(1, random.nextInt(rowCount));
+
+            ResultSet rs = ps.executeQuery();
+
+            rs.next();
+            rs.close();
+        }
+
+        long lookupTime = sw.elapsedTime();
+
+        Session session = (Session) ((JDBCConnection) conn).getSession();
+        Table table = session.database.schemaManager.getUserTable(session,
+            "T", "PUBLIC");
+        PersistentStore store = table.getRowStore(session);
+        IndexBPlus      index = null;
+        Index[]         list  = table.getIndexList();
+
+        for (int i = 0; i < list.length; i++) {
+            if (list[i].getName().name.equals("IK")) {
+                index = (IndexBPlus) list[i];
+            }
+        }
+
+        int depth = index.getDepth(store);
+
+        st.execute("DELETE FROM T WHERE MOD(ID, 2) = 0");
+        index.checkIndex(store);
+        System.out.println("fanout " + fanout + " rows " + rowCount
+                           + " depth " + depth + " insert " + insertTime
+                           + " ms lookup "
+                           + (lookupTime * 1000 / lookupCount)
+                           + " us/op");
+        st.execute("SHUTDOWN");
+        conn.close();
+    }
+
+    void runReopen(String path) throws Exception {
+
+        TestUtil.deleteDatabase(path);
+
+        Connection conn = DriverManager.getConnection(
+            "jdbc:hsqldb:file:" + path + ";hsqldb.index_fanout=256", "SA",
+            "");
+        Statement st     = conn.createStatement();
+        Random    random = new Random(0);
+
+        st.execute("CREATE CACHED TABLE T (ID INT PRIMARY KEY, K INT)");
+        st.execute("CREATE INDEX IK ON T(K)");
+        st.execute("CREATE INDEX IJ ON T(K, ID) WITH (FANOUT 16)");
+
+        PreparedStatement ps =
+            conn.prepareStatement("INSERT INTO T VALUES (?, ?)");
+
+        for (int i = 0; i < rowCount; i++) {
+            ps.setInt(1, i);
+            ps.setInt(2, random.nextInt(rowCount));
+            ps.executeUpdate();
+        }
+
+        st.execute("SHUTDOWN");
+        conn.close();
+
+        conn = DriverManager.getConnection("jdbc:hsqldb:file:" + path, "SA",
+                                           "");
+        st = conn.createStatement();
+
+        Session session = (Session) ((JDBCConnection) conn).getSession();
+        Table table = session.database.schemaManager.getUserTable(session,
+            "T", "PUBLIC");
+        PersistentStore store = table.getRowStore(session);
+        Index[]         list  = table.getIndexList();
+
+        if (session.database.logger.getIndexFanout() != 256) {
+            throw new RuntimeException("database fanout "
+                                       + session.database.logger
+                                           .getIndexFanout());
+        }
+
+        for (int i = 0; i < list.length; i++) {
+            int expected = list[i].getName().name.equals("IJ") ? 16
+                                                                : 256;
+
+            if (list[i].getFanout() != expected) {
+                throw new RuntimeException(list[i].getName().name
+                                           + " fanout "
+                                           + list[i].getFanout());
+            }
+
+            ((IndexBPlus) list[i]).checkIndex(store);
+        }
+
+        ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM T");
+
+        rs.next();
+
+        if (rs.getInt(1) != rowCount) {
+            throw new RuntimeException("rows " + rs.getInt(1));
+        }
+
+        rs.close();
+        System.out.println("reopen fanout 256 rows " + rowCount
+                           + " indexes " + list.length);
+        st.execute("SHUTDOWN");
+        conn.close();
+        TestUtil.deleteDatabase(path);
+    }
+}
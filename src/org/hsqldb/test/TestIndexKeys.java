@@ -0,0 +1,199 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Random;
+
+import org.hsqldb.Session;
+import org.hsqldb.Table;
+import org.hsqldb.index.Index;
+import org.hsqldb.jdbc.JDBCConnection;
+import org.hsqldb.lib.StopWatch;
+import org.hsqldb.persist.PersistentStore;
+
+/**
+ * Checks the searches of multi-column B+ tree indexes, which compare with
+ * the key values kept in the interior nodes.<p>
+ *
+ * A MEMORY and a CACHED table have a two column primary key like that of
+ * PARTSUPP, and a non-unique index with a descending column that has
+ * nulls. The key columns are updated, so the interior nodes change, and
+ * each row is looked up with both indexes. The indexes, including the key
+ * values of the interior nodes, are checked after each change. The time of
+ * the lookups is reported.<p>
+ *
+ * Usage: java org.hsqldb.test.TestIndexKeys [rows [path]]
+ */
+public class TestIndexKeys {
+
+    int   rowCount;
+    int[] partKeys;
+    int[] suppKeys;
+
+    public TestIndexKeys(int rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int rows = args.length > 0 ? Integer.parseInt(args[0])
+                                   : 50000;
+        String path = args.length > 1 ? args[1]
+                                      : "/hsql/testindexkeys/test";
+
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+
+        TestIndexKeys test = new TestIndexKeys(rows);
+
+        test.run("MEMORY", "jdbc:hsqldb:mem:keys");
+        test.run("CACHED",
+                 "jdbc:hsqldb:file:" + path
+                 + ";hsqldb.cache_rows=2000;hsqldb.cache_size=2000");
+    }
+
+    void run(String type, String url) throws Exception {
+
+        Connection conn   = DriverManager.getConnection(url, "SA", "");
+        Statement  st     = conn.createStatement();
+        Random     random = new Random(rowCount);
+
+        st.execute("DROP TABLE T IF EXISTS");
+        st.execute("CREATE " + type + " TABLE T (PARTKEY INT, SUPPKEY INT, "
+                   + "QTY INT, PRIMARY KEY (PARTKEY, SUPPKEY))");
+        st.execute("CREATE INDEX IQ ON T(QTY DESC, SUPPKEY) WITH (FANOUT 4)");
+
+        PreparedStatement ps =
+            conn.prepareStatement("INSERT INTO T VALUES (?, ?, ?)");
+
+        partKeys = new int[rowCount];
+        suppKeys = new int[rowCount];
+
+        for (int i = 0; i < rowCount; i++) {
+            partKeys[i] = i / 4;
+            suppKeys[i] = random.nextInt(1000) * 4 + i % 4;
+
+            ps.setInt(1, partKeys[i]);
+            ps.setInt(2, suppKeys[i]);
+
+            if (i % 10 == 0) {
+                ps.setNull(3, java.sql.Types.INTEGER);
+            } else {
+                ps.setInt(3, i);
+            }
+
+            ps.executeUpdate();
+        }
+
+        check(conn, type, "insert");
+
+        ps = conn.prepareStatement(
+            "UPDATE T SET SUPPKEY = ? WHERE PARTKEY = ? AND SUPPKEY = ?");
+
+        for (int i = 0; i < rowCount; i += 3) {
+            int newKey = suppKeys[i] + 4000 * (1 + random.nextInt(10));
+
+            ps.setInt(1, newKey);
+            ps.setInt(2, partKeys[i]);
+            ps.setInt(3, suppKeys[i]);
+
+            if (ps.executeUpdate() != 1) {
+                throw new RuntimeException("update " + i);
+            }
+
+            suppKeys[i] = newKey;
+        }
+
+        check(conn, type, "update");
+        st.execute("SHUTDOWN");
+    }
+
+    void check(Connection conn, String type,
+               String phase) throws Exception {
+
+        Session session = (Session) ((JDBCConnection) conn).getSession();
+        Table table = session.database.schemaManager.getUserTable(session,
+            "T", "PUBLIC");
+        PersistentStore store = table.getRowStore(session);
+        Index[]         list  = table.getIndexList();
+
+        for (int i = 0; i < list.length; i++) {
+            list[i].checkIndex(store);
+        }
+
+        PreparedStatement byKey = conn.prepareStatement(
+            "SELECT QTY FROM T WHERE PARTKEY = ? AND SUPPKEY = ?");
+        PreparedStatement byQty = conn.prepareStatement(
+            "SELECT COUNT(*) FROM T WHERE QTY = ? AND SUPPKEY = ?");
+        StopWatch sw = new StopWatch();
+
+        for (int i = 0; i < rowCount; i++) {
+            byKey.setInt(1, partKeys[i]);
+            byKey.setInt(2, suppKeys[i]);
+
+            ResultSet rs = byKey.executeQuery();
+
+            if (!rs.next()) {
+                throw new RuntimeException(phase + " no row " + i);
+            }
+
+            int qty = rs.getInt(1);
+
+            if (rs.wasNull() ? i % 10 != 0
+                             : qty != i) {
+                throw new RuntimeException(phase + " wrong row " + i);
+            }
+
+            if (i % 10 == 0) {
+                continue;
+            }
+
+            byQty.setInt(1, qty);
+            byQty.setInt(2, suppKeys[i]);
+
+            rs = byQty.executeQuery();
+
+            rs.next();
+
+            if (rs.getInt(1) != 1) {
+                throw new RuntimeException(phase + " not found " + i);
+            }
+        }
+
+        System.out.println(type + " " + phase + " rows " + rowCount
+                           + " lookups " + sw.elapsedTime() + " ms");
+    }
+}
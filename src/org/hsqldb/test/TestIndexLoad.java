@@ -0,0 +1,167 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+
+import org.hsqldb.Session;
+import org.hsqldb.Table;
+import org.hsqldb.index.Index;
+import org.hsqldb.jdbc.JDBCConnection;
+import org.hsqldb.lib.StopWatch;
+import org.hsqldb.persist.PersistentStore;
+
+/**
+ * Checks the indexes that are built from the sorted rows of a table.<p>
+ *
+ * Rows are inserted in random order into a MEMORY and a CACHED table
+ * without indexes. A primary key, a non-unique index and a unique index are
+ * then added, and a unique index on a column with duplicate values must
+ * fail. The indexes are checked before and after further deletes and
+ * inserts. The time to add the primary key is reported.<p>
+ *
+ * Usage: java org.hsqldb.test.TestIndexLoad [rows [path]]
+ */
+public class TestIndexLoad {
+
+    int rowCount;
+
+    public TestIndexLoad(int rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int rows = args.length > 0 ? Integer.parseInt(args[0])
+                                   : 100000;
+        String path = args.length > 1 ? args[1]
+                                      : "/hsql/testindexload/test";
+
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+
+        TestIndexLoad test = new TestIndexLoad(rows);
+
+        test.run("MEMORY", "jdbc:hsqldb:mem:load");
+        test.run("CACHED",
+                 "jdbc:hsqldb:file:" + path
+                 + ";hsqldb.cache_rows=1000;hsqldb.cache_size=1000");
+    }
+
+    void run(String type, String url) throws Exception {
+
+        Connection conn   = DriverManager.getConnection(url, "SA", "");
+        Statement  st     = conn.createStatement();
+        Random     random = new Random(rowCount);
+
+        st.execute("DROP TABLE T IF EXISTS");
+        st.execute("CREATE " + type
+                   + " TABLE T (ID INT, K INT, V VARCHAR(20))");
+
+        PreparedStatement ps =
+            conn.prepareStatement("INSERT INTO T VALUES (?, ?, ?)");
+        int[] ids = new int[rowCount];
+
+        for (int i = 0; i < rowCount; i++) {
+            int j = random.nextInt(i + 1);
+
+            ids[i] = ids[j];
+            ids[j] = i;
+        }
+
+        for (int i = 0; i < rowCount; i++) {
+            ps.setInt(1, ids[i]);
+            ps.setInt(2, random.nextInt(100));
+            ps.setString(3, random.nextInt(4) == 0 ? null
+                                                   : "v" + i);
+            ps.executeUpdate();
+        }
+
+        StopWatch sw = new StopWatch();
+
+        st.execute("ALTER TABLE T ADD PRIMARY KEY (ID)");
+
+        long pkTime = sw.elapsedTime();
+
+        st.execute("CREATE INDEX IK ON T(K DESC, V) WITH (FANOUT 16)");
+        st.execute("CREATE UNIQUE INDEX IV ON T(V)");
+
+        try {
+            st.execute("CREATE UNIQUE INDEX IKU ON T(K)");
+
+            throw new RuntimeException("duplicate keys in unique index");
+        } catch (SQLException e) {}
+
+        check(conn, rowCount);
+        st.execute("DELETE FROM T WHERE MOD(ID, 3) = 0");
+        ps.setString(3, null);
+
+        for (int i = rowCount; i < rowCount + 1000; i++) {
+            ps.setInt(1, i);
+            ps.setInt(2, random.nextInt(100));
+            ps.executeUpdate();
+        }
+
+        check(conn, rowCount - (rowCount + 2) / 3 + 1000);
+        System.out.println(type + " rows " + rowCount + " primary key "
+                           + pkTime + " ms");
+        st.execute("SHUTDOWN");
+    }
+
+    void check(Connection conn, int count) throws Exception {
+
+        Session session = (Session) ((JDBCConnection) conn).getSession();
+        Table table = session.database.schemaManager.getUserTable(session,
+            "T", "PUBLIC");
+        PersistentStore store = table.getRowStore(session);
+        Index[]         list  = table.getIndexList();
+
+        for (int i = 0; i < list.length; i++) {
+            list[i].checkIndex(store);
+        }
+
+        Statement st = conn.createStatement();
+        ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM T WHERE K >= 0");
+
+        rs.next();
+
+        if (rs.getInt(1) != count) {
+            throw new RuntimeException("expected " + count + " found "
+                                       + rs.getInt(1));
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package org.hsqldb.test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Random;
+
+import org.hsqldb.Session;
+import org.hsqldb.Table;
+import org.hsqldb.index.Index;
+import org.hsqldb.index.IndexBPlusLong;
+import org.hsqldb.jdbc.JDBCConnection;
+import org.hsqldb.lib.StopWatch;
+import org.hsqldb.persist.PersistentStore;
+
+/**
+ * Checks the B+ tree indexes on single integral columns, which compare the
+ * keys of interior nodes as longs.<p>
+ *
+ * A MEMORY and a CACHED table have an INTEGER primary key, an index on a
+ * BIGINT column with negative values and nulls, and an index on a SMALLINT
+ * column. The indexes must be instances of IndexBPlusLong. Point and range
+ * queries, including comparisons with DECIMAL and DOUBLE literals and with
+ * nulls, are checked against counts computed from the inserted values. The
+ * time of the queries is reported.<p>
+ *
+ * Usage: java org.hsqldb.test.TestIndexLong [rows [path]]
+ */
+public class TestIndexLong {
+
+    int    rowCount;
+    long[] bigValues;
+
+    public TestIndexLong(int rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int rows = args.length > 0 ? Integer.parseInt(args[0])
+                                   : 50000;
+        String path = args.length > 1 ? args[1]
+                                      : "/hsql/testindexlong/test";
+
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+
+        TestIndexLong test = new TestIndexLong(rows);
+
+        test.run("MEMORY", "jdbc:hsqldb:mem:long");
+        test.run("CACHED",
+                 "jdbc:hsqldb:file:" + path
+                 + ";hsqldb.cache_rows=2000;hsqldb.cache_size=2000");
+    }
+
+    void run(String type, String url) throws Exception {
+
+        Connection conn   = DriverManager.getConnection(url, "SA", "");
+        Statement  st     = conn.createStatement();
+        Random     random = new Random(rowCount);
+
+        st.execute("DROP TABLE T IF EXISTS");
+        st.execute("CREATE " + type + " TABLE T (ID INT PRIMARY KEY, "
+                   + "B BIGINT, S SMALLINT)");
+        st.execute("CREATE INDEX IB ON T(B) WITH (FANOUT 8)");
+        st.execute("CREATE INDEX ISM ON T(S)");
+
+        PreparedStatement ps =
+            conn.prepareStatement("INSERT INTO T VALUES (?, ?, ?)");
+
+        bigValues = new long[rowCount];
+
+        for (int i = 0; i < rowCount; i++) {
+            bigValues[i] = (random.nextLong() % 1000) * 10000000000L;
+
+            ps.setInt(1, i * 2 - rowCount);
+
+            if (i % 50 == 0) {
+                ps.setNull(2, java.sql.Types.BIGINT);
+            } else {
+                ps.setLong(2, bigValues[i]);
+            }
+
+            ps.setShort(3, (short) (i % 300));
+            ps.executeUpdate();
+        }
+
+        Session session = (Session) ((JDBCConnection) conn).getSession();
+        Table table = session.database.schemaManager.getUserTable(session,
+            "T", "PUBLIC");
+        PersistentStore store = table.getRowStore(session);
+        Index[]         list  = table.getIndexList();
+
+        for (int i = 0; i < list.length; i++) {
+            if (!(list[i] instanceof IndexBPlusLong)) {
+                throw new RuntimeException("not a long index "
+                                           + list[i].getName().name);
+            }
+        }
+
+        StopWatch sw = new StopWatch();
+
+        for (int i = 0; i < 50; i++) {
+            int  id  = random.nextInt(rowCount * 2) - rowCount;
+            long big = (random.nextLong() % 1000) * 10000000000L;
+
+            checkCount(conn, "ID = ?", Integer.valueOf(id),
+                       id % 2 == 0 ? 1
+                                   : 0);
+            checkCount(conn, "ID >= ?", Integer.valueOf(id),
+                       (rowCount - id) / 2);
+            checkCount(conn, "ID > " + BigDecimal.valueOf(id * 10 + 5, 1),
+                       null, (rowCount - id - 1) / 2);
+            checkCount(conn, "ID < " + (id - 0.5) + "E0", null,
+                       (id + rowCount + 1) / 2);
+            checkCount(conn, "B = ?", Long.valueOf(big), countBig(big, 0));
+            checkCount(conn, "B > ?", Long.valueOf(big), countBig(big, 1));
+            checkCount(conn, "B <= ?", Long.valueOf(big), countBig(big, -1));
+            checkCount(conn, "S BETWEEN ? AND 299",
+                       Integer.valueOf(i % 300), countSmall(i % 300));
+        }
+
+        checkCount(conn, "B IS NULL", null, (rowCount + 49) / 50);
+        checkCount(conn, "B IS NOT NULL", null,
+                   rowCount - (rowCount + 49) / 50);
+        System.out.println(type + " rows " + rowCount + " queries "
+                           + sw.elapsedTime() + " ms");
+        st.execute("DELETE FROM T WHERE MOD(ID, 3) = 0");
+
+        for (int i = 0; i < list.length; i++) {
+            list[i].checkIndex(store);
+        }
+
+        st.execute("SHUTDOWN");
+    }
+
+    /**
+     * Returns the count of the non-null B values that are equal to, after
+     * or before the value when compare is 0, 1 or -1
+     */
+    int countBig(long value, int compare) {
+
+        int count = 0;
+
+        for (int i = 0; i < rowCount; i++) {
+            if (i % 50 == 0) {
+                continue;
+            }
+
+            long b = bigValues[i];
+
+            if (compare == 0 ? b == value
+                             : compare > 0 ? b > value
+                                           : b <= value) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    int countSmall(int low) {
+
+        int count = 0;
+
+        for (int i = 0; i < rowCount; i++) {
+            if (i % 300 >= low) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    void checkCount(Connection conn, String condition, Object value,
+                    int expected) throws Exception {
+
+        PreparedStatement ps = conn.prepareStatement(
+            "SELECT COUNT(*) FROM T WHERE " + condition);
+
+        if (value != null) {
+            ps.setObject(1, value);
+        }
+
+        ResultSet rs = ps.executeQuery();
+
+        rs.next();
+
+        if (rs.getInt(1) != expected) {
+            throw new RuntimeException(condition + " " + value
+                                       + " expected " + expected
+                                       + " found " + rs.getInt(1));
+        }
+    }
+}
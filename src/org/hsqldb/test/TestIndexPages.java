@@ -0,0 +1,165 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Random;
+
+import org.hsqldb.Session;
+import org.hsqldb.Table;
+import org.hsqldb.index.Index;
+import org.hsqldb.jdbc.JDBCConnection;
+import org.hsqldb.persist.PersistentStore;
+
+/**
+ * Checks the B+ tree index pages of a CACHED table.<p>
+ *
+ * The cache is much smaller than the table, so the index pages are written
+ * to the .data file and read back during the test. The indexes are checked
+ * and the row counts are compared after inserts, checkpoint, reopening the
+ * database, deletes, defrag and compact.<p>
+ *
+ * Usage: java org.hsqldb.test.TestIndexPages [rows [path]]
+ */
+public class TestIndexPages {
+
+    String url;
+    int    rowCount;
+
+    public TestIndexPages(String path, int rowCount) {
+
+        this.url = "jdbc:hsqldb:file:" + path
+                   + ";hsqldb.cache_rows=200;hsqldb.cache_size=100";
+        this.rowCount = rowCount;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int rows = args.length > 0 ? Integer.parseInt(args[0])
+                                   : 20000;
+        String path = args.length > 1 ? args[1]
+                                      : "/hsql/testindexpages/test";
+
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+
+        TestIndexPages test = new TestIndexPages(path, rows);
+
+        test.run();
+    }
+
+    void run() throws Exception {
+
+        Connection conn   = DriverManager.getConnection(url, "SA", "");
+        Statement  st     = conn.createStatement();
+        Random     random = new Random(rowCount);
+
+        st.execute("DROP TABLE T IF EXISTS");
+        st.execute("CREATE CACHED TABLE T (ID INT PRIMARY KEY, K INT, "
+                   + "V VARCHAR(20))");
+        st.execute("CREATE INDEX IK ON T(K) WITH (FANOUT 8)");
+
+        PreparedStatement ps =
+            conn.prepareStatement("INSERT INTO T VALUES (?, ?, ?)");
+
+        for (int i = 0; i < rowCount; i++) {
+            ps.setInt(1, i);
+            ps.setInt(2, random.nextInt(rowCount / 10));
+            ps.setString(3, "v" + i);
+            ps.executeUpdate();
+        }
+
+        int count = rowCount;
+
+        check(conn, count, "insert");
+        st.execute("CHECKPOINT");
+        check(conn, count, "checkpoint");
+        st.execute("SHUTDOWN");
+
+        conn = DriverManager.getConnection(url, "SA", "");
+        st   = conn.createStatement();
+
+        check(conn, count, "reopen");
+        st.execute("DELETE FROM T WHERE MOD(ID, 3) = 0");
+
+        count -= (rowCount + 2) / 3;
+
+        check(conn, count, "delete");
+        st.execute("CHECKPOINT DEFRAG");
+        check(conn, count, "defrag");
+        st.execute("UPDATE T SET K = K + 1 WHERE MOD(ID, 5) = 0");
+        check(conn, count, "update");
+        st.execute("SHUTDOWN COMPACT");
+
+        conn = DriverManager.getConnection(url, "SA", "");
+
+        check(conn, count, "compact");
+        conn.createStatement().execute("SHUTDOWN");
+    }
+
+    void check(Connection conn, int count, String stage) throws Exception {
+
+        Session session = (Session) ((JDBCConnection) conn).getSession();
+        Table table = session.database.schemaManager.getUserTable(session,
+            "T", "PUBLIC");
+        PersistentStore store = table.getRowStore(session);
+        Index[]         list  = table.getIndexList();
+
+        for (int i = 0; i < list.length; i++) {
+            list[i].checkIndex(store);
+        }
+
+        Statement st = conn.createStatement();
+        ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM T WHERE K >= 0");
+
+        rs.next();
+
+        int keyCount = rs.getInt(1);
+
+        rs = st.executeQuery("SELECT COUNT(*) FROM T WHERE ID >= 0");
+
+        rs.next();
+
+        int idCount = rs.getInt(1);
+
+        if (keyCount != count || idCount != count) {
+            throw new RuntimeException(stage + " expected " + count
+                                       + " found " + keyCount + " "
+                                       + idCount);
+        }
+
+        System.out.println(stage + " rows " + count);
+    }
+}
@@ -0,0 +1,189 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.test;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Random;
+
+import org.hsqldb.lib.StopWatch;
+
+/**
+ * Checks range scans of B+ tree indexes that read the leaf chain in
+ * batches.<p>
+ *
+ * A MEMORY and a CACHED table have a date column with an index of a small
+ * fanout. Ranges of dates are read in ascending and descending order and
+ * the order and count of the rows are checked. The rows that another session
+ * has inserted but not committed must not be returned. The time of the range
+ * scans is reported.<p>
+ *
+ * Usage: java org.hsqldb.test.TestIndexScan [rows [path]]
+ */
+public class TestIndexScan {
+
+    static final long day = 24L * 60 * 60 * 1000;
+    int               rowCount;
+    int[]             dayCounts;
+
+    public TestIndexScan(int rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int rows = args.length > 0 ? Integer.parseInt(args[0])
+                                   : 100000;
+        String path = args.length > 1 ? args[1]
+                                      : "/hsql/testindexscan/test";
+
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+
+        TestIndexScan test = new TestIndexScan(rows);
+
+        test.run("MEMORY", "jdbc:hsqldb:mem:scan");
+        test.run("CACHED",
+                 "jdbc:hsqldb:file:" + path
+                 + ";hsqldb.cache_rows=2000;hsqldb.cache_size=2000");
+    }
+
+    void run(String type, String url) throws Exception {
+
+        Connection conn   = DriverManager.getConnection(url, "SA", "");
+        Statement  st     = conn.createStatement();
+        Random     random = new Random(rowCount);
+
+        st.execute("SET DATABASE TRANSACTION CONTROL MVCC");
+        st.execute("DROP TABLE T IF EXISTS");
+        st.execute("CREATE " + type
+                   + " TABLE T (ID INT PRIMARY KEY, D DATE, V INT)");
+        st.execute("CREATE INDEX ID ON T(D) WITH (FANOUT 8)");
+
+        PreparedStatement ps =
+            conn.prepareStatement("INSERT INTO T VALUES (?, ?, ?)");
+
+        dayCounts = new int[1000];
+
+        for (int i = 0; i < rowCount; i++) {
+            int d = random.nextInt(dayCounts.length);
+
+            dayCounts[d]++;
+
+            ps.setInt(1, i);
+            ps.setDate(2, new Date(d * day));
+            ps.setInt(3, i);
+            ps.executeUpdate();
+        }
+
+        // uncommitted rows of another session
+        Connection other = DriverManager.getConnection(url, "SA", "");
+
+        other.setAutoCommit(false);
+
+        ps = other.prepareStatement("INSERT INTO T VALUES (?, ?, ?)");
+
+        for (int i = 0; i < 1000; i++) {
+            ps.setInt(1, rowCount + i);
+            ps.setDate(2, new Date(i * day));
+            ps.setInt(3, -1);
+            ps.executeUpdate();
+        }
+
+        StopWatch sw = new StopWatch();
+
+        for (int i = 0; i < 100; i++) {
+            int low  = random.nextInt(dayCounts.length);
+            int high = low + random.nextInt(dayCounts.length - low);
+
+            checkRange(conn, low, high, false);
+            checkRange(conn, low, high, true);
+        }
+
+        System.out.println(type + " rows " + rowCount + " range scans "
+                           + sw.elapsedTime() + " ms");
+        other.rollback();
+        other.close();
+        st.execute("SHUTDOWN");
+    }
+
+    void checkRange(Connection conn, int low, int high,
+                    boolean reversed) throws Exception {
+
+        PreparedStatement ps = conn.prepareStatement(
+            "SELECT D, V FROM T WHERE D BETWEEN ? AND ? ORDER BY D"
+            + (reversed ? " DESC"
+                        : ""));
+
+        ps.setDate(1, new Date(low * day));
+        ps.setDate(2, new Date(high * day));
+
+        ResultSet rs       = ps.executeQuery();
+        int       count    = 0;
+        long      lastDate = reversed ? Long.MAX_VALUE
+                                      : Long.MIN_VALUE;
+
+        while (rs.next()) {
+            long date = rs.getDate(1).getTime();
+
+            if (reversed ? date > lastDate
+                         : date < lastDate) {
+                throw new RuntimeException("wrong order " + low + " "
+                                           + high);
+            }
+
+            if (rs.getInt(2) < 0) {
+                throw new RuntimeException("uncommitted row " + low + " "
+                                           + high);
+            }
+
+            lastDate = date;
+
+            count++;
+        }
+
+        int expected = 0;
+
+        for (int i = low; i <= high; i++) {
+            expected += dayCounts[i];
+        }
+
+        if (count != expected) {
+            throw new RuntimeException("range " + low + " " + high
+                                       + " expected " + expected
+                                       + " found " + count);
+        }
+    }
+}
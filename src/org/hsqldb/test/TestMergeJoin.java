@@ -0,0 +1,227 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package org.hsqldb.test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.hsqldb.lib.StopWatch;
+
+/**
+ * Tests merge joins between tables that are read in the order of the join
+ * columns.<p>
+ *
+ * Tables of orders, order lines and parts are joined on the order key, with
+ * duplicate keys on one or both sides, inner and left outer joins and a
+ * range condition. The plan of each query must use a merge join and the
+ * results must be the same as those of the query with an expression in the
+ * join condition, which uses the index without a merge join. The tests run
+ * for MEMORY and CACHED tables.<p>
+ *
+ * Usage: java org.hsqldb.test.TestMergeJoin [rows [path]]
+ */
+public class TestMergeJoin {
+
+    static final String[][] queries = {
+        {
+            "SELECT COUNT(*), SUM(L.QTY), SUM(O.TOTAL) FROM L JOIN O "
+            + "ON L.ORDERKEY = O.ORDERKEY",
+            "SELECT COUNT(*), SUM(L.QTY), SUM(O.TOTAL) FROM L JOIN O "
+            + "ON O.ORDERKEY = L.ORDERKEY + 0"
+        }, {
+            "SELECT COUNT(*), SUM(L.QTY), SUM(O.TOTAL) FROM O JOIN L "
+            + "ON O.ORDERKEY = L.ORDERKEY",
+            "SELECT COUNT(*), SUM(L.QTY), SUM(O.TOTAL) FROM O JOIN L "
+            + "ON L.ORDERKEY = O.ORDERKEY + 0"
+        }, {
+            "SELECT COUNT(*), SUM(L.QTY), SUM(P.V) FROM L JOIN P "
+            + "ON L.ORDERKEY = P.K",
+            "SELECT COUNT(*), SUM(L.QTY), SUM(P.V) FROM L JOIN P "
+            + "ON P.K = L.ORDERKEY + 0"
+        }, {
+            "SELECT COUNT(*), SUM(O.TOTAL), COUNT(L.QTY) FROM O LEFT JOIN L "
+            + "ON O.ORDERKEY = L.ORDERKEY AND L.QTY > 5",
+            "SELECT COUNT(*), SUM(O.TOTAL), COUNT(L.QTY) FROM O LEFT JOIN L "
+            + "ON L.ORDERKEY = O.ORDERKEY + 0 AND L.QTY > 5"
+        }, {
+            "SELECT COUNT(*), SUM(O.TOTAL), SUM(L.QTY) FROM O JOIN L "
+            + "ON O.ORDERKEY = L.ORDERKEY WHERE O.ORDERKEY BETWEEN ? AND ?",
+            "SELECT COUNT(*), SUM(O.TOTAL), SUM(L.QTY) FROM O JOIN L "
+            + "ON L.ORDERKEY = O.ORDERKEY + 0 WHERE O.ORDERKEY BETWEEN ? AND ?"
+        }, {
+            "SELECT COUNT(*), SUM(L.QTY), SUM(P.V) FROM O JOIN L "
+            + "ON O.ORDERKEY = L.ORDERKEY JOIN P ON P.K = L.ORDERKEY",
+            "SELECT COUNT(*), SUM(L.QTY), SUM(P.V) FROM O JOIN L "
+            + "ON L.ORDERKEY = O.ORDERKEY + 0 JOIN P ON P.K = L.ORDERKEY + 0"
+        },
+    };
+    int rowCount;
+
+    public TestMergeJoin(int rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int rows = args.length > 0 ? Integer.parseInt(args[0])
+                                   : 20000;
+        String path = args.length > 1 ? args[1]
+                                      : "/hsql/testmergejoin/test";
+
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+
+        TestMergeJoin test = new TestMergeJoin(rows);
+
+        test.run("MEMORY", "jdbc:hsqldb:mem:mergejoin");
+        test.run("CACHED",
+                 "jdbc:hsqldb:file:" + path
+                 + ";hsqldb.cache_rows=2000;hsqldb.cache_size=1000");
+    }
+
+    void run(String type, String url) throws Exception {
+
+        Connection conn = DriverManager.getConnection(url, "SA", "");
+        Statement  st   = conn.createStatement();
+
+        st.execute("DROP TABLE L IF EXISTS");
+        st.execute("DROP TABLE O IF EXISTS");
+        st.execute("DROP TABLE P IF EXISTS");
+        st.execute("CREATE " + type + " TABLE O (ORDERKEY INT PRIMARY KEY, "
+                   + "TOTAL INT)");
+        st.execute("CREATE " + type + " TABLE L (ORDERKEY INT, "
+                   + "LINENUMBER INT, QTY INT, "
+                   + "PRIMARY KEY (ORDERKEY, LINENUMBER))");
+        st.execute("CREATE " + type + " TABLE P (ID INT PRIMARY KEY, "
+                   + "K INT, V INT)");
+        st.execute("CREATE INDEX IPK ON P(K)");
+
+        PreparedStatement pso =
+            conn.prepareStatement("INSERT INTO O VALUES (?, ?)");
+        PreparedStatement psl =
+            conn.prepareStatement("INSERT INTO L VALUES (?, ?, ?)");
+        PreparedStatement psp =
+            conn.prepareStatement("INSERT INTO P VALUES (?, ?, ?)");
+        int lines = 0;
+
+        for (int i = 0; i < rowCount; i++) {
+            pso.setInt(1, i);
+            pso.setInt(2, i % 100);
+            pso.executeUpdate();
+
+            // orders with no lines and with up to six lines
+            for (int j = 0; j < i % 7; j++) {
+                psl.setInt(1, i);
+                psl.setInt(2, j);
+                psl.setInt(3, (i + j) % 10);
+                psl.executeUpdate();
+            }
+
+            // parts for every third order, some with two rows
+            if (i % 3 == 0) {
+                for (int j = 0; j < 1 + i % 2; j++) {
+                    psp.setInt(1, lines++);
+                    psp.setInt(2, i);
+                    psp.setInt(3, j + 1);
+                    psp.executeUpdate();
+                }
+            }
+        }
+
+        for (int i = 0; i < queries.length; i++) {
+            checkPlan(conn, queries[i][0], true);
+            checkPlan(conn, queries[i][1], false);
+
+            String[] merge = execute(type, conn, queries[i][0]);
+            String[] index = execute(type, conn, queries[i][1]);
+
+            for (int j = 0; j < merge.length; j++) {
+                if (!merge[j].equals(index[j])) {
+                    throw new RuntimeException(queries[i][0] + " merge join "
+                                               + merge[j] + " index "
+                                               + index[j]);
+                }
+            }
+        }
+
+        st.execute("SHUTDOWN");
+    }
+
+    void checkPlan(Connection conn, String query,
+                   boolean merge) throws Exception {
+
+        PreparedStatement ps   = conn.prepareStatement("EXPLAIN PLAN FOR "
+            + query);
+        ResultSet         rs   = ps.executeQuery();
+        boolean           used = false;
+
+        while (rs.next()) {
+            if (rs.getString(1).indexOf("MERGE JOIN") >= 0) {
+                used = true;
+            }
+        }
+
+        if (used != merge) {
+            throw new RuntimeException(query + " merge join " + used);
+        }
+    }
+
+    String[] execute(String type, Connection conn,
+                     String query) throws Exception {
+
+        PreparedStatement ps = conn.prepareStatement(query);
+        StopWatch         sw = new StopWatch();
+
+        if (ps.getParameterMetaData().getParameterCount() > 0) {
+            ps.setInt(1, rowCount / 4);
+            ps.setInt(2, rowCount / 2);
+        }
+
+        ResultSet rs = ps.executeQuery();
+
+        rs.next();
+
+        String[] result = new String[rs.getMetaData().getColumnCount()];
+
+        for (int i = 0; i < result.length; i++) {
+            result[i] = rs.getString(i + 1);
+        }
+
+        System.out.println(type + " " + query + " " + result[0] + " time "
+                           + sw.elapsedTime() + " ms");
+
+        return result;
+    }
+}
@@ -0,0 +1,165 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package org.hsqldb.test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.hsqldb.lib.StopWatch;
+
+/**
+ * Tests the aggregates that keep their state in primitive fields.<p>
+ *
+ * The values of each column are distinct, so each aggregate over a column
+ * must return the same result as the DISTINCT form of the aggregate,
+ * which is computed by the general SetFunction. The columns are INTEGER,
+ * BIGINT with sums that overflow a long, DOUBLE, and DECIMAL with values
+ * of the scale of the column and of other scales. Some values are NULL.
+ * The time of the aggregates over all the rows is reported.<p>
+ *
+ * Usage: java org.hsqldb.test.TestPrimitiveAggregates [rows [path]]
+ */
+public class TestPrimitiveAggregates {
+
+    static final String[] functions = {
+        "COUNT", "SUM", "AVG", "MIN", "MAX"
+    };
+    static final String[] columns   = {
+        "I", "B", "F", "D", "D * 1.5", "I + 0.5"
+    };
+    int rowCount;
+
+    public TestPrimitiveAggregates(int rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int rows = args.length > 0 ? Integer.parseInt(args[0])
+                                   : 100000;
+        String path = args.length > 1 ? args[1]
+                                      : "/hsql/testprimitiveaggregates/test";
+
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+
+        TestPrimitiveAggregates test = new TestPrimitiveAggregates(rows);
+
+        test.run("MEMORY", "jdbc:hsqldb:mem:aggregates");
+        test.run("CACHED",
+                 "jdbc:hsqldb:file:" + path
+                 + ";hsqldb.cache_rows=10000;hsqldb.cache_size=10000");
+    }
+
+    void run(String type, String url) throws Exception {
+
+        Connection conn = DriverManager.getConnection(url, "SA", "");
+        Statement  st   = conn.createStatement();
+
+        st.execute("DROP TABLE T IF EXISTS");
+        st.execute("CREATE " + type + " TABLE T (ID INT PRIMARY KEY, "
+                   + "G INT, I INT, B BIGINT, F DOUBLE, D DECIMAL(18,2))");
+
+        PreparedStatement ps =
+            conn.prepareStatement("INSERT INTO T VALUES (?, ?, ?, ?, ?, ?)");
+
+        for (int i = 0; i < rowCount; i++) {
+            int sign = i % 2 == 0 ? 1
+                                  : -1;
+
+            ps.setInt(1, i);
+            ps.setInt(2, i % 10);
+
+            if (i % 17 == 0) {
+                ps.setNull(3, java.sql.Types.INTEGER);
+                ps.setNull(4, java.sql.Types.BIGINT);
+                ps.setNull(5, java.sql.Types.DOUBLE);
+                ps.setNull(6, java.sql.Types.DECIMAL);
+            } else {
+                ps.setInt(3, sign * i * 1000);
+                ps.setLong(4, (Long.MAX_VALUE / 4) * (i % 3) + i);
+                ps.setDouble(5, sign * i / 7.0);
+                ps.setBigDecimal(6, BigDecimal.valueOf(sign * i * 12345L
+                                                       + i % 100, 2));
+            }
+
+            ps.executeUpdate();
+        }
+
+        for (int i = 0; i < functions.length; i++) {
+            for (int j = 0; j < columns.length; j++) {
+                String plain = functions[i] + "(" + columns[j] + ")";
+                String distinct = functions[i] + "(DISTINCT " + columns[j]
+                                  + ")";
+
+                compare(conn, "SELECT G, " + plain + ", " + distinct
+                        + " FROM T GROUP BY G ORDER BY G");
+                compare(conn, "SELECT 0, " + plain + ", " + distinct
+                        + " FROM T");
+                compare(conn, "SELECT 0, " + plain + ", " + distinct
+                        + " FROM T WHERE ID < 0");
+            }
+        }
+
+        StopWatch sw = new StopWatch();
+        ResultSet rs = st.executeQuery(
+            "SELECT COUNT(*), SUM(I), SUM(B), SUM(F), SUM(D), AVG(D), MIN(I), "
+            + "MAX(B), MIN(F), MAX(D) FROM T");
+
+        rs.next();
+        System.out.println(type + " aggregates of " + rowCount + " rows time "
+                           + sw.elapsedTime() + " ms");
+        st.execute("SHUTDOWN");
+    }
+
+    void compare(Connection conn, String query) throws Exception {
+
+        Statement st = conn.createStatement();
+        ResultSet rs = st.executeQuery(query);
+
+        while (rs.next()) {
+            Object plain    = rs.getObject(2);
+            Object distinct = rs.getObject(3);
+
+            if (plain == null ? distinct != null
+                              : !plain.equals(distinct)) {
+                throw new RuntimeException(query + " group " + rs.getInt(1)
+                                           + " " + plain + " distinct "
+                                           + distinct);
+            }
+        }
+    }
+}
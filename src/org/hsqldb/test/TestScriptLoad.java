@@ -0,0 +1,218 @@
+/* Copyright (c) 2001-2011, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG,
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb.test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Random;
+
+import org.hsqldb.Session;
+import org.hsqldb.Table;
+import org.hsqldb.index.Index;
+import org.hsqldb.jdbc.JDBCConnection;
+import org.hsqldb.lib.StopWatch;
+import org.hsqldb.persist.PersistentStore;
+
+/**
+ * Loads MEMORY tables from the .script with one thread and with several
+ * threads.<p>
+ *
+ * Tables with a primary key and secondary indexes, a table without a
+ * primary key and a table with an identity column are filled and the
+ * database is shut down. The database is opened with hsqldb.script_threads
+ * set to 1 and to the given number of threads. The contents of the
+ * tables, the order of the rows of the table without a primary key and
+ * the next identity value must be the same, and the indexes are checked.
+ * The row inserted to check the identity is rolled back and the database
+ * is closed without a checkpoint.
+ * The time to open the database is reported.<p>
+ *
+ * Usage: java org.hsqldb.test.TestScriptLoad [threads [rows [path]]]
+ */
+public class TestScriptLoad {
+
+    static final String[] tables = new String[] {
+        "A", "B", "C", "N", "I"
+    };
+
+    public static void main(String[] args) throws Exception {
+
+        int threads = args.length > 0 ? Integer.parseInt(args[0])
+                                      : 4;
+        int rows    = args.length > 1 ? Integer.parseInt(args[1])
+                                      : 200000;
+        String path = args.length > 2 ? args[2]
+                                      : "/hsql/testscriptload/test";
+
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+
+        String     url  = "jdbc:hsqldb:file:" + path;
+        Connection conn = DriverManager.getConnection(url, "SA", "");
+        Statement  st   = conn.createStatement();
+
+        for (int i = 0; i < 3; i++) {
+            String name = tables[i];
+
+            st.execute("DROP TABLE " + name + " IF EXISTS");
+            st.execute("CREATE MEMORY TABLE " + name
+                       + " (ID INT PRIMARY KEY, K INT, U INT UNIQUE, "
+                       + "V VARCHAR(40))");
+            st.execute("CREATE INDEX " + name + "K ON " + name + "(K, V)");
+        }
+
+        st.execute("DROP TABLE N IF EXISTS");
+        st.execute("CREATE MEMORY TABLE N (K INT, V VARCHAR(40))");
+        st.execute("CREATE INDEX NK ON N(K)");
+        st.execute("DROP TABLE I IF EXISTS");
+        st.execute("CREATE MEMORY TABLE I (ID INT GENERATED BY DEFAULT AS "
+                   + "IDENTITY PRIMARY KEY, V VARCHAR(40))");
+
+        Random random = new Random(rows);
+
+        for (int i = 0; i < 3; i++) {
+            PreparedStatement ps = conn.prepareStatement("INSERT INTO "
+                + tables[i] + " VALUES (?, ?, ?, ?)");
+
+            for (int j = 0; j < rows; j++) {
+                ps.setInt(1, j);
+                ps.setInt(2, random.nextInt(1000));
+                ps.setInt(3, rows - j);
+                ps.setString(4, j % 10 == 0 ? null
+                                            : "value '" + j + "'");
+                ps.executeUpdate();
+            }
+        }
+
+        PreparedStatement psn =
+            conn.prepareStatement("INSERT INTO N VALUES (?, ?)");
+        PreparedStatement psi =
+            conn.prepareStatement("INSERT INTO I (V) VALUES (?)");
+
+        for (int j = 0; j < rows / 4; j++) {
+            psn.setInt(1, random.nextInt(100));
+            psn.setString(2, "n" + j);
+            psn.executeUpdate();
+            psi.setString(1, "i" + j);
+            psi.executeUpdate();
+        }
+
+        st.execute("DELETE FROM I WHERE ID > " + (rows / 8));
+
+        String expected = getContents(conn);
+
+        st.execute("SHUTDOWN");
+
+        load(url + ";hsqldb.script_threads=1", expected, rows / 4);
+        load(url + ";hsqldb.script_threads=" + threads, expected, rows / 4);
+    }
+
+    static void load(String url, String expected,
+                     int identity) throws Exception {
+
+        StopWatch  sw   = new StopWatch();
+        Connection conn = DriverManager.getConnection(url, "SA", "");
+        long       time = sw.elapsedTime();
+        Session session = (Session) ((JDBCConnection) conn).getSession();
+
+        for (int i = 0; i < tables.length; i++) {
+            Table table = session.database.schemaManager.getUserTable(session,
+                tables[i], "PUBLIC");
+            PersistentStore store = table.getRowStore(session);
+            Index[]         list  = table.getIndexList();
+
+            for (int j = 0; j < list.length; j++) {
+                list[j].checkIndex(store);
+
+                if (list[j].size(session, store) != store.elementCount()) {
+                    throw new RuntimeException("index size "
+                                               + list[j].getName().name);
+                }
+            }
+        }
+
+        if (!expected.equals(getContents(conn))) {
+            throw new RuntimeException("loaded data differs");
+        }
+
+        Statement st = conn.createStatement();
+
+        conn.setAutoCommit(false);
+        st.execute("INSERT INTO I (V) VALUES ('new')");
+
+        ResultSet rs = st.executeQuery("SELECT MAX(ID) FROM I");
+
+        rs.next();
+
+        if (rs.getInt(1) != identity) {
+            throw new RuntimeException("identity " + rs.getInt(1));
+        }
+
+        conn.rollback();
+
+        System.out.println(url.substring(url.indexOf(';') + 1) + " open "
+                           + time + " ms");
+        st.execute("SHUTDOWN IMMEDIATELY");
+    }
+
+    /**
+     * Returns the contents of the tables and the next identity value as a
+     * string, with the rows of table N in the order of a scan
+     */
+    static String getContents(Connection conn) throws Exception {
+
+        StringBuffer sb = new StringBuffer();
+        Statement    st = conn.createStatement();
+        String[] queries = new String[] {
+            "SELECT * FROM A ORDER BY ID", "SELECT * FROM B ORDER BY U",
+            "SELECT * FROM C ORDER BY K, V, ID", "SELECT * FROM N",
+            "SELECT COUNT(*) FROM N WHERE K = 7", "SELECT * FROM I"
+        };
+
+        for (int i = 0; i < queries.length; i++) {
+            ResultSet rs      = st.executeQuery(queries[i]);
+            int       columns = rs.getMetaData().getColumnCount();
+
+            while (rs.next()) {
+                for (int j = 1; j <= columns; j++) {
+                    sb.append(rs.getString(j)).append(',');
+                }
+
+                sb.append('\n');
+            }
+        }
+
+        return sb.toString();
+    }
+}
@@ -452,6 +452,61 @@ public abstract class Type implements SchemaObject, Cloneable {
                                           == SchemaObject.DOMAIN;
     }
 
+    /**
+     * Returns true if values of the type that are equal when compared have
+     * the same hash code from getHashCode(Object). Used for hash joins and
+     * hashed GROUP BY.
+     */
+    public boolean isHashable() {
+
+        if (isNumberType() || isBooleanType() || isDateTimeType()) {
+            return true;
+        }
+
+        if (isCharacterType() && !isLobType()) {
+            return getCollation().isUnicodeSimple();
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the same hash code for values that are equal when compared
+     * as numbers, or as strings with trailing spaces ignored.
+     */
+    public static int getHashCode(Object value) {
+
+        if (value instanceof Number) {
+            double d = ((Number) value).doubleValue();
+
+            if (d == 0) {
+                return 0;
+            }
+
+            long bits = Double.doubleToLongBits(d);
+
+            return (int) (bits ^ (bits >>> 32));
+        }
+
+        if (value instanceof String) {
+            String string = (String) value;
+            int    length = string.length();
+            int    hash   = 0;
+
+            while (length > 0 && string.charAt(length - 1) == ' ') {
+                length--;
+            }
+
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + string.charAt(i);
+            }
+
+            return hash;
+        }
+
+        return value.hashCode();
+    }
+
     public boolean acceptsPrecision() {
         return false;
     }